@@ -0,0 +1,187 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* jshint -W101 */
+
+/**
+ * @const
+ */
+var DEFAULT_LAYER_INTERVAL = 500;
+
+/**
+ * @const
+ */
+var DEFAULT_LAYER_CAPACITY = 2000;
+
+/**
+ * Create new LayerSampler.
+ * Samples the resolution, the frame rate and the bitrate of every received
+ * video source at a fixed interval, from the inbound-rtp stats of the
+ * RTCPeerConnection used by the conference, into a bounded buffer.
+ * @param {number} [interval=DEFAULT_LAYER_INTERVAL] sampling interval in ms
+ * @param {number} [capacity=DEFAULT_LAYER_CAPACITY] max number of samples
+ * kept in the buffer between two drains
+ * @param {string} [connection] 'jvb' or 'p2p' to sample that peer connection,
+ * the active one by default
+ * @constructor
+ */
+var LayerSampler = function (interval, capacity, connection) {
+    this.interval = interval || DEFAULT_LAYER_INTERVAL;
+    this.capacity = capacity || DEFAULT_LAYER_CAPACITY;
+    this.connection = connection;
+    this.samples = [];
+    this.dropped = 0;
+    this.pending = false;
+    this.prev = {};
+};
+
+/**
+ * Finds the RTCPeerConnection sampled.
+ * @returns {RTCPeerConnection} or null if the conference has no media yet
+ */
+LayerSampler.prototype.getPeerConnection = function () {
+    var room = window.APP && APP.conference && APP.conference._room;
+    if (!room) {
+        return null;
+    }
+
+    var p2p = this.connection
+        ? this.connection === 'p2p' : room.isP2PActive && room.isP2PActive();
+    var session = p2p ? room.p2pJingleSession : room.jvbJingleSession;
+
+    return session && session.peerconnection
+        ? session.peerconnection.peerconnection : null;
+};
+
+/**
+ * Maps the SSRCs of the remote video tracks to their source names.
+ * @returns {object} the source name by SSRC
+ */
+LayerSampler.prototype.getSourceNames = function () {
+    var names = {};
+    var room = APP.conference._room;
+    room.getParticipants().forEach(function (participant) {
+        participant.getTracks().forEach(function (track) {
+            if (track.getType() === 'video' && track.getSSRC) {
+                names[track.getSSRC()] = track.getSourceName
+                    ? track.getSourceName() : participant.getId();
+            }
+        });
+    });
+    return names;
+};
+
+/**
+ * Start sampling.
+ */
+LayerSampler.prototype.start = function () {
+    this.timer = window.setInterval(
+        this.sample.bind(this), this.interval);
+};
+
+/**
+ * Stop sampling.
+ */
+LayerSampler.prototype.stop = function () {
+    window.clearInterval(this.timer);
+};
+
+/**
+ * Requests the stats from the peer connection. Skips the tick when
+ * the previous request has not completed yet.
+ */
+LayerSampler.prototype.sample = function () {
+    var pc = this.getPeerConnection();
+    if (!pc || this.pending) {
+        return;
+    }
+
+    this.pending = true;
+    pc.getStats().then(function (report) {
+        this.pending = false;
+        this.onReport(report);
+    }.bind(this), function () {
+        this.pending = false;
+    }.bind(this));
+};
+
+/**
+ * Records a sample of every inbound video stream of a stats report. The
+ * bitrate is computed from the previous report of the same stream.
+ * @param {RTCStatsReport} report
+ */
+LayerSampler.prototype.onReport = function (report) {
+    var now = Date.now();
+    var names = this.getSourceNames();
+    var prev = this.prev;
+    var next = {};
+
+    report.forEach(function (stat) {
+        if (stat.type !== 'inbound-rtp' || stat.kind !== 'video') {
+            return;
+        }
+
+        var bytes = stat.bytesReceived || 0;
+        var last = prev[stat.ssrc];
+        next[stat.ssrc] = { ts: now, bytes: bytes };
+
+        var bitrate = last && now > last.ts && bytes >= last.bytes
+            ? (bytes - last.bytes) * 8000 / (now - last.ts) : -1;
+
+        this.push([
+            now,
+            names[stat.ssrc] || stat.trackIdentifier || String(stat.ssrc),
+            stat.frameWidth || 0,
+            stat.frameHeight || 0,
+            stat.framesPerSecond || 0,
+            bitrate
+        ]);
+    }.bind(this));
+
+    this.prev = next;
+};
+
+/**
+ * Stores a sample, dropping the oldest one if the buffer is full.
+ * @param {Array} sample the time, the source, the width, the height, the
+ * frame rate and the bitrate
+ */
+LayerSampler.prototype.push = function (sample) {
+    if (this.samples.length === this.capacity) {
+        this.samples.shift();
+        this.dropped++;
+    }
+    this.samples.push(sample);
+};
+
+/**
+ * Removes all samples from the buffer and returns them.
+ * @returns {object} with the samples and the number of samples dropped since
+ * the last drain.
+ */
+LayerSampler.prototype.drain = function () {
+    var result = {
+        samples: this.samples,
+        dropped: this.dropped
+    };
+
+    this.samples = [];
+    this.dropped = 0;
+
+    return result;
+};
+
+window.LayerSampler = LayerSampler;
@@ -0,0 +1,211 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* jshint -W101 */
+
+/**
+ * @const
+ */
+var DEFAULT_PROBE_INTERVAL = 50;
+
+/**
+ * Create new NetworkChangeProbe.
+ * Follows the recovery of the JVB peer connection of the conference from a
+ * disruption of the network: every interval, it logs the changes of the ICE
+ * connection state, the replacements of the peer connection and the ICE
+ * restarts, seen as changes of the local ICE ufrag, and checks whether the
+ * received media and the rendered remote video progress. Once armed, it
+ * records when they progress again.
+ * @param {number} [interval=DEFAULT_PROBE_INTERVAL] polling interval in ms
+ * @constructor
+ */
+var NetworkChangeProbe = function (interval) {
+    this.interval = interval || DEFAULT_PROBE_INTERVAL;
+    this.events = [];
+    this.pending = false;
+    this.pc = null;
+    this.state = null;
+    this.ufrag = null;
+    this.bytes = 0;
+    this.frames = new Map();
+    this.armedAt = null;
+    this.mediaResumedAt = null;
+    this.videoRenderedAt = null;
+};
+
+/**
+ * Finds the JVB peer connection.
+ * @returns {RTCPeerConnection} or null if the conference has none
+ */
+NetworkChangeProbe.prototype.getPeerConnection = function () {
+    var room = window.APP && APP.conference && APP.conference._room;
+    var session = room && room.jvbJingleSession;
+
+    return session && session.peerconnection
+        ? session.peerconnection.peerconnection : null;
+};
+
+/**
+ * Start polling.
+ */
+NetworkChangeProbe.prototype.start = function () {
+    this.timer = window.setInterval(this.poll.bind(this), this.interval);
+};
+
+/**
+ * Stop polling.
+ */
+NetworkChangeProbe.prototype.stop = function () {
+    window.clearInterval(this.timer);
+};
+
+/**
+ * Logs an event.
+ * @param {string} type the type of the event
+ * @param {string} value the value of the event
+ * @returns {number} the time of the event
+ */
+NetworkChangeProbe.prototype.log = function (type, value) {
+    var now = Date.now();
+    this.events.push([ now, type, value ]);
+    return now;
+};
+
+/**
+ * Starts to watch for the progress of the media and of the video: the
+ * first progress after now is recorded.
+ * @returns {number} the time the probe was armed
+ */
+NetworkChangeProbe.prototype.arm = function () {
+    this.mediaResumedAt = null;
+    this.videoRenderedAt = null;
+    this.armedAt = this.log('armed', '');
+    return this.armedAt;
+};
+
+/**
+ * Polls the peer connection and the remote videos.
+ */
+NetworkChangeProbe.prototype.poll = function () {
+    var pc = this.getPeerConnection();
+    var replaced = pc !== this.pc;
+    if (replaced) {
+        this.log('pc', pc ? 'new' : 'none');
+        this.pc = pc;
+        this.bytes = 0;
+    }
+
+    var state = pc ? pc.iceConnectionState : 'none';
+    if (state !== this.state) {
+        this.log('ice', state);
+        this.state = state;
+    }
+
+    var description = pc && pc.localDescription && pc.localDescription.sdp;
+    var match = description && /a=ice-ufrag:(\S+)/.exec(description);
+    var ufrag = match ? match[1] : null;
+    if (ufrag && ufrag !== this.ufrag) {
+        if (this.ufrag && !replaced) {
+            this.log('restart', ufrag);
+        }
+        this.ufrag = ufrag;
+    }
+
+    this.pollFrames();
+    if (pc && !this.pending) {
+        this.pending = true;
+        pc.getStats().then(function (report) {
+            this.pending = false;
+            if (pc === this.pc) {
+                this.onReport(report);
+            }
+        }.bind(this), function () {
+            this.pending = false;
+        }.bind(this));
+    }
+};
+
+/**
+ * Checks whether the received media progresses, from the bytes received by
+ * all the inbound streams.
+ * @param {RTCStatsReport} report
+ */
+NetworkChangeProbe.prototype.onReport = function (report) {
+    var bytes = 0;
+    report.forEach(function (stat) {
+        if (stat.type === 'inbound-rtp') {
+            bytes += stat.bytesReceived || 0;
+        }
+    });
+
+    if (bytes > this.bytes && this.armedAt !== null
+            && this.mediaResumedAt === null) {
+        this.mediaResumedAt = this.log('media', String(bytes));
+    }
+    this.bytes = bytes;
+};
+
+/**
+ * Checks whether the remote video progresses, from the frames presented by
+ * every remote video element. The elements and their sources may be
+ * replaced when the tracks are, so they progress from their first frame.
+ */
+NetworkChangeProbe.prototype.pollFrames = function () {
+    var frames = new Map();
+    var progressed = null;
+    var videos = document.querySelectorAll(
+        'video[id^="remoteVideo_"], video#largeVideo');
+    for (var i = 0; i < videos.length; i++) {
+        var video = videos[i];
+        if (!video.getVideoPlaybackQuality) {
+            continue;
+        }
+        var count = video.getVideoPlaybackQuality().totalVideoFrames;
+        var last = this.frames.get(video) || 0;
+
+        // The count restarts with a new source.
+        if (count > last || (count < last && count > 0)) {
+            progressed = video.id;
+        }
+        frames.set(video, count);
+    }
+
+    if (progressed !== null && this.armedAt !== null
+            && this.videoRenderedAt === null) {
+        this.videoRenderedAt = this.log('video', progressed);
+    }
+    this.frames = frames;
+};
+
+/**
+ * Removes the events logged so far and returns them, with the progress
+ * since the probe was armed.
+ * @returns {object} the events, each the time, the type and the value, and
+ * the times the media resumed and the video was rendered again, or null.
+ */
+NetworkChangeProbe.prototype.drain = function () {
+    var result = {
+        events: this.events,
+        mediaResumedAt: this.mediaResumedAt,
+        videoRenderedAt: this.videoRenderedAt
+    };
+
+    this.events = [];
+
+    return result;
+};
+
+window.NetworkChangeProbe = NetworkChangeProbe;
@@ -0,0 +1,59 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* jshint -W101 */
+
+/**
+ * Relays all the peer connections of the page through the TURN server of
+ * the network relay of the test, window.networkRelayIceServers: the ICE
+ * servers of the configurations are replaced with it and only relayed
+ * candidates are gathered, so that all the media goes through the relay
+ * whatever the deployment configures. Runs before the scripts of the page.
+ */
+(function() {
+    var NativePeerConnection = window.RTCPeerConnection;
+    if (!NativePeerConnection || NativePeerConnection.networkRelay) {
+        return;
+    }
+
+    function relay(configuration) {
+        var relayed = Object.assign({}, configuration);
+        relayed.iceServers = window.networkRelayIceServers;
+        relayed.iceTransportPolicy = 'relay';
+        return relayed;
+    }
+
+    function RelayedPeerConnection(configuration) {
+        var args = Array.prototype.slice.call(arguments);
+        args[0] = relay(configuration);
+        return new (Function.prototype.bind.apply(
+            NativePeerConnection, [ null ].concat(args)))();
+    }
+
+    RelayedPeerConnection.prototype = NativePeerConnection.prototype;
+    Object.setPrototypeOf(RelayedPeerConnection, NativePeerConnection);
+    RelayedPeerConnection.networkRelay = true;
+
+    var setConfiguration = NativePeerConnection.prototype.setConfiguration;
+    NativePeerConnection.prototype.setConfiguration = function(configuration) {
+        return setConfiguration.call(this, relay(configuration));
+    };
+
+    window.RTCPeerConnection = RelayedPeerConnection;
+    if (window.webkitRTCPeerConnection) {
+        window.webkitRTCPeerConnection = RelayedPeerConnection;
+    }
+})();
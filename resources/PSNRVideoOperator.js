@@ -26,18 +26,173 @@ var DEFAULT_FPS = 30;
  */
 var DEFAULT_MIME = 'image/png';
 
+/**
+ * Capture modes. Every mode but {@link MODE_RGBA} keeps only the part of the
+ * frame the analysis needs.
+ * - rgba: the full RGBA frame (the original behaviour).
+ * - scaled: the RGBA frame downscaled to the requested width.
+ * - luma: the luma plane, optionally downscaled to the requested width.
+ * - stamp: the luma of the top left region holding the frame number QR code.
+ * - encoded: the frame encoded to an image by a background worker.
+ * - metadata: nothing but the timestamps, for the frame callback.
+ * @const
+ */
+var MODE_RGBA = 'rgba';
+var MODE_SCALED = 'scaled';
+var MODE_LUMA = 'luma';
+var MODE_STAMP = 'stamp';
+var MODE_ENCODED = 'encoded';
+var MODE_METADATA = 'metadata';
+
+/**
+ * The geometry of the frame number stamp, the same as in
+ * FrameNumberExtractor.java: a QR code of STAMP_SIZE pixels at STAMP_OFFSET
+ * from the top left corner of a STAMP_REFERENCE_WIDTH wide frame.
+ * @const
+ */
+var STAMP_REFERENCE_WIDTH = 1280;
+var STAMP_OFFSET = 10;
+var STAMP_SIZE = (21 + 8) * 12;
+
+/**
+ * The default size of the buffer holding the encoded frames.
+ * @const
+ */
+var DEFAULT_ENCODED_BUDGET = 64 * 1024 * 1024;
+
+/**
+ * How many frames may be waiting for the encoder worker before new frames
+ * are dropped.
+ * @const
+ */
+var MAX_PENDING_ENCODES = 4;
+
+/**
+ * The source of the encoder worker. The frames are drawn on an
+ * OffscreenCanvas and encoded off the main thread, which keeps encoding
+ * away from the capture timer and the conference.
+ * @const
+ */
+var ENCODER_WORKER_SOURCE = [
+    'var canvas = null;',
+    'onmessage = function (e) {',
+    '    var d = e.data;',
+    '    if (!canvas || canvas.width !== d.width || canvas.height !== d.height) {',
+    '        canvas = new OffscreenCanvas(d.width, d.height);',
+    '    }',
+    '    canvas.getContext("2d").drawImage(d.bitmap, 0, 0, d.width, d.height);',
+    '    d.bitmap.close();',
+    '    canvas.convertToBlob({ type: d.mimeType, quality: d.quality })',
+    '        .then(function (blob) { return blob.arrayBuffer(); })',
+    '        .then(function (buffer) {',
+    '            postMessage({ index: d.index, buffer: buffer }, [ buffer ]);',
+    '        }, function (error) {',
+    '            postMessage({ index: d.index, error: String(error) });',
+    '        });',
+    '};'
+].join('\n');
+
+/**
+ * Converts bytes to a base64 string.
+ * @param {Uint8Array|Uint8ClampedArray} bytes
+ * @returns {string}
+ */
+function toBase64(bytes) {
+    var chunks = [];
+    for (var i = 0; i < bytes.length; i += 0x8000) {
+        chunks.push(String.fromCharCode.apply(
+            null, bytes.subarray(i, Math.min(i + 0x8000, bytes.length))));
+    }
+    return window.btoa(chunks.join(''));
+}
+
+/**
+ * A pool of fixed size frame slots.
+ * When a capacity is given all the slots are allocated up front in a single
+ * buffer and no slot is handed out past the capacity, so the memory used by
+ * a capture is known when it starts. Without a capacity every slot is
+ * allocated when acquired, which is the original unbounded behaviour.
+ * @param {Function} ArrayType the typed array type of the slots
+ * @param {number} frameSize the number of elements of a slot
+ * @param {number} capacity the number of slots, 0 for unbounded
+ * @constructor
+ */
+var FramePool = function (ArrayType, frameSize, capacity) {
+    this.ArrayType = ArrayType;
+    this.frameSize = frameSize;
+    this.capacity = capacity;
+    this.buffer = capacity ? new ArrayType(frameSize * capacity) : null;
+    this.slots = [];
+};
+
+/**
+ * Get the slot for the next frame.
+ * @returns {Uint8Array|Uint8ClampedArray|null} the slot or null if the pool
+ * is full
+ */
+FramePool.prototype.acquire = function () {
+    var index = this.slots.length;
+    if (this.capacity && index >= this.capacity) {
+        return null;
+    }
+
+    var slot = this.buffer
+        ? this.buffer.subarray(
+            index * this.frameSize, (index + 1) * this.frameSize)
+        : new this.ArrayType(this.frameSize);
+    this.slots.push(slot);
+    return slot;
+};
+
+/**
+ * Get a slot previously acquired.
+ * @param {number} pos the position of the slot
+ * @returns {Uint8Array|Uint8ClampedArray|undefined}
+ */
+FramePool.prototype.get = function (pos) {
+    return this.slots[pos];
+};
+
+/**
+ * Get the number of bytes allocated by this pool.
+ * @returns {number}
+ */
+FramePool.prototype.getFootprint = function () {
+    var slots = this.buffer ? this.capacity : this.slots.length;
+    return slots * this.frameSize * this.ArrayType.BYTES_PER_ELEMENT;
+};
+
 /**
  * Create new Camera.
  * It allows to capture frames from video element.
  * @param {HTMLVideoElement} video source video element
  * @param {String} audioLevelsUserResource optional resource part of the MUC JID
  * which will enable audio level recording for the user identified by it
+ * @param {Object} [options] the capture options
+ * @param {string} [options.mode=MODE_RGBA] the capture mode
+ * @param {number} [options.capacity=0] the maximum number of frames, for which
+ * memory is allocated up front, 0 for unbounded (not with MODE_ENCODED)
+ * @param {number} [options.width=0] the width of the scaled, luma and
+ * encoded frames, 0 to keep the width of the video
+ * @param {string} [options.mimeType=DEFAULT_MIME] the type of the encoded
+ * frames
+ * @param {number} [options.quality] the quality of the encoded frames
+ * @param {number} [options.encodedBudget=DEFAULT_ENCODED_BUDGET] the size of
+ * the buffer holding the encoded frames
+ * @param {boolean} [options.frameCallback=false] whether to capture every
+ * frame presented by the video element with requestVideoFrameCallback,
+ * instead of sampling the element at a fixed rate
  * @constructor
  */
-var Camera = function (video, audioLevelsUserResource) {
+var Camera = function (video, audioLevelsUserResource, options) {
+    this.options = options || {};
+    this.mode = this.options.mode || MODE_RGBA;
     this.audioLevels = [];
-    this.frames = [];
     this.timestamps = [];
+    this.mediaTimes = [];
+    this.presentedFrames = [];
+    this.expectedDisplayTimes = [];
+    this.droppedFrames = 0;
     this.aLvlUserResource = audioLevelsUserResource;
     this.video = video;
 };
@@ -50,32 +205,267 @@ Camera.prototype.getId = function () {
     return this.video.id;
 };
 
+/**
+ * Computes the region of the video to capture and the size of the captured
+ * frames for the capture mode. The size of the frames is that of the first
+ * frame and stays the same for the whole capture, since the frames share a
+ * pool and are read with a single size.
+ */
+Camera.prototype.computeGeometry = function () {
+    var videoWidth = this.video.videoWidth;
+    var videoHeight = this.video.videoHeight;
+
+    this.computeSource();
+
+    if (this.mode === MODE_STAMP) {
+        this.width = this.sourceWidth;
+        this.height = this.sourceHeight;
+    } else if (this.mode !== MODE_RGBA && this.options.width
+            && this.options.width < videoWidth) {
+        this.width = this.options.width;
+        this.height = Math.max(
+            1, Math.round(videoHeight * this.options.width / videoWidth));
+    } else {
+        this.width = videoWidth;
+        this.height = videoHeight;
+    }
+};
+
+/**
+ * Computes the region of the video to capture from the current size of the
+ * video, which changes when the sender or the bridge switches to another
+ * resolution. The region is scaled to the size of the captured frames, so
+ * that the stamp keeps filling the same part of them.
+ */
+Camera.prototype.computeSource = function () {
+    var videoWidth = this.video.videoWidth;
+    var videoHeight = this.video.videoHeight;
+
+    this.videoWidth = videoWidth;
+    this.videoHeight = videoHeight;
+    this.sourceWidth = videoWidth;
+    this.sourceHeight = videoHeight;
+
+    if (this.mode === MODE_STAMP) {
+        var size = Math.ceil(
+            (2 * STAMP_OFFSET + STAMP_SIZE)
+                * videoWidth / STAMP_REFERENCE_WIDTH);
+        this.sourceWidth = Math.min(size, videoWidth);
+        this.sourceHeight = Math.min(size, videoHeight);
+    }
+};
+
 /**
  * Start capturing video frames.
- * @param {number} [fps=DEFAULT_FPS] custom fps
+ * @param {number} [fps=DEFAULT_FPS] custom fps, ignored with the frame
+ * callback
  */
 Camera.prototype.start = function (fps) {
+    this.computeGeometry();
+
     this.canvas = document.createElement('canvas');
     this.canvas.style.display = 'none';
     document.body.appendChild(this.canvas);
 
-    var width = this.video.videoWidth;
-    var height = this.video.videoHeight;
+    this.canvas.width = this.width;
+    this.canvas.height = this.height;
 
-    this.canvas.width = width;
-    this.canvas.height = height;
+    var capacity = this.options.capacity || 0;
+    if (this.mode === MODE_ENCODED) {
+        this.startEncoder();
+    } else if (this.mode === MODE_LUMA || this.mode === MODE_STAMP) {
+        this.pool
+            = new FramePool(Uint8Array, this.width * this.height, capacity);
+    } else if (this.mode !== MODE_METADATA) {
+        this.pool = new FramePool(
+            Uint8ClampedArray, this.width * this.height * 4, capacity);
+    }
 
-    var context = this.canvas.getContext('2d');
+    var context
+        = this.canvas.getContext('2d', { willReadFrequently: true });
+
+    var capture = function () {
+        if (this.mode === MODE_ENCODED) {
+            this.captureEncoded();
+        } else if (this.mode === MODE_METADATA) {
+            if (capacity && this.timestamps.length >= capacity) {
+                this.droppedFrames += 1;
+            } else {
+                this.recordFrame();
+            }
+        } else {
+            this.capture(context);
+        }
+    }.bind(this);
 
     this.startTime = Date.now();
-    this.interval = window.setInterval(function () {
-        context.drawImage(this.video, 0, 0);
+    if (this.options.frameCallback) {
+        this.startFrameCallback(capture);
+    } else {
+        this.interval = window.setInterval(
+            capture, Math.floor(1000 / (fps || DEFAULT_FPS)));
+    }
+};
+
+/**
+ * Captures every frame presented by the video element. The frames are
+ * captured when they are presented, so no frame is captured twice and a
+ * frame is only missed if the page could not keep up. The metadata of the
+ * frame is recorded with it.
+ * @param {Function} capture captures the current frame
+ */
+Camera.prototype.startFrameCallback = function (capture) {
+    if (!this.video.requestVideoFrameCallback) {
+        throw new Error("requestVideoFrameCallback is not supported");
+    }
+
+    var onFrame = function (now, metadata) {
+        if (this.stopped) {
+            return;
+        }
+        this.metadata = metadata;
+        capture();
+        this.frameCallbackId
+            = this.video.requestVideoFrameCallback(onFrame);
+    }.bind(this);
+
+    this.frameCallbackId = this.video.requestVideoFrameCallback(onFrame);
+};
+
+/**
+ * Captures a frame into the pool.
+ * @param {CanvasRenderingContext2D} context the context of the capture canvas
+ */
+Camera.prototype.capture = function (context) {
+    var slot = this.pool.acquire();
+    if (!slot) {
+        this.droppedFrames += 1;
+        return;
+    }
+
+    if (this.video.videoWidth !== this.videoWidth
+            || this.video.videoHeight !== this.videoHeight) {
+        this.computeSource();
+    }
+
+    context.drawImage(
+        this.video,
+        0, 0, this.sourceWidth, this.sourceHeight,
+        0, 0, this.width, this.height);
+    var rgba = context.getImageData(0, 0, this.width, this.height).data;
+
+    if (this.mode === MODE_LUMA || this.mode === MODE_STAMP) {
+        // BT.601 limited range, as YuvFrame.fromImage.
+        for (var i = 0, j = 0; i < slot.length; i += 1, j += 4) {
+            slot[i] = ((66 * rgba[j] + 129 * rgba[j + 1] + 25 * rgba[j + 2]
+                + 128) >> 8) + 16;
+        }
+    } else {
+        slot.set(rgba);
+    }
+
+    this.recordFrame();
+};
+
+/**
+ * Records the timestamp and the audio level of the frame just captured.
+ * With the frame callback the timestamp is when the frame is expected to be
+ * displayed, rather than when the callback ran.
+ */
+Camera.prototype.recordFrame = function () {
+    var metadata = this.metadata;
+    if (metadata) {
+        this.mediaTimes.push(metadata.mediaTime);
+        this.presentedFrames.push(metadata.presentedFrames);
+        this.expectedDisplayTimes.push(metadata.expectedDisplayTime);
+        this.timestamps.push(Math.round(
+            window.performance.timeOrigin + metadata.expectedDisplayTime));
+    } else {
         this.timestamps.push(Date.now());
-        this.frames.push(context.getImageData(0, 0, width, height));
-        if (this.aLvlUserResource) {
-            this.audioLevels.push(this.recordAudioLevel());
+    }
+    if (this.aLvlUserResource) {
+        this.audioLevels.push(this.recordAudioLevel());
+    }
+};
+
+/**
+ * Starts the encoder worker and allocates the buffer of the encoded frames.
+ */
+Camera.prototype.startEncoder = function () {
+    var capacity = this.options.capacity;
+    if (!capacity) {
+        throw new Error("a capacity is required to encode frames");
+    }
+
+    this.encoded = new Uint8Array(
+        this.options.encodedBudget || DEFAULT_ENCODED_BUDGET);
+    this.encodedUsed = 0;
+    this.offsets = new Int32Array(capacity);
+    this.lengths = new Int32Array(capacity);
+    this.capacity = capacity;
+    this.pending = 0;
+    this.idleCallbacks = [];
+
+    var url = URL.createObjectURL(
+        new Blob([ ENCODER_WORKER_SOURCE ], { type: 'text/javascript' }));
+    this.worker = new Worker(url);
+    URL.revokeObjectURL(url);
+
+    this.worker.onmessage = function (e) {
+        var index = e.data.index;
+        var bytes = e.data.buffer ? new Uint8Array(e.data.buffer) : null;
+
+        if (bytes
+                && this.encodedUsed + bytes.length <= this.encoded.length) {
+            this.encoded.set(bytes, this.encodedUsed);
+            this.offsets[index] = this.encodedUsed;
+            this.lengths[index] = bytes.length;
+            this.encodedUsed += bytes.length;
+        } else {
+            this.lengths[index] = -1;
+            this.droppedFrames += 1;
         }
-    }.bind(this), Math.floor(1000 / (fps || DEFAULT_FPS)));
+
+        this.pending -= 1;
+        if (this.pending === 0) {
+            this.idleCallbacks.splice(0).forEach(function (callback) {
+                callback();
+            });
+        }
+    }.bind(this);
+};
+
+/**
+ * Grabs a frame and hands it over to the encoder worker.
+ */
+Camera.prototype.captureEncoded = function () {
+    var index = this.timestamps.length;
+    if (index >= this.capacity || this.pending >= MAX_PENDING_ENCODES
+            || this.encodedUsed >= this.encoded.length) {
+        this.droppedFrames += 1;
+        return;
+    }
+
+    this.pending += 1;
+    this.lengths[index] = 0;
+    this.recordFrame();
+
+    var worker = this.worker;
+    var options = this.options;
+    var width = this.width;
+    var height = this.height;
+    window.createImageBitmap(this.video).then(function (bitmap) {
+        worker.postMessage({
+            index: index,
+            bitmap: bitmap,
+            width: width,
+            height: height,
+            mimeType: options.mimeType || DEFAULT_MIME,
+            quality: options.quality
+        }, [ bitmap ]);
+    }, function (error) {
+        worker.onmessage({ data: { index: index, error: String(error) } });
+    });
 };
 
 /**
@@ -90,10 +480,22 @@ Camera.prototype.recordAudioLevel = function () {
 
 /**
  * Stop capturing video frames.
+ * @returns {Promise} resolved when all the captured frames are available.
  */
 Camera.prototype.stop = function () {
     window.clearInterval(this.interval);
+    if (this.frameCallbackId !== undefined) {
+        this.stopped = true;
+        this.video.cancelVideoFrameCallback(this.frameCallbackId);
+    }
     this.endTime = Date.now();
+
+    if (!this.pending) {
+        return Promise.resolve();
+    }
+    return new Promise(function (resolve) {
+        this.idleCallbacks.push(resolve);
+    }.bind(this));
 };
 
 /**
@@ -117,29 +519,176 @@ Camera.prototype.getAudioLevel = function (pos) {
  * @returns {number}
  */
 Camera.prototype.getFramesCount = function () {
-    return this.frames.length;
+    return this.timestamps.length;
+};
+
+/**
+ * Get the number of frames which were not captured because the pool was
+ * full or the encoder could not keep up.
+ * @returns {number}
+ */
+Camera.prototype.getDroppedFrames = function () {
+    return this.droppedFrames;
+};
+
+/**
+ * Get the captured data of a frame: RGBA or luma samples, or the encoded
+ * image.
+ * @param {number} pos frame position
+ * @returns {Uint8Array|Uint8ClampedArray}
+ */
+Camera.prototype.getFrameData = function (pos) {
+    var data;
+    if (this.mode === MODE_ENCODED) {
+        if (pos < this.timestamps.length && this.lengths[pos] > 0) {
+            data = this.encoded.subarray(
+                this.offsets[pos], this.offsets[pos] + this.lengths[pos]);
+        }
+    } else if (this.pool) {
+        data = this.pool.get(pos);
+    }
+
+    if (!data) {
+        throw new Error(
+            "cannot find frame " + pos + " for video " + this.getId()
+        );
+    }
+    return data;
 };
 
 /**
  * Get frame image as base64 string.
+ * Luma and stamp frames are rendered as grey images.
  * @param {number} pos frame position
- * @param {string} [mimeType=DEFAULT_MIME] image mime type
+ * @param {string} [mimeType=DEFAULT_MIME] image mime type, ignored for
+ * encoded frames
  * @returns {string} image as base64 string
  */
 Camera.prototype.getFrame = function (pos, mimeType) {
-    var imageData = this.frames[pos];
-    if (!imageData) {
+    var data = this.getFrameData(pos);
+    if (this.mode === MODE_ENCODED) {
+        return toBase64(data);
+    }
+
+    var context = this.canvas.getContext('2d');
+    if (!this.imageData) {
+        this.imageData = context.createImageData(this.width, this.height);
+    }
+    var rgba = this.imageData.data;
+    if (this.mode === MODE_LUMA || this.mode === MODE_STAMP) {
+        for (var i = 0, j = 0; i < data.length; i += 1, j += 4) {
+            rgba[j] = rgba[j + 1] = rgba[j + 2] = data[i];
+            rgba[j + 3] = 255;
+        }
+    } else {
+        rgba.set(data);
+    }
+    context.putImageData(this.imageData, 0, 0);
+
+    mimeType = mimeType || DEFAULT_MIME;
+    var prefix = 'data:' + mimeType + ';base64,';
+
+    return this.canvas.toDataURL(mimeType).substring(prefix.length);
+};
+
+/**
+ * Get the luma plane of a frame captured in MODE_LUMA or MODE_STAMP.
+ * @param {number} pos frame position
+ * @returns {{width: number, height: number, data: string}} the size of the
+ * plane and its samples as base64 string
+ */
+Camera.prototype.getLuma = function (pos) {
+    if (this.mode !== MODE_LUMA && this.mode !== MODE_STAMP) {
         throw new Error(
-            "cannot find frame " + pos + " for video " + this.getId()
+            "video " + this.getId() + " is captured in " + this.mode + " mode"
         );
     }
-    this.canvas.getContext('2d').putImageData(imageData, 0, 0);
 
-    var prefix = 'data:' + mimeType + ';base64,';
+    return {
+        width: this.width,
+        height: this.height,
+        data: toBase64(this.getFrameData(pos))
+    };
+};
+
+/**
+ * Get consecutive frames packed in a single binary string, to retrieve many
+ * frames with one WebDriver call. Raw frames (RGBA or luma samples) are
+ * concatenated, each of frameSize bytes. Encoded frames are each preceded by
+ * their length as a 32 bit big endian integer, 0 for dropped frames, and
+ * frameSize is 0.
+ * @param {number} start the position of the first frame
+ * @param {number} maxFrames the maximum number of frames
+ * @param {number} maxBytes the maximum size of the data, at least one frame is
+ * returned
+ * @returns {{count: number, width: number, height: number, frameSize: number,
+ * data: string}} the number and the size of the frames and their data as
+ * base64 string
+ */
+Camera.prototype.getFrames = function (start, maxFrames, maxBytes) {
+    var end = Math.min(start + maxFrames, this.getFramesCount());
+    if (start >= end) {
+        throw new Error(
+            "cannot find frame " + start + " for video " + this.getId()
+        );
+    }
+
+    var data;
+    var count;
+    var frameSize = 0;
+    if (this.mode === MODE_ENCODED) {
+        var frames = [];
+        var size = 0;
+        for (count = 0; start + count < end; count += 1) {
+            var pos = start + count;
+            var frame = this.lengths[pos] > 0
+                ? this.getFrameData(pos) : new Uint8Array(0);
+            if (count > 0 && size + 4 + frame.length > maxBytes) {
+                break;
+            }
+            frames.push(frame);
+            size += 4 + frame.length;
+        }
 
-    return this.canvas.toDataURL(
-        mimeType || DEFAULT_MIME
-    ).substring(prefix.length);
+        data = new Uint8Array(size);
+        var view = new DataView(data.buffer);
+        var offset = 0;
+        frames.forEach(function (frame) {
+            view.setInt32(offset, frame.length);
+            data.set(frame, offset + 4);
+            offset += 4 + frame.length;
+        });
+    } else {
+        if (!this.pool) {
+            throw new Error(
+                "video " + this.getId() + " is captured in " + this.mode
+                    + " mode"
+            );
+        }
+        frameSize = this.pool.frameSize;
+        count = Math.max(
+            1, Math.min(end - start, Math.floor(maxBytes / frameSize)));
+        if (this.pool.buffer) {
+            // The slots of a preallocated pool are contiguous.
+            data = new Uint8Array(
+                this.pool.buffer.buffer,
+                start * frameSize,
+                count * frameSize);
+        } else {
+            data = new Uint8Array(count * frameSize);
+            for (var i = 0; i < count; i += 1) {
+                data.set(this.pool.get(start + i), i * frameSize);
+            }
+        }
+    }
+
+    return {
+        count: count,
+        width: this.width,
+        height: this.height,
+        frameSize: frameSize,
+        data: toBase64(data)
+    };
 };
 
 /**
@@ -147,7 +696,7 @@ Camera.prototype.getFrame = function (pos, mimeType) {
  * @returns {number} fps
  */
 Camera.prototype.getRealFPS = function () {
-    return this.frames.length * 1000 / (this.endTime - this.startTime);
+    return this.timestamps.length * 1000 / (this.endTime - this.startTime);
 };
 
 /**
@@ -155,19 +704,39 @@ Camera.prototype.getRealFPS = function () {
  * @returns {number} size of captured frames (in bytes).
  */
 Camera.prototype.getRawDataSize = function () {
-    return this.frames.reduce(function (acc, imageData) {
-        return acc + imageData.data.length;
-    }, 0);
+    if (this.mode === MODE_ENCODED) {
+        return this.encodedUsed;
+    }
+    return this.pool ? this.pool.slots.length * this.pool.frameSize : 0;
+};
+
+/**
+ * Calculate the memory allocated for the captured frames, which may be more
+ * than their size when the pool is preallocated.
+ * @returns {number} size of the frame buffers (in bytes).
+ */
+Camera.prototype.getMemoryFootprint = function () {
+    if (this.mode === MODE_ENCODED) {
+        return this.encoded.length
+            + this.offsets.byteLength + this.lengths.byteLength;
+    }
+    return this.pool ? this.pool.getFootprint() : 0;
 };
 
 /**
  * Get RGBA a value of the pixel at the center of the frame at specified
- * position.
+ * position. Only available in MODE_RGBA and MODE_SCALED.
  * @param {number} pos frame position
  * @returns {List of string} with Reg, Green, Blue and Alpha values of the pixel
  */
 Camera.prototype.getRGBAatTheCenter = function (pos) {
-    var frame = this.frames[pos];
+    if (this.mode !== MODE_RGBA && this.mode !== MODE_SCALED) {
+        throw new Error(
+            "video " + this.getId() + " is captured in " + this.mode + " mode"
+        );
+    }
+
+    var frame = this.pool.get(pos);
     if (!frame) {
         throw new Error(
             "Cannot find frame at " + pos + " for video " + this.getId()
@@ -175,18 +744,77 @@ Camera.prototype.getRGBAatTheCenter = function (pos) {
     }
 
     var pixel = [];
-    var width = frame.width;
-    var height = frame.height;
-    var y = (width * height * 4/* RGBA */) / 2;
-    var x = (width * 4/* RGBA */) / 2;
+    var y = Math.floor(this.height / 2) * this.width * 4/* RGBA */;
+    var x = Math.floor(this.width / 2) * 4/* RGBA */;
 
     for (var i = 0; i < 4; i++) {
-        pixel.push(frame.data[y + x + i]);
+        pixel.push(frame[y + x + i]);
     }
 
     return pixel;
 };
 
+/**
+ * Get the luma of the pixel at the center of a frame.
+ * @param {number} pos frame position
+ * @returns {number} the luma from 0 to 255 or NaN if the frame has no image
+ */
+Camera.prototype.getCenterLuma = function (pos) {
+    var frame = this.pool && this.pool.get(pos);
+    if (!frame) {
+        return NaN;
+    }
+
+    var center = Math.floor(this.height / 2) * this.width
+        + Math.floor(this.width / 2);
+    if (this.mode === MODE_LUMA || this.mode === MODE_STAMP) {
+        return frame[center];
+    }
+    return ((66 * frame[center * 4] + 129 * frame[center * 4 + 1]
+        + 25 * frame[center * 4 + 2] + 128) >> 8) + 16;
+};
+
+/**
+ * Get the time series of all the captured frames at once: the timestamps,
+ * the audio levels (NaN if not recorded) and the luma of the center pixel,
+ * packed in a Float64Array one series after the other.
+ * @returns {{count: number, data: string}} the number of frames and the
+ * little endian doubles as base64 string
+ */
+Camera.prototype.getSignals = function () {
+    var count = this.timestamps.length;
+    var signals = new Float64Array(3 * count);
+    for (var i = 0; i < count; i += 1) {
+        signals[i] = this.timestamps[i];
+        signals[count + i] = this.aLvlUserResource
+            ? parseFloat(this.audioLevels[i]) : NaN;
+        signals[2 * count + i] = this.getCenterLuma(i);
+    }
+
+    return {
+        count: count,
+        data: toBase64(new Uint8Array(signals.buffer))
+    };
+};
+
+/**
+ * Get the metadata of the frames captured with the frame callback, in the
+ * order of the frames.
+ * @returns {{timestamps: number[], mediaTimes: number[],
+ * presentedFrames: number[], expectedDisplayTimes: number[]}} the timestamps
+ * in ms since the epoch, the media presentation timestamps in s, the
+ * presentation counters and the expected display times in ms since the
+ * time origin of the page
+ */
+Camera.prototype.getFrameTimings = function () {
+    return {
+        timestamps: this.timestamps,
+        mediaTimes: this.mediaTimes,
+        presentedFrames: this.presentedFrames,
+        expectedDisplayTimes: this.expectedDisplayTimes
+    };
+};
+
 /**
  * Get the timestamp of the frame at specified position.
  * @param {number} pos frame position
@@ -208,6 +836,12 @@ Camera.prototype.getTimestamp = function (pos) {
  */
 Camera.prototype.cleanup = function () {
     document.body.removeChild(this.canvas);
+    if (this.worker) {
+        this.worker.terminate();
+        this.worker = null;
+    }
+    this.pool = null;
+    this.encoded = null;
 };
 
 
@@ -224,9 +858,13 @@ var VideoOperator = function () {
  * Use Cameras to capture frames from all video elements.
  * @param {string[]} videoIds array if ids of target video elements.
  * @param {number} [fps=DEFAULT_FPS] fps for cameras
+ * @param {string[]} [aLvlUserResources] the MUC resources of the users whose
+ * audio levels are recorded, in the order of videoIds
+ * @param {Object} [options] the capture options, see Camera
  */
 VideoOperator.prototype.recordAll = function (videoIds,
-                                              fps, aLvlUserResources) {
+                                              fps, aLvlUserResources,
+                                              options) {
     for (var i =0; i < videoIds.length; i++) {
         var videoId = videoIds[i];
         var aLvlUserResource = aLvlUserResources ? aLvlUserResources[i] : null;
@@ -235,7 +873,7 @@ VideoOperator.prototype.recordAll = function (videoIds,
             throw new Error("cannot find element with id " + videoId);
         }
 
-        var recorder = new Camera(element, aLvlUserResource);
+        var recorder = new Camera(element, aLvlUserResource, options);
         recorder.start(fps);
 
         this.cameras.push(recorder);
@@ -244,11 +882,12 @@ VideoOperator.prototype.recordAll = function (videoIds,
 
 /**
  * Stop all Cameras.
+ * @returns {Promise} resolved when all the captured frames are available.
  */
 VideoOperator.prototype.stop = function () {
-    this.cameras.forEach(function (camera) {
-        camera.stop();
-    });
+    return Promise.all(this.cameras.map(function (camera) {
+        return camera.stop();
+    }));
 };
 
 /**
@@ -271,6 +910,16 @@ VideoOperator.prototype.getRawDataSize = function () {
     }, 0) / this.cameras.length;
 };
 
+/**
+ * Calculate the memory allocated for the captured frames by all Cameras.
+ * @returns {number} size of the frame buffers (in bytes).
+ */
+VideoOperator.prototype.getMemoryFootprint = function () {
+    return this.cameras.reduce(function (acc, camera) {
+        return acc + camera.getMemoryFootprint();
+    }, 0);
+};
+
 /**
  * Find Camera by id or throw an error.
  * @param {string} videoId
@@ -306,6 +955,56 @@ VideoOperator.prototype.getFrame = function (videoId, pos, mimeType) {
     return this.getCamera(videoId).getFrame(pos, mimeType);
 };
 
+/**
+ * Get the number of frames the Camera with specified id did not capture.
+ * @param {string} videoId id of the camera
+ * @returns {number} number of frames
+ */
+VideoOperator.prototype.getDroppedFrames = function (videoId) {
+    return this.getCamera(videoId).getDroppedFrames();
+};
+
+/**
+ * Get the time series of the frames captured by the Camera with specified id.
+ * @param {string} videoId id of the camera
+ * @returns {Object} the series, see Camera.prototype.getSignals
+ */
+VideoOperator.prototype.getSignals = function (videoId) {
+    return this.getCamera(videoId).getSignals();
+};
+
+/**
+ * Get the metadata of the frames captured with the frame callback.
+ * @param {string} videoId id of the camera
+ * @returns {Object} the metadata, see Camera.prototype.getFrameTimings
+ */
+VideoOperator.prototype.getFrameTimings = function (videoId) {
+    return this.getCamera(videoId).getFrameTimings();
+};
+
+/**
+ * Get consecutive frames packed in a binary string.
+ * @param {string} videoId id of the camera
+ * @param {number} start the position of the first frame
+ * @param {number} maxFrames the maximum number of frames
+ * @param {number} maxBytes the maximum size of the data
+ * @returns {Object} the frames, see Camera.prototype.getFrames
+ */
+VideoOperator.prototype.getFrames = function (videoId, start, maxFrames,
+                                              maxBytes) {
+    return this.getCamera(videoId).getFrames(start, maxFrames, maxBytes);
+};
+
+/**
+ * Get the luma plane of a frame.
+ * @param {string} videoId id of the camera
+ * @param {number} pos frame position
+ * @returns {{width: number, height: number, data: string}} the plane
+ */
+VideoOperator.prototype.getLuma = function (videoId, pos) {
+    return this.getCamera(videoId).getLuma(pos);
+};
+
 /**
  * Get audio level for the frame at specified position.
  * @param {number} pos frame position
@@ -0,0 +1,119 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* jshint -W101 */
+
+/**
+ * The size of the Resource Timing buffer of the page, raised from the
+ * default when this script runs before the page.
+ * @const
+ */
+var RESOURCE_TIMING_BUFFER_SIZE = 2000;
+
+/**
+ * The default size of the Resource Timing buffer of the browsers, beyond
+ * which the entries are dropped.
+ * @const
+ */
+var DEFAULT_RESOURCE_TIMING_BUFFER_SIZE = 250;
+
+/**
+ * Raises the size of the Resource Timing buffer of the page and, should it
+ * be full anyway, moves its entries aside so that none is dropped. It must
+ * run before the page loads its resources, as an init script of the page.
+ */
+function keepResourceTimings() {
+    if (window._keptResourceTimings) {
+        return;
+    }
+    window._keptResourceTimings = [];
+    performance.setResourceTimingBufferSize(RESOURCE_TIMING_BUFFER_SIZE);
+    performance.addEventListener('resourcetimingbufferfull', function () {
+        Array.prototype.push.apply(
+            window._keptResourceTimings,
+            performance.getEntriesByType('resource'));
+        performance.clearResourceTimings();
+    });
+}
+
+/**
+ * Reads the Navigation Timing entry of the page and its Resource Timing
+ * entries, all times in milliseconds since the navigation start.
+ * @returns {object} the navigation phases and one entry per resource with
+ * its url without the query, initiator, start, end, transfer and body sizes
+ * and whether it was served from the cache. Sizes are 0 for cross-origin
+ * resources without Timing-Allow-Origin, and cached is null for them.
+ * The resources are truncated when the buffer filled up and the entries
+ * were not kept by keepResourceTimings.
+ */
+function getPageLoadTiming() {
+    var nav = performance.getEntriesByType('navigation')[0];
+    var kept = window._keptResourceTimings;
+    var resources = (kept || []).concat(performance.getEntriesByType('resource'));
+
+    function url(name) {
+        var i = name.search(/[?#]/);
+        return i < 0 ? name : name.substring(0, i);
+    }
+
+    function cached(entry) {
+        if (entry.deliveryType === 'cache') {
+            return true;
+        }
+        if (!entry.decodedBodySize) {
+            // Cross-origin without Timing-Allow-Origin, or empty body.
+            return entry.transferSize ? false : null;
+        }
+        return entry.transferSize === 0;
+    }
+
+    return {
+        url: nav ? url(nav.name) : url(location.href),
+        navigation: nav ? {
+            redirect: nav.redirectEnd - nav.redirectStart,
+            dns: nav.domainLookupEnd - nav.domainLookupStart,
+            connect: nav.connectEnd - nav.connectStart,
+            request: nav.responseStart - nav.requestStart,
+            response: nav.responseEnd - nav.responseStart,
+            responseEnd: nav.responseEnd,
+            domInteractive: nav.domInteractive,
+            domContentLoaded: nav.domContentLoadedEventEnd,
+            load: nav.loadEventEnd,
+            transferSize: nav.transferSize || 0,
+            cached: cached(nav)
+        } : null,
+        truncated: !kept
+            && resources.length >= DEFAULT_RESOURCE_TIMING_BUFFER_SIZE,
+        resources: resources.map(function (entry) {
+            return {
+                url: url(entry.name),
+                initiator: entry.initiatorType,
+                start: entry.startTime,
+                end: entry.responseEnd,
+                transferSize: entry.transferSize || 0,
+                bodySize: entry.decodedBodySize || 0,
+                cached: cached(entry)
+            };
+        })
+    };
+}
+
+window.getPageLoadTiming = getPageLoadTiming;
+
+// Run as an init script, before the page.
+if (document.readyState === 'loading') {
+    keepResourceTimings();
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* jshint -W101 */
+
+/**
+ * @const
+ */
+var DEFAULT_PROBE_INTERVAL = 200;
+
+/**
+ * @const
+ */
+var DEFAULT_PROBE_CAPACITY = 150;
+
+/**
+ * The videos probed by default: every video except the local one.
+ * @const
+ */
+var DEFAULT_PROBE_SELECTOR = 'video:not([id^="localVideo"])';
+
+/**
+ * The geometry of the stamp drawn by scripts/psnr-build-resources.sh on the
+ * 1280x720 frames: a version 1 QR code of 21x21 modules of 12 pixels,
+ * overlaid at (10, 10) with a 4 module quiet zone.
+ * @const
+ */
+var STAMP_REFERENCE_WIDTH = 1280;
+var STAMP_SYMBOL_OFFSET = 10 + 4 * 12;
+var STAMP_MODULE_SIZE = 12;
+var QR_SIZE = 21;
+
+/**
+ * The pixels per module of the canvas the symbol is drawn to.
+ * @const
+ */
+var PIXELS_PER_MODULE = 4;
+
+/**
+ * The minimum difference between the darkest and the brightest modules of a
+ * symbol.
+ * @const
+ */
+var MIN_STAMP_CONTRAST = 32;
+
+/**
+ * The size of the record of a sample: a byte set to 1 if a symbol was
+ * sampled, followed by its modules, one bit per module, row by row, most
+ * significant bit first.
+ * @const
+ */
+var STAMP_RECORD_BYTES = 1 + Math.ceil(QR_SIZE * QR_SIZE / 8);
+
+/**
+ * Samples the modules of the symbol stamped on a video frame into a record.
+ * The symbol is decoded in the JVM, this only reads the central 2x2 pixels
+ * of every module and thresholds them halfway between the darkest and the
+ * brightest module.
+ * @param {Uint8ClampedArray} rgba the symbol area drawn on a canvas of
+ * QR_SIZE * PIXELS_PER_MODULE pixels per side
+ * @param {Uint8Array} record the record to write, see STAMP_RECORD_BYTES,
+ * left empty if the contrast is too low for a symbol
+ */
+function sampleStampModules(rgba, record) {
+    var side = QR_SIZE * PIXELS_PER_MODULE;
+    var levels = new Float64Array(QR_SIZE * QR_SIZE);
+    var min = 255, max = 0;
+    var c0 = PIXELS_PER_MODULE / 2 - 1;
+
+    record.fill(0);
+    for (var y = 0; y < QR_SIZE; y++) {
+        for (var x = 0; x < QR_SIZE; x++) {
+            var sum = 0;
+            for (var dy = 0; dy < 2; dy++) {
+                for (var dx = 0; dx < 2; dx++) {
+                    var p = ((y * PIXELS_PER_MODULE + c0 + dy) * side + x * PIXELS_PER_MODULE + c0 + dx) * 4;
+                    sum += rgba[p] * 77 + rgba[p + 1] * 150 + rgba[p + 2] * 29;
+                }
+            }
+            var level = sum / (4 * 256);
+            levels[y * QR_SIZE + x] = level;
+            min = Math.min(min, level);
+            max = Math.max(max, level);
+        }
+    }
+    if (max - min < MIN_STAMP_CONTRAST) {
+        return;
+    }
+
+    var threshold = (min + max) / 2;
+    record[0] = 1;
+    for (var i = 0; i < levels.length; i++) {
+        if (levels[i] < threshold) {
+            record[1 + (i >> 3)] |= 0x80 >> (i & 7);
+        }
+    }
+}
+
+/**
+ * Encodes the bytes of a typed array as a base64 string.
+ * @param {Uint8Array} bytes the bytes to encode
+ * @returns {string} base64 string
+ */
+function probeBytesToBase64(bytes) {
+    var chunks = [];
+    for (var i = 0; i < bytes.length; i += 0x8000) {
+        chunks.push(String.fromCharCode.apply(
+            null, bytes.subarray(i, i + 0x8000)));
+    }
+    return btoa(chunks.join(''));
+}
+
+/**
+ * Returns the current time of the page clock.
+ * @returns {number} the time in ms since the epoch, with sub-millisecond
+ * resolution, in the time base of the video frame callbacks
+ */
+function probeNow() {
+    return performance.timeOrigin + performance.now();
+}
+
+/**
+ * Create new QualityProbe.
+ * Samples at a low rate the symbol stamped on the frames currently displayed
+ * by the remote videos of the page, and stores its modules with their
+ * timestamps in a bounded ring buffer per video. Only the stamp region of
+ * the videos is drawn, and only the modules leave the page, to be decoded in
+ * the JVM.
+ * With the frame callback, every frame presented by the videos is read
+ * instead, timestamped with its expected display time.
+ * @param {number} [interval=DEFAULT_PROBE_INTERVAL] probe interval in ms,
+ * with the frame callback the interval at which new videos are looked for
+ * @param {number} [capacity=DEFAULT_PROBE_CAPACITY] max number of samples
+ * kept per video between two drains
+ * @param {string} [selector=DEFAULT_PROBE_SELECTOR] selects the videos
+ * @param {boolean} [frameCallback=false] whether to read every presented
+ * frame with requestVideoFrameCallback
+ * @constructor
+ */
+var QualityProbe = function (interval, capacity, selector, frameCallback) {
+    this.interval = interval || DEFAULT_PROBE_INTERVAL;
+    this.capacity = capacity || DEFAULT_PROBE_CAPACITY;
+    this.selector = selector || DEFAULT_PROBE_SELECTOR;
+    this.frameCallback = !!frameCallback;
+    this.videos = {};
+    this.callbacks = [];
+
+    var side = QR_SIZE * PIXELS_PER_MODULE;
+    this.canvas = document.createElement('canvas');
+    this.canvas.width = side;
+    this.canvas.height = side;
+    this.ctx = this.canvas.getContext('2d', { willReadFrequently: true });
+    this.record = new Uint8Array(STAMP_RECORD_BYTES);
+};
+
+/**
+ * Start probing.
+ */
+QualityProbe.prototype.start = function () {
+    this.stopped = false;
+    this.timer = window.setInterval(
+        this.probe.bind(this), this.interval);
+};
+
+/**
+ * Stop probing.
+ */
+QualityProbe.prototype.stop = function () {
+    this.stopped = true;
+    window.clearInterval(this.timer);
+    for (var i = 0; i < this.callbacks.length; i++) {
+        var callback = this.callbacks[i];
+        if (callback.handle !== undefined) {
+            callback.video.cancelVideoFrameCallback(callback.handle);
+        }
+    }
+    this.callbacks = [];
+};
+
+/**
+ * Returns a stable key for a video element.
+ * @param {HTMLVideoElement} video
+ * @returns {string} the id of the element or of its stream, null if none
+ */
+QualityProbe.prototype.getKey = function (video) {
+    return video.id || (video.srcObject && video.srcObject.id) || null;
+};
+
+/**
+ * Samples the stamp of every video which is playing or, with the frame
+ * callback, starts sampling the presented frames of the new videos.
+ */
+QualityProbe.prototype.probe = function () {
+    var now = probeNow();
+    var elements = document.querySelectorAll(this.selector);
+
+    for (var i = 0; i < elements.length; i++) {
+        var video = elements[i];
+        if (this.frameCallback) {
+            this.watch(video);
+            continue;
+        }
+
+        var key = this.getKey(video);
+        if (!key || video.readyState < 2 || !video.videoWidth) {
+            continue;
+        }
+        this.push(key, now, this.read(video));
+    }
+};
+
+/**
+ * Samples the stamp of every frame presented by a video, if not done
+ * already.
+ * @param {HTMLVideoElement} video
+ */
+QualityProbe.prototype.watch = function (video) {
+    if (!video.requestVideoFrameCallback) {
+        return;
+    }
+    for (var i = 0; i < this.callbacks.length; i++) {
+        if (this.callbacks[i].video === video) {
+            return;
+        }
+    }
+
+    var callback = { video: video };
+    var self = this;
+    var onFrame = function (now, metadata) {
+        var key = self.getKey(video);
+        if (self.stopped) {
+            return;
+        }
+        if (key && video.videoWidth) {
+            self.push(key, performance.timeOrigin + metadata.expectedDisplayTime, self.read(video));
+        }
+        callback.handle = video.requestVideoFrameCallback(onFrame);
+    };
+    callback.handle = video.requestVideoFrameCallback(onFrame);
+    this.callbacks.push(callback);
+};
+
+/**
+ * Samples the stamp of the frame currently displayed by a video.
+ * @param {HTMLVideoElement} video
+ * @returns {Uint8Array} the record of the sample, see STAMP_RECORD_BYTES,
+ * reused by the next call
+ */
+QualityProbe.prototype.read = function (video) {
+    var side = QR_SIZE * PIXELS_PER_MODULE;
+    var scale = video.videoWidth / STAMP_REFERENCE_WIDTH;
+    try {
+        this.ctx.drawImage(
+            video,
+            STAMP_SYMBOL_OFFSET * scale, STAMP_SYMBOL_OFFSET * scale,
+            QR_SIZE * STAMP_MODULE_SIZE * scale, QR_SIZE * STAMP_MODULE_SIZE * scale,
+            0, 0, side, side);
+        sampleStampModules(this.ctx.getImageData(0, 0, side, side).data, this.record);
+    } catch (e) {
+        this.record.fill(0);
+    }
+    return this.record;
+};
+
+/**
+ * Stores a sample in the ring buffer of a video, overwriting the oldest one
+ * if the buffer is full.
+ * @param {string} key the video
+ * @param {number} timestamp the time of the sample in ms since the epoch
+ * @param {Uint8Array} record the sampled stamp, see STAMP_RECORD_BYTES
+ */
+QualityProbe.prototype.push = function (key, timestamp, record) {
+    var video = this.videos[key];
+    if (!video) {
+        video = this.videos[key] = {
+            timestamps: new Float64Array(this.capacity),
+            records: new Uint8Array(this.capacity * STAMP_RECORD_BYTES),
+            head: 0,
+            count: 0,
+            dropped: 0
+        };
+    }
+
+    var idx = (video.head + video.count) % this.capacity;
+    if (video.count === this.capacity) {
+        video.head = (video.head + 1) % this.capacity;
+        video.dropped++;
+    } else {
+        video.count++;
+    }
+    video.timestamps[idx] = timestamp;
+    video.records.set(record, idx * STAMP_RECORD_BYTES);
+};
+
+/**
+ * Removes all samples from the buffers and returns them in a compact form.
+ * The buffers of the videos which have not been probed since the previous
+ * drain are released.
+ * @returns {object[]} one entry per video with its key, the number of
+ * samples, the number of samples dropped since the last drain, the
+ * timestamps of the samples as a little-endian Float64Array encoded in
+ * base64 and their records, see STAMP_RECORD_BYTES, encoded in base64.
+ */
+QualityProbe.prototype.drain = function () {
+    var result = [];
+    for (var key in this.videos) {
+        if (!this.videos.hasOwnProperty(key)) {
+            continue;
+        }
+
+        var video = this.videos[key];
+        if (video.count === 0 && video.dropped === 0) {
+            delete this.videos[key];
+            continue;
+        }
+
+        var timestamps = new Float64Array(video.count);
+        var records = new Uint8Array(video.count * STAMP_RECORD_BYTES);
+        for (var i = 0; i < video.count; i++) {
+            var idx = (video.head + i) % this.capacity;
+            timestamps[i] = video.timestamps[idx];
+            records.set(
+                video.records.subarray(
+                    idx * STAMP_RECORD_BYTES, (idx + 1) * STAMP_RECORD_BYTES),
+                i * STAMP_RECORD_BYTES);
+        }
+        result.push({
+            id: key,
+            count: video.count,
+            dropped: video.dropped,
+            timestamps: probeBytesToBase64(new Uint8Array(timestamps.buffer)),
+            records: probeBytesToBase64(records)
+        });
+
+        video.head = 0;
+        video.count = 0;
+        video.dropped = 0;
+    }
+
+    return result;
+};
+
+window.QualityProbe = QualityProbe;
+window.probeNow = probeNow;
@@ -0,0 +1,255 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* jshint -W101 */
+
+/**
+ * @const
+ */
+var DEFAULT_SAMPLE_INTERVAL = 1000;
+
+/**
+ * @const
+ */
+var DEFAULT_SAMPLE_CAPACITY = 300;
+
+/**
+ * The columns recorded for every sample, in the order they are stored in the
+ * ring buffer. Must be kept in sync with StatsSamples.java.
+ * @const
+ */
+var SAMPLE_COLUMNS = [
+    'timestamp',
+    'bitrateDownload',
+    'bitrateUpload',
+    'rtt',
+    'packetLoss',
+    'fps',
+    'frameHeight',
+    'frameWidth',
+    'availableOutgoingBitrate',
+    'targetBitrate'
+];
+
+/**
+ * Encodes the bytes of a typed array as a base64 string.
+ * @param {Uint8Array} bytes the bytes to encode
+ * @returns {string} base64 string
+ */
+function typedArrayToBase64(bytes) {
+    var chunks = [];
+    for (var i = 0; i < bytes.length; i += 0x8000) {
+        chunks.push(String.fromCharCode.apply(
+            null, bytes.subarray(i, i + 0x8000)));
+    }
+    return btoa(chunks.join(''));
+}
+
+/**
+ * Create new StatsSampler.
+ * Samples the RTCPeerConnection used by the conference at a fixed interval
+ * and stores the deltas in a bounded ring buffer.
+ * @param {number} [interval=DEFAULT_SAMPLE_INTERVAL] sampling interval in ms
+ * @param {number} [capacity=DEFAULT_SAMPLE_CAPACITY] max number of samples
+ * kept in the buffer between two drains
+ * @param {string} [connection] 'jvb' or 'p2p' to sample that peer connection,
+ * the active one by default
+ * @constructor
+ */
+var StatsSampler = function (interval, capacity, connection) {
+    this.interval = interval || DEFAULT_SAMPLE_INTERVAL;
+    this.capacity = capacity || DEFAULT_SAMPLE_CAPACITY;
+    this.connection = connection;
+    this.columns = SAMPLE_COLUMNS.length;
+    this.buffer = new Float64Array(this.capacity * this.columns);
+    this.head = 0;
+    this.count = 0;
+    this.dropped = 0;
+    this.pending = false;
+    this.prev = null;
+};
+
+/**
+ * Finds the RTCPeerConnection currently used by the conference.
+ * @returns {RTCPeerConnection} or null if the conference has no media yet
+ */
+StatsSampler.prototype.getPeerConnection = function () {
+    var room = window.APP && APP.conference && APP.conference._room;
+    if (!room) {
+        return null;
+    }
+
+    var p2p = this.connection
+        ? this.connection === 'p2p' : room.isP2PActive && room.isP2PActive();
+    var session = p2p ? room.p2pJingleSession : room.jvbJingleSession;
+
+    return session && session.peerconnection
+        ? session.peerconnection.peerconnection : null;
+};
+
+/**
+ * Start sampling.
+ */
+StatsSampler.prototype.start = function () {
+    this.timer = window.setInterval(
+        this.sample.bind(this), this.interval);
+};
+
+/**
+ * Stop sampling.
+ */
+StatsSampler.prototype.stop = function () {
+    window.clearInterval(this.timer);
+};
+
+/**
+ * Requests the stats from the peer connection. Skips the tick when
+ * the previous request has not completed yet.
+ */
+StatsSampler.prototype.sample = function () {
+    var pc = this.getPeerConnection();
+    if (!pc || this.pending) {
+        return;
+    }
+
+    this.pending = true;
+    pc.getStats().then(function (report) {
+        this.pending = false;
+        this.onReport(report);
+    }.bind(this), function () {
+        this.pending = false;
+    }.bind(this));
+};
+
+/**
+ * Sums up the counters of a stats report and records the deltas from the
+ * previous report as a new sample.
+ * @param {RTCStatsReport} report
+ */
+StatsSampler.prototype.onReport = function (report) {
+    var now = Date.now();
+    var totals = {
+        bytesReceived: 0,
+        bytesSent: 0,
+        packetsReceived: 0,
+        packetsLost: 0
+    };
+    var rtt = -1, fps = 0, height = 0, width = 0;
+    var availableOutgoingBitrate = -1, targetBitrate = -1;
+
+    report.forEach(function (stat) {
+        if (stat.type === 'inbound-rtp') {
+            totals.bytesReceived += stat.bytesReceived || 0;
+            totals.packetsReceived += stat.packetsReceived || 0;
+            totals.packetsLost += stat.packetsLost || 0;
+            if (stat.kind === 'video') {
+                fps = Math.max(fps, stat.framesPerSecond || 0);
+                height = Math.max(height, stat.frameHeight || 0);
+                width = Math.max(width, stat.frameWidth || 0);
+            }
+        } else if (stat.type === 'outbound-rtp') {
+            totals.bytesSent += stat.bytesSent || 0;
+            if (stat.kind === 'video' && stat.targetBitrate !== undefined) {
+                targetBitrate = Math.max(targetBitrate, 0) + stat.targetBitrate;
+            }
+        } else if (stat.type === 'candidate-pair' && stat.nominated
+                && stat.state === 'succeeded') {
+            if (stat.currentRoundTripTime !== undefined) {
+                rtt = stat.currentRoundTripTime * 1000;
+            }
+            if (stat.availableOutgoingBitrate !== undefined) {
+                availableOutgoingBitrate = stat.availableOutgoingBitrate;
+            }
+        }
+    });
+
+    var prev = this.prev;
+    this.prev = { ts: now, totals: totals };
+
+    // The first report only seeds the counters, the same happens when they
+    // go backwards (the peer connection has been replaced).
+    if (!prev || totals.bytesReceived < prev.totals.bytesReceived
+            || totals.bytesSent < prev.totals.bytesSent) {
+        return;
+    }
+
+    var elapsed = (now - prev.ts) / 1000;
+    if (elapsed <= 0) {
+        return;
+    }
+
+    var received = totals.packetsReceived - prev.totals.packetsReceived;
+    var lost = Math.max(0, totals.packetsLost - prev.totals.packetsLost);
+
+    this.push([
+        now,
+        (totals.bytesReceived - prev.totals.bytesReceived) * 8 / elapsed,
+        (totals.bytesSent - prev.totals.bytesSent) * 8 / elapsed,
+        rtt,
+        received + lost > 0 ? lost / (received + lost) : 0,
+        fps,
+        height,
+        width,
+        availableOutgoingBitrate,
+        targetBitrate
+    ]);
+};
+
+/**
+ * Stores a sample in the ring buffer, overwriting the oldest one if the
+ * buffer is full.
+ * @param {number[]} values the sample values in SAMPLE_COLUMNS order
+ */
+StatsSampler.prototype.push = function (values) {
+    var idx = (this.head + this.count) % this.capacity;
+    if (this.count === this.capacity) {
+        this.head = (this.head + 1) % this.capacity;
+        this.dropped++;
+    } else {
+        this.count++;
+    }
+    this.buffer.set(values, idx * this.columns);
+};
+
+/**
+ * Removes all samples from the buffer and returns them in a compact form.
+ * @returns {object} with the column names, the number of samples, the number
+ * of samples dropped since the last drain and the samples as a row-major
+ * little-endian Float64Array encoded in base64.
+ */
+StatsSampler.prototype.drain = function () {
+    var out = new Float64Array(this.count * this.columns);
+    for (var i = 0; i < this.count; i++) {
+        var idx = ((this.head + i) % this.capacity) * this.columns;
+        out.set(
+            this.buffer.subarray(idx, idx + this.columns), i * this.columns);
+    }
+
+    var result = {
+        columns: SAMPLE_COLUMNS,
+        count: this.count,
+        dropped: this.dropped,
+        data: typedArrayToBase64(new Uint8Array(out.buffer))
+    };
+
+    this.head = 0;
+    this.count = 0;
+    this.dropped = 0;
+
+    return result;
+};
+
+window.StatsSampler = StatsSampler;
@@ -0,0 +1,63 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* jshint -W101 */
+
+/**
+ * Reads the cumulative counters of every received video track from the
+ * RTCPeerConnection currently used by the conference.
+ * @returns {Promise<object[]>} one entry per inbound video stream, with the
+ * track identifier, the ssrc, the codec, the bytes received and the frame,
+ * freeze and jitter buffer counters. Empty if the conference has no media yet.
+ */
+function getVideoReceiveCounters() {
+    var room = window.APP && APP.conference && APP.conference._room;
+    var session = room && (room.isP2PActive && room.isP2PActive()
+        ? room.p2pJingleSession : room.jvbJingleSession);
+    var pc = session && session.peerconnection
+        ? session.peerconnection.peerconnection : null;
+
+    if (!pc) {
+        return Promise.resolve([]);
+    }
+
+    return pc.getStats().then(function (report) {
+        var counters = [];
+        report.forEach(function (stat) {
+            if (stat.type !== 'inbound-rtp' || stat.kind !== 'video') {
+                return;
+            }
+            var codec = stat.codecId && report.get(stat.codecId);
+            counters.push({
+                track: stat.trackIdentifier || String(stat.ssrc),
+                ssrc: stat.ssrc,
+                codec: codec && codec.mimeType
+                    ? codec.mimeType.replace(/^video\//, '') : null,
+                bytesReceived: stat.bytesReceived || 0,
+                framesReceived: stat.framesReceived || 0,
+                framesDecoded: stat.framesDecoded || 0,
+                framesDropped: stat.framesDropped || 0,
+                freezeCount: stat.freezeCount || 0,
+                totalFreezesDuration: stat.totalFreezesDuration || 0,
+                jitterBufferDelay: stat.jitterBufferDelay || 0,
+                jitterBufferEmittedCount: stat.jitterBufferEmittedCount || 0
+            });
+        });
+        return counters;
+    });
+}
+
+window.getVideoReceiveCounters = getVideoReceiveCounters;
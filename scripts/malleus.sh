@@ -5,7 +5,7 @@ if [ -n "$DEBUG" ]; then
 fi
 
 usage() {
-  echo "Usage: $0 [--conferences=MALLEUS_CONFERENCES] [--participants=MALLEUS_PARTICIPANTS] [--senders=MALLEUS_SENDERS] [--audio-senders=MALLEUS_AUDIO_SENDERS] [--senders-per-tab=MALLEUS_SENDERS_PER_TAB] [--receivers-per-tab=MALLEUS_RECEIVERS_PER_NODE] [--sender-tabs-per-browser=MALLEUS_SENDER_TABS_PER_BROWSER] [--receiver-tabs-per-browser=MALLEUS_RECEIVER_TABS_PER_BROWSER] [--senders-per-node=MALLEUS_SENDERS_PER_NODE] [--receivers-per-node=MALLEUS_RECEIVERS_PER_NODE] [--duration=MALLEUS_DURATION (s)] [--join-delay=MALLEUS_JOIN_DELAY (ms)] [--room-name-prefix=MALLEUS_ROOM_NAME_PREFIX] [--hub-url=MALLEUS_HUB_URL] [--instance-url=MALLEUS_INSTANCE_URL] [--regions=MALLEUS_REGIONS] [--use-node-types] [--use-load-test] [--use-lite-mode] [--max-disrupted-bridges-pct=MALLEUS_MAX_DISRUPTED_BRIDGES_PCT] [--extra-sender-params=EXTRA_SENDER_PARAMS] [--extra-receiver-params=EXTRA_RECEIVER_PARAMS] [--debug] [--switch-speakers] [--use-stage-view] [--headless] [--save-logs]" >&2
+  echo "Usage: $0 [--conferences=MALLEUS_CONFERENCES] [--participants=MALLEUS_PARTICIPANTS] [--senders=MALLEUS_SENDERS] [--audio-senders=MALLEUS_AUDIO_SENDERS] [--senders-per-tab=MALLEUS_SENDERS_PER_TAB] [--receivers-per-tab=MALLEUS_RECEIVERS_PER_NODE] [--sender-tabs-per-browser=MALLEUS_SENDER_TABS_PER_BROWSER] [--receiver-tabs-per-browser=MALLEUS_RECEIVER_TABS_PER_BROWSER] [--senders-per-node=MALLEUS_SENDERS_PER_NODE] [--receivers-per-node=MALLEUS_RECEIVERS_PER_NODE] [--duration=MALLEUS_DURATION (s)] [--join-delay=MALLEUS_JOIN_DELAY (ms)] [--room-name-prefix=MALLEUS_ROOM_NAME_PREFIX] [--hub-url=MALLEUS_HUB_URL] [--instance-url=MALLEUS_INSTANCE_URL] [--regions=MALLEUS_REGIONS] [--use-node-types] [--use-load-test] [--use-lite-mode] [--max-disrupted-bridges-pct=MALLEUS_MAX_DISRUPTED_BRIDGES_PCT] [--extra-sender-params=EXTRA_SENDER_PARAMS] [--extra-receiver-params=EXTRA_RECEIVER_PARAMS] [--record-stats=MALLEUS_RECORD_STATS (s)] [--detect-freezes=MALLEUS_DETECT_FREEZES (ms)] [--quality-probe=MALLEUS_QUALITY_PROBE (receivers)] [--input-video=MALLEUS_INPUT_VIDEO] [--debug] [--switch-speakers] [--use-stage-view] [--headless] [--save-logs]" >&2
   exit 1
 }
 
@@ -102,7 +102,8 @@ set_defaults() {
       MALLEUS_SET_SAVELOGS=false
     fi
 
-    # Null is a fine default for MALLEUS_EXTRA_SENDER_PARAMS, MALLEUS_EXTRA_RECEIVER_PARAMS and MALLEUS_JWT
+    # Null is a fine default for MALLEUS_EXTRA_SENDER_PARAMS, MALLEUS_EXTRA_RECEIVER_PARAMS, MALLEUS_RECORD_STATS,
+    # MALLEUS_DETECT_FREEZES, MALLEUS_QUALITY_PROBE, MALLEUS_INPUT_VIDEO and MALLEUS_JWT
 }
 
 case $1 in
@@ -142,6 +143,10 @@ case $1 in
         --save-logs) if [ -n "$optvalue" ]; then MALLEUS_SET_SAVELOGS=$optvalue; else MALLEUS_SET_SAVELOGS=true; fi;;
         --extra-sender-params) MALLEUS_EXTRA_SENDER_PARAMS=$optvalue;;
         --extra-receiver-params) MALLEUS_EXTRA_RECEIVER_PARAMS=$optvalue;;
+        --record-stats) MALLEUS_RECORD_STATS=$optvalue;;
+        --detect-freezes) MALLEUS_DETECT_FREEZES=$optvalue;;
+        --quality-probe) MALLEUS_QUALITY_PROBE=$optvalue;;
+        --input-video) MALLEUS_INPUT_VIDEO=$optvalue;;
         --max-disrupted-bridges-pct) MALLEUS_MAX_DISRUPTED_BRIDGES_PCT=$optvalue;;
         --debug) set -x;;
         --jwt) MALLEUS_JWT=$optvalue;;
@@ -230,6 +235,10 @@ mvn \
 -Dorg.jitsi.malleus.set.saveLogs=$MALLEUS_SET_SAVELOGS \
 -Dorg.jitsi.malleus.extra_sender_params=$MALLEUS_EXTRA_SENDER_PARAMS \
 -Dorg.jitsi.malleus.extra_receiver_params=$MALLEUS_EXTRA_RECEIVER_PARAMS \
+-Dorg.jitsi.malleus.record_stats=$MALLEUS_RECORD_STATS \
+-Dorg.jitsi.malleus.detect_freezes=$MALLEUS_DETECT_FREEZES \
+-Dorg.jitsi.malleus.quality_probe=$MALLEUS_QUALITY_PROBE \
+-Dorg.jitsi.malleus.input_video=$MALLEUS_INPUT_VIDEO \
 -Dremote.address=$MALLEUS_HUB_URL \
 -DallowInsecureCerts=$MALLEUS_ALLOW_INSECURE_CERTS \
 -Djitsi-meet.tests.toRun=$MALLEUS_TESTS_TO_RUN \
@@ -36,6 +36,14 @@ readonly DEV=`ip addr | grep 2: | cut -d' ' -f2 | cut -d: -f1`
 readonly DST_PORT=${1}
 shift
 
+# Every port has its own HTB(8) class and filter under a shared root qdisc,
+# so that concurrent instances of this script shape different ports of the
+# same interface. The root qdisc is created and deleted under a lock.
+readonly CLASS_ID=1:`printf '%x' ${DST_PORT}`
+readonly PRIO=${DST_PORT}
+readonly LOCK_FILE=/tmp/tc-port-schedule.lock
+exec 9>${LOCK_FILE}
+
 initialized=false
 
 # Prints TC(8) debugging information.
@@ -53,7 +61,13 @@ finish() {
             echo 'clear everything'
         fi
 
-        ${TC} qdisc del dev ${DEV} root
+        flock 9
+        ${TC} filter del dev ${DEV} parent 1:0 prio ${PRIO} || true
+        ${TC} class del dev ${DEV} classid ${CLASS_ID} || true
+        if [ -z "`${TC} class show dev ${DEV} parent 1:`" ]; then
+            ${TC} qdisc del dev ${DEV} root || true
+        fi
+        flock -u 9
         initialized=false
 
         if ${DEBUG}; then
@@ -76,13 +90,17 @@ for i in $*; do
     fi
 
     if ${initialized}; then
-        ${TC} class change dev ${DEV} parent 1: classid 1:3 htb rate ${rate}
+        ${TC} class change dev ${DEV} parent 1: classid ${CLASS_ID} htb rate ${rate}
     else
-        ${TC} qdisc add dev ${DEV} root handle 1: htb default 1
+        flock 9
+        if ! ${TC} qdisc show dev ${DEV} | grep -q 'htb 1: root'; then
+            ${TC} qdisc add dev ${DEV} root handle 1: htb default 1
+        fi
         initialized=true
-        ${TC} class add dev ${DEV} parent 1: classid 1:3 htb rate ${rate}
-        ${TC} filter add dev ${DEV} protocol ip parent 1:0 prio 1 u32 \
-            match ip dport ${DST_PORT} 0xffff classid 1:3
+        ${TC} class add dev ${DEV} parent 1: classid ${CLASS_ID} htb rate ${rate}
+        ${TC} filter add dev ${DEV} protocol ip parent 1:0 prio ${PRIO} u32 \
+            match ip dport ${DST_PORT} 0xffff classid ${CLASS_ID}
+        flock -u 9
     fi
 
     if ${DEBUG}; then
@@ -15,8 +15,12 @@
  */
 package org.jitsi.meet.test;
 
+import org.jitsi.meet.test.analysis.*;
 import org.jitsi.meet.test.base.*;
+import org.jitsi.meet.test.base.stats.*;
+import org.jitsi.meet.test.network.*;
 import org.jitsi.meet.test.web.*;
+import org.jitsi.meet.test.web.stats.*;
 import org.jitsi.meet.test.util.*;
 
 import org.openqa.selenium.*;
@@ -39,16 +43,33 @@ import static org.jitsi.meet.test.util.TestUtils.*;
  * and store the webrtc-internals of the receiver. This sequence of steps is
  * run once for the JVB and once for the TURN server, so we end up with two
  * webrtc-internals, one for the JVB and one for the TURN server. Finally, it
- * will feed the two webrtc-internals to an analysis script (bwe-benchmark.py)
- * that exits with success if the JVB bitrate time series is healthy, or with
- * failure otherwise.
+ * analyzes the received bitrate of the two runs against the bottleneck
+ * schedule with {@link BweAnalyzer}, and succeeds if the mean JVB bitrate is
+ * at least {@link #MIN_RATIO_PROP_NAME} times the mean P2P bitrate.
+ *
+ * Up to {@link #CONCURRENCY_PROP_NAME} network/schedule combinations run
+ * concurrently, at most the data-provider-thread-count of the suite (10 by
+ * default), each with its own participants, conferences and shaping
+ * instance, and an {@link IsolationChecker} flags the runs which may have
+ * disturbed each other. A combination fails when one of its runs is
+ * flagged.
+ *
+ * The bandwidth estimation is also tracked live with {@link BweTracker}: the
+ * estimate, the target and the send rate of the sender, and the bitrate of
+ * the receiver. Their time to converge, steady-state utilisation and
+ * oscillation for every segment of the schedule are checked against the
+ * {@link ConvergenceThresholds} of the "bwe" properties: in P2P runs those of
+ * the estimate of the sender, which the bottleneck drives, and in JVB runs
+ * those of the bitrate of the receiver, because the estimate of the bridge
+ * is not visible to the browsers. The layers the receiver gets are tracked
+ * with a {@link LayerTracker}, which reports how fast they step down and up
+ * after every step of the schedule.
  *
  * There are several requirements that must be met in order for this test to
  * function correctly:
  * - The user that is executing the test needs to be able to run the tc command.
  * - The JVB and the TURN server need to run on the same host that is running
  *   the test.
- * - A recent version of the python pandas library needs to be installed.
  * - The grid nodes need to be powerful enough to achieve high target bitrates.
  *
  * @author George Politis
@@ -71,12 +92,33 @@ public class BandwidthEstimationTest
     private static final String CHROME_WRAPPER_PROP_NAME = "chrome.wrapper";
 
     /**
-     * Name of the system property which point to the benchmark script used to
-     * determine whether or not the jvb bitrate time series is healthy.
-     * See {@link #benchmarkScript}.
+     * Name of the system property which holds the minimum ratio of the mean
+     * JVB bitrate to the mean P2P bitrate.
+     */
+    private static final String MIN_RATIO_PROP_NAME = "bwe.min_ratio";
+
+    /**
+     * Name of the system property which, when true, shapes the receiver with
+     * an in-process {@link NetworkRelay} rather than with tc and mahimahi.
      */
-    private static final String BENCHMARK_SCRIPT_PROP_NAME
-        = "bwe-benchmark.script";
+    private static final String RELAY_PROP_NAME = "bwe.relay";
+
+    /**
+     * Name of the system property which holds the number of network/schedule
+     * combinations to run concurrently, 1 by default.
+     */
+    private static final String CONCURRENCY_PROP_NAME = "bwe.concurrency";
+
+    /**
+     * The interval of the samples of the load of the host.
+     */
+    private static final long LOAD_SAMPLE_INTERVAL_SECONDS = 5;
+
+    /**
+     * The default minimum ratio of the mean JVB bitrate to the mean P2P
+     * bitrate.
+     */
+    private static final double DEFAULT_MIN_RATIO = 0.95;
 
     /**
      * The video file to use as input for the first participant (the sender).
@@ -232,12 +274,6 @@ public class BandwidthEstimationTest
     private static final String DEFAULT_TC_SCRIPT
         = "scripts/tc-port-schedule.sh";
 
-    /**
-     * Default benchmark script which will work only on linux.
-     */
-    private static final String DEFAULT_BENCHMARK_SCRIPT
-        = "scripts/bwe-benchmark.py";
-
     /**
      * Default chrome wrapper script with mahimahi(1) support.
      */
@@ -256,20 +292,44 @@ public class BandwidthEstimationTest
     private static String tcScript;
 
     /**
-     * Stores the path to the benchmark script.
+     * Stores the path to the Chrome wrapper with mahimahi(1) support.
      */
-    private static String benchmarkScript;
+    private static String chromeWrapper;
 
     /**
-     * Stores the path to the Chrome wrapper with mahimahi(1) support.
+     * Whether the receiver is shaped with a {@link NetworkRelay}.
      */
-    private static String chromeWrapper;
+    private static boolean useRelay;
 
     /**
      * The options to launch the sender participant with.
      */
     private WebParticipantOptions senderOptions;
 
+    /**
+     * Flags the runs which may have disturbed each other.
+     */
+    private final IsolationChecker isolationChecker = new IsolationChecker();
+
+    /**
+     * The convergence the tracked bitrates are checked against.
+     */
+    private final ConvergenceThresholds convergenceThresholds
+        = new ConvergenceThresholds().load("bwe");
+
+    /**
+     * Samples the load of the host for {@link #isolationChecker} and drains
+     * the samples of the {@link BweTracker}s.
+     */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Bounds the number of combinations which run at once to
+     * {@link #CONCURRENCY_PROP_NAME}, below the data provider threads of the
+     * suite.
+     */
+    private Semaphore concurrentRuns;
+
     /**
      * Utility method that calls {@link #tcScript} to rate-limit given port.
      *
@@ -300,36 +360,66 @@ public class BandwidthEstimationTest
     }
 
     /**
-     * Runs the benchmark script with the jvb and the p2p webrtc-stats
-     * as a parameter.
+     * Compares the received bitrate of the JVB and the P2P runs.
      *
+     * @param jvbRun the JVB run.
      * @param jvbFile the {@link File} to read the JVB webrtc-stats from.
-     * @param p2pFile the {@link File} to read the webrtc-stats file from.
+     * @param p2pRun the P2P run.
+     * @param p2pFile the {@link File} to read the P2P webrtc-stats from.
+     * @param schedule the bottleneck schedule of the runs.
      * @param analysisFile the {@link File} to store the analysis results in.
+     * @return the ratio of the mean JVB bitrate to the mean P2P bitrate.
      */
-    private static int benchmark(File jvbFile, File p2pFile, File analysisFile)
-        throws Exception
+    private static double benchmark(
+            Run jvbRun, File jvbFile, Run p2pRun, File p2pFile,
+            String[] schedule, File analysisFile)
+        throws IOException
     {
-        CmdExecutor cmdExecutor = new CmdExecutor()
-        {
-            @Override
-            public void configureProcessBuilder(ProcessBuilder processBuilder)
-            {
-                processBuilder.redirectOutput(analysisFile);
-                processBuilder.redirectError(ProcessBuilder.Redirect.INHERIT);
-            }
-        };
-
-        List<String> cmdArgs = new LinkedList<>();
+        BweAnalyzer analyzer = new BweAnalyzer(RateSchedule.parse(schedule));
+        BweAnalyzer.Result jvb = analyze(analyzer, jvbFile, jvbRun.scheduleStartMs);
+        BweAnalyzer.Result p2p = analyze(analyzer, p2pFile, p2pRun.scheduleStartMs);
+        jvbRun.isolation.setResult(jvb);
+        p2pRun.isolation.setResult(p2p);
+
+        double ratio = jvb.getMeanBps() / p2p.getMeanBps();
+        String analysis = "Schedule: " + analyzer.getSchedule() + "\n"
+            + BweAnalyzer.compare("JVB", jvb, "P2P", p2p)
+            + String.format("JVB/P2P mean bitrate ratio: %.3f%n", ratio);
+        writeFile(analysisFile, analysis);
+        print(analysis);
+
+        return ratio;
+    }
 
-        cmdArgs.add(benchmarkScript);
-        cmdArgs.add("compare");
-        cmdArgs.add("--jvb");
-        cmdArgs.add(jvbFile.toString());
-        cmdArgs.add("--p2p");
-        cmdArgs.add(p2pFile.toString());
+    /**
+     * Analyzes the received bitrate of a run.
+     *
+     * @param analyzer the analyzer of the schedule of the run.
+     * @param statsFile the {@link File} to read the webrtc-stats from.
+     * @param scheduleStartMs the start of the schedule with the clock of the
+     * receiver.
+     * @return the analysis.
+     */
+    private static BweAnalyzer.Result analyze(BweAnalyzer analyzer, File statsFile, double scheduleStartMs)
+        throws IOException
+    {
+        TimeSeries bytesReceived = RtcStatsDump.readBytesReceived(statsFile);
+        if (bytesReceived == null)
+        {
+            fail("No received bytes in " + statsFile);
+        }
+        return analyzer.analyze(bytesReceived, scheduleStartMs);
+    }
 
-        return cmdExecutor.executeCmd(cmdArgs, 3, TimeUnit.SECONDS);
+    /**
+     * Returns the {@link LinkProfile} spec which replays a mahimahi trace.
+     *
+     * @param trace the trace file, <tt>null</tt> or empty for none.
+     * @return the spec, empty or terminated with a separator.
+     */
+    private static String traceSpec(String trace)
+    {
+        return trace == null || trace.isEmpty() ? "" : "trace=" + trace + ";";
     }
 
     /**
@@ -387,6 +477,25 @@ public class BandwidthEstimationTest
     {
         super.setupClass();
 
+        String concurrency = System.getProperty(CONCURRENCY_PROP_NAME);
+        concurrentRuns = new Semaphore(
+            concurrency == null ? 1 : Math.max(1, Integer.parseInt(concurrency)), true);
+
+        scheduler = Executors.newScheduledThreadPool(2);
+        scheduler.scheduleAtFixedRate(
+            isolationChecker::sampleLoad, 0, LOAD_SAMPLE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+        senderOptions
+            = new WebParticipantOptions().setFakeStreamVideoFile(
+                INPUT_VIDEO_FILE);
+
+        useRelay = Boolean.getBoolean(RELAY_PROP_NAME);
+        if (useRelay)
+        {
+            // The relay needs neither tc nor mahimahi.
+            return;
+        }
+
         tcScript = System.getProperty(TC_SCRIPT_PROP_NAME);
         if (tcScript == null)
         {
@@ -405,48 +514,49 @@ public class BandwidthEstimationTest
             }
         }
 
-        benchmarkScript = System.getProperty(BENCHMARK_SCRIPT_PROP_NAME);
-        if (benchmarkScript == null)
+        chromeWrapper = System.getProperty(CHROME_WRAPPER_PROP_NAME);
+        if (chromeWrapper == null)
         {
             if ("linux".equalsIgnoreCase(System.getProperty("os.name")))
             {
-                benchmarkScript = DEFAULT_BENCHMARK_SCRIPT;
+                chromeWrapper = DEFAULT_CHROME_WRAPPER;
             }
             else
             {
                 print(
-                    "WARN no benchmark script has been specified and "
+                    "WARN no chrome wrapper has been specified and "
                         + "the BandwidthEstimationTest will not be "
                         + "executed!");
                 cleanupClass();
                 throw new SkipException("no tc script has been specified");
             }
         }
+    }
 
-        chromeWrapper = System.getProperty(CHROME_WRAPPER_PROP_NAME);
-        if (chromeWrapper == null)
+    @Override
+    public void cleanupClass()
+    {
+        if (scheduler != null)
         {
-            if ("linux".equalsIgnoreCase(System.getProperty("os.name")))
+            scheduler.shutdownNow();
+            scheduler = null;
+
+            String isolation = isolationChecker.toString();
+            print(isolation);
+            try
             {
-                chromeWrapper = DEFAULT_CHROME_WRAPPER;
+                writeFile(getLogFile("bwe-isolation.out"), isolation);
             }
-            else
+            catch (IOException e)
             {
-                print(
-                    "WARN no chrome wrapper has been specified and "
-                        + "the BandwidthEstimationTest will not be "
-                        + "executed!");
-                cleanupClass();
-                throw new SkipException("no tc script has been specified");
+                print("Failed to write the isolation report: " + e.getMessage());
             }
         }
 
-        senderOptions
-            = new WebParticipantOptions().setFakeStreamVideoFile(
-                INPUT_VIDEO_FILE);
+        super.cleanupClass();
     }
 
-    @DataProvider(name = "dp")
+    @DataProvider(name = "dp", parallel = true)
     public Object[][] createData()
     {
         // If the tests is not in the list of tests to be executed,
@@ -485,12 +595,34 @@ public class BandwidthEstimationTest
     @Test(dataProvider = "dp")
     public void test(Network network, String[] schedule)
         throws Exception
+    {
+        concurrentRuns.acquire();
+        try
+        {
+            testCombination(network, schedule);
+        }
+        finally
+        {
+            concurrentRuns.release();
+        }
+    }
+
+    /**
+     * Runs a network/schedule combination through the JVB and then peer to
+     * peer, and checks their bitrates and convergence.
+     *
+     * @param network the network of the receiver.
+     * @param schedule the bottleneck schedule.
+     * @throws Exception if something goes wrong.
+     */
+    private void testCombination(Network network, String[] schedule)
+        throws Exception
     {
         // XXX notice that the webrtc stats gathering default interval is 300
         // seconds.
-        String jvbStats = test(
+        Run jvbRun = test(
                 true, 200, TimeUnit.SECONDS, network, schedule);
-        String p2pStats = test(
+        Run p2pRun = test(
                 false, 200, TimeUnit.SECONDS, network, schedule);
 
         File jvbFile = getLogFile(
@@ -500,36 +632,63 @@ public class BandwidthEstimationTest
         File analysisFile = getLogFile(
                 network.name + humanizeSchedule(schedule) + ".out");
 
-        writeFile(jvbFile, jvbStats);
-        writeFile(p2pFile, p2pStats);
-
-        int result = benchmark(jvbFile, p2pFile, analysisFile);
-        assertEquals(result, 0);
+        writeFile(jvbFile, jvbRun.stats);
+        writeFile(p2pFile, p2pRun.stats);
+
+        String minRatio = System.getProperty(MIN_RATIO_PROP_NAME);
+        double ratio = benchmark(
+            jvbRun, jvbFile, p2pRun, p2pFile, schedule, analysisFile);
+
+        BweAnalyzer analyzer = new BweAnalyzer(RateSchedule.parse(schedule));
+        List<String> convergenceFailures = new ArrayList<>();
+        convergenceFailures.addAll(track(
+            jvbRun, analyzer, StatsSamples.BITRATE_DOWNLOAD));
+        convergenceFailures.addAll(track(
+            p2pRun, analyzer, StatsSamples.AVAILABLE_OUTGOING_BITRATE));
+
+        // The bitrates of a run which may have been disturbed by the runs
+        // executing concurrently are not comparable.
+        List<String> disturbances = new ArrayList<>();
+        jvbRun.isolation.check().forEach(reason -> disturbances.add("JVB " + reason));
+        p2pRun.isolation.check().forEach(reason -> disturbances.add("P2P " + reason));
+        assertTrue(
+            disturbances.isEmpty(),
+            "Disturbed by the concurrent runs: " + disturbances);
+        assertTrue(
+            ratio >= (minRatio == null ? DEFAULT_MIN_RATIO : Double.parseDouble(minRatio)),
+            "JVB/P2P mean bitrate ratio " + ratio);
+        assertTrue(
+            convergenceFailures.isEmpty(),
+            "Convergence (" + convergenceThresholds + "): "
+                + convergenceFailures);
     }
 
     /**
-     * This test evaluates a congestion control scenario.
+     * This test evaluates a congestion control scenario. The sender and the
+     * receiver are created for the run and closed after it, so that the runs
+     * of other combinations can execute concurrently.
      *
      * @param useJVB
      * @param timeout
      * @param unit
      * @param schedule
-     * @return the file where the results where written.
+     * @return the run, with the webrtc-stats of the receiver.
      *
      * @throws Exception if something goes wrong.
      */
-    private String test(
+    private Run test(
             boolean useJVB, long timeout, TimeUnit unit,
             Network network, String[] schedule)
         throws Exception
     {
+        String roomName = network.name + (useJVB ? "JVB" : "P2P")
+            + humanizeSchedule(schedule);
         JitsiMeetUrl senderUrl, receiverUrl;
         if (!useJVB)
         {
             senderUrl = getJitsiMeetUrl();
             senderUrl.removeFragmentParam("config.callStatsID");
 
-            String roomName = network.name + "P2P" + humanizeSchedule(schedule);
             senderUrl.setRoomName(roomName);
             senderUrl.appendConfig("config.p2p.enabled=true");
             senderUrl.appendConfig("config.p2p.iceTransportPolicy=\"relay\"");
@@ -550,22 +709,35 @@ public class BandwidthEstimationTest
         }
         else
         {
-            String roomName = network.name + "JVB" + humanizeSchedule(schedule);
-            senderUrl = receiverUrl = getJitsiMeetUrl();
+            senderUrl = getJitsiMeetUrl();
             senderUrl.removeFragmentParam("config.callStatsID");
             senderUrl.setRoomName(roomName);
+            receiverUrl = senderUrl.copy();
         }
 
+        WebParticipantOptions sendOptions = new WebParticipantOptions();
+        sendOptions.putAll(senderOptions);
+        sendOptions.setName("sender" + roomName);
+
         WebParticipantOptions receiverOptions = new WebParticipantOptions();
+        receiverOptions.setName("receiver" + roomName);
 
         boolean useCustomBinary = false;
-        if (network.uplink != null && network.uplink != "")
+        if (useRelay)
+        {
+            // The traces are replayed by the relay, the downlink with the
+            // schedule once the media flows.
+            receiverOptions.setNetworkRelay(true);
+            receiverOptions.setRelayUplink(traceSpec(network.uplink));
+            receiverOptions.setRelayDownlink(traceSpec(network.downlink));
+        }
+        else if (network.uplink != null && network.uplink != "")
         {
             receiverOptions.setUplink(network.uplink);
             useCustomBinary = true;
         }
 
-        if (network.downlink != null && network.downlink != "")
+        if (!useRelay && network.downlink != null && network.downlink != "")
         {
             receiverOptions.setDownlink(network.downlink);
             useCustomBinary = true;
@@ -578,49 +750,233 @@ public class BandwidthEstimationTest
             // launched chrome instance. However, we need the chromedriver to
             // either SIGINT or SIGTERM the chrome wrapper to give it a chance
             // to free up any resources it has allocated. Setting the profile
-            // directory does that..
-            receiverOptions.setProfileDirectory("/tmp/bwe-receiver-data-dir");
+            // directory does that.. The directory is per run, as the runs
+            // may execute concurrently.
+            receiverOptions.setProfileDirectory(
+                "/tmp/bwe-receiver-data-dir-" + roomName);
         }
 
-        ensureTwoParticipants(
-                senderUrl, receiverUrl, senderOptions, receiverOptions);
+        WebParticipant senderParticipant
+            = participants.createParticipant("web.participant1", sendOptions);
+        WebParticipant receiverParticipant = null;
+        try
+        {
+            receiverParticipant = participants.createParticipant(
+                "web.participant2", receiverOptions);
+
+            senderParticipant.joinConference(senderUrl);
+            senderParticipant.waitToJoinMUC();
+            receiverParticipant.joinConference(receiverUrl);
+            receiverParticipant.waitToJoinMUC();
 
-        WebDriver sender = getParticipant1().getDriver();
-        assertNotNull(sender);
-        WebDriver receiver = getParticipant2().getDriver();
+            receiverParticipant.waitForIceConnected();
+            receiverParticipant.waitForSendReceiveData(false, true);
+
+            return run(
+                senderParticipant, receiverParticipant, useJVB, roomName, timeout, unit,
+                network, schedule);
+        }
+        finally
+        {
+            // XXX prevent ghosts
+            hangUpSafely(senderParticipant);
+            hangUpSafely(receiverParticipant);
+            // XXX we want to actually quit the drivers because we may wish to
+            // launch chrome with different parameters.
+            closeParticipant(senderParticipant);
+            if (receiverParticipant != null)
+            {
+                closeParticipant(receiverParticipant);
+            }
+        }
+    }
+
+    /**
+     * Plays the bottleneck schedule to a receiver which has joined, and
+     * tracks the bandwidth estimation of the sender and of the receiver.
+     *
+     * @param senderParticipant the sender.
+     * @param receiverParticipant the receiver.
+     * @param useJVB if true, use the JVB peer connection, or the P2P peer
+     * connection otherwise.
+     * @param name the name of the run.
+     * @return the run, with the webrtc-stats of the receiver.
+     */
+    private Run run(
+            WebParticipant senderParticipant,
+            WebParticipant receiverParticipant, boolean useJVB, String name,
+            long timeout, TimeUnit unit, Network network, String[] schedule)
+        throws Exception
+    {
+        WebDriver receiver = receiverParticipant.getDriver();
         assertNotNull(receiver);
 
         // Rate limit the media flow on the receiver and analyze the webrtc
         // internals.
+        String expectedCandidateType = useRelay ? "relay" : "prflx";
         String localCandidateType
             = MeetUtils.getLocalCandidateType(receiver, useJVB);
-        while (!"prflx".equalsIgnoreCase(localCandidateType))
+        while (!expectedCandidateType.equalsIgnoreCase(localCandidateType))
         {
-            print("Waiting for a prflx local candidate type. Got: "
-                    + localCandidateType);
+            print("Waiting for a " + expectedCandidateType
+                    + " local candidate type. Got: " + localCandidateType);
 
             Thread.sleep(1000);
             localCandidateType
                 = MeetUtils.getLocalCandidateType(receiver, useJVB);
         }
 
-        int receiverPort = MeetUtils.getBundlePort(receiver, useJVB);
+        NetworkRelay relay = receiverParticipant.getNetworkRelay();
+        int receiverPort = useRelay
+            ? -1 : MeetUtils.getBundlePort(receiver, useJVB);
+        String shaping = useRelay
+            ? "relay " + relay.getUdpPort() : "tc port " + receiverPort;
+
+        print(name + " receiver shaped by " + shaping);
+
+        Run run = new Run();
+        run.name = name;
+        run.senderTracker = new BweTracker(
+            senderParticipant, useJVB, BweTracker.SENDER_SIGNALS);
+        run.receiverTracker = new BweTracker(
+            receiverParticipant, useJVB, StatsSamples.BITRATE_DOWNLOAD);
+        run.layerTracker = new LayerTracker(receiverParticipant, useJVB);
+        run.senderTracker.start(scheduler);
+        run.receiverTracker.start(scheduler);
+        run.layerTracker.start(scheduler);
+
+        // The stats are timed with the clock of the receiver.
+        run.scheduleStartMs = ((Number) ((JavascriptExecutor) receiver)
+            .executeScript("return Date.now();")).doubleValue();
+        run.senderTracker.markScheduleStart();
+        run.receiverTracker.markScheduleStart();
+        RateSchedule steps = RateSchedule.parse(schedule);
+        for (int i = 0; i < steps.size(); i++)
+        {
+            run.layerTracker.addEvent(
+                "step to " + schedule[i].split(",")[0],
+                run.scheduleStartMs + steps.getStartMs(i));
+        }
+        run.isolation = isolationChecker.start(name, shaping);
+        try
+        {
+            if (useRelay)
+            {
+                RateSchedule rateSchedule = RateSchedule.parse(schedule);
+                relay.setDownlink(LinkProfile.parse(
+                    traceSpec(network.downlink)
+                        + "rate=" + String.join(" ", schedule)));
+
+                Thread.sleep((long) rateSchedule.getDurationMs());
+                print(name + " relay: " + relay);
+                relay.checkRunning();
+            }
+            else
+            {
+                // This will take a while (blocking), depending on the
+                // schedule.
+                schedulePort(receiverPort, timeout, unit, schedule);
+            }
+        }
+        finally
+        {
+            run.isolation.finish();
+            run.senderTracker.stop();
+            run.receiverTracker.stop();
+            run.layerTracker.stop();
+        }
 
-        print("Receiver port: " + receiverPort);
+        run.stats = MeetUtils.getRtpStats(receiver, useJVB);
+        return run;
+    }
 
-        // This will take a while (blocking), depending on the schedule.
-        schedulePort(receiverPort, timeout, unit, schedule);
+    /**
+     * Analyzes the bitrates tracked during a run, writes them and checks one
+     * of them against {@link #convergenceThresholds}.
+     *
+     * @param run the run.
+     * @param analyzer the analyzer of the schedule of the run.
+     * @param checkedSignal the signal to check.
+     * @return the descriptions of the thresholds the checked signal does not
+     * meet.
+     */
+    private List<String> track(Run run, BweAnalyzer analyzer, String checkedSignal)
+        throws IOException
+    {
+        Map<String, BweAnalyzer.Result> results = new LinkedHashMap<>();
+        results.putAll(run.senderTracker.analyze(analyzer));
+        results.putAll(run.receiverTracker.analyze(analyzer));
+
+        run.senderTracker.writeSeries(getLogFile(run.name + "-sender.csv"));
+        run.receiverTracker.writeSeries(getLogFile(run.name + "-receiver.csv"));
+        print(run.name + " bandwidth estimation:\n" + BweTracker.format(results));
 
-        String rtcStats = MeetUtils.getRtpStats(receiver, useJVB);
+        run.layerTracker.writeSamples(getLogFile(run.name + "-layers.csv"));
+        print(run.layerTracker.toString());
+
+        return convergenceThresholds.check(
+            run.name + " " + checkedSignal, results.get(checkedSignal));
+    }
 
-        // XXX prevent ghosts
-        getParticipant1().hangUp();
-        getParticipant2().hangUp();
-        // XXX we want to actually quit the drivers because we may wish to
-        // launch chrome with different parameters.
-        participants.cleanup();
+    /**
+     * Hangs up a participant, if any, without failing the run.
+     */
+    private static void hangUpSafely(WebParticipant participant)
+    {
+        if (participant == null)
+        {
+            return;
+        }
+        try
+        {
+            participant.hangUp();
+        }
+        catch (Exception e)
+        {
+            print("Exception hanging up " + participant.getName() + ": "
+                + e.getMessage());
+        }
+    }
 
-        return rtcStats;
+    /**
+     * A run of a combination, JVB or P2P.
+     */
+    private static class Run
+    {
+        /**
+         * The name of the run.
+         */
+        String name;
+
+        /**
+         * The webrtc-stats of the receiver.
+         */
+        String stats;
+
+        /**
+         * The start of the schedule with the clock of the receiver.
+         */
+        double scheduleStartMs;
+
+        /**
+         * The run as checked for isolation.
+         */
+        IsolationChecker.Run isolation;
+
+        /**
+         * Tracks the bandwidth estimation of the sender.
+         */
+        BweTracker senderTracker;
+
+        /**
+         * Tracks the bitrate of the receiver.
+         */
+        BweTracker receiverTracker;
+
+        /**
+         * Tracks the layers the receiver gets.
+         */
+        LayerTracker layerTracker;
     }
 
     static class Network
@@ -0,0 +1,253 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test;
+
+import org.jitsi.meet.test.base.stats.*;
+import org.jitsi.meet.test.web.*;
+import org.jitsi.meet.test.web.stats.*;
+
+import org.testng.annotations.*;
+import static org.testng.Assert.*;
+
+import java.net.*;
+import java.util.*;
+
+import static org.jitsi.meet.test.util.TestUtils.*;
+
+/**
+ * Compares the connection times of joins with a cold cache, the way first
+ * time users join, with those of returning users. The second participant
+ * joins repeatedly in the same browser, in turn in every {@link CacheState},
+ * which is set up with the DevTools Protocol before the join. The time of
+ * every {@link TimeMeasurements} step is reported per state, along with the
+ * page load profile, which shows the cache hits of every resource.
+ *
+ * Needs a Chromium based browser, and is skipped by default.
+ */
+public class CacheJoinTimeTest
+    extends WebTestBase
+{
+    /**
+     * The number of joins in every state.
+     */
+    private static final String ITERATIONS_PROP = "cache_join.iterations";
+
+    /**
+     * The comma separated states to measure, all of them by default:
+     * cold, warm and service_worker.
+     */
+    private static final String STATES_PROP = "cache_join.states";
+
+    /**
+     * The default number of joins in every state.
+     */
+    private static final int DEFAULT_ITERATIONS = 10;
+
+    /**
+     * How long to wait for the measurements of a join.
+     */
+    private static final int TIMEOUT_SECONDS = 30;
+
+    /**
+     * The states of the cache of the browser when joining.
+     */
+    public enum CacheState
+    {
+        /**
+         * The HTTP cache, the cache storage and the service workers of the
+         * origin are cleared.
+         */
+        COLD,
+
+        /**
+         * The HTTP cache is warm from the previous joins, the service workers
+         * are bypassed.
+         */
+        WARM,
+
+        /**
+         * The HTTP cache is warm and the service worker of the page, if any,
+         * serves its precache.
+         */
+        SERVICE_WORKER
+    }
+
+    @Override
+    public void setupClass()
+    {
+        super.setupClass();
+
+        ensureTwoParticipants();
+    }
+
+    @Override
+    public boolean skipTestByDefault()
+    {
+        return true;
+    }
+
+    /**
+     * Joins the second participant in every state, in turn so that drifts of
+     * the deployment affect all the states alike.
+     */
+    @Test
+    public void testCacheStates()
+        throws Exception
+    {
+        List<CacheState> states = getStates();
+        String iterationsStr = System.getProperty(ITERATIONS_PROP);
+        int iterations = iterationsStr == null || iterationsStr.trim().isEmpty()
+            ? DEFAULT_ITERATIONS : Integer.parseInt(iterationsStr.trim());
+
+        WebParticipant participant = getParticipant2();
+        boolean usingAttach = (Boolean) participant.executeScript("return !!config.externalConnectUrl;");
+        URL url = getJitsiMeetUrl().toUrl();
+        String origin = url.getProtocol() + "://" + url.getAuthority();
+
+        Map<CacheState, ConnectionTimeReport> reports = new EnumMap<>(CacheState.class);
+        Map<CacheState, PageLoadProfiler> profilers = new EnumMap<>(CacheState.class);
+        boolean serviceWorker = false;
+        for (CacheState state : states)
+        {
+            reports.put(state, new ConnectionTimeReport(usingAttach));
+            profilers.put(state, new PageLoadProfiler());
+        }
+
+        PageLoadProfiler.prepare(participant);
+        // Enables the commands of the Network domain.
+        participant.executeCdpCommand("Network.enable", Collections.emptyMap());
+        for (int i = 0; i < iterations; i++)
+        {
+            for (CacheState state : states)
+            {
+                participant.hangUp();
+                prepare(participant, state, origin);
+
+                participant.joinConference(getJitsiMeetUrl());
+                TimeMeasurements.waitForMeasurements(participant.getDriver(), TIMEOUT_SECONDS);
+                reports.get(state).add(TimeMeasurements.executeAll(participant.getDriver()));
+
+                PageLoadProfiler.PageLoad pageLoad = PageLoadProfiler.collect(participant);
+                if (pageLoad != null)
+                {
+                    profilers.get(state).add(pageLoad);
+                }
+                if (state == CacheState.SERVICE_WORKER)
+                {
+                    serviceWorker |= Boolean.TRUE.equals(participant.executeScript(
+                        "return !!(navigator.serviceWorker && navigator.serviceWorker.controller);"));
+                }
+            }
+            print("Iteration " + (i + 1) + "/" + iterations + " done");
+        }
+        participant.executeCdpCommand("Network.setBypassServiceWorker", Collections.singletonMap("bypass", false));
+
+        if (reports.containsKey(CacheState.SERVICE_WORKER) && !serviceWorker)
+        {
+            print("The page has no service worker, " + CacheState.SERVICE_WORKER + " is the same as "
+                + CacheState.WARM);
+        }
+        for (CacheState state : states)
+        {
+            print(state + ":\n" + reports.get(state) + profilers.get(state));
+        }
+        print(compare(reports, usingAttach));
+
+        for (CacheState state : states)
+        {
+            assertEquals(reports.get(state).getIncomplete(), 0, "Joins with missing steps in " + state);
+        }
+    }
+
+    /**
+     * @return the states selected with {@link #STATES_PROP}.
+     */
+    private static List<CacheState> getStates()
+    {
+        String value = System.getProperty(STATES_PROP);
+        if (value == null || value.trim().isEmpty())
+        {
+            return Arrays.asList(CacheState.values());
+        }
+
+        List<CacheState> states = new ArrayList<>();
+        for (String state : value.split(","))
+        {
+            states.add(CacheState.valueOf(state.trim().toUpperCase()));
+        }
+        return states;
+    }
+
+    /**
+     * Sets up the cache of the browser of a participant.
+     *
+     * @param participant the participant, hung up.
+     * @param state the state.
+     * @param origin the origin of the deployment.
+     */
+    private static void prepare(WebParticipant participant, CacheState state, String origin)
+    {
+        switch (state)
+        {
+        case COLD:
+            participant.executeCdpCommand("Network.clearBrowserCache", Collections.emptyMap());
+            Map<String, Object> parameters = new HashMap<>();
+            parameters.put("origin", origin);
+            parameters.put("storageTypes", "service_workers,cache_storage");
+            participant.executeCdpCommand("Storage.clearDataForOrigin", parameters);
+            participant.executeCdpCommand(
+                "Network.setBypassServiceWorker", Collections.singletonMap("bypass", true));
+            break;
+        case WARM:
+            participant.executeCdpCommand(
+                "Network.setBypassServiceWorker", Collections.singletonMap("bypass", true));
+            break;
+        default:
+            participant.executeCdpCommand(
+                "Network.setBypassServiceWorker", Collections.singletonMap("bypass", false));
+            break;
+        }
+    }
+
+    /**
+     * Formats the median and the 90th percentile of the time of every step,
+     * and of its delta from the previous step, side by side for every state.
+     *
+     * @param reports the reports of the states.
+     * @param usingAttach whether the connection is attached.
+     * @return the table.
+     */
+    private static String compare(Map<CacheState, ConnectionTimeReport> reports, boolean usingAttach)
+    {
+        StringBuilder sb = new StringBuilder(String.format("%-22s", "p50/p90 ms"));
+        reports.keySet().forEach(state -> sb.append(String.format(" %15s %15s", state, "delta")));
+        sb.append('\n');
+        for (TimeMeasurements step : TimeMeasurements.getSteps(usingAttach))
+        {
+            sb.append(String.format("%-22s", step));
+            reports.values().forEach(report -> {
+                Histogram times = report.getTimes(step);
+                Histogram deltas = report.getDeltas(step);
+                sb.append(String.format(
+                    " %7.0f/%-7.0f %7.0f/%-7.0f",
+                    times.getPercentile(50), times.getPercentile(90),
+                    deltas.getPercentile(50), deltas.getPercentile(90)));
+            });
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
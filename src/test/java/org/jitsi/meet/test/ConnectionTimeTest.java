@@ -15,10 +15,13 @@
  */
 package org.jitsi.meet.test;
 
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import org.jitsi.meet.test.util.*;
 import org.jitsi.meet.test.web.*;
+import org.jitsi.meet.test.web.stats.*;
 
 import org.openqa.selenium.*;
 import org.openqa.selenium.support.ui.*;
@@ -31,6 +34,13 @@ import static org.testng.Assert.*;
  * This test is going to get the connection times measurements from Jitsi Meet
  * and fail if they are too slow.
  *
+ * By default the second participant joins {@link #NUMBER_OF_CONFERENCES}
+ * times in sequence and the median time of every step is checked. When
+ * {@link #JOINERS_PROP} is set, the test runs as a benchmark instead: that
+ * many participants join at once, every iteration, and the percentiles of
+ * the time of every step, and of its delta from the previous step, are
+ * reported and checked against the budgets of {@link #BUDGETS_PROP}.
+ *
  * @author Hristo Terezov
  */
 public class ConnectionTimeTest
@@ -43,186 +53,41 @@ public class ConnectionTimeTest
     private static int NUMBER_OF_CONFERENCES = 10;
 
     /**
-     * Script that checks if the mandatory objects that are going to be used to
-     * get the connection time measurements are created or not.
+     * The number of participants joining at once in benchmark mode, the
+     * benchmark does not run when not set.
      */
-    private static final String CHECK_OBJECTS_CREATED_SCRIPT
-        = "return (APP && APP.connection "
-            + "&& APP.conference && APP.conference._room)? true : false";
+    private static final String JOINERS_PROP = "connection_time.joiners";
 
     /**
-     * Enum that represents the types of time measurements. We are storing the
-     * scripts that is used to get the value for that type, a previous step and
-     * threshold.
+     * The number of times the participants join, {@link
+     * #NUMBER_OF_CONFERENCES} by default.
      */
-    private enum TimeMeasurements
-    {
-        INDEX_LOADED("return window.JitsiMeetJS?.app?.connectionTimes['index.loaded']", null, 200.0),
-
-        DOCUMENT_READY("return window.JitsiMeetJS?.app?.connectionTimes['document.ready']",
-            INDEX_LOADED, 600.0),
-
-        CONNECTION_ATTACHING(
-            "return APP.connection.getConnectionTimes()['attaching']",
-            DOCUMENT_READY, 500.0),
-
-        CONNECTION_ATTACHED(
-            "return APP.connection.getConnectionTimes()['attached']",
-            CONNECTION_ATTACHING, 5.0),
-
-        CONNECTION_CONNECTING(
-            "return APP.connection.getConnectionTimes()['connecting']",
-            DOCUMENT_READY, 500.0),
-
-        CONNECTION_CONNECTED(
-            "return APP.connection.getConnectionTimes()['connected']",
-            CONNECTION_CONNECTING, 1000.0),
-
-        MUC_JOINED(
-            "return APP.conference._room.getConnectionTimes()['muc.joined']",
-            null, 500.0),
-
-        SESSION_INITIATE("return APP.conference._room.getConnectionTimes()"
-            + "['session.initiate']", MUC_JOINED, 600.0),
-
-        // FIXME Changed the threshold from 150.0 to 300.0, once we
-        // update the code and improve the setup time we can return it back to
-        // to the original value
-        ICE_CHECKING("return APP.conference._room.getConnectionTimes()"
-            + "['ice.state.checking']", SESSION_INITIATE, 300.0),
-
-        ICE_CONNECTED("return APP.conference._room.getConnectionTimes()"
-            + "['ice.state.connected']", ICE_CHECKING, 500.0),
-
-        AUDIO_RENDER(
-            "return APP.conference._room.getConnectionTimes()['audio.render']",
-            ICE_CONNECTED, 200.0),
-
-        // FIXME Changed the threshold from 200.0 to 550.0, once we
-        // update the code and improve the setup time we can return it back to
-        // to the original value
-        VIDEO_RENDER(
-            "return APP.conference._room.getConnectionTimes()['video.render']",
-            ICE_CONNECTED, 550.0),
-
-        // The data channel should open about 2 RTTs after DTLS completes, so
-        // this threshold should go down to something like 200ms.
-        // However, there is currently a bug in jitsi-videobridge which adds a
-        // delay of about 3 seconds. Another bug, recently fixed, would cause
-        // a delay of ~15 seconds, which is why we now use a threshold of 4s.
-        DATA_CHANNEL_OPENED(
-            "return APP.conference._room.getConnectionTimes()"
-                + "['data.channel.opened']",
-            ICE_CONNECTED, 4000.0);
-
-        /**
-         * The script used to get the data for a time measurement type.
-         */
-        private String script;
-
-        /**
-         * Max time between the previous measurement and
-         * the current one
-         */
-        private Double threshold;
-
-        /**
-         * The previous executed time measurement. We are going to compare the
-         * period of time between 2 consecutive time measurements and the
-         * threshold.
-         */
-        private TimeMeasurements prevStep;
-
-        /**
-         * The number of time measurements/
-         */
-        public static final int length = TimeMeasurements.values().length;
-
-        /**
-         * Construct new TimeMeasurements instance.
-         * @param script The script used to get the data for a time
-         * measurement type.
-         * @param prevStep previous measurement.
-         * @param threshold Max time between the previous measurement and
-         * the current one
-         */
-        TimeMeasurements(String script, TimeMeasurements prevStep,
-            Double threshold)
-        {
-            this.script = script;
-            this.prevStep = prevStep;
-            this.threshold = threshold;
-        }
+    private static final String ITERATIONS_PROP = "connection_time.iterations";
 
-        /**
-         * Returns the threshold property.
-         * @return the threshold property.
-         */
-        public Double getThreshold()
-        {
-            return threshold;
-        }
-
-        /**
-         * Returns prevStep property.
-         * @return prevStep property.
-         */
-        public TimeMeasurements getPrevStep()
-        {
-            return prevStep;
-        }
-
-        /**
-         * Executes the script property for the given {@link WebDriver}
-         * and returns a time measurement. (?)
-         * @param driver the {@link WebDriver}
-         * @return time in ms for the measurement.
-         */
-        public Double execute(WebDriver driver)
-        {
-            Object res = ((JavascriptExecutor) driver).executeScript(script);
-
-            if (res instanceof Number)
-            {
-                return ((Number) res).doubleValue();
-            }
-            else if (res == null)
-            {
-                return null;
-            }
-            else
-            {
-                fail("Wrong type returned from selenium!");
-            }
-
-            return null;
-        }
-
-        /**
-         * Executes CHECK_OBJECTS_CREATED_SCRIPT for passed WebDriver and
-         * returns the result. That way we can check if all objects that are
-         * used to get the time measurements are created or not.
-         * @param driver the {@link WebDriver}.
-         * @return true if ready and false if not.
-         */
-        public static Boolean isReadyToStart(WebDriver driver)
-        {
-            Object res = ((JavascriptExecutor) driver).executeScript(
-                CHECK_OBJECTS_CREATED_SCRIPT);
+    /**
+     * The properties file with the percentile budgets of the benchmark, see
+     * {@link ConnectionTimeReport}, {@link #DEFAULT_BUDGETS_FILE} by default.
+     */
+    private static final String BUDGETS_PROP = "connection_time.budgets";
 
-            if (res instanceof Boolean)
-            {
-                return (Boolean) res;
-            }
-            else
-            {
-                fail("Wrong type returned from selenium!");
-            }
-            return null;
-        }
+    /**
+     * The budgets bundled with the tests. When they are missing, the medians
+     * of the deltas are checked against the thresholds of
+     * {@link TimeMeasurements}.
+     */
+    private static final String DEFAULT_BUDGETS_FILE
+        = "src/test/resources/desktop/connection-time-budgets.properties";
 
+    /**
+     * How long to wait for the measurements of a benchmark joiner, the pages
+     * load slower when many join at once.
+     */
+    private static final int BENCHMARK_TIMEOUT_SECONDS = 60;
 
-    }
+    /**
+     * The Navigation and Resource Timing of the page loads of every join.
+     */
+    private final PageLoadProfiler pageLoadProfiler = new PageLoadProfiler();
 
     @Override
     public void setupClass()
@@ -230,6 +95,7 @@ public class ConnectionTimeTest
         super.setupClass();
 
         ensureTwoParticipants();
+        PageLoadProfiler.prepare(getParticipant2());
     }
 
     @DataProvider(name = "dp")
@@ -237,7 +103,7 @@ public class ConnectionTimeTest
     {
         // If the tests is not in the list of tests to be executed,
         // skip executing the DataProvider.
-        if (isSkipped())
+        if (isSkipped() || getIntProperty(JOINERS_PROP, 0) > 0)
         {
             return new Object[0][0];
         }
@@ -318,6 +184,191 @@ public class ConnectionTimeTest
         }
     }
 
+    @DataProvider(name = "benchmark")
+    public Object[][] createBenchmarkData()
+    {
+        // The benchmark only runs when the joiners are set.
+        int joiners = getIntProperty(JOINERS_PROP, 0);
+        if (isSkipped() || joiners <= 0)
+        {
+            return new Object[0][0];
+        }
+
+        return new Object[][]
+        {
+            new Object[] { joiners, getIntProperty(ITERATIONS_PROP, NUMBER_OF_CONFERENCES) }
+        };
+    }
+
+    /**
+     * Runs {@link #JOINERS_PROP} concurrent joiners over
+     * {@link #ITERATIONS_PROP} iterations and checks the percentiles of the
+     * time measurements against the budgets.
+     *
+     * @param joiners the number of participants joining at once.
+     * @param iterations the number of times they join.
+     */
+    @Test(dataProvider = "benchmark")
+    public void benchmark(int joiners, int iterations)
+        throws Exception
+    {
+        Properties budgets = loadBudgets();
+
+        ConnectionTimeReport report = new ConnectionTimeReport(isUsingAttach());
+        int failures = 0;
+        ExecutorService pool = Executors.newFixedThreadPool(joiners);
+        try
+        {
+            for (int i = 0; i < iterations; i++)
+            {
+                CountDownLatch created = new CountDownLatch(joiners);
+                List<Future<Map<TimeMeasurements, Double>>> joins = new ArrayList<>();
+                for (int j = 0; j < joiners; j++)
+                {
+                    String name = "joiner" + (j + 1);
+                    joins.add(pool.submit(() -> join(name, created)));
+                }
+                for (Future<Map<TimeMeasurements, Double>> join : joins)
+                {
+                    try
+                    {
+                        report.add(join.get());
+                    }
+                    catch (ExecutionException e)
+                    {
+                        failures++;
+                        print("Join failed: " + e.getCause());
+                    }
+                }
+                print("Iteration " + (i + 1) + "/" + iterations + " done");
+            }
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+
+        print(report.toString());
+        print(pageLoadProfiler.toString());
+
+        assertEquals(failures, 0, "Joins which failed");
+        List<String> violations = report.checkBudgets(budgets);
+        assertTrue(violations.isEmpty(), "Connection time budgets exceeded: " + violations);
+    }
+
+    /**
+     * Joins a new participant to the conference and reads its time
+     * measurements. The participants of an iteration are all created before
+     * any of them joins, so that they join at once.
+     *
+     * @param name the name of the participant.
+     * @param created counted down when the participant is created.
+     * @return the time of every measured step.
+     */
+    private Map<TimeMeasurements, Double> join(String name, CountDownLatch created)
+        throws Exception
+    {
+        WebParticipant participant;
+        try
+        {
+            WebParticipantOptions options = new WebParticipantOptions();
+            options.setName(name);
+            participant = participants.createParticipant("web.participant2", options);
+            PageLoadProfiler.prepare(participant);
+        }
+        finally
+        {
+            created.countDown();
+        }
+        created.await();
+
+        try
+        {
+            participant.joinConference(getJitsiMeetUrl());
+            TimeMeasurements.waitForMeasurements(participant.getDriver(), BENCHMARK_TIMEOUT_SECONDS);
+
+            Map<TimeMeasurements, Double> measurements = TimeMeasurements.executeAll(participant.getDriver());
+            profilePageLoad(participant);
+            return measurements;
+        }
+        finally
+        {
+            try
+            {
+                participant.hangUp();
+            }
+            catch (Exception e)
+            {
+                print("Exception hanging up " + name + ": " + e.getMessage());
+            }
+            closeParticipant(participant);
+        }
+    }
+
+    /**
+     * Adds the page load of a participant to {@link #pageLoadProfiler}. The
+     * profile is informative, failing to read it does not fail the test.
+     *
+     * @param participant the participant which has joined.
+     */
+    private void profilePageLoad(WebParticipant participant)
+    {
+        try
+        {
+            PageLoadProfiler.PageLoad pageLoad = PageLoadProfiler.collect(participant);
+            if (pageLoad != null)
+            {
+                pageLoadProfiler.add(pageLoad);
+            }
+        }
+        catch (Exception e)
+        {
+            print("Failed to read the page load timing of " + participant.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Loads the budgets of the benchmark from {@link #BUDGETS_PROP}, or from
+     * {@link #DEFAULT_BUDGETS_FILE} when not set. When that is missing too,
+     * makes the median budgets of the deltas from the thresholds of the
+     * steps.
+     *
+     * @return the budgets.
+     */
+    private static Properties loadBudgets()
+        throws IOException
+    {
+        String file = System.getProperty(BUDGETS_PROP);
+        if (file != null && !file.trim().isEmpty())
+        {
+            return PropertiesUtils.loadPropertiesFile(file.trim());
+        }
+        if (new File(DEFAULT_BUDGETS_FILE).exists())
+        {
+            return PropertiesUtils.loadPropertiesFile(DEFAULT_BUDGETS_FILE);
+        }
+
+        Properties budgets = new Properties();
+        for (TimeMeasurements s : TimeMeasurements.values())
+        {
+            budgets.setProperty(s + ".delta.p50", s.getThreshold().toString());
+        }
+        return budgets;
+    }
+
+    /**
+     * Reads an integer system property.
+     *
+     * @param name the name of the property.
+     * @param defaultValue the value when the property is not set.
+     * @return the value.
+     */
+    private static int getIntProperty(String name, int defaultValue)
+    {
+        String value = System.getProperty(name);
+        return value == null || value.trim().isEmpty() ? defaultValue : Integer.parseInt(value.trim());
+    }
+
     /**
      * Checks which connect method is used - attach or connect.
      */
@@ -352,14 +403,15 @@ public class ConnectionTimeTest
      */
     public Double[][] collectData()
     {
+        int iterations = getIntProperty(ITERATIONS_PROP, NUMBER_OF_CONFERENCES);
         Double[][] data
-            = new Double[TimeMeasurements.length][NUMBER_OF_CONFERENCES];
+            = new Double[TimeMeasurements.length][iterations];
 
-        for (int i = 0; i < NUMBER_OF_CONFERENCES; i++)
+        for (int i = 0; i < iterations; i++)
         {
             refreshParticipant2();
 
-            waitForMeasurements();
+            TimeMeasurements.waitForMeasurements(getParticipant2().getDriver(), 10);
 
             for (TimeMeasurements s : TimeMeasurements.values())
             {
@@ -367,12 +419,14 @@ public class ConnectionTimeTest
                     = s.execute(getParticipant2().getDriver());
                 print(s + ": " + data[s.ordinal()][i] );
             }
+            profilePageLoad(getParticipant2());
         }
 
         for (TimeMeasurements s : TimeMeasurements.values())
         {
             print(s + ": " + Arrays.toString(data[s.ordinal()]) );
         }
+        print(pageLoadProfiler.toString());
 
         return data;
     }
@@ -391,23 +445,6 @@ public class ConnectionTimeTest
         ensureTwoParticipants();
     }
 
-    /**
-     * Waits for all measurements to be complete. We only wait for VIDEO_RENDER,
-     * AUDIO_RENDER and DATA_CHANNEL_OPEN, assuming all the rest would have
-     * completed before these three.
-     */
-    private void waitForMeasurements()
-    {
-        TestUtils.waitForCondition(
-            getParticipant2().getDriver(),
-            10,
-            (ExpectedCondition<Boolean>) w
-                -> TimeMeasurements.isReadyToStart(w)
-                    && TimeMeasurements.AUDIO_RENDER.execute(w) != null
-                    && TimeMeasurements.VIDEO_RENDER.execute(w) != null
-                    && TimeMeasurements.DATA_CHANNEL_OPENED.execute(w) != null);
-    }
-
     /**
      * Compares the threshold for the passed time measurement with the
      * median of the subtracted values of the data from the passed time
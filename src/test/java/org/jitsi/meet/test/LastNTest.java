@@ -18,12 +18,16 @@ package org.jitsi.meet.test;
 import org.jitsi.meet.test.base.*;
 import org.jitsi.meet.test.util.*;
 import org.jitsi.meet.test.web.*;
+import org.jitsi.meet.test.web.stats.*;
 import org.openqa.selenium.*;
 import org.testng.annotations.*;
 
+import java.util.concurrent.*;
+
 /**
- * The tests for LastN feature.
- *
+ * The tests for LastN feature. The layers the first participant receives are
+ * tracked with a {@link LayerTracker}, and how fast they switch after every
+ * change of the speaker or of the muted videos is reported.
  */
 public class LastNTest
     extends WebTestBase
@@ -62,7 +66,61 @@ public class LastNTest
         String participant3EndpointId = participant3.getEndpointId();
         MeetUIUtils.waitForRemoteVideo(driver1, participant3EndpointId, true);
 
+        ScheduledExecutorService pool = Executors.newSingleThreadScheduledExecutor();
+        LayerTracker layerTracker = new LayerTracker(participant1, true);
+        boolean tracking = false;
+        try
+        {
+            // The layers are only reported, failing to track them does not
+            // fail the test.
+            try
+            {
+                layerTracker.start(pool);
+                tracking = true;
+            }
+            catch (Exception e)
+            {
+                TestUtils.print("Failed to start tracking the layers: " + e.getMessage());
+            }
+
+            switchSpeakers(participant1, participant2, participant3, meetUrl4, tracking ? layerTracker : null);
+        }
+        finally
+        {
+            if (tracking)
+            {
+                try
+                {
+                    layerTracker.stop();
+                    TestUtils.print(layerTracker.toString());
+                }
+                catch (Exception e)
+                {
+                    TestUtils.print("Failed to track the layers: " + e.getMessage());
+                }
+            }
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Switches the speaker and the muted videos, and checks which video the
+     * first participant receives. Every switch is marked in the layer
+     * tracker just before it starts, so that the layer changes which it
+     * causes are credited to it.
+     */
+    private void switchSpeakers(
+        WebParticipant participant1,
+        WebParticipant participant2,
+        WebParticipant participant3,
+        JitsiMeetUrl meetUrl4,
+        LayerTracker layerTracker)
+    {
+        WebDriver driver1 = participant1.getDriver();
+        String participant3EndpointId = participant3.getEndpointId();
+
         // Mute audio on participant3.
+        markEvent(layerTracker, "p3 audio muted");
         participant3.getToolbar().clickAudioMuteButton();
 
         WebParticipant participant4 = joinFourthParticipant(meetUrl4);
@@ -72,6 +130,7 @@ public class LastNTest
         String participant4EndpointId = participant4.getEndpointId();
 
         // Mute audio on p4 and unmute p3.
+        markEvent(layerTracker, "p3 speaks");
         participant4.getToolbar().clickAudioMuteButton();
         participant3.getToolbar().clickAudioUnmuteButton();
 
@@ -80,18 +139,36 @@ public class LastNTest
         MeetUIUtils.waitForRemoteVideo(driver1, participant3EndpointId, true);
 
         // At this point, mute video of p3 and others should be receiving p4's video.
+        markEvent(layerTracker, "p3 video muted");
         MeetUIUtils.muteVideoAndCheck(participant3, participant1);
         MeetUIUtils.waitForRemoteVideo(driver1, participant4EndpointId, true);
 
         // Unmute p3's video and others should switch to receiving p3's video.
+        markEvent(layerTracker, "p3 video unmuted");
         participant3.getToolbar().clickVideoUnmuteButton();
         MeetUIUtils.waitForRemoteVideo(driver1, participant3EndpointId, true);
         MeetUIUtils.waitForNinjaIcon(driver1, participant4EndpointId);
 
         // Mute p3's audio and unmute p2's audio. Other endpoints should continue to receive video from p3
         // even though p2 is the dominant speaker.
+        markEvent(layerTracker, "p2 speaks");
         participant3.getToolbar().clickAudioMuteButton();
         participant2.getToolbar().clickAudioUnmuteButton();
         MeetUIUtils.waitForRemoteVideo(driver1, participant3EndpointId, true);
     }
+
+    /**
+     * Marks an event in a layer tracker, if the layers are tracked.
+     *
+     * @param layerTracker the layer tracker, <tt>null</tt> if the layers are
+     * not tracked.
+     * @param label the label of the event.
+     */
+    private static void markEvent(LayerTracker layerTracker, String label)
+    {
+        if (layerTracker != null)
+        {
+            layerTracker.markEvent(label);
+        }
+    }
 }
@@ -0,0 +1,224 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test;
+
+import org.jitsi.meet.test.analysis.*;
+import org.jitsi.meet.test.base.stats.*;
+import org.jitsi.meet.test.util.*;
+import org.jitsi.meet.test.web.*;
+import org.jitsi.meet.test.web.stats.*;
+
+import org.testng.annotations.*;
+import static org.testng.Assert.*;
+
+import java.io.*;
+import java.util.*;
+
+import static org.jitsi.meet.test.util.TestUtils.*;
+
+/**
+ * Measures the glass-to-glass delay of the video through the bridge. The
+ * second participant sends the stamped PSNR input sequence, the number
+ * stamped on every frame is read in both pages when the frame is presented:
+ * by the local video of the sender and by the remote video of the receiver.
+ * The offset between the clocks of the two pages is estimated before and
+ * after the measure, and the delay of every received frame is computed by
+ * {@link LatencyAnalyzer}. The distribution of the delays is reported per
+ * bridge, codec and network profile.
+ */
+public class LatencyTest
+    extends WebTestBase
+{
+    /**
+     * How long the frames are read, in milliseconds.
+     */
+    private static final String LATENCY_DURATION_MILLIS_PROP = "latency.duration_millis";
+
+    /**
+     * The label of the network conditions of the run, reported as the
+     * network profile.
+     */
+    private static final String LATENCY_NETWORK_PROFILE_PROP = "latency.network_profile";
+
+    /**
+     * The 95th percentile of the delay in milliseconds above which the test
+     * fails, not checked when not set.
+     */
+    private static final String LATENCY_MAX_P95_PROP = "latency.max_p95_ms";
+
+    /**
+     * The time to wait for the video to ramp up, in seconds.
+     */
+    private static final int RAMP_UP_SECONDS = 10;
+
+    /**
+     * The interval at which the probes look for new videos.
+     */
+    private static final int PROBE_INTERVAL_MS = 500;
+
+    /**
+     * Selects the remote videos of the Jitsi Meet UI, but not the large
+     * video which duplicates one of them.
+     */
+    private static final String REMOTE_THUMBNAILS = "video[id^=\"remoteVideo_\"]";
+
+    /**
+     * JS utility which reads the counters of the received video tracks.
+     */
+    private static final String VIDEO_RECEIVE_COUNTERS_SCRIPT = "resources/VideoReceiveCounters.js";
+
+    /**
+     * The delays of all the runs.
+     */
+    private final LatencyReport report = new LatencyReport();
+
+    @Override
+    public void setupClass()
+    {
+        super.setupClass();
+
+        if (!new File(PSNRTest.INPUT_VIDEO_FILE).exists())
+        {
+            throw new RuntimeException(
+                "Unable to run latency tests: " + PSNRTest.INPUT_VIDEO_FILE + " does not exist");
+        }
+
+        WebParticipantOptions options
+            = new WebParticipantOptions()
+                .setFakeStreamVideoFile(PSNRTest.INPUT_VIDEO_FILE);
+
+        // Go through the bridge.
+        ensureTwoParticipants(
+            getJitsiMeetUrl().appendConfig("config.p2p.enabled=false"),
+            getJitsiMeetUrl().appendConfig("config.p2p.enabled=false"),
+            options, options);
+    }
+
+    @Override
+    public boolean skipTestByDefault()
+    {
+        return true;
+    }
+
+    /**
+     * Measures the delay of the video of the second participant to the first
+     * one.
+     */
+    @Test
+    public void testLatency()
+        throws Exception
+    {
+        WebParticipant receiver = getParticipant1();
+        WebParticipant sender = getParticipant2();
+
+        MeetUIUtils.muteVideoAndCheck(receiver, sender);
+
+        print("Waiting " + RAMP_UP_SECONDS + " seconds for ramp up");
+        Thread.sleep(RAMP_UP_SECONDS * 1000);
+
+        String durationStr = System.getProperty(LATENCY_DURATION_MILLIS_PROP);
+        int durationMs = durationStr == null || durationStr.isEmpty() ? 30000 : Integer.parseInt(durationStr);
+
+        int sequenceLength;
+        double frameRate;
+        try (Y4mReader reader = new Y4mReader(new File(PSNRTest.INPUT_VIDEO_FILE)))
+        {
+            sequenceLength = reader.getFrameCount();
+            frameRate = reader.getFrameRate() > 0 ? reader.getFrameRate() : QualityProbe.DEFAULT_FRAME_RATE;
+        }
+
+        // Keep all the frames of the run in the pages, they are drained once.
+        int capacity = (int) (2 * frameRate * durationMs / 1000);
+        QualityProbe senderProbe = new QualityProbe(
+            sender, frameRate, sequenceLength, QualityProbe.DEFAULT_FREEZE_THRESHOLD_MS);
+        QualityProbe receiverProbe = new QualityProbe(
+            receiver, frameRate, sequenceLength, QualityProbe.DEFAULT_FREEZE_THRESHOLD_MS);
+
+        PageClock.Offset before = PageClock.estimate(receiver).minus(PageClock.estimate(sender));
+
+        senderProbe.start(PROBE_INTERVAL_MS, capacity, QualityProbe.LOCAL_VIDEO, true);
+        receiverProbe.start(PROBE_INTERVAL_MS, capacity, REMOTE_THUMBNAILS, true);
+        Thread.sleep(durationMs);
+        Map<String, FrameNumberSamples> received = receiverProbe.stop();
+        Map<String, FrameNumberSamples> sent = senderProbe.stop();
+
+        PageClock.Offset after = PageClock.estimate(receiver).minus(PageClock.estimate(sender));
+        PageClock.Offset offset = before.average(after);
+        print("Clock offset of the receiver: " + before + " before, " + after + " after");
+
+        assertEquals(sent.size(), 1, "Frames of the local video of the sender: " + sent.keySet());
+        FrameNumberSamples senderFrames = sent.values().iterator().next();
+        assertFalse(received.isEmpty(), "No remote video was probed");
+
+        Map<String, String> labels = new LinkedHashMap<>();
+        labels.put("bridge", receiver.getBridgeIp());
+        labels.put("codec", getReceiveCodec(receiver));
+        String networkProfile = System.getProperty(LATENCY_NETWORK_PROFILE_PROP);
+        labels.put("network", networkProfile == null || networkProfile.isEmpty() ? "default" : networkProfile);
+
+        LatencyAnalyzer analyzer = new LatencyAnalyzer(
+            offset.getUncertaintyMs() + 1000 / frameRate, LatencyAnalyzer.DEFAULT_MAX_DELAY_MS);
+        Histogram delays = LatencyAnalyzer.newHistogram();
+        for (Map.Entry<String, FrameNumberSamples> video : received.entrySet())
+        {
+            LatencyAnalyzer.Result result
+                = analyzer.analyze(senderFrames, video.getValue(), offset.getOffsetMs());
+            print(video.getKey() + " " + result);
+            delays.add(result.getHistogram());
+        }
+        report.add(labels, delays);
+        print(report.toString());
+
+        assertTrue(delays.getCount() > 0, "No received frame was matched with a sent frame");
+
+        String maxP95Str = System.getProperty(LATENCY_MAX_P95_PROP);
+        if (maxP95Str != null && !maxP95Str.isEmpty())
+        {
+            double p95 = delays.getPercentile(95);
+            assertTrue(
+                p95 <= Double.parseDouble(maxP95Str),
+                "p95 glass-to-glass delay " + p95 + " ms is above " + maxP95Str + " ms");
+        }
+    }
+
+    /**
+     * Reads the codec of the received video.
+     *
+     * @param participant the receiver.
+     * @return the codec name or <tt>null</tt> if unknown.
+     */
+    @SuppressWarnings("unchecked")
+    private static String getReceiveCodec(WebParticipant participant)
+    {
+        TestUtils.injectScript(participant.getDriver(), VIDEO_RECEIVE_COUNTERS_SCRIPT);
+
+        Object res = participant.executeAsyncScript(
+            "var callback = arguments[arguments.length - 1];"
+                + "window.getVideoReceiveCounters()"
+                + ".then(callback, function () { callback(null); });");
+        if (res instanceof List)
+        {
+            for (Map<String, Object> counters : (List<Map<String, Object>>) res)
+            {
+                if (counters.get("codec") != null)
+                {
+                    return counters.get("codec").toString();
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -15,6 +15,7 @@
  */
 package org.jitsi.meet.test;
 
+import org.jitsi.meet.test.analysis.*;
 import org.jitsi.meet.test.capture.*;
 import org.jitsi.meet.test.tasks.*;
 import org.jitsi.meet.test.util.*;
@@ -41,7 +42,10 @@ import static org.jitsi.meet.test.util.TestUtils.*;
  * both sender's and receiver's perspective.
  *
  * The recording happens at 20 fps which corresponds to a frame stored every
- * 50 ms. With current recording method there is around 1-2 frames delay between
+ * 50 ms. With the <tt>lipsync.frame_callback</tt> property every presented
+ * frame is recorded instead, downscaled, and timestamped with its expected
+ * display time, so the delays are then counted in frames of the video.
+ * With current recording method there is around 1-2 frames delay between
  * audio sent and audio received times. This is probably, because the beep
  * detection is done only based on the audio level and we're doing that
  * from WebRTC remote stream stats which may appear with slight delay. The video
@@ -51,6 +55,11 @@ import static org.jitsi.meet.test.util.TestUtils.*;
  * The beep sound is detected when the audio level is greater than 0.2
  * {@link #isBeep(Double)}.
  *
+ * The audio level and center pixel luma series of both participants are
+ * also cross-correlated with {@link AvSyncAnalyzer}, which estimates the
+ * audio and video delays in ms from all the samples rather than from the
+ * edges, and how the A/V offset drifts as lip-sync kicks in.
+ *
  * Once the data has been collected the differences between the times when
  * audio/video was sent to when it was received are being calculated. In normal
  * case when there is no special delay, there should be around 1-2 frames delay
@@ -146,15 +155,40 @@ public class LipSyncTest
         List<String> participant1EndpointIds = new ArrayList<>();
         participant1EndpointIds.add(participant2.getEndpointId());
 
-        operator1.recordAll(
-            participant1Ids, fps, participant1EndpointIds);
+        CaptureOptions captureOptions = null;
+        if (getBooleanProperty("lipsync.frame_callback", false))
+        {
+            captureOptions = new CaptureOptions()
+                .setMode(CaptureOptions.Mode.SCALED)
+                .setWidth(64)
+                .setFrameCallback(true);
+        }
+
+        if (captureOptions != null)
+        {
+            operator1.recordAll(
+                participant1Ids, participant1EndpointIds, captureOptions);
+        }
+        else
+        {
+            operator1.recordAll(
+                participant1Ids, fps, participant1EndpointIds);
+        }
 
         // Record local audio and video from participant2's perspective
         List<String> participant2Ids = new ArrayList<>();
         participant2Ids.add(MeetUIUtils.getLocalVideoID(driver2));
 
-        operator2.recordAll(
-            participant2Ids, fps, participant1EndpointIds);
+        if (captureOptions != null)
+        {
+            operator2.recordAll(
+                participant2Ids, participant1EndpointIds, captureOptions);
+        }
+        else
+        {
+            operator2.recordAll(
+                participant2Ids, fps, participant1EndpointIds);
+        }
 
         String timeToRunInSeconds = System.getProperty("lipsync.duration");
 
@@ -190,6 +224,25 @@ public class LipSyncTest
         Series participant2Series
             = new Series(operator2, participant2Ids.get(0));
 
+        // Cross-correlate the sent and received signals. The offset is only
+        // reported, recordings too short to analyse do not fail the test.
+        try
+        {
+            AvSyncAnalyzer.Result sync = new AvSyncAnalyzer().analyze(
+                operator2.getSignals(participant2Ids.get(0)),
+                operator1.getSignals(participant1Ids.get(0)));
+            print("A/V sync: " + sync);
+            if (debug)
+            {
+                sync.getWindows().forEach(w -> print("A/V sync window: " + w));
+            }
+        }
+        catch (IllegalArgumentException e)
+        {
+            print("A/V sync not analysed, the recordings of " + seconds + " s are too short or do not overlap: "
+                + e.getMessage());
+        }
+
         // Compare sent to received timestamps
         SeriesComparison comparison
             = new SeriesComparison(participant2Series, participant1Series);
@@ -15,13 +15,18 @@
  */
 package org.jitsi.meet.test;
 
+import org.jitsi.meet.test.analysis.*;
 import org.jitsi.meet.test.base.*;
+import org.jitsi.meet.test.base.stats.*;
+import org.jitsi.meet.test.network.*;
 import org.jitsi.meet.test.util.*;
 import org.jitsi.meet.test.web.*;
+import org.jitsi.meet.test.web.stats.*;
 import org.openqa.selenium.*;
 import org.testng.*;
 import org.testng.annotations.*;
 
+import java.io.*;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.function.*;
@@ -88,6 +93,55 @@ public class MalleusJitsificus
         = "org.jitsi.malleus.extra_sender_params";
     public static final String EXTRA_RECEIVER_PARAMS
         = "org.jitsi.malleus.extra_receiver_params";
+    /**
+     * Seconds between two drains of the media stats of every participant into
+     * the run record file, stats are not recorded when not set. The
+     * participants are recorded as "room/name", their names repeat in every
+     * conference.
+     */
+    public static final String RECORD_STATS_PNAME
+        = "org.jitsi.malleus.record_stats";
+    /**
+     * Milliseconds without a new decoded frame after which the received video
+     * of a participant is reported as stalled, freezes are not detected when
+     * not set.
+     */
+    public static final String DETECT_FREEZES_PNAME
+        = "org.jitsi.malleus.detect_freezes";
+    /**
+     * The number of receivers per conference whose displayed video is probed
+     * for freezes, skips and delay variation, none when not set. Requires a
+     * stamped input video, see {@link #INPUT_VIDEO_PNAME}.
+     */
+    public static final String QUALITY_PROBE_PNAME
+        = "org.jitsi.malleus.quality_probe";
+    /**
+     * The video file used as input by the senders, for example the stamped
+     * sequence built by scripts/psnr-build-resources.sh.
+     */
+    public static final String INPUT_VIDEO_PNAME
+        = "org.jitsi.malleus.input_video";
+    /**
+     * The {@link ImpairmentProfile} spec of the network of the impaired
+     * senders, none when not set.
+     */
+    public static final String SENDER_IMPAIRMENT_PNAME
+        = "org.jitsi.malleus.sender_impairment";
+    /**
+     * The {@link ImpairmentProfile} spec of the network of the impaired
+     * receivers, none when not set.
+     */
+    public static final String RECEIVER_IMPAIRMENT_PNAME
+        = "org.jitsi.malleus.receiver_impairment";
+    /**
+     * The percentage of the sender tabs and of the receiver tabs of every
+     * conference which are impaired, spread evenly, 100 when not set.
+     */
+    public static final String IMPAIRED_PCT_PNAME
+        = "org.jitsi.malleus.impaired_pct";
+
+    // Seconds between two drains of the quality probe of a receiver.
+    private static final int QUALITY_PROBE_DRAIN_SECONDS = 5;
 
     // The maximum number of audio senders per browser.  This is a hard-coded Chrome limit, so hard-code it here too.
     public static final int MAX_AUDIO_SENDERS_PER_BROWSER = 16;
@@ -107,6 +161,37 @@ public class MalleusJitsificus
     private SharedBaseDriver senderBaseDriver;
     private SharedBaseDriver receiverBaseDriver;
 
+    // Collects the media stats of all participants of all conferences.
+    private RunRecorder runRecorder;
+
+    // The period of the stats drains in seconds.
+    private int recordStatsPeriod;
+
+    // The stall threshold in ms, 0 to not detect freezes.
+    private long freezeThresholdMs;
+
+    // Collects the freezes of all participants of all conferences.
+    private final FreezeReport freezeReport = new FreezeReport();
+
+    // The video file used as input by the senders.
+    private String inputVideoFile;
+
+    // The number of frames of the input video, 0 if unknown.
+    private int inputVideoLength;
+
+    // Collects the displayed video quality of the probed receivers of all conferences.
+    private final QualityReport qualityReport = new QualityReport();
+
+    // The impairment specs of the senders and of the receivers, null for none.
+    private String senderImpairment;
+    private String receiverImpairment;
+
+    // The percentage of the tabs of every class which are impaired.
+    private int impairedPct;
+
+    // The impairment spec of every impaired participant, by "room/name" like the reports.
+    private final Map<String, String> impairedParticipants = new ConcurrentSkipListMap<>();
+
     @DataProvider(name = "dp", parallel = true)
     public Object[][] createData(ITestContext context)
     {
@@ -188,6 +273,48 @@ public class MalleusJitsificus
         String extraSenderParams = System.getProperty(EXTRA_SENDER_PARAMS);
         String extraReceiverParams = System.getProperty(EXTRA_RECEIVER_PARAMS);
 
+        String recordStatsStr = System.getProperty(RECORD_STATS_PNAME);
+        recordStatsPeriod = recordStatsStr == null || "".equals(recordStatsStr)
+            ? 0
+            : Integer.parseInt(recordStatsStr);
+
+        String detectFreezesStr = System.getProperty(DETECT_FREEZES_PNAME);
+        freezeThresholdMs = detectFreezesStr == null || "".equals(detectFreezesStr)
+            ? 0
+            : Long.parseLong(detectFreezesStr);
+
+        String qualityProbeStr = System.getProperty(QUALITY_PROBE_PNAME);
+        int qualityProbeReceivers = qualityProbeStr == null || "".equals(qualityProbeStr)
+            ? 0
+            : Integer.parseInt(qualityProbeStr);
+
+        senderImpairment = getImpairment(SENDER_IMPAIRMENT_PNAME);
+        receiverImpairment = getImpairment(RECEIVER_IMPAIRMENT_PNAME);
+        String impairedPctStr = System.getProperty(IMPAIRED_PCT_PNAME);
+        impairedPct = impairedPctStr == null || "".equals(impairedPctStr)
+            ? 100
+            : Integer.parseInt(impairedPctStr);
+
+        inputVideoFile = System.getProperty(INPUT_VIDEO_PNAME);
+        if (inputVideoFile == null || "".equals(inputVideoFile))
+        {
+            inputVideoFile = INPUT_VIDEO_FILE;
+        }
+        inputVideoLength = 0;
+        if (qualityProbeReceivers > 0)
+        {
+            // The file may only exist on the remote nodes, the probe then
+            // learns the length from the frame numbers.
+            try (Y4mReader reader = new Y4mReader(new File(inputVideoFile)))
+            {
+                inputVideoLength = reader.getFrameCount();
+            }
+            catch (IOException e)
+            {
+                print("Cannot read " + inputVideoFile + ": " + e.getMessage());
+            }
+        }
+
         // Use one thread per conference.
         context.getCurrentXmlTest().getSuite()
             .setDataProviderThreadCount(numConferences);
@@ -215,6 +342,29 @@ public class MalleusJitsificus
         print("participants per tab=" + sendersPerTab + " send / " + receiversPerTab + " recv");
         print("extra sender params=" + extraSenderParams);
         print("extra receiver params=" + extraReceiverParams);
+        print("record stats=" + (recordStatsPeriod > 0 ? recordStatsPeriod + "s" : "no"));
+        print("detect freezes=" + (freezeThresholdMs > 0 ? freezeThresholdMs + "ms" : "no"));
+        print("quality probe=" + (qualityProbeReceivers > 0 ? qualityProbeReceivers + " receivers" : "no"));
+        print("impairment=" + (senderImpairment == null && receiverImpairment == null
+            ? "no"
+            : impairedPct + "% of the tabs, send " + senderImpairment + " / recv " + receiverImpairment));
+        print("input video=" + inputVideoFile + (inputVideoLength > 0 ? " (" + inputVideoLength + " frames)" : ""));
+
+        if (recordStatsPeriod > 0)
+        {
+            File file = new File(
+                FailureListener.createLogsFolder(),
+                "malleus-stats-" + System.currentTimeMillis() + ".jmts");
+            try
+            {
+                runRecorder = new RunRecorder(file);
+                print("recording stats to " + file);
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
 
         senderBaseDriver = new SharedBaseDriver(senderTabsPerBrowser);
         receiverBaseDriver = new SharedBaseDriver(receiverTabsPerBrowser);
@@ -248,7 +398,7 @@ public class MalleusJitsificus
                 senderTabsPerBrowser, receiverTabsPerBrowser,
                 sendersPerTab, receiversPerTab,
                 extraSenderParams, extraReceiverParams,
-                useLiteMode
+                useLiteMode, qualityProbeReceivers
             };
         }
 
@@ -263,7 +413,7 @@ public class MalleusJitsificus
         int senderTabsPerBrowser, int receiverTabsPerBrowser,
         int sendersPerTab, int receiversPerTab,
         String extraSenderParams, String extraReceiverParams,
-        boolean useLiteMode)
+        boolean useLiteMode, int qualityProbeReceivers)
         throws Exception
     {
         List<MalleusTask> malleusTasks = new ArrayList<>(numberOfParticipants);
@@ -297,6 +447,9 @@ public class MalleusJitsificus
 
         SharedBaseDriver sharedBaseDriver;
         int audioSenders = 0;
+        int probedReceivers = 0;
+        int senderTabs = 0;
+        int receiverTabs = 0;
 
         for (int i = 0; i < numberOfParticipants; )
         {
@@ -307,6 +460,7 @@ public class MalleusJitsificus
 
             int numClients;
             boolean multitab;
+            String impairment;
 
             if (sender)
             {
@@ -319,6 +473,7 @@ public class MalleusJitsificus
                 }
                 multitab = (senderTabsPerBrowser > 1);
                 sharedBaseDriver = senderBaseDriver;
+                impairment = isImpaired(senderTabs++) ? senderImpairment : null;
             }
             else
             {
@@ -331,6 +486,7 @@ public class MalleusJitsificus
                 }
                 multitab = (receiverTabsPerBrowser > 1);
                 sharedBaseDriver = receiverBaseDriver;
+                impairment = isImpaired(receiverTabs++) ? receiverImpairment : null;
             }
 
             if (audioSender && audioSenders + numClients > numAudioSenders)
@@ -355,7 +511,9 @@ public class MalleusJitsificus
                 regions == null ? null : regions[i % regions.length],
                 numClients,
                 disruptBridges,
-                multitab ? sharedBaseDriver : null
+                multitab ? sharedBaseDriver : null,
+                !sender && probedReceivers++ < qualityProbeReceivers,
+                impairment
             );
             malleusTasks.add(task);
             task.start(pool);
@@ -446,6 +604,90 @@ public class MalleusJitsificus
         }
     }
 
+    /**
+     * Gets an impairment spec and checks that it parses.
+     *
+     * @param pname the name of the property of the spec.
+     * @return the spec, <tt>null</tt> for none.
+     */
+    private static String getImpairment(String pname)
+    {
+        String spec = System.getProperty(pname);
+        if (spec == null || ImpairmentProfile.parse(spec).isNone())
+        {
+            return null;
+        }
+        return spec;
+    }
+
+    /**
+     * Spreads the impaired tabs evenly over a class: the tab is impaired when
+     * it makes the count of the impaired tabs reach the next whole
+     * percentage, so that 20% impairs the 5th, the 10th, and so on.
+     *
+     * @param tab the index of the tab in its class, sender or receiver.
+     * @return whether the tab is impaired.
+     */
+    private boolean isImpaired(int tab)
+    {
+        return (tab + 1) * impairedPct / 100 > tab * impairedPct / 100;
+    }
+
+    @Override
+    public void cleanupClass()
+    {
+        if (!impairedParticipants.isEmpty())
+        {
+            StringBuilder sb = new StringBuilder("Impaired participants:\n");
+            impairedParticipants.forEach((k, v) -> sb.append("  ").append(k).append(": ").append(v).append('\n'));
+            print(sb.toString());
+        }
+
+        if (freezeThresholdMs > 0)
+        {
+            print(freezeReport.toString());
+            if (!impairedParticipants.isEmpty())
+            {
+                FreezeReport.Totals impaired = new FreezeReport.Totals();
+                FreezeReport.Totals unimpaired = new FreezeReport.Totals();
+                freezeReport.getByParticipant().forEach(
+                    (k, v) -> (impairedParticipants.containsKey(k) ? impaired : unimpaired).add(v));
+                print("Video freezes of impaired participants: " + impaired + "\n"
+                    + "Video freezes of unimpaired participants: " + unimpaired);
+            }
+        }
+
+        if (!qualityReport.getByParticipant().isEmpty())
+        {
+            print(qualityReport.toString());
+            if (!impairedParticipants.isEmpty())
+            {
+                QualityReport.Totals impaired = new QualityReport.Totals();
+                QualityReport.Totals unimpaired = new QualityReport.Totals();
+                qualityReport.getByParticipant().forEach(
+                    (k, v) -> (impairedParticipants.containsKey(k) ? impaired : unimpaired).add(v));
+                print("Video quality of impaired receivers: " + impaired + "\n"
+                    + "Video quality of unimpaired receivers: " + unimpaired);
+            }
+        }
+
+        if (runRecorder != null)
+        {
+            try
+            {
+                runRecorder.close();
+                print("recorded " + runRecorder.getTotal() + " stats samples to " + runRecorder.getFile());
+            }
+            catch (IOException e)
+            {
+                print("Failed to write " + runRecorder.getFile() + ": " + e.getMessage());
+            }
+            runRecorder = null;
+        }
+
+        super.cleanupClass();
+    }
+
     /** Object that holds the shared base driver that can be used by tabbed drivers. */
     private static class SharedBaseDriver
     {
@@ -507,6 +749,16 @@ public class MalleusJitsificus
         WebParticipant participant;
         private String bridge;
 
+        private StatsSampler statsSampler;
+
+        private FreezeDetector freezeDetector;
+        private ScheduledFuture<?> freezePolling;
+
+        private final boolean probeQuality;
+        private QualityProbe qualityProbe;
+
+        private final String impairment;
+
         private ScheduledExecutorService pool;
 
         private final SharedBaseDriver sharedBaseDriver;
@@ -514,7 +766,8 @@ public class MalleusJitsificus
         public MalleusTask(
             int i, JitsiMeetUrl url, long durationMs, long joinDelayMs, long totalJoinDelayMs,
             boolean audioSender, boolean muteVideo, boolean muteAudio, String region, int numClients,
-            boolean enableFailureDetection, SharedBaseDriver sharedBaseDriver)
+            boolean enableFailureDetection, SharedBaseDriver sharedBaseDriver, boolean probeQuality,
+            String impairment)
         {
             this.i = i;
             this._url = url;
@@ -525,6 +778,8 @@ public class MalleusJitsificus
             this.muteAudio = muteAudio;
             this.enableFailureDetection = enableFailureDetection;
             this.sharedBaseDriver = sharedBaseDriver;
+            this.probeQuality = probeQuality;
+            this.impairment = impairment;
 
             if (!audioSender)
             {
@@ -575,11 +830,16 @@ public class MalleusJitsificus
 
             WebParticipantOptions ops
                 = new WebParticipantOptions()
-                .setFakeStreamVideoFile(INPUT_VIDEO_FILE)
+                .setFakeStreamVideoFile(inputVideoFile)
                 .setHeadless(useHeadless)
                 .setLoadTest(useLoadTest)
                 .setSaveLogs(setSaveLogs);
 
+            if (impairment != null)
+            {
+                ops.setImpairment(impairment);
+            }
+
             if (useNodeTypes)
             {
                 if (muteVideo)
@@ -631,6 +891,11 @@ public class MalleusJitsificus
                 participant = participants.createParticipant(configPrefix, ops);
             }
 
+            if (impairment != null)
+            {
+                impairedParticipants.put(getReportId(), impairment);
+            }
+
             allHungUp.register();
             try
             {
@@ -648,9 +913,12 @@ public class MalleusJitsificus
 
             try
             {
-                if (enableFailureDetection)
+                if (enableFailureDetection || runRecorder != null || freezeThresholdMs > 0 || probeQuality)
                 {
                     bridge = participant.getBridgeIp();
+                }
+                if (enableFailureDetection)
+                {
                     bridgeSelection.add(bridge);
                 }
             }
@@ -671,15 +939,158 @@ public class MalleusJitsificus
             }
 
             running = true;
+
+            if (runRecorder != null)
+            {
+                startRecording();
+            }
+
+            if (freezeThresholdMs > 0)
+            {
+                freezeDetector = new FreezeDetector(participant, freezeThresholdMs, null);
+                freezePolling = pool.scheduleWithFixedDelay(this::pollFreezes, 1, 1, TimeUnit.SECONDS);
+            }
+
+            if (probeQuality)
+            {
+                startQualityProbe();
+            }
+        }
+
+        /**
+         * Probes the frame numbers displayed by the remote videos, drained
+         * every {@link #QUALITY_PROBE_DRAIN_SECONDS} seconds.
+         */
+        private void startQualityProbe()
+        {
+            try
+            {
+                qualityProbe = new QualityProbe(
+                    participant,
+                    QualityProbe.DEFAULT_FRAME_RATE,
+                    inputVideoLength,
+                    freezeThresholdMs > 0 ? freezeThresholdMs : QualityProbe.DEFAULT_FREEZE_THRESHOLD_MS);
+                // Keep twice the probes of a drain period in the page, in case a drain is late.
+                qualityProbe.start(
+                    QualityProbe.DEFAULT_INTERVAL_MS,
+                    2 * QUALITY_PROBE_DRAIN_SECONDS * 1000 / QualityProbe.DEFAULT_INTERVAL_MS);
+                qualityProbe.startDraining(pool, QUALITY_PROBE_DRAIN_SECONDS, TimeUnit.SECONDS);
+            }
+            catch (Exception e)
+            {
+                TestUtils.print("Failed to start the quality probe of " + participant.getName() + ": "
+                    + e.getMessage());
+                qualityProbe = null;
+            }
+        }
+
+        private void pollFreezes()
+        {
+            try
+            {
+                freezeDetector.poll();
+            }
+            catch (Exception e)
+            {
+                TestUtils.print("Failed to poll the video of " + participant.getName() + ": " + e.getMessage());
+            }
+        }
+
+        /**
+         * Samples the media stats of the participant every second and appends
+         * them to the run record every {@link #recordStatsPeriod} seconds.
+         */
+        private void startRecording()
+        {
+            try
+            {
+                statsSampler = new StatsSampler(participant);
+                // Keep twice the samples of a drain period in the page, in case a drain is late.
+                statsSampler.start(StatsSampler.DEFAULT_INTERVAL_MS, 2 * recordStatsPeriod);
+                statsSampler.startDraining(pool, recordStatsPeriod, TimeUnit.SECONDS, this::record);
+            }
+            catch (Exception e)
+            {
+                TestUtils.print("Failed to start recording stats of " + participant.getName() + ": " + e.getMessage());
+                statsSampler = null;
+            }
+        }
+
+        /**
+         * @return the id of the participant in the reports of the run: its
+         * name repeats in every conference, so it is qualified by the room.
+         */
+        private String getReportId()
+        {
+            return _url.getRoomName() + "/" + participant.getName();
+        }
+
+        private void record(StatsSamples samples)
+        {
+            try
+            {
+                runRecorder.record(getReportId(), bridge, samples);
+            }
+            catch (IOException e)
+            {
+                TestUtils.print("Failed to record stats of " + participant.getName() + ": " + e.getMessage());
+            }
+        }
+
+        /**
+         * Records the samples collected since the last drain and stops the sampling.
+         */
+        private void stopRecording()
+        {
+            statsSampler.stopDraining();
+            try
+            {
+                StatsSamples samples = statsSampler.drain();
+                if (samples.size() > 0)
+                {
+                    record(samples);
+                }
+                statsSampler.stop();
+            }
+            catch (Exception e)
+            {
+                TestUtils.print("Failed to stop recording stats of " + participant.getName() + ": " + e.getMessage());
+            }
+            statsSampler = null;
         }
 
         private void finish()
         {
             running = false;
+            NetworkRelay relay = participant == null ? null : participant.getNetworkRelay();
             if (checking != null)
             {
                 checking.cancel(true);
             }
+            if (statsSampler != null)
+            {
+                stopRecording();
+            }
+            if (freezeDetector != null)
+            {
+                freezePolling.cancel(false);
+                freezeDetector.stop();
+                freezeReport.add(getReportId(), bridge, freezeDetector.getTotals());
+            }
+            if (qualityProbe != null)
+            {
+                try
+                {
+                    qualityProbe.stop();
+                }
+                catch (Exception e)
+                {
+                    TestUtils.print("Failed to stop the quality probe of " + participant.getName() + ": "
+                        + e.getMessage());
+                }
+                qualityReport.add(getReportId(), bridge, qualityProbe.getTotals());
+                qualityProbe = null;
+            }
 
             try
             {
@@ -704,6 +1115,13 @@ public class MalleusJitsificus
                 TestUtils.print("Exception closing " + participant.getName());
                 e.printStackTrace();
             }
+
+            // The impairment of the participant did not hold if its relay
+            // stopped forwarding.
+            if (relay != null)
+            {
+                relay.checkRunning();
+            }
         }
 
         public void waitUntilComplete() throws ExecutionException, InterruptedException
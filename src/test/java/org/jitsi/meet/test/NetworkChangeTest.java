@@ -0,0 +1,262 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test;
+
+import org.jitsi.meet.test.base.*;
+import org.jitsi.meet.test.network.*;
+import org.jitsi.meet.test.web.*;
+import org.jitsi.meet.test.web.stats.*;
+
+import org.testng.annotations.*;
+import static org.testng.Assert.*;
+
+import java.util.*;
+
+import static org.jitsi.meet.test.util.TestUtils.*;
+
+/**
+ * Measures how long the media of a participant is interrupted when its
+ * network is disrupted. The participants of a conference, which all send
+ * audio and video through the bridge, are disrupted in turn, for many
+ * iterations, in one of the {@link Disruption} modes, and the recovery of
+ * every disruption is followed with a {@link NetworkChangeProbe}: the time
+ * to ICE disconnected, to the ICE restart, to ICE connected again, to the
+ * first media received and to the first remote video frame rendered again.
+ * Their distributions are reported by {@link RecoveryReport}, since the
+ * disruption and since the network is restored.
+ *
+ * Needs a Chromium based browser, and is skipped by default.
+ */
+public class NetworkChangeTest
+    extends WebTestBase
+{
+    /**
+     * The number of participants of the conference.
+     */
+    private static final String PARTICIPANTS_PROP = "network_change.participants";
+
+    /**
+     * The number of disruptions of every participant.
+     */
+    private static final String ITERATIONS_PROP = "network_change.iterations";
+
+    /**
+     * The {@link Disruption}: outage, change or devtools.
+     */
+    private static final String MODE_PROP = "network_change.mode";
+
+    /**
+     * The time without network of a disruption, in milliseconds.
+     */
+    private static final String OUTAGE_PROP = "network_change.outage_ms";
+
+    /**
+     * How long to wait for a participant to recover once the network is
+     * restored, in milliseconds.
+     */
+    private static final String TIMEOUT_PROP = "network_change.timeout_ms";
+
+    /**
+     * The time to let the conference settle between two disruptions, in
+     * milliseconds.
+     */
+    private static final String SETTLE_PROP = "network_change.settle_ms";
+
+    private static final int DEFAULT_PARTICIPANTS = 3;
+    private static final int DEFAULT_ITERATIONS = 5;
+    private static final long DEFAULT_OUTAGE_MS = 5000;
+    private static final long DEFAULT_TIMEOUT_MS = 60000;
+    private static final long DEFAULT_SETTLE_MS = 10000;
+
+    /**
+     * The period of the drains of the probe during a recovery.
+     */
+    private static final long POLL_MS = 250;
+
+    /**
+     * How the network of a participant is disrupted.
+     */
+    public enum Disruption
+    {
+        /**
+         * The {@link NetworkRelay} of the participant drops all its packets
+         * during the outage, then the same path comes back.
+         */
+        OUTAGE,
+
+        /**
+         * The {@link NetworkRelay} of the participant drops all its packets
+         * during the outage, then the network changes: the relayed
+         * candidates are dead, and only an ICE restart recovers.
+         */
+        CHANGE,
+
+        /**
+         * The DevTools Protocol drops all the WebRTC packets of the
+         * participant during the outage, then the same path comes back,
+         * without impairment.
+         */
+        DEVTOOLS
+    }
+
+    private Disruption mode;
+    private long outageMs;
+
+    private final List<WebParticipant> joined = new ArrayList<>();
+    private final Map<WebParticipant, NetworkChangeProbe> probes = new HashMap<>();
+
+    @Override
+    public boolean skipTestByDefault()
+    {
+        return true;
+    }
+
+    @Override
+    public void setupClass()
+    {
+        super.setupClass();
+
+        String modeStr = System.getProperty(MODE_PROP);
+        mode = modeStr == null || modeStr.trim().isEmpty()
+            ? Disruption.CHANGE : Disruption.valueOf(modeStr.trim().toUpperCase());
+        outageMs = getLong(OUTAGE_PROP, DEFAULT_OUTAGE_MS);
+
+        JitsiMeetUrl url = getJitsiMeetUrl();
+        url.appendConfig("config.p2p.enabled=false");
+
+        int numParticipants = (int) getLong(PARTICIPANTS_PROP, DEFAULT_PARTICIPANTS);
+        for (int i = 0; i < numParticipants; i++)
+        {
+            WebParticipantOptions options = new WebParticipantOptions();
+            options.setNetworkRelay(mode != Disruption.DEVTOOLS);
+
+            WebParticipant participant = participants.createParticipant("web.participant" + (i + 1), options);
+            participant.joinConference(url);
+            joined.add(participant);
+        }
+        for (WebParticipant participant : joined)
+        {
+            participant.waitToJoinMUC();
+            participant.waitForIceConnected();
+            participant.waitForSendReceiveData(true, true);
+
+            NetworkChangeProbe probe = new NetworkChangeProbe(participant);
+            probe.start();
+            probes.put(participant, probe);
+        }
+    }
+
+    /**
+     * Disrupts the participants in turn, for every iteration, and reports the
+     * distributions of their recoveries.
+     */
+    @Test
+    public void testRecovery()
+    {
+        int iterations = (int) getLong(ITERATIONS_PROP, DEFAULT_ITERATIONS);
+        long timeoutMs = getLong(TIMEOUT_PROP, DEFAULT_TIMEOUT_MS);
+        long settleMs = getLong(SETTLE_PROP, DEFAULT_SETTLE_MS);
+
+        print("will disrupt " + joined.size() + " participants " + iterations + " times with " + mode + ", "
+            + outageMs + " ms outage");
+
+        RecoveryReport report = new RecoveryReport();
+        for (int i = 0; i < iterations; i++)
+        {
+            for (WebParticipant participant : joined)
+            {
+                NetworkChangeProbe.Recovery recovery = disrupt(participant, timeoutMs);
+                print(recovery.toString());
+                report.add(recovery);
+
+                waitMillis(settleMs);
+            }
+            print("Iteration " + (i + 1) + "/" + iterations + " done");
+        }
+
+        print(report.toString());
+        assertEquals(report.getUnrecovered(), 0, "Disruptions without recovery");
+    }
+
+    /**
+     * Disrupts the network of a participant and follows its recovery.
+     *
+     * @param participant the participant.
+     * @param timeoutMs how long to wait for the recovery once the network is
+     * restored.
+     * @return the recovery.
+     */
+    private NetworkChangeProbe.Recovery disrupt(WebParticipant participant, long timeoutMs)
+    {
+        NetworkChangeProbe probe = probes.get(participant);
+        NetworkChangeProbe.Recovery recovery = probe.markDisruption();
+        setBlocked(participant, true);
+        waitMillis(outageMs);
+        if (mode == Disruption.CHANGE)
+        {
+            participant.getNetworkRelay().changeNetwork();
+        }
+        setBlocked(participant, false);
+        probe.markRestore(recovery);
+
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (probe.drainInto(recovery) && !recovery.isComplete() && System.currentTimeMillis() < deadline)
+        {
+            waitMillis(POLL_MS);
+        }
+
+        if (recovery.isReloaded())
+        {
+            // The page rejoins on its own, the next disruption needs it
+            // connected and probed again.
+            participant.waitToJoinMUC(30);
+            participant.waitForIceConnected(30);
+            probe.start();
+        }
+        return recovery;
+    }
+
+    /**
+     * Cuts or restores the network of a participant.
+     *
+     * @param participant the participant.
+     * @param blocked whether to cut the network.
+     */
+    private void setBlocked(WebParticipant participant, boolean blocked)
+    {
+        if (mode == Disruption.DEVTOOLS)
+        {
+            Map<String, Object> conditions = ImpairmentProfile.NONE.getNetworkConditions(false);
+            if (blocked)
+            {
+                // In percent.
+                conditions.put("packetLoss", 100);
+            }
+            participant.executeCdpCommand("Network.enable", Collections.emptyMap());
+            participant.executeCdpCommand("Network.emulateNetworkConditions", conditions);
+        }
+        else
+        {
+            participant.getNetworkRelay().setBlocked(blocked);
+        }
+    }
+
+    private static long getLong(String name, long defaultValue)
+    {
+        String value = System.getProperty(name);
+        return value == null || value.trim().isEmpty() ? defaultValue : Long.parseLong(value.trim());
+    }
+}
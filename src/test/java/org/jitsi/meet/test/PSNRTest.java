@@ -15,6 +15,7 @@
  */
 package org.jitsi.meet.test;
 
+import org.jitsi.meet.test.analysis.*;
 import org.jitsi.meet.test.capture.*;
 import org.jitsi.meet.test.tasks.*;
 import org.jitsi.meet.test.util.*;
@@ -25,6 +26,7 @@ import org.openqa.selenium.*;
 import org.testng.annotations.*;
 import static org.testng.Assert.*;
 
+import javax.imageio.*;
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
@@ -56,68 +58,75 @@ public class PSNRTest
         "psnr.output.filename";
 
     /**
-     * The PSNR script that produces PSNR results for every frame that we've
-     * captured.
+     * The video file to use as input.
      */
-    private static final String PSNR_SCRIPT = "scripts/psnr-test.sh";
+    public static final String INPUT_VIDEO_FILE
+        = "resources/psnr/psnr-input.y4m";
 
     /**
-     * The directory where we save the captured frames.
+     * How long we should sample frames for psnr calculations
      */
-    private static final String OUTPUT_FRAME_DIR
-        = "target/psnr/captured-frames/";
+    private static final String PSNR_DURATION_MILLIS_PROP = "psnr.duration_millis";
 
     /**
-     * The directory where we get the input frames.
+     * The {@link CaptureOptions.Mode} of the capture: luma (the default),
+     * rgba, scaled or encoded. In luma mode only the luma is compared.
      */
-    public static final String INPUT_FRAME_DIR= "resources/psnr/stamped/";
+    private static final String PSNR_CAPTURE_MODE_PROP = "psnr.capture_mode";
 
     /**
-     * The video file to use as input.
+     * The width of the captured frames for the luma, scaled and encoded
+     * modes, the width of the video if not set.
      */
-    public static final String INPUT_VIDEO_FILE
-        = "resources/psnr/psnr-input.y4m";
+    private static final String PSNR_CAPTURE_WIDTH_PROP = "psnr.capture_width";
 
     /**
-     * The directory to use for frame resizing.
+     * Whether to capture every presented frame with requestVideoFrameCallback
+     * (the default) rather than sampling the video at 30 fps, which
+     * duplicates and misses frames and so skews the frozen and skipped
+     * counts.
      */
-    private static final String RESIZED_FRAME_DIR
-        = "target/psnr/resized-frames/";
+    private static final String PSNR_FRAME_CALLBACK_PROP = "psnr.frame_callback";
 
     /**
-     * How long we should sample frames for psnr calculations
+     * The decoder of the frame numbers: qr (the default) decodes the stamps
+     * in the JVM, zbar runs zbarimg on every frame.
      */
-    private static final String PSNR_DURATION_MILLIS_PROP = "psnr.duration_millis";
+    private static final String PSNR_FRAME_NUMBER_DECODER_PROP = "psnr.frame_number_decoder";
 
     /**
      * The minimum PSNR value that we will accept before failing. PSNR above 20
      * is pretty indicative of good similarity. For example: Downscaling a 720p
-     * image to 360p gives a PSNR of 27.2299. Downscaling a 720p image to 180p
-     * gives a PSNR of 21.8882. Downscaling a 720p image to 90p gives a PSNR of
-     * 20.1337
+     * image to 360p gives an RGB PSNR of 27.2299. Downscaling a 720p image to
+     * 180p gives an RGB PSNR of 21.8882. Downscaling a 720p image to 90p gives
+     * an RGB PSNR of 20.1337
+     * The PSNR is that of the luma, which is 1.2 to 2 dB above the RGB PSNR of
+     * the same frame: the luma spans 219 of the 255 levels of the peak. The
+     * threshold is that much above the 22 the RGB PSNR was checked against,
+     * still just above a 180p frame.
+     * It can be changed, and SSIM, MS-SSIM, blockiness and blur thresholds
+     * added, with the psnr.min_psnr, psnr.min_ssim, psnr.min_ms_ssim,
+     * psnr.max_blockiness and psnr.max_blur properties.
+     */
+    private static final float MIN_PSNR = 23.5f;
+
+    /**
+     * The thresholds every frame is checked against.
      */
-    private static final float MIN_PSNR = 22f;
+    private final QualityThresholds thresholds = new QualityThresholds().setMinPsnr(MIN_PSNR).load("psnr");
 
     @Override
     public void setupClass()
     {
         super.setupClass();
 
-        File inputFrameDir = new File(INPUT_FRAME_DIR);
-        boolean inputFrameDirExists = inputFrameDir.exists();
-        boolean inputVideoFileExists = new File(INPUT_VIDEO_FILE).exists();
-
-        if (!inputFrameDirExists || !inputVideoFileExists)
+        if (!new File(INPUT_VIDEO_FILE).exists())
         {
             // Fail the PSNR tests because we don't have any PSNR
             // resources, but out intention is to have them executed (since it's
             // being skipped by default).
             throw new RuntimeException(
-                "Unable to run PSNR tests:"
-                    + (inputFrameDirExists
-                        ? "" : " INPUT_FRAME_DIR does not exist")
-                    + (inputVideoFileExists
-                        ? "" : " INPUT_VIDEO_FILE does not exist"));
+                "Unable to run PSNR tests: INPUT_VIDEO_FILE does not exist");
         }
 
         WebParticipantOptions options
@@ -144,13 +153,6 @@ public class PSNRTest
     public void testPSNR()
         throws Exception
     {
-        // Create the output directory for captured frames.
-        File outputFrameDir = new File(OUTPUT_FRAME_DIR);
-        if (!outputFrameDir.exists())
-        {
-            outputFrameDir.mkdirs();
-        }
-
         // stop everything to maximize performance
         MuteTest muteTest = new MuteTest(this);
         muteTest.muteParticipant1AndCheck();
@@ -179,19 +181,35 @@ public class PSNRTest
 
         List<String> ids = MeetUIUtils.getRemoteVideoIDs(driver1);
 
-        operator1.recordAll(ids);
-
         String timeToRunInMillisVal = System.getProperty(PSNR_DURATION_MILLIS_PROP);
 
         // default is 10 seconds (originally this was 1 minute, but the
         // longer duration seemed to affect stability, perhaps due to
-        // memory issues in the browser)
+        // memory issues in the browser, use the luma or a smaller capture
+        // width for longer runs)
         if (timeToRunInMillisVal == null || timeToRunInMillisVal.length() == 0)
         {
             timeToRunInMillisVal = "10000";
         }
         int timeToRunInMillis = Integer.valueOf(timeToRunInMillisVal);
 
+        String captureMode = System.getProperty(PSNR_CAPTURE_MODE_PROP);
+        String captureWidth = System.getProperty(PSNR_CAPTURE_WIDTH_PROP);
+        CaptureOptions captureOptions = new CaptureOptions()
+            .setMode(captureMode == null || captureMode.isEmpty()
+                ? CaptureOptions.Mode.LUMA : CaptureOptions.Mode.parse(captureMode))
+            .setWidth(captureWidth == null || captureWidth.isEmpty() ? 0 : Integer.parseInt(captureWidth))
+            .setFrameCallback(getBooleanProperty(PSNR_FRAME_CALLBACK_PROP, true))
+            .setCapacityFor(timeToRunInMillis);
+        CaptureOptions.Mode mode = captureOptions.getMode();
+        if (mode == CaptureOptions.Mode.STAMP)
+        {
+            throw new IllegalArgumentException("The PSNR cannot be computed on the stamp region only");
+        }
+
+        operator1.recordAll(ids, captureOptions);
+        print("CAPTURE MEMORY: " + operator1.getMemoryFootprint() / 1024 / 1024 + "MB");
+
         // execute every 1 sec. This heartbeat task isn't necessary for the
         // PSNR testing but it can provide hints as to why the PSNR has failed.
 
@@ -214,140 +232,159 @@ public class PSNRTest
         // now close second participant to maximize performance
         getParticipant2().hangUp();
 
-        for (String id : ids)
+        // The frames are downloaded in chunks and analysed in parallel
+        // against the frames of the input video. While the frames of a chunk
+        // are analysed the next one is downloaded in a second chunk.
+        try (Y4mReader reference = new Y4mReader(new File(INPUT_VIDEO_FILE));
+             PsnrAnalyzer analyzer = new PsnrAnalyzer(reference, createFrameNumberExtractor()))
         {
-            Long framesCount = operator1.getFramesCount(id);
-            print(String.format("frames count for %s: %s\n", id, framesCount));
-
-            float totalPsnr = 0f;
-            int numFrozenFrames = 0;
-            int numSkippedFrames = 0;
-            int prevFrameNumber = -1;
-            for (int i = 0; i < framesCount; i += 1)
-            {
-                byte[] data = operator1.getFrame(id, i);
+            FrameChunk[] chunks = { new FrameChunk(), new FrameChunk() };
+            List<List<Future<PsnrAnalyzer.FrameResult>>> pending
+                = Arrays.asList(new ArrayList<>(), new ArrayList<>());
+            int chunkCount = 0;
 
-                String outputFrame = OUTPUT_FRAME_DIR + id + "-" + i + ".png";
+            List<PsnrAnalyzer.Video> videos = new ArrayList<>();
+            for (String id : ids)
+            {
+                int framesCount = operator1.getFramesCount(id).intValue();
+                print(String.format(
+                    "frames count for %s: %s (dropped %s)\n", id, framesCount, operator1.getDroppedFrames(id)));
 
-                try (OutputStream stream = new FileOutputStream(outputFrame))
+                if (captureOptions.isFrameCallback())
                 {
-                    stream.write(data);
+                    print(String.format("frame timings for %s: %s\n", id, operator1.getFrameTimings(id)));
                 }
 
-                Runtime rt = Runtime.getRuntime();
-                String[] commands = {
-                    PSNR_SCRIPT, outputFrame,
-                    INPUT_FRAME_DIR, RESIZED_FRAME_DIR
-                };
-
-                Process proc = rt.exec(commands);
-
-                BufferedReader stdInput
-                    = new BufferedReader(
-                            new InputStreamReader(proc.getInputStream()));
-
-                BufferedReader stdError
-                    = new BufferedReader(
-                            new InputStreamReader(proc.getErrorStream()));
-
-                // read the output from the command
-                String s;
-                try
+                PsnrAnalyzer.Video video = analyzer.newVideo(id);
+                for (int i = 0; i < framesCount; chunkCount++)
                 {
-                    while ((s = stdInput.readLine()) != null)
+                    int c = chunkCount % chunks.length;
+                    for (Future<PsnrAnalyzer.FrameResult> result : pending.get(c))
                     {
-                        print(s);
-                        int frameNum = Integer.parseInt(s.split(" ")[0]);
-                        float psnr = Float.parseFloat(s.split(" ")[1]);
-
-                        assertTrue(
-                            psnr > MIN_PSNR,
-                            "Frame is bellow the PSNR threshold");
-
-                        if (prevFrameNumber != -1 &&
-                            frameNum == prevFrameNumber)
-                        {
-                            System.out.println("Current frame same as the last, incrementing frozen");
-                            numFrozenFrames++;
-                        }
-                        else if (prevFrameNumber != -1 &&
-                            frameNum != prevFrameNumber + 1)
-                        {
-                            if (frameNum < prevFrameNumber)
-                            {
-                                // roll-over case, frameNum should be '1', so
-                                // calculate anything more than that as skipped
-                                // frames
-                                System.out.println(
-                                    "roll over: previous frame was " +
-                                    prevFrameNumber + "current frame is "
-                                    + frameNum + ", skipped " +
-                                    (frameNum - 1) + " frames");
-                                numSkippedFrames += (frameNum - 1);
-                            }
-                            else
-                            {
-                                System.out.println(
-                                    "previous frame was " + prevFrameNumber +
-                                    "current frame is " + frameNum + ", skipped " +
-                                    (frameNum - (prevFrameNumber + 1)) + " frames");
-                                numSkippedFrames +=
-                                    (frameNum - (prevFrameNumber + 1));
-                            }
-                        }
-                        prevFrameNumber = frameNum;
-
-                        System.out.println("frame number " + frameNum + " had psnr " + psnr);
-                        totalPsnr += psnr;
+                        result.get();
                     }
+                    pending.get(c).clear();
 
-                    // read any errors from the attempted command
-                    while ((s = stdError.readLine()) != null)
+                    FrameChunk chunk = operator1.readFrames(id, i, framesCount - i, chunks[c]);
+                    for (int j = 0; j < chunk.getCount(); j++)
                     {
-                        print(s);
+                        pending.get(c).add(video.submit(decodeFrame(chunk, j, mode)));
                     }
+                    i += chunk.getCount();
                 }
-                catch (IOException e)
-                {
-                    e.printStackTrace();
-                }
-
-                assertEquals(
-                    proc.waitFor(),
-                    0,
-                    "The psnr-test.sh failed.");
-
-                // If the test has passed for a specific frame, delete
-                // it to optimize disk space usage.
-                File outputFrameFile = new File(outputFrame);
-                outputFrameFile.delete();
+                videos.add(video);
             }
-            float averagePsnr = totalPsnr / framesCount;
-            System.out.println("Average psnr: " + averagePsnr);
-            System.out.println("Num frozen frames: " + numFrozenFrames);
-            System.out.println("Frozen pct: " + numFrozenFrames / (float)framesCount);
-            System.out.println("Num skipped frames: " + numSkippedFrames);
-            System.out.println("Skipped pct: " + numSkippedFrames / (float)framesCount);
-
-            JSONObject json = new JSONObject();
-            json.put("totalFrames", framesCount);
-            json.put("psnr", averagePsnr);
-            json.put("numFrozenFrames", numFrozenFrames);
-            json.put("numSkippedFrames", numSkippedFrames);
-
-            String psnrOutputDir = System.getProperty(PSNR_OUTPUT_DIR_PROP);
-            String psnrOutputFilename
-                = System.getProperty(PSNR_OUTPUT_FILENAME_PROP);
-            if (psnrOutputDir != null && !psnrOutputDir.isEmpty() &&
-                psnrOutputFilename != null && !psnrOutputFilename.isEmpty())
+
+            for (PsnrAnalyzer.Video video : videos)
             {
-                PrintWriter writer = new PrintWriter(
-                    Paths.get(psnrOutputDir, psnrOutputFilename).toString());
-                writer.print(json.toString());
-                writer.close();
+                checkVideo(video.await());
             }
         }
 
         operator1.dispose();
     }
+
+    /**
+     * Decodes a frame of a chunk, on the analysis pool.
+     *
+     * @param chunk the chunk, not reused until the frame is analysed.
+     * @param i the index of the frame in the chunk.
+     * @param mode the capture mode.
+     * @return decodes the frame.
+     */
+    private static Callable<YuvFrame> decodeFrame(FrameChunk chunk, int i, CaptureOptions.Mode mode)
+    {
+        switch (mode)
+        {
+        case LUMA:
+            return () -> chunk.getLumaFrame(i);
+        case ENCODED:
+            return () -> chunk.getLength(i) == 0
+                ? null
+                : YuvFrame.fromImage(ImageIO.read(
+                    new ByteArrayInputStream(chunk.getData(), chunk.getOffset(i), chunk.getLength(i))));
+        default:
+            return () -> chunk.getRgbaFrame(i);
+        }
+    }
+
+    /**
+     * @return the frame number decoder selected with
+     * {@link #PSNR_FRAME_NUMBER_DECODER_PROP}.
+     */
+    private static FrameNumberExtractor createFrameNumberExtractor()
+    {
+        String decoder = System.getProperty(PSNR_FRAME_NUMBER_DECODER_PROP);
+        if (decoder == null || decoder.isEmpty() || "qr".equalsIgnoreCase(decoder))
+        {
+            return new QrFrameNumberExtractor();
+        }
+        else if ("zbar".equalsIgnoreCase(decoder))
+        {
+            return new ZbarFrameNumberExtractor();
+        }
+        throw new IllegalArgumentException("Unknown frame number decoder: " + decoder);
+    }
+
+    /**
+     * Checks the PSNR of every frame of a video and writes the results to the
+     * psnr output file, if configured.
+     *
+     * @param result the analysis of the video.
+     */
+    private void checkVideo(PsnrAnalyzer.VideoResult result)
+        throws IOException
+    {
+        for (PsnrAnalyzer.FrameResult frame : result.getFrames())
+        {
+            print(frame.toString());
+            String violation = thresholds.check(frame);
+            assertNull(violation, "Frame " + frame.getIndex() + " of " + result.getId() + ": " + violation);
+        }
+
+        int framesCount = result.getFrames().size();
+        System.out.println("Average psnr: " + result.getAveragePsnr());
+        System.out.println("Average ssim: " + result.getAverageSsim() + " min " + result.getMinSsim());
+        System.out.println("Average ms-ssim: " + result.getAverageMsSsim() + " min " + result.getMinMsSsim());
+        System.out.println("Average blockiness: " + result.getAverageBlockiness());
+        System.out.println("Average blur: " + result.getAverageBlur());
+        System.out.println("Num frozen frames: " + result.getNumFrozenFrames());
+        System.out.println("Frozen pct: " + result.getNumFrozenFrames() / (float)framesCount);
+        System.out.println("Num skipped frames: " + result.getNumSkippedFrames());
+        System.out.println("Skipped pct: " + result.getNumSkippedFrames() / (float)framesCount);
+
+        JSONObject json = new JSONObject();
+        json.put("totalFrames", framesCount);
+        json.put("psnr", toJson(result.getAveragePsnr()));
+        json.put("ssim", toJson(result.getAverageSsim()));
+        json.put("msSsim", toJson(result.getAverageMsSsim()));
+        json.put("blockiness", toJson(result.getAverageBlockiness()));
+        json.put("blur", toJson(result.getAverageBlur()));
+        json.put("numFrozenFrames", result.getNumFrozenFrames());
+        json.put("numSkippedFrames", result.getNumSkippedFrames());
+
+        String psnrOutputDir = System.getProperty(PSNR_OUTPUT_DIR_PROP);
+        String psnrOutputFilename
+            = System.getProperty(PSNR_OUTPUT_FILENAME_PROP);
+        if (psnrOutputDir != null && !psnrOutputDir.isEmpty() &&
+            psnrOutputFilename != null && !psnrOutputFilename.isEmpty())
+        {
+            PrintWriter writer = new PrintWriter(
+                Paths.get(psnrOutputDir, psnrOutputFilename).toString());
+            writer.print(json.toString());
+            writer.close();
+        }
+    }
+
+    /**
+     * JSON has no NaN nor infinity, which json-simple would write as is: the
+     * SSIM and MS-SSIM are NaN when no frame has a matching reference frame.
+     *
+     * @param value the value to write.
+     * @return the value or <tt>null</tt> if it is not finite.
+     */
+    private static Double toJson(double value)
+    {
+        return Double.isFinite(value) ? value : null;
+    }
 }
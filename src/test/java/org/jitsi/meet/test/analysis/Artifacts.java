@@ -0,0 +1,159 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.analysis;
+
+import java.nio.*;
+
+/**
+ * No-reference estimates of the coding artifacts of a luma plane, which only
+ * need the received frame: blockiness, the edges at the boundaries of the
+ * 8x8 blocks of the codecs, and blur. Nothing is allocated.
+ */
+public class Artifacts
+{
+    /**
+     * The size of the coding blocks.
+     */
+    private static final int BLOCK = 8;
+
+    /**
+     * The length of the low-pass filter of the blur estimate.
+     */
+    private static final int BLUR_FILTER = 9;
+
+    /**
+     * Estimates the blockiness of a plane as the mean absolute difference
+     * between neighbouring pixels across block boundaries, divided by the one
+     * inside the blocks, horizontally and vertically.
+     *
+     * @param plane the plane.
+     * @param width the width of the plane.
+     * @param height the height of the plane.
+     * @return 1 for no visible blocks, more the blockier, 1 for a flat plane.
+     */
+    public static double blockiness(ByteBuffer plane, int width, int height)
+    {
+        long boundary = 0, inner = 0;
+        long boundaryCount = 0, innerCount = 0;
+
+        for (int y = 0; y < height; y++)
+        {
+            int row = y * width;
+            for (int x = 1; x < width; x++)
+            {
+                int d = Math.abs((plane.get(row + x) & 0xFF) - (plane.get(row + x - 1) & 0xFF));
+                if (x % BLOCK == 0)
+                {
+                    boundary += d;
+                    boundaryCount++;
+                }
+                else
+                {
+                    inner += d;
+                    innerCount++;
+                }
+            }
+
+            if (y > 0)
+            {
+                boolean isBoundary = y % BLOCK == 0;
+                int prev = row - width;
+                for (int x = 0; x < width; x++)
+                {
+                    int d = Math.abs((plane.get(row + x) & 0xFF) - (plane.get(prev + x) & 0xFF));
+                    if (isBoundary)
+                    {
+                        boundary += d;
+                    }
+                    else
+                    {
+                        inner += d;
+                    }
+                }
+                if (isBoundary)
+                {
+                    boundaryCount += width;
+                }
+                else
+                {
+                    innerCount += width;
+                }
+            }
+        }
+
+        if (boundaryCount == 0 || innerCount == 0)
+        {
+            return 1;
+        }
+        double innerMean = (double) inner / innerCount;
+        double boundaryMean = (double) boundary / boundaryCount;
+        if (innerMean == 0)
+        {
+            return boundaryMean == 0 ? 1 : boundaryMean;
+        }
+        return boundaryMean / innerMean;
+    }
+
+    /**
+     * Estimates the blur of a plane with the re-blur method of Crete et al.
+     * 2007: the plane is blurred with a 9 pixel box filter and the variation
+     * between neighbouring pixels lost by the blurring is compared to the
+     * original variation. A sharp plane loses most of it, a blurred one
+     * little. The worst of the horizontal and vertical directions is
+     * reported.
+     *
+     * @param plane the plane.
+     * @param width the width of the plane.
+     * @param height the height of the plane.
+     * @return from 0 for sharp to 1 for blurred, 0 for a flat plane.
+     */
+    public static double blur(ByteBuffer plane, int width, int height)
+    {
+        return Math.max(
+            blur(plane, height, width, width, 1),
+            blur(plane, width, height, 1, width));
+    }
+
+    /**
+     * Estimates the blur along lines of a plane.
+     *
+     * @param lines the number of lines.
+     * @param length the length of the lines.
+     * @param lineStep the distance between the starts of two lines.
+     * @param step the distance between two pixels of a line.
+     */
+    private static double blur(ByteBuffer plane, int lines, int length, int lineStep, int step)
+    {
+        long variation = 0, lost = 0;
+        for (int line = 0; line < lines; line++)
+        {
+            int start = line * lineStep;
+            for (int i = BLUR_FILTER; i < length; i++)
+            {
+                int p = start + i * step;
+                int current = plane.get(p) & 0xFF;
+
+                // The difference between two consecutive box filter outputs
+                // only depends on the pixels entering and leaving the box.
+                int d = Math.abs(current - (plane.get(p - step) & 0xFF)) * BLUR_FILTER;
+                int dBlurred = Math.abs(current - (plane.get(p - BLUR_FILTER * step) & 0xFF));
+                variation += d;
+                lost += Math.max(0, d - dBlurred);
+            }
+        }
+        return variation == 0 ? 0 : (double) (variation - lost) / variation;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.analysis;
+
+/**
+ * The audio and video signals of a recorded participant, sampled when the
+ * frames were captured: the audio level and the luma of a pixel of the
+ * frame, for instance where a test pattern flashes with a beep.
+ */
+public class AvSignals
+{
+    private final double[] timestamps;
+    private final double[] audio;
+    private final double[] video;
+
+    /**
+     * Creates new {@link AvSignals}. The arrays are not copied.
+     *
+     * @param timestamps the times of the samples in ms, increasing.
+     * @param audio the audio levels, NaN where unknown.
+     * @param video the video samples, NaN where unknown.
+     */
+    public AvSignals(double[] timestamps, double[] audio, double[] video)
+    {
+        if (audio.length != timestamps.length || video.length != timestamps.length)
+        {
+            throw new IllegalArgumentException("The signals have different lengths");
+        }
+        this.timestamps = timestamps;
+        this.audio = audio;
+        this.video = video;
+    }
+
+    /**
+     * @return the number of samples.
+     */
+    public int size()
+    {
+        return timestamps.length;
+    }
+
+    /**
+     * @return the times of the samples in ms.
+     */
+    public double[] getTimestamps()
+    {
+        return timestamps;
+    }
+
+    /**
+     * @return the audio levels.
+     */
+    public double[] getAudio()
+    {
+        return audio;
+    }
+
+    /**
+     * @return the video samples.
+     */
+    public double[] getVideo()
+    {
+        return video;
+    }
+}
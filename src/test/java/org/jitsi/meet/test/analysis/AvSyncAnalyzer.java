@@ -0,0 +1,520 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.analysis;
+
+import java.util.*;
+
+/**
+ * Estimates the audio and video delays between a sender and a receiver, and
+ * so the A/V offset, by cross-correlating their signals. The signals are
+ * resampled on a common uniform grid and correlated with FFTs, over the
+ * whole recording and over overlapping windows to follow the offset over
+ * time. Using every sample rather than detecting edges makes the estimate
+ * robust to missed frames and noisy levels.
+ *
+ * The work buffers are reused between analyses, so an instance must not be
+ * used by several threads at once.
+ */
+public class AvSyncAnalyzer
+{
+    /**
+     * The default resampling period, in ms.
+     */
+    public static final double DEFAULT_STEP_MS = 5;
+
+    /**
+     * The default length of the windows, in ms.
+     */
+    public static final double DEFAULT_WINDOW_MS = 20000;
+
+    /**
+     * The default maximum delay searched, in ms.
+     */
+    public static final double DEFAULT_MAX_LAG_MS = 2000;
+
+    /**
+     * The correlation below which the delay of a window is not trusted.
+     */
+    public static final double MIN_CORRELATION = 0.3;
+
+    /**
+     * The quantile of the normal distribution for 95% confidence intervals.
+     */
+    private static final double Z_95 = 1.96;
+
+    private final double stepMs;
+    private final double windowMs;
+    private final double maxLagMs;
+
+    private double[] senderAudio = new double[0];
+    private double[] senderVideo = new double[0];
+    private double[] receiverAudio = new double[0];
+    private double[] receiverVideo = new double[0];
+    private double[] xRe = new double[0];
+    private double[] xIm = new double[0];
+    private double[] yRe = new double[0];
+    private double[] yIm = new double[0];
+
+    /**
+     * Creates new {@link AvSyncAnalyzer} with the default parameters.
+     */
+    public AvSyncAnalyzer()
+    {
+        this(DEFAULT_STEP_MS, DEFAULT_WINDOW_MS, DEFAULT_MAX_LAG_MS);
+    }
+
+    /**
+     * Creates new {@link AvSyncAnalyzer}.
+     *
+     * @param stepMs the resampling period.
+     * @param windowMs the length of the windows.
+     * @param maxLagMs the maximum delay searched, much shorter than the
+     * windows.
+     */
+    public AvSyncAnalyzer(double stepMs, double windowMs, double maxLagMs)
+    {
+        this.stepMs = stepMs;
+        this.windowMs = windowMs;
+        this.maxLagMs = maxLagMs;
+    }
+
+    /**
+     * Analyses the signals recorded while sending and while receiving the
+     * same media. The timestamps of both must come from the same clock.
+     *
+     * @param sender the signals of the sender.
+     * @param receiver the signals of the receiver.
+     * @return the delays and the A/V offset.
+     * @throws IllegalArgumentException if the recordings do not overlap.
+     */
+    public Result analyze(AvSignals sender, AvSignals receiver)
+    {
+        double[] st = sender.getTimestamps(), rt = receiver.getTimestamps();
+        if (st.length < 2 || rt.length < 2)
+        {
+            throw new IllegalArgumentException("Not enough samples");
+        }
+        double start = Math.max(st[0], rt[0]);
+        double end = Math.min(st[st.length - 1], rt[rt.length - 1]);
+        if (end - start < 2 * maxLagMs)
+        {
+            throw new IllegalArgumentException("The recordings overlap for " + (end - start) + "ms only");
+        }
+
+        int n = (int) ((end - start) / stepMs) + 1;
+        if (senderAudio.length < n)
+        {
+            senderAudio = new double[n];
+            senderVideo = new double[n];
+            receiverAudio = new double[n];
+            receiverVideo = new double[n];
+        }
+        resample(st, sender.getAudio(), start, n, senderAudio);
+        resample(st, sender.getVideo(), start, n, senderVideo);
+        resample(rt, receiver.getAudio(), start, n, receiverAudio);
+        resample(rt, receiver.getVideo(), start, n, receiverVideo);
+
+        Window overall = window(0, n);
+
+        List<Window> windows = new ArrayList<>();
+        int windowSamples = Math.min(n, (int) (windowMs / stepMs));
+        for (int off = 0; off + windowSamples <= n; off += Math.max(1, windowSamples / 2))
+        {
+            windows.add(window(off, windowSamples));
+        }
+
+        return new Result(overall, windows);
+    }
+
+    /**
+     * Correlates the audio and the video over a range of the grid.
+     */
+    private Window window(int off, int len)
+    {
+        double[] audio = correlate(senderAudio, receiverAudio, off, len);
+        double audioDelay = audio[0], audioCorrelation = audio[1];
+        double[] video = correlate(senderVideo, receiverVideo, off, len);
+        return new Window((off + len / 2.0) * stepMs, audioDelay, audioCorrelation, video[0], video[1]);
+    }
+
+    /**
+     * Finds the delay of <tt>y</tt> relative to <tt>x</tt> maximizing their
+     * normalized cross-correlation, computed with FFTs.
+     *
+     * @return the delay in ms, with sub-sample precision, and the
+     * correlation at that delay, both NaN if a signal is flat.
+     */
+    private double[] correlate(double[] x, double[] y, int off, int len)
+    {
+        int size = Fft.size(2 * len);
+        if (xRe.length < size)
+        {
+            xRe = new double[size];
+            xIm = new double[size];
+            yRe = new double[size];
+            yIm = new double[size];
+        }
+        if (!normalize(x, off, len, xRe, size) || !normalize(y, off, len, yRe, size))
+        {
+            return new double[] { Double.NaN, Double.NaN };
+        }
+        Arrays.fill(xIm, 0, size, 0);
+        Arrays.fill(yIm, 0, size, 0);
+
+        Fft.transform(xRe, xIm, size, false);
+        Fft.transform(yRe, yIm, size, false);
+        for (int i = 0; i < size; i++)
+        {
+            double re = yRe[i] * xRe[i] + yIm[i] * xIm[i];
+            double im = yIm[i] * xRe[i] - yRe[i] * xIm[i];
+            yRe[i] = re;
+            yIm[i] = im;
+        }
+        Fft.transform(yRe, yIm, size, true);
+
+        // yRe[k] is now the correlation at lag k, negative lags wrapping
+        // around at the end.
+        int maxLag = Math.min(len - 1, (int) (maxLagMs / stepMs));
+        int best = 0;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int lag = -maxLag; lag <= maxLag; lag++)
+        {
+            double value = yRe[lag < 0 ? size + lag : lag];
+            if (value > bestValue)
+            {
+                bestValue = value;
+                best = lag;
+            }
+        }
+
+        double delta = 0;
+        if (best > -maxLag && best < maxLag)
+        {
+            double prev = yRe[best - 1 < 0 ? size + best - 1 : best - 1];
+            double next = yRe[best + 1 < 0 ? size + best + 1 : best + 1];
+            double denominator = prev - 2 * bestValue + next;
+            if (denominator < 0)
+            {
+                delta = 0.5 * (prev - next) / denominator;
+            }
+        }
+
+        return new double[] { (best + delta) * stepMs, bestValue / len };
+    }
+
+    /**
+     * Copies a range of a signal with zero mean and unit variance, padded
+     * with zeros.
+     *
+     * @return <tt>false</tt> if the signal is flat.
+     */
+    private static boolean normalize(double[] src, int off, int len, double[] dst, int size)
+    {
+        double sum = 0, sumSquares = 0;
+        for (int i = off; i < off + len; i++)
+        {
+            sum += src[i];
+            sumSquares += src[i] * src[i];
+        }
+        double mean = sum / len;
+        double variance = sumSquares / len - mean * mean;
+        if (!(variance > 1e-12))
+        {
+            return false;
+        }
+
+        double scale = 1 / Math.sqrt(variance);
+        for (int i = 0; i < len; i++)
+        {
+            dst[i] = (src[off + i] - mean) * scale;
+        }
+        Arrays.fill(dst, len, size, 0);
+        return true;
+    }
+
+    /**
+     * Linearly interpolates a signal on the grid. Unknown samples are
+     * skipped, and the grid points before the first known sample get its
+     * value.
+     */
+    private void resample(double[] timestamps, double[] values, double start, int n, double[] out)
+    {
+        int j = 0;
+        double last = Double.NaN;
+        for (int i = 0; i < n; i++)
+        {
+            double t = start + i * stepMs;
+            while (j + 1 < timestamps.length && timestamps[j + 1] <= t)
+            {
+                j++;
+            }
+
+            double v0 = values[j];
+            double v1 = j + 1 < timestamps.length ? values[j + 1] : Double.NaN;
+            double v;
+            if (Double.isNaN(v0) || Double.isNaN(v1))
+            {
+                v = Double.isNaN(v0) ? v1 : v0;
+            }
+            else
+            {
+                double span = timestamps[j + 1] - timestamps[j];
+                v = span > 0 ? v0 + (v1 - v0) * (t - timestamps[j]) / span : v0;
+            }
+
+            if (Double.isNaN(v))
+            {
+                v = last;
+            }
+            else if (Double.isNaN(last))
+            {
+                Arrays.fill(out, 0, i, v);
+            }
+            out[i] = v;
+            last = v;
+        }
+        if (Double.isNaN(last))
+        {
+            Arrays.fill(out, 0, n, 0);
+        }
+    }
+
+    /**
+     * The delays estimated over a part of the recording.
+     */
+    public static class Window
+    {
+        private final double timeMs;
+        private final double audioDelayMs;
+        private final double audioCorrelation;
+        private final double videoDelayMs;
+        private final double videoCorrelation;
+
+        Window(double timeMs, double audioDelayMs, double audioCorrelation,
+               double videoDelayMs, double videoCorrelation)
+        {
+            this.timeMs = timeMs;
+            this.audioDelayMs = audioDelayMs;
+            this.audioCorrelation = audioCorrelation;
+            this.videoDelayMs = videoDelayMs;
+            this.videoCorrelation = videoCorrelation;
+        }
+
+        /**
+         * @return the time of the middle of the window, in ms from the start
+         * of the analysed recording.
+         */
+        public double getTimeMs()
+        {
+            return timeMs;
+        }
+
+        /**
+         * @return the delay of the audio of the receiver, in ms.
+         */
+        public double getAudioDelayMs()
+        {
+            return audioDelayMs;
+        }
+
+        /**
+         * @return the correlation of the audio signals at that delay.
+         */
+        public double getAudioCorrelation()
+        {
+            return audioCorrelation;
+        }
+
+        /**
+         * @return the delay of the video of the receiver, in ms.
+         */
+        public double getVideoDelayMs()
+        {
+            return videoDelayMs;
+        }
+
+        /**
+         * @return the correlation of the video signals at that delay.
+         */
+        public double getVideoCorrelation()
+        {
+            return videoCorrelation;
+        }
+
+        /**
+         * @return the video delay minus the audio delay, positive when the
+         * video lags behind the audio.
+         */
+        public double getOffsetMs()
+        {
+            return videoDelayMs - audioDelayMs;
+        }
+
+        /**
+         * @return whether both delays were found with at least
+         * {@link #MIN_CORRELATION}.
+         */
+        public boolean isReliable()
+        {
+            return audioCorrelation >= MIN_CORRELATION && videoCorrelation >= MIN_CORRELATION;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format(
+                "%.1fs audio %.1fms (%.2f) video %.1fms (%.2f) offset %.1fms",
+                timeMs / 1000, audioDelayMs, audioCorrelation, videoDelayMs, videoCorrelation, getOffsetMs());
+        }
+    }
+
+    /**
+     * The result of an analysis.
+     */
+    public static class Result
+    {
+        private final Window overall;
+        private final List<Window> windows;
+        private final double offsetMs;
+        private final double offsetCiMs;
+        private final double driftMsPerMinute;
+        private final double driftCiMsPerMinute;
+
+        Result(Window overall, List<Window> windows)
+        {
+            this.overall = overall;
+            this.windows = Collections.unmodifiableList(windows);
+
+            int n = 0;
+            double sumX = 0, sumY = 0;
+            for (Window w : windows)
+            {
+                if (w.isReliable())
+                {
+                    n++;
+                    sumX += w.getTimeMs() / 60000;
+                    sumY += w.getOffsetMs();
+                }
+            }
+
+            double meanX = sumX / n, meanY = sumY / n;
+            double sxx = 0, sxy = 0, syy = 0;
+            for (Window w : windows)
+            {
+                if (w.isReliable())
+                {
+                    double dx = w.getTimeMs() / 60000 - meanX, dy = w.getOffsetMs() - meanY;
+                    sxx += dx * dx;
+                    sxy += dx * dy;
+                    syy += dy * dy;
+                }
+            }
+
+            offsetMs = n == 0 ? overall.getOffsetMs() : meanY;
+            offsetCiMs = n < 2 ? Double.NaN : Z_95 * Math.sqrt(syy / (n - 1) / n);
+            if (n < 3 || sxx == 0)
+            {
+                driftMsPerMinute = Double.NaN;
+                driftCiMsPerMinute = Double.NaN;
+            }
+            else
+            {
+                driftMsPerMinute = sxy / sxx;
+                double residuals = Math.max(0, syy - driftMsPerMinute * sxy);
+                driftCiMsPerMinute = Z_95 * Math.sqrt(residuals / (n - 2) / sxx);
+            }
+        }
+
+        /**
+         * @return the delays over the whole recording.
+         */
+        public Window getOverall()
+        {
+            return overall;
+        }
+
+        /**
+         * @return the delays over the successive, half overlapping, windows.
+         */
+        public List<Window> getWindows()
+        {
+            return windows;
+        }
+
+        /**
+         * @return the mean A/V offset of the reliable windows, or the offset
+         * over the whole recording if none is, in ms.
+         */
+        public double getOffsetMs()
+        {
+            return offsetMs;
+        }
+
+        /**
+         * @return the half width of the 95% confidence interval of
+         * {@link #getOffsetMs()}, NaN with less than 2 reliable windows.
+         */
+        public double getOffsetCiMs()
+        {
+            return offsetCiMs;
+        }
+
+        /**
+         * @return the slope of the A/V offset of the reliable windows over
+         * time, in ms per minute, NaN with less than 3 of them.
+         */
+        public double getDriftMsPerMinute()
+        {
+            return driftMsPerMinute;
+        }
+
+        /**
+         * @return the half width of the 95% confidence interval of
+         * {@link #getDriftMsPerMinute()}.
+         */
+        public double getDriftCiMsPerMinute()
+        {
+            return driftCiMsPerMinute;
+        }
+
+        /**
+         * @param count the number of windows.
+         * @return the mean A/V offset of the last reliable windows, in ms.
+         */
+        public double getLastOffsetMs(int count)
+        {
+            double sum = 0;
+            int n = 0;
+            for (int i = windows.size() - 1; i >= 0 && n < count; i--)
+            {
+                if (windows.get(i).isReliable())
+                {
+                    sum += windows.get(i).getOffsetMs();
+                    n++;
+                }
+            }
+            return n == 0 ? Double.NaN : sum / n;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format(
+                "overall: %s, offset %.1f +/- %.1fms, drift %.2f +/- %.2fms/min over %d windows",
+                overall, offsetMs, offsetCiMs, driftMsPerMinute, driftCiMsPerMinute, windows.size());
+        }
+    }
+}
@@ -0,0 +1,417 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.analysis;
+
+import java.util.*;
+
+/**
+ * Analyzes the received bitrate of a peer connection against the bottleneck
+ * schedule it was played with. The counter of received bytes is resampled on
+ * a regular grid aligned with the start of the schedule, so that runs with
+ * different stats timings can be compared sample by sample.
+ *
+ * The received bitrate cannot exceed the capacity of the bottleneck, and
+ * often stays below it because the sender has nothing more to send, so the
+ * bitrate of every segment of the schedule is compared to its target: the
+ * capacity or, if lower, the plateau the bitrate reaches in the second half
+ * of the segment. The metrics are:
+ * - the ramp-up time: from the start of the schedule until the bitrate first
+ *   reaches {@link #RAMP_UP_FRACTION} of the target of the first segment;
+ * - the utilisation: the mean bitrate over the capacity, per segment and for
+ *   the whole schedule;
+ * - the overshoot: how much the bitrate exceeds the target of a segment;
+ * - the settle time: from the start of a segment until the bitrate stays
+ *   within {@link #TOLERANCE} of the target for {@link #HOLD_MS}, which after
+ *   a drop of the capacity is the recovery time, or the time to converge of
+ *   an estimate;
+ * - the steady-state utilisation: the mean bitrate of the second half of a
+ *   segment over the capacity;
+ * - the oscillation: half the spread between the 5th and the 95th
+ *   percentiles of the second half of a segment, over its mean.
+ *
+ * Besides counters of received bytes, bitrates sampled by the page, such as
+ * the estimates of the sender, can be analyzed the same way, see
+ * {@link #analyzeBitrate(TimeSeries, double)}.
+ */
+public class BweAnalyzer
+{
+    /**
+     * The default interval of the resampling grid.
+     */
+    public static final double DEFAULT_STEP_MS = 1000;
+
+    /**
+     * The fraction of the target which ends the ramp-up.
+     */
+    public static final double RAMP_UP_FRACTION = 0.9;
+
+    /**
+     * The relative distance from the target of a settled bitrate.
+     */
+    public static final double TOLERANCE = 0.1;
+
+    /**
+     * How long a settled bitrate stays close to the target.
+     */
+    public static final double HOLD_MS = 3000;
+
+    private final RateSchedule schedule;
+    private final double stepMs;
+
+    /**
+     * Creates new {@link BweAnalyzer} with {@link #DEFAULT_STEP_MS}.
+     *
+     * @param schedule the bottleneck schedule.
+     */
+    public BweAnalyzer(RateSchedule schedule)
+    {
+        this(schedule, DEFAULT_STEP_MS);
+    }
+
+    /**
+     * Creates new {@link BweAnalyzer}.
+     *
+     * @param schedule the bottleneck schedule.
+     * @param stepMs the interval of the resampling grid.
+     */
+    public BweAnalyzer(RateSchedule schedule, double stepMs)
+    {
+        this.schedule = Objects.requireNonNull(schedule, "schedule");
+        this.stepMs = stepMs;
+    }
+
+    /**
+     * @return the bottleneck schedule.
+     */
+    public RateSchedule getSchedule()
+    {
+        return schedule;
+    }
+
+    /**
+     * Analyzes a counter of received bytes.
+     *
+     * @param bytesReceived the counter, timed with the clock of the page.
+     * @param scheduleStartMs the start of the schedule with the clock of the
+     * page.
+     * @return the analysis.
+     */
+    public Result analyze(TimeSeries bytesReceived, double scheduleStartMs)
+    {
+        int count = (int) Math.floor(schedule.getDurationMs() / stepMs) + 1;
+
+        // The rate of an interval of the grid is timed at its middle.
+        return analyzeGrid(bytesReceived
+            .shift(-scheduleStartMs)
+            .resample(0, stepMs, count)
+            .rate(8)
+            .shift(-stepMs / 2));
+    }
+
+    /**
+     * Analyzes a bitrate sampled by the page, such as an estimate, a target
+     * or a send rate.
+     *
+     * @param bitrate the bitrate in bits per second, timed with the clock of
+     * the page at the middle of the interval it was measured over.
+     * @param scheduleStartMs the start of the schedule with the clock of the
+     * page.
+     * @return the analysis.
+     */
+    public Result analyzeBitrate(TimeSeries bitrate, double scheduleStartMs)
+    {
+        int count = (int) Math.floor(schedule.getDurationMs() / stepMs);
+
+        // On the same grid as the rates of the counters.
+        return analyzeGrid(bitrate
+            .shift(-scheduleStartMs)
+            .resample(stepMs / 2, stepMs, count));
+    }
+
+    /**
+     * Analyzes a bitrate resampled on the grid of the schedule.
+     */
+    private Result analyzeGrid(TimeSeries bitrate)
+    {
+        double bits = 0;
+        double capacity = 0;
+        for (int i = 0; i < bitrate.size(); i++)
+        {
+            double rate = bitrate.getValue(i);
+            if (!Double.isNaN(rate))
+            {
+                bits += rate;
+                capacity += schedule.getRateBpsAt(bitrate.getTime(i));
+            }
+        }
+
+        List<Segment> segments = new ArrayList<>();
+        for (int i = 0; i < schedule.size(); i++)
+        {
+            segments.add(new Segment(bitrate, i));
+        }
+
+        double rampUpMs = Double.NaN;
+        double rampUpBps = RAMP_UP_FRACTION * segments.get(0).targetBps;
+        for (int i = 0; i < bitrate.size() && bitrate.getTime(i) < schedule.getEndMs(0); i++)
+        {
+            if (bitrate.getValue(i) >= rampUpBps)
+            {
+                rampUpMs = bitrate.getTime(i) + stepMs / 2;
+                break;
+            }
+        }
+
+        return new Result(
+            bitrate,
+            bitrate.mean(0, schedule.getDurationMs()),
+            capacity == 0 ? Double.NaN : bits / capacity,
+            rampUpMs,
+            segments);
+    }
+
+    /**
+     * Formats the metrics of two runs side by side.
+     *
+     * @param name1 the name of the first run.
+     * @param result1 the first run.
+     * @param name2 the name of the second run.
+     * @param result2 the second run.
+     * @return the table.
+     */
+    public static String compare(String name1, Result result1, String name2, Result result2)
+    {
+        StringBuilder sb = new StringBuilder(String.format("%-28s %12s %12s%n", "", name1, name2));
+        appendRow(sb, "mean kbps", result1.meanBps / 1000, result2.meanBps / 1000);
+        appendRow(sb, "utilisation %", 100 * result1.utilisation, 100 * result2.utilisation);
+        appendRow(sb, "ramp-up ms", result1.rampUpMs, result2.rampUpMs);
+        for (int i = 0; i < Math.min(result1.segments.size(), result2.segments.size()); i++)
+        {
+            Segment s1 = result1.segments.get(i);
+            Segment s2 = result2.segments.get(i);
+            String segment = String.format("#%d %.0fkbps ", i, s1.capacityBps / 1000);
+            appendRow(sb, segment + "target kbps", s1.targetBps / 1000, s2.targetBps / 1000);
+            appendRow(sb, segment + "utilisation %", 100 * s1.utilisation, 100 * s2.utilisation);
+            appendRow(sb, segment + "overshoot %", 100 * s1.overshoot, 100 * s2.overshoot);
+            appendRow(sb, segment + "settle ms", s1.settleMs, s2.settleMs);
+            appendRow(sb, segment + "steady utilisation %", 100 * s1.steadyUtilisation, 100 * s2.steadyUtilisation);
+            appendRow(sb, segment + "oscillation %", 100 * s1.oscillation, 100 * s2.oscillation);
+        }
+        return sb.toString();
+    }
+
+    private static void appendRow(StringBuilder sb, String name, double value1, double value2)
+    {
+        sb.append(String.format("%-28s %12.1f %12.1f%n", name, value1, value2));
+    }
+
+    /**
+     * The metrics of a segment of the schedule.
+     */
+    public class Segment
+    {
+        private final double capacityBps;
+        private final double targetBps;
+        private final double meanBps;
+        private final double utilisation;
+        private final double overshoot;
+        private final double settleMs;
+        private final double steadyUtilisation;
+        private final double oscillation;
+
+        private Segment(TimeSeries bitrate, int index)
+        {
+            double start = schedule.getStartMs(index);
+            double end = schedule.getEndMs(index);
+
+            capacityBps = schedule.getRateBps(index);
+            double plateau = bitrate.percentile((start + end) / 2, end, 50);
+            targetBps = Double.isNaN(plateau) ? capacityBps : Math.min(capacityBps, plateau);
+            meanBps = bitrate.mean(start, end);
+            utilisation = meanBps / capacityBps;
+
+            double max = bitrate.percentile(start, end, 100);
+            overshoot = Double.isNaN(max) ? Double.NaN : Math.max(0, max / targetBps - 1);
+
+            // The first sample from which the bitrate holds close to the
+            // target, until the end of the segment if it is shorter than
+            // the hold.
+            double settled = Double.NaN;
+            double holdEnd = Double.NaN;
+            for (int i = 0; i < bitrate.size(); i++)
+            {
+                double t = bitrate.getTime(i);
+                double rate = bitrate.getValue(i);
+                if (t < start || t >= end || Double.isNaN(rate))
+                {
+                    continue;
+                }
+                if (Math.abs(rate - targetBps) > TOLERANCE * targetBps)
+                {
+                    settled = Double.NaN;
+                }
+                else if (Double.isNaN(settled))
+                {
+                    settled = t;
+                    holdEnd = t + HOLD_MS;
+                }
+                else if (t >= holdEnd)
+                {
+                    break;
+                }
+            }
+            settleMs = Double.isNaN(settled) ? Double.NaN : Math.max(0, settled - stepMs / 2 - start);
+
+            double steadyBps = bitrate.mean((start + end) / 2, end);
+            steadyUtilisation = steadyBps / capacityBps;
+            oscillation = (bitrate.percentile((start + end) / 2, end, 95)
+                - bitrate.percentile((start + end) / 2, end, 5)) / 2 / steadyBps;
+        }
+
+        /**
+         * @return the capacity of the segment in bits per second.
+         */
+        public double getCapacityBps()
+        {
+            return capacityBps;
+        }
+
+        /**
+         * @return the target bitrate of the segment in bits per second.
+         */
+        public double getTargetBps()
+        {
+            return targetBps;
+        }
+
+        /**
+         * @return the mean bitrate of the segment in bits per second.
+         */
+        public double getMeanBps()
+        {
+            return meanBps;
+        }
+
+        /**
+         * @return the mean bitrate over the capacity.
+         */
+        public double getUtilisation()
+        {
+            return utilisation;
+        }
+
+        /**
+         * @return the maximum bitrate over the target, minus one, at least
+         * zero.
+         */
+        public double getOvershoot()
+        {
+            return overshoot;
+        }
+
+        /**
+         * @return the time from the start of the segment until the bitrate
+         * settles, NaN if it never does.
+         */
+        public double getSettleMs()
+        {
+            return settleMs;
+        }
+
+        /**
+         * @return the mean bitrate of the second half of the segment over the
+         * capacity.
+         */
+        public double getSteadyUtilisation()
+        {
+            return steadyUtilisation;
+        }
+
+        /**
+         * @return half the spread between the 5th and the 95th percentiles of
+         * the second half of the segment, over its mean.
+         */
+        public double getOscillation()
+        {
+            return oscillation;
+        }
+    }
+
+    /**
+     * The metrics of a run.
+     */
+    public static class Result
+    {
+        private final TimeSeries bitrate;
+        private final double meanBps;
+        private final double utilisation;
+        private final double rampUpMs;
+        private final List<Segment> segments;
+
+        private Result(
+            TimeSeries bitrate, double meanBps, double utilisation, double rampUpMs, List<Segment> segments)
+        {
+            this.bitrate = bitrate;
+            this.meanBps = meanBps;
+            this.utilisation = utilisation;
+            this.rampUpMs = rampUpMs;
+            this.segments = Collections.unmodifiableList(segments);
+        }
+
+        /**
+         * @return the received bitrate in bits per second, timed from the
+         * start of the schedule.
+         */
+        public TimeSeries getBitrate()
+        {
+            return bitrate;
+        }
+
+        /**
+         * @return the mean bitrate of the schedule in bits per second, NaN if
+         * the stats do not cover the schedule.
+         */
+        public double getMeanBps()
+        {
+            return meanBps;
+        }
+
+        /**
+         * @return the received bits over the capacity of the schedule.
+         */
+        public double getUtilisation()
+        {
+            return utilisation;
+        }
+
+        /**
+         * @return the ramp-up time, NaN if the bitrate does not ramp up in
+         * the first segment.
+         */
+        public double getRampUpMs()
+        {
+            return rampUpMs;
+        }
+
+        /**
+         * @return the metrics of the segments of the schedule.
+         */
+        public List<Segment> getSegments()
+        {
+            return segments;
+        }
+    }
+}
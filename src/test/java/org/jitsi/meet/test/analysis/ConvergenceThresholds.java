@@ -0,0 +1,132 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.analysis;
+
+import java.util.*;
+import java.util.stream.*;
+
+/**
+ * The limits a test puts on the convergence of a bitrate to every segment of
+ * a bottleneck schedule, as analyzed by {@link BweAnalyzer}. None is checked
+ * by default, see {@link Threshold}.
+ */
+public class ConvergenceThresholds
+{
+    private final Threshold maxConvergeMs = Threshold.max("max_converge_ms", "Time to converge (ms)");
+    private final Threshold minSteadyUtilisation
+        = Threshold.min("min_steady_utilisation", "Steady-state utilisation");
+    private final Threshold maxOscillation = Threshold.max("max_oscillation", "Oscillation");
+
+    /**
+     * @param maxConvergeMs the maximum time from the start of a segment until
+     * the bitrate settles.
+     * @return this.
+     */
+    public ConvergenceThresholds setMaxConvergeMs(double maxConvergeMs)
+    {
+        this.maxConvergeMs.set(maxConvergeMs);
+        return this;
+    }
+
+    /**
+     * @param minSteadyUtilisation the minimum steady-state utilisation of a
+     * segment.
+     * @return this.
+     */
+    public ConvergenceThresholds setMinSteadyUtilisation(double minSteadyUtilisation)
+    {
+        this.minSteadyUtilisation.set(minSteadyUtilisation);
+        return this;
+    }
+
+    /**
+     * @param maxOscillation the maximum oscillation of a segment, relative
+     * to its steady-state bitrate.
+     * @return this.
+     */
+    public ConvergenceThresholds setMaxOscillation(double maxOscillation)
+    {
+        this.maxOscillation.set(maxOscillation);
+        return this;
+    }
+
+    /**
+     * Overrides the thresholds with the system properties
+     * <tt>&lt;prefix&gt;.max_converge_ms</tt>,
+     * <tt>.min_steady_utilisation</tt> and <tt>.max_oscillation</tt> which
+     * are set.
+     *
+     * @param prefix the prefix of the properties of the test.
+     * @return this.
+     */
+    public ConvergenceThresholds load(String prefix)
+    {
+        all().forEach(threshold -> threshold.load(prefix));
+        return this;
+    }
+
+    /**
+     * Checks a segment against the thresholds. A bitrate which never settles
+     * fails the time to converge.
+     *
+     * @param segment the segment.
+     * @return a description of the first threshold the segment does not
+     * meet, <tt>null</tt> if it meets all of them.
+     */
+    public String check(BweAnalyzer.Segment segment)
+    {
+        return Stream.of(
+                maxConvergeMs.check(segment.getSettleMs()),
+                minSteadyUtilisation.check(segment.getSteadyUtilisation()),
+                maxOscillation.check(segment.getOscillation()))
+            .filter(Objects::nonNull)
+            .findFirst()
+            .orElse(null);
+    }
+
+    /**
+     * Checks all the segments of a result against the thresholds.
+     *
+     * @param name the name of the analyzed bitrate, for the descriptions.
+     * @param result the result.
+     * @return the descriptions of the thresholds the segments do not meet.
+     */
+    public List<String> check(String name, BweAnalyzer.Result result)
+    {
+        List<String> failures = new ArrayList<>();
+        List<BweAnalyzer.Segment> segments = result.getSegments();
+        for (int i = 0; i < segments.size(); i++)
+        {
+            String failure = check(segments.get(i));
+            if (failure != null)
+            {
+                failures.add(name + " segment #" + i + ": " + failure);
+            }
+        }
+        return failures;
+    }
+
+    private Stream<Threshold> all()
+    {
+        return Stream.of(maxConvergeMs, minSteadyUtilisation, maxOscillation);
+    }
+
+    @Override
+    public String toString()
+    {
+        return all().map(Threshold::toString).collect(Collectors.joining(", "));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.analysis;
+
+/**
+ * In-place iterative radix-2 complex FFT.
+ */
+public class Fft
+{
+    /**
+     * @param n a positive size.
+     * @return the smallest power of two greater than or equal to <tt>n</tt>.
+     */
+    public static int size(int n)
+    {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    /**
+     * Transforms a complex signal in place.
+     *
+     * @param re the real parts.
+     * @param im the imaginary parts.
+     * @param n the number of samples, a power of two, at most the length of
+     * the arrays.
+     * @param inverse <tt>true</tt> for the inverse transform, which is
+     * scaled by <tt>1/n</tt>.
+     */
+    public static void transform(double[] re, double[] im, int n, boolean inverse)
+    {
+        if (Integer.bitCount(n) != 1)
+        {
+            throw new IllegalArgumentException("Not a power of two: " + n);
+        }
+
+        for (int i = 1, j = 0; i < n; i++)
+        {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1)
+            {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j)
+            {
+                double t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+
+        for (int len = 2; len <= n; len <<= 1)
+        {
+            double angle = (inverse ? 2 : -2) * Math.PI / len;
+            double wRe = Math.cos(angle), wIm = Math.sin(angle);
+            int half = len >> 1;
+            for (int i = 0; i < n; i += len)
+            {
+                double uRe = 1, uIm = 0;
+                for (int k = i; k < i + half; k++)
+                {
+                    int m = k + half;
+                    double vRe = re[m] * uRe - im[m] * uIm;
+                    double vIm = re[m] * uIm + im[m] * uRe;
+                    re[m] = re[k] - vRe;
+                    im[m] = im[k] - vIm;
+                    re[k] += vRe;
+                    im[k] += vIm;
+
+                    double t = uRe * wRe - uIm * wIm;
+                    uIm = uRe * wIm + uIm * wRe;
+                    uRe = t;
+                }
+            }
+        }
+
+        if (inverse)
+        {
+            for (int i = 0; i < n; i++)
+            {
+                re[i] /= n;
+                im[i] /= n;
+            }
+        }
+    }
+}
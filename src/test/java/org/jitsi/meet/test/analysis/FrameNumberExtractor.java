@@ -0,0 +1,54 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.analysis;
+
+/**
+ * Reads the number stamped on a frame of the test sequence by
+ * scripts/psnr-build-resources.sh: a QR code encoding the 1-based frame
+ * number, drawn at (10, 10) of the 1280x720 input frames.
+ * Implementations must be thread safe.
+ */
+public interface FrameNumberExtractor
+{
+    /**
+     * The value returned when no frame number could be read.
+     */
+    int NO_FRAME_NUMBER = -1;
+
+    /**
+     * The width of the frames of the stamped test sequence.
+     */
+    int STAMP_REFERENCE_WIDTH = 1280;
+
+    /**
+     * The offset of the stamp from the top left corner of the 1280x720 frames.
+     */
+    int STAMP_OFFSET = 10;
+
+    /**
+     * The size of the stamp in the 1280x720 frames: a version 1 QR code has
+     * 21 modules plus a 4 module quiet zone on both sides, 12 pixels each.
+     */
+    int STAMP_SIZE = (21 + 2 * 4) * 12;
+
+    /**
+     * Reads the frame number stamped on a frame.
+     *
+     * @param frame the frame, at any scale of the reference sequence.
+     * @return the frame number or {@link #NO_FRAME_NUMBER}.
+     */
+    int extract(YuvFrame frame);
+}
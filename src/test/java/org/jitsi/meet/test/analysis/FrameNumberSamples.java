@@ -0,0 +1,133 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.analysis;
+
+import java.util.*;
+
+/**
+ * The frame numbers read from the frames displayed by a video, with the time
+ * they were displayed, in display order. Not thread safe.
+ */
+public class FrameNumberSamples
+{
+    private double[] timestamps;
+    private int[] frameNumbers;
+    private int size;
+    private long dropped;
+
+    /**
+     * Creates new empty {@link FrameNumberSamples}.
+     */
+    public FrameNumberSamples()
+    {
+        this(64);
+    }
+
+    /**
+     * Creates new empty {@link FrameNumberSamples}.
+     *
+     * @param capacity the initial capacity.
+     */
+    public FrameNumberSamples(int capacity)
+    {
+        timestamps = new double[Math.max(1, capacity)];
+        frameNumbers = new int[timestamps.length];
+    }
+
+    /**
+     * Appends a sample.
+     *
+     * @param timestamp the time the frame was displayed, in milliseconds
+     * since the epoch of the clock of the page.
+     * @param frameNumber the frame number or
+     * {@link FrameNumberExtractor#NO_FRAME_NUMBER}.
+     * @return this instance.
+     */
+    public FrameNumberSamples add(double timestamp, int frameNumber)
+    {
+        if (size == timestamps.length)
+        {
+            timestamps = Arrays.copyOf(timestamps, 2 * size);
+            frameNumbers = Arrays.copyOf(frameNumbers, 2 * size);
+        }
+        timestamps[size] = timestamp;
+        frameNumbers[size] = frameNumber;
+        size++;
+        return this;
+    }
+
+    /**
+     * Appends other samples, which must be more recent.
+     *
+     * @param other the samples to append.
+     * @return this instance.
+     */
+    public FrameNumberSamples addAll(FrameNumberSamples other)
+    {
+        for (int i = 0; i < other.size; i++)
+        {
+            add(other.timestamps[i], other.frameNumbers[i]);
+        }
+        dropped += other.dropped;
+        return this;
+    }
+
+    /**
+     * Counts samples lost before they could be collected.
+     *
+     * @param count the number of samples lost.
+     */
+    public void addDropped(long count)
+    {
+        dropped += count;
+    }
+
+    /**
+     * @return the number of samples.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @param i the index of a sample.
+     * @return the time the frame was displayed, in milliseconds since the
+     * epoch of the clock of the page.
+     */
+    public double getTimestamp(int i)
+    {
+        return timestamps[i];
+    }
+
+    /**
+     * @param i the index of a sample.
+     * @return the frame number or
+     * {@link FrameNumberExtractor#NO_FRAME_NUMBER}.
+     */
+    public int getFrameNumber(int i)
+    {
+        return frameNumbers[i];
+    }
+
+    /**
+     * @return the number of samples lost before they could be collected.
+     */
+    public long getDropped()
+    {
+        return dropped;
+    }
+}
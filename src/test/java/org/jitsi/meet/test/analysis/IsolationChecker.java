@@ -0,0 +1,246 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.analysis;
+
+import java.lang.management.*;
+import java.util.*;
+
+/**
+ * Flags the runs of a benchmark, executed concurrently, which may have
+ * disturbed each other. A run is flagged when:
+ * - another run overlapping it was shaped by the same shaping instance,
+ * such as the same port of the tc script;
+ * - its bitrate exceeded the capacity of a segment of its schedule, so its
+ * shaping was bypassed or replaced, by the runs overlapping it;
+ * - the host was saturated while it ran, according to the system load
+ * average sampled with {@link #sampleLoad()}, which is only meaningful when
+ * the browsers run on the host of the tests.
+ *
+ * Thread safe.
+ */
+public class IsolationChecker
+{
+    /**
+     * The bitrate over the capacity of a segment, minus one, beyond which
+     * the shaping of a run is considered bypassed.
+     */
+    public static final double LEAK_TOLERANCE = 0.1;
+
+    /**
+     * The load average per processor beyond which the host is considered
+     * saturated.
+     */
+    public static final double MAX_LOAD_PER_PROCESSOR = 1;
+
+    private final List<Run> runs = new ArrayList<>();
+
+    /**
+     * The load average per processor by time.
+     */
+    private final TreeMap<Long, Double> load = new TreeMap<>();
+
+    /**
+     * Starts a run.
+     *
+     * @param name the name of the run.
+     * @param shaping identifies the shaping instance of the run.
+     * @return the run.
+     */
+    public synchronized Run start(String name, String shaping)
+    {
+        Run run = new Run(name, shaping, System.currentTimeMillis());
+        runs.add(run);
+        return run;
+    }
+
+    /**
+     * Samples the system load average of the host, does nothing when it is
+     * not available.
+     */
+    public void sampleLoad()
+    {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        double loadAverage = os.getSystemLoadAverage();
+        if (loadAverage >= 0)
+        {
+            synchronized (this)
+            {
+                load.put(System.currentTimeMillis(), loadAverage / os.getAvailableProcessors());
+            }
+        }
+    }
+
+    /**
+     * Checks the finished runs.
+     *
+     * @return the reasons why each of the flagged runs may have been
+     * disturbed, by run name.
+     */
+    public synchronized Map<String, List<String>> check()
+    {
+        Map<String, List<String>> flags = new LinkedHashMap<>();
+        for (Run run : runs)
+        {
+            List<String> reasons = run.endMs < 0 ? Collections.emptyList() : check(run);
+            if (!reasons.isEmpty())
+            {
+                flags.put(run.name, reasons);
+            }
+        }
+        return flags;
+    }
+
+    /**
+     * Checks a finished run. All the runs which overlap it have started by
+     * then, so it is complete as soon as the result of the run is set.
+     */
+    private List<String> check(Run run)
+    {
+        List<String> reasons = new ArrayList<>();
+        List<String> overlapping = new ArrayList<>();
+        for (Run other : runs)
+        {
+            if (other != run && other.overlaps(run))
+            {
+                overlapping.add(other.name);
+                if (other.shaping.equals(run.shaping))
+                {
+                    reasons.add("shared " + run.shaping + " with " + other.name);
+                }
+            }
+        }
+
+        if (run.result != null)
+        {
+            for (BweAnalyzer.Segment segment : run.result.getSegments())
+            {
+                if (segment.getUtilisation() > 1 + LEAK_TOLERANCE)
+                {
+                    reasons.add(String.format(
+                        "received %.0f kbps over a capacity of %.0f kbps, overlapping %s",
+                        segment.getMeanBps() / 1000, segment.getCapacityBps() / 1000, overlapping));
+                }
+            }
+        }
+
+        Double maxLoad = load.subMap(run.startMs, true, run.endMs, true).values().stream()
+            .max(Double::compare).orElse(null);
+        if (maxLoad != null && maxLoad > MAX_LOAD_PER_PROCESSOR)
+        {
+            reasons.add(String.format(
+                "host load of %.2f per processor, overlapping %s", maxLoad, overlapping));
+        }
+        return reasons;
+    }
+
+    /**
+     * Formats the runs and the reasons why they are flagged.
+     */
+    @Override
+    public synchronized String toString()
+    {
+        Map<String, List<String>> flags = check();
+        StringBuilder sb = new StringBuilder(String.format(
+            "Isolation of %d runs, %d flagged%n", runs.size(), flags.size()));
+        for (Run run : runs)
+        {
+            sb.append(String.format("%-40s %-24s %s%n", run.name, run.shaping,
+                flags.containsKey(run.name) ? "DISTURBED" : "ok"));
+            for (String reason : flags.getOrDefault(run.name, Collections.emptyList()))
+            {
+                sb.append("    ").append(reason).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A run, from the start to the end of its shaping.
+     */
+    public class Run
+    {
+        private final String name;
+        private final String shaping;
+        private final long startMs;
+        private long endMs = -1;
+        private BweAnalyzer.Result result;
+
+        private Run(String name, String shaping, long startMs)
+        {
+            this.name = name;
+            this.shaping = shaping;
+            this.startMs = startMs;
+        }
+
+        /**
+         * Ends the run.
+         */
+        public void finish()
+        {
+            synchronized (IsolationChecker.this)
+            {
+                endMs = System.currentTimeMillis();
+            }
+        }
+
+        /**
+         * Sets the analysis of the run, to check its bitrate against its
+         * schedule.
+         *
+         * @param result the analysis.
+         */
+        public void setResult(BweAnalyzer.Result result)
+        {
+            synchronized (IsolationChecker.this)
+            {
+                this.result = result;
+            }
+        }
+
+        /**
+         * Checks the run, once it is finished and its result is set.
+         *
+         * @return the reasons why the run may have been disturbed, empty if
+         * none.
+         */
+        public List<String> check()
+        {
+            synchronized (IsolationChecker.this)
+            {
+                if (endMs < 0)
+                {
+                    throw new IllegalStateException("The run " + name + " is not finished");
+                }
+                return IsolationChecker.this.check(this);
+            }
+        }
+
+        /**
+         * @return the name of the run.
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        private boolean overlaps(Run other)
+        {
+            long end = endMs < 0 ? Long.MAX_VALUE : endMs;
+            long otherEnd = other.endMs < 0 ? Long.MAX_VALUE : other.endMs;
+            return startMs < otherEnd && other.startMs < end;
+        }
+    }
+}
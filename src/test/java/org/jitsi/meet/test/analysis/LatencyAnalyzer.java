@@ -0,0 +1,274 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.analysis;
+
+import org.jitsi.meet.test.base.stats.*;
+
+import java.util.*;
+
+/**
+ * Computes the glass-to-glass delay of every frame of a stamped sequence
+ * from the time it was first displayed by the sender, in its local video,
+ * and by the receiver. The receiver times are brought to the sender clock
+ * with the offset between the clocks of the two pages.
+ *
+ * The sequence loops, so a frame number is displayed once per loop: a
+ * received frame is matched with the latest display of the same number by
+ * the sender before it was received, within the maximum delay, which must
+ * be shorter than the duration of the sequence.
+ */
+public class LatencyAnalyzer
+{
+    /**
+     * The default maximum delay in milliseconds, longer delays are not
+     * matched.
+     */
+    public static final double DEFAULT_MAX_DELAY_MS = 5000;
+
+    /**
+     * The lower bound of the delay histograms, below zero since the error of
+     * the clock offset can make the delays of the fastest frames negative.
+     */
+    public static final double HISTOGRAM_MIN_MS = -500;
+
+    /**
+     * The upper bound of the delay histograms.
+     */
+    public static final double HISTOGRAM_MAX_MS = 10000;
+
+    /**
+     * The width of the bins of the delay histograms.
+     */
+    public static final double HISTOGRAM_BIN_MS = 1;
+
+    /**
+     * How much earlier than the sender a receiver can display a frame, in
+     * milliseconds, because of the error of the clock offset.
+     */
+    private final double toleranceMs;
+
+    /**
+     * The maximum delay in milliseconds.
+     */
+    private final double maxDelayMs;
+
+    /**
+     * Creates new {@link LatencyAnalyzer}.
+     *
+     * @param toleranceMs how much earlier than the sender a receiver can
+     * display a frame, the uncertainty of the clock offset usually.
+     * @param maxDelayMs the maximum delay in milliseconds.
+     */
+    public LatencyAnalyzer(double toleranceMs, double maxDelayMs)
+    {
+        this.toleranceMs = toleranceMs;
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    /**
+     * @return an empty histogram of delays, all the histograms of delays
+     * have the same bins and can be merged.
+     */
+    public static Histogram newHistogram()
+    {
+        return new Histogram(HISTOGRAM_MIN_MS, HISTOGRAM_MAX_MS, HISTOGRAM_BIN_MS);
+    }
+
+    /**
+     * Computes the delay of the frames displayed by a receiver.
+     *
+     * @param sender the frames displayed by the local video of the sender.
+     * @param receiver the frames displayed by the remote video of the
+     * receiver.
+     * @param clockOffsetMs the clock of the receiver page minus the clock of
+     * the sender page, in milliseconds.
+     * @return the delays.
+     */
+    public Result analyze(FrameNumberSamples sender, FrameNumberSamples receiver, double clockOffsetMs)
+    {
+        Map<Integer, double[]> sent = firstDisplays(sender);
+
+        List<Frame> frames = new ArrayList<>();
+        Histogram histogram = newHistogram();
+        int unmatched = 0;
+        int previous = FrameNumberExtractor.NO_FRAME_NUMBER;
+        for (int i = 0; i < receiver.size(); i++)
+        {
+            int frameNumber = receiver.getFrameNumber(i);
+            if (frameNumber == FrameNumberExtractor.NO_FRAME_NUMBER || frameNumber == previous)
+            {
+                continue;
+            }
+            previous = frameNumber;
+
+            double received = receiver.getTimestamp(i) - clockOffsetMs;
+            double[] times = sent.get(frameNumber);
+            int j = times == null ? -1 : latestBefore(times, received + toleranceMs);
+            if (j < 0 || received - times[j] > maxDelayMs)
+            {
+                unmatched++;
+                continue;
+            }
+
+            double delay = received - times[j];
+            frames.add(new Frame(frameNumber, received, delay));
+            histogram.add(delay);
+        }
+
+        return new Result(frames, histogram, unmatched);
+    }
+
+    /**
+     * Collects the times each frame number was first displayed, once per
+     * loop of the sequence.
+     *
+     * @return the sorted times per frame number, the arrays end with NaN
+     * padding.
+     */
+    private static Map<Integer, double[]> firstDisplays(FrameNumberSamples samples)
+    {
+        Map<Integer, double[]> times = new HashMap<>();
+        Map<Integer, Integer> counts = new HashMap<>();
+        int previous = FrameNumberExtractor.NO_FRAME_NUMBER;
+        for (int i = 0; i < samples.size(); i++)
+        {
+            int frameNumber = samples.getFrameNumber(i);
+            if (frameNumber == FrameNumberExtractor.NO_FRAME_NUMBER || frameNumber == previous)
+            {
+                continue;
+            }
+            previous = frameNumber;
+
+            int count = counts.getOrDefault(frameNumber, 0);
+            double[] t = times.get(frameNumber);
+            if (t == null || count == t.length)
+            {
+                t = t == null ? new double[4] : Arrays.copyOf(t, 2 * t.length);
+                Arrays.fill(t, count, t.length, Double.NaN);
+                times.put(frameNumber, t);
+            }
+            t[count] = samples.getTimestamp(i);
+            counts.put(frameNumber, count + 1);
+        }
+        return times;
+    }
+
+    /**
+     * @return the index of the latest time not after the given time, -1 if
+     * none.
+     */
+    private static int latestBefore(double[] times, double time)
+    {
+        int latest = -1;
+        for (int i = 0; i < times.length && !Double.isNaN(times[i]) && times[i] <= time; i++)
+        {
+            latest = i;
+        }
+        return latest;
+    }
+
+    /**
+     * The delay of a received frame.
+     */
+    public static class Frame
+    {
+        private final int frameNumber;
+        private final double time;
+        private final double delayMs;
+
+        Frame(int frameNumber, double time, double delayMs)
+        {
+            this.frameNumber = frameNumber;
+            this.time = time;
+            this.delayMs = delayMs;
+        }
+
+        /**
+         * @return the number stamped on the frame.
+         */
+        public int getFrameNumber()
+        {
+            return frameNumber;
+        }
+
+        /**
+         * @return the time the receiver displayed the frame, in milliseconds
+         * since the epoch of the sender clock.
+         */
+        public double getTime()
+        {
+            return time;
+        }
+
+        /**
+         * @return the glass-to-glass delay in milliseconds.
+         */
+        public double getDelayMs()
+        {
+            return delayMs;
+        }
+    }
+
+    /**
+     * The delays of the frames displayed by a receiver.
+     */
+    public static class Result
+    {
+        private final List<Frame> frames;
+        private final Histogram histogram;
+        private final int unmatched;
+
+        Result(List<Frame> frames, Histogram histogram, int unmatched)
+        {
+            this.frames = Collections.unmodifiableList(frames);
+            this.histogram = histogram;
+            this.unmatched = unmatched;
+        }
+
+        /**
+         * @return the delay of every received frame which was matched, in
+         * display order.
+         */
+        public List<Frame> getFrames()
+        {
+            return frames;
+        }
+
+        /**
+         * @return the distribution of the delays, see
+         * {@link LatencyAnalyzer#newHistogram()}.
+         */
+        public Histogram getHistogram()
+        {
+            return histogram;
+        }
+
+        /**
+         * @return the number of received frames which were not displayed by
+         * the sender within the maximum delay.
+         */
+        public int getUnmatched()
+        {
+            return unmatched;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "glass-to-glass delay ms: " + histogram + ", unmatched=" + unmatched;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.analysis;
+
+import java.nio.*;
+
+/**
+ * Peak signal-to-noise ratio of a frame against a reference, per plane.
+ */
+public class Psnr
+{
+    /**
+     * The value reported for identical planes, which have an infinite PSNR.
+     */
+    public static final double MAX_PSNR = 100;
+
+    /**
+     * Computes the PSNR of a frame. The frame is scaled to the size of the
+     * reference first if needed. If either frame has the luma plane only,
+     * only the luma is compared: the PSNR of the chroma planes is NaN and the
+     * overall PSNR is the luma PSNR.
+     *
+     * @param frame the frame to evaluate.
+     * @param reference the reference frame.
+     * @return the PSNR of every plane and of the whole frame.
+     */
+    public static Result compute(YuvFrame frame, YuvFrame reference)
+    {
+        YuvFrame scaled = frame.resize(reference.getWidth(), reference.getHeight());
+        int lastPlane = frame.hasChroma() && reference.hasChroma() ? YuvFrame.V : YuvFrame.Y;
+
+        double[] planes = { Double.NaN, Double.NaN, Double.NaN };
+        long totalError = 0;
+        long totalSamples = 0;
+        for (int p = YuvFrame.Y; p <= lastPlane; p++)
+        {
+            int samples = reference.getPlaneWidth(p) * reference.getPlaneHeight(p);
+            long error = squaredError(scaled.getPlane(p), reference.getPlane(p), samples);
+
+            planes[p] = toPsnr(error, samples);
+            totalError += error;
+            totalSamples += samples;
+        }
+
+        return new Result(planes[YuvFrame.Y], planes[YuvFrame.U], planes[YuvFrame.V], toPsnr(totalError, totalSamples));
+    }
+
+    /**
+     * Sums the squared differences of two planes.
+     *
+     * @param a the first plane.
+     * @param b the second plane.
+     * @param length the number of samples to compare.
+     * @return the sum of the squared differences.
+     */
+    public static long squaredError(ByteBuffer a, ByteBuffer b, int length)
+    {
+        long error = 0;
+        for (int i = 0; i < length; i++)
+        {
+            int d = (a.get(i) & 0xFF) - (b.get(i) & 0xFF);
+            error += d * d;
+        }
+        return error;
+    }
+
+    /**
+     * Converts a squared error to a PSNR in dB for 8 bit samples.
+     *
+     * @param squaredError the sum of the squared differences.
+     * @param samples the number of samples.
+     * @return the PSNR, at most {@link #MAX_PSNR}.
+     */
+    public static double toPsnr(long squaredError, long samples)
+    {
+        if (squaredError == 0)
+        {
+            return MAX_PSNR;
+        }
+
+        double mse = (double) squaredError / samples;
+        return Math.min(MAX_PSNR, 10 * Math.log10(255 * 255 / mse));
+    }
+
+    /**
+     * The PSNR of a frame.
+     */
+    public static class Result
+    {
+        private final double y;
+        private final double u;
+        private final double v;
+        private final double overall;
+
+        Result(double y, double u, double v, double overall)
+        {
+            this.y = y;
+            this.u = u;
+            this.v = v;
+            this.overall = overall;
+        }
+
+        /**
+         * @return the PSNR of the luma plane.
+         */
+        public double getY()
+        {
+            return y;
+        }
+
+        /**
+         * @return the PSNR of the U plane.
+         */
+        public double getU()
+        {
+            return u;
+        }
+
+        /**
+         * @return the PSNR of the V plane.
+         */
+        public double getV()
+        {
+            return v;
+        }
+
+        /**
+         * @return the PSNR of all the samples of the frame.
+         */
+        public double getOverall()
+        {
+            return overall;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%.4f (Y %.4f U %.4f V %.4f)", overall, y, u, v);
+        }
+    }
+}
@@ -0,0 +1,461 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.analysis;
+
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Computes the PSNR, SSIM and MS-SSIM of captured frames against the stamped
+ * reference sequence in memory, and their blockiness and blur. Every
+ * submitted frame is decoded, its number extracted and compared to the
+ * reference frame with the same number on a {@link ForkJoinPool}, so the
+ * frames of all the videos are analysed in parallel while the capture is
+ * still being downloaded. The results of a video are put back in capture
+ * order to count frozen and skipped frames.
+ */
+public class PsnrAnalyzer
+    implements AutoCloseable
+{
+    /**
+     * The pool running the analysis.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The reference sequence.
+     */
+    private final ReferenceFrames reference;
+
+    /**
+     * Reads the frame numbers.
+     */
+    private final FrameNumberExtractor extractor;
+
+    /**
+     * Creates new {@link PsnrAnalyzer} using all the processors.
+     *
+     * @param reference the reference sequence.
+     * @param extractor reads the frame numbers.
+     */
+    public PsnrAnalyzer(ReferenceFrames reference, FrameNumberExtractor extractor)
+    {
+        this(reference, extractor, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates new {@link PsnrAnalyzer}.
+     *
+     * @param reference the reference sequence.
+     * @param extractor reads the frame numbers.
+     * @param parallelism the number of frames analysed concurrently.
+     */
+    public PsnrAnalyzer(ReferenceFrames reference, FrameNumberExtractor extractor, int parallelism)
+    {
+        this.reference = Objects.requireNonNull(reference, "reference");
+        this.extractor = Objects.requireNonNull(extractor, "extractor");
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Starts the analysis of a video.
+     *
+     * @param id the id of the video.
+     * @return the {@link Video} to submit the frames to.
+     */
+    public Video newVideo(String id)
+    {
+        return new Video(id);
+    }
+
+    /**
+     * Analyses a single frame.
+     *
+     * @param index the index of the frame in the capture.
+     * @param frame the captured frame or <tt>null</tt> if it was dropped.
+     * @return the result.
+     * @throws Exception if the reference frame cannot be read.
+     */
+    public FrameResult analyze(int index, YuvFrame frame)
+        throws Exception
+    {
+        if (frame == null)
+        {
+            return new FrameResult(
+                index, FrameNumberExtractor.NO_FRAME_NUMBER, null, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+        }
+
+        int frameNumber = extractor.extract(frame);
+        YuvFrame referenceFrame
+            = frameNumber == FrameNumberExtractor.NO_FRAME_NUMBER ? null : reference.getFrame(frameNumber);
+
+        ByteBuffer luma = frame.getPlane(YuvFrame.Y);
+        double blockiness = Artifacts.blockiness(luma, frame.getWidth(), frame.getHeight());
+        double blur = Artifacts.blur(luma, frame.getWidth(), frame.getHeight());
+        if (referenceFrame == null)
+        {
+            return new FrameResult(index, frameNumber, null, Double.NaN, Double.NaN, blockiness, blur);
+        }
+
+        int w = referenceFrame.getWidth(), h = referenceFrame.getHeight();
+        YuvFrame scaled = frame.resize(w, h);
+        ByteBuffer scaledLuma = scaled.getPlane(YuvFrame.Y);
+        ByteBuffer referenceLuma = referenceFrame.getPlane(YuvFrame.Y);
+
+        return new FrameResult(
+            index,
+            frameNumber,
+            Psnr.compute(scaled, referenceFrame),
+            Ssim.compute(scaledLuma, referenceLuma, w, h),
+            Ssim.computeMultiScale(scaledLuma, referenceLuma, w, h),
+            blockiness,
+            blur);
+    }
+
+    /**
+     * Stops the pool. Pending analyses are cancelled.
+     */
+    @Override
+    public void close()
+    {
+        pool.shutdownNow();
+    }
+
+    /**
+     * The frames of a captured video being analysed.
+     */
+    public class Video
+    {
+        private final String id;
+        private final List<Future<FrameResult>> results = new ArrayList<>();
+
+        private Video(String id)
+        {
+            this.id = id;
+        }
+
+        /**
+         * Schedules the analysis of a frame. Frames must be submitted in
+         * capture order.
+         *
+         * @param frame decodes the captured frame, called on the pool,
+         * returns <tt>null</tt> for a dropped frame.
+         * @return the pending result, to know when the frame is no longer
+         * used.
+         */
+        public synchronized Future<FrameResult> submit(Callable<YuvFrame> frame)
+        {
+            int index = results.size();
+            Future<FrameResult> result = pool.submit(() -> analyze(index, frame.call()));
+            results.add(result);
+            return result;
+        }
+
+        /**
+         * Waits for the analysis of all the submitted frames.
+         *
+         * @return the results.
+         * @throws ExecutionException if the analysis of a frame failed.
+         * @throws InterruptedException if interrupted while waiting.
+         */
+        public synchronized VideoResult await()
+            throws ExecutionException, InterruptedException
+        {
+            List<FrameResult> frames = new ArrayList<>(results.size());
+            for (Future<FrameResult> f : results)
+            {
+                frames.add(f.get());
+            }
+            return new VideoResult(id, frames);
+        }
+    }
+
+    /**
+     * The analysis of a captured frame.
+     */
+    public static class FrameResult
+    {
+        private final int index;
+        private final int frameNumber;
+        private final Psnr.Result psnr;
+        private final double ssim;
+        private final double msSsim;
+        private final double blockiness;
+        private final double blur;
+
+        FrameResult(
+            int index, int frameNumber, Psnr.Result psnr, double ssim, double msSsim, double blockiness, double blur)
+        {
+            this.index = index;
+            this.frameNumber = frameNumber;
+            this.psnr = psnr;
+            this.ssim = ssim;
+            this.msSsim = msSsim;
+            this.blockiness = blockiness;
+            this.blur = blur;
+        }
+
+        /**
+         * @return the index of the frame in the capture.
+         */
+        public int getIndex()
+        {
+            return index;
+        }
+
+        /**
+         * @return the number stamped on the frame or
+         * {@link FrameNumberExtractor#NO_FRAME_NUMBER}.
+         */
+        public int getFrameNumber()
+        {
+            return frameNumber;
+        }
+
+        /**
+         * @return the PSNR or <tt>null</tt> if there is no matching reference
+         * frame.
+         */
+        public Psnr.Result getPsnr()
+        {
+            return psnr;
+        }
+
+        /**
+         * @return the overall PSNR or -1 if there is no matching reference
+         * frame.
+         */
+        public double getOverallPsnr()
+        {
+            return psnr == null ? -1 : psnr.getOverall();
+        }
+
+        /**
+         * @return the SSIM of the luma or NaN if there is no matching
+         * reference frame.
+         */
+        public double getSsim()
+        {
+            return ssim;
+        }
+
+        /**
+         * @return the MS-SSIM of the luma or NaN if there is no matching
+         * reference frame.
+         */
+        public double getMsSsim()
+        {
+            return msSsim;
+        }
+
+        /**
+         * @return the blockiness of the frame, see
+         * {@link Artifacts#blockiness}, NaN if the frame was dropped.
+         */
+        public double getBlockiness()
+        {
+            return blockiness;
+        }
+
+        /**
+         * @return the blur of the frame, see {@link Artifacts#blur}, NaN if
+         * the frame was dropped.
+         */
+        public double getBlur()
+        {
+            return blur;
+        }
+
+        @Override
+        public String toString()
+        {
+            return frameNumber + " " + (psnr == null ? "-1" : psnr.toString())
+                + String.format(
+                    " ssim %.4f ms-ssim %.4f blockiness %.3f blur %.3f", ssim, msSsim, blockiness, blur);
+        }
+    }
+
+    /**
+     * The analysis of all the frames of a captured video.
+     */
+    public static class VideoResult
+    {
+        private final String id;
+        private final List<FrameResult> frames;
+        private int numFrozenFrames;
+        private int numSkippedFrames;
+        private double totalPsnr;
+        private final Mean ssim = new Mean();
+        private final Mean msSsim = new Mean();
+        private final Mean blockiness = new Mean();
+        private final Mean blur = new Mean();
+
+        VideoResult(String id, List<FrameResult> frames)
+        {
+            this.id = id;
+            this.frames = Collections.unmodifiableList(frames);
+
+            int prevFrameNumber = -1;
+            for (FrameResult frame : frames)
+            {
+                int frameNum = frame.getFrameNumber();
+                if (prevFrameNumber != -1 && frameNum == prevFrameNumber)
+                {
+                    numFrozenFrames++;
+                }
+                else if (prevFrameNumber != -1 && frameNum != prevFrameNumber + 1)
+                {
+                    // On roll-over the frame number should be 1, anything
+                    // more than that are skipped frames.
+                    numSkippedFrames += frameNum < prevFrameNumber
+                        ? frameNum - 1 : frameNum - (prevFrameNumber + 1);
+                }
+                prevFrameNumber = frameNum;
+                totalPsnr += frame.getOverallPsnr();
+                ssim.add(frame.getSsim());
+                msSsim.add(frame.getMsSsim());
+                blockiness.add(frame.getBlockiness());
+                blur.add(frame.getBlur());
+            }
+        }
+
+        /**
+         * @return the id of the video.
+         */
+        public String getId()
+        {
+            return id;
+        }
+
+        /**
+         * @return the results of the frames, in capture order.
+         */
+        public List<FrameResult> getFrames()
+        {
+            return frames;
+        }
+
+        /**
+         * @return the average overall PSNR of the frames, frames without a
+         * matching reference frame counting as -1.
+         */
+        public double getAveragePsnr()
+        {
+            return frames.isEmpty() ? 0 : totalPsnr / frames.size();
+        }
+
+        /**
+         * @return the average SSIM of the frames with a matching reference
+         * frame, NaN if none.
+         */
+        public double getAverageSsim()
+        {
+            return ssim.getAverage();
+        }
+
+        /**
+         * @return the lowest SSIM of the frames, NaN if none has a matching
+         * reference frame.
+         */
+        public double getMinSsim()
+        {
+            return ssim.getMin();
+        }
+
+        /**
+         * @return the average MS-SSIM of the frames with a matching
+         * reference frame, NaN if none.
+         */
+        public double getAverageMsSsim()
+        {
+            return msSsim.getAverage();
+        }
+
+        /**
+         * @return the lowest MS-SSIM of the frames, NaN if none has a
+         * matching reference frame.
+         */
+        public double getMinMsSsim()
+        {
+            return msSsim.getMin();
+        }
+
+        /**
+         * @return the average blockiness of the frames.
+         */
+        public double getAverageBlockiness()
+        {
+            return blockiness.getAverage();
+        }
+
+        /**
+         * @return the average blur of the frames.
+         */
+        public double getAverageBlur()
+        {
+            return blur.getAverage();
+        }
+
+        /**
+         * @return the number of frames with the same number as the previous
+         * one.
+         */
+        public int getNumFrozenFrames()
+        {
+            return numFrozenFrames;
+        }
+
+        /**
+         * @return the number of frames of the reference sequence missing
+         * from the capture.
+         */
+        public int getNumSkippedFrames()
+        {
+            return numSkippedFrames;
+        }
+    }
+
+    /**
+     * The mean and minimum of values, ignoring NaN.
+     */
+    private static class Mean
+    {
+        private double sum;
+        private double min = Double.NaN;
+        private int count;
+
+        void add(double value)
+        {
+            if (!Double.isNaN(value))
+            {
+                sum += value;
+                min = count == 0 ? value : Math.min(min, value);
+                count++;
+            }
+        }
+
+        double getAverage()
+        {
+            return count == 0 ? Double.NaN : sum / count;
+        }
+
+        double getMin()
+        {
+            return min;
+        }
+    }
+}
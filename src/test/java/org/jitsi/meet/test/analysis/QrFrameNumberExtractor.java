@@ -0,0 +1,534 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.analysis;
+
+import java.nio.*;
+
+/**
+ * {@link FrameNumberExtractor} decoding the QR code in the JVM. The stamp is
+ * not searched for: its modules are sampled where the stamp is drawn, scaled
+ * to the size of the frame, so only the 441 modules of the symbol are read
+ * from the luma plane. The symbol is then decoded: format information,
+ * unmasking, Reed-Solomon error correction and numeric data. If it cannot be
+ * decoded, which happens when the frame has been scaled with a slightly
+ * different geometry, the modules are sampled again a quarter of a module
+ * away in each direction. The modules sampled in the pages by
+ * QualityProbe.js are decoded by {@link #decodeModules(boolean[])} as well.
+ *
+ * Thread safe, a frame is decoded in a few microseconds.
+ */
+public class QrFrameNumberExtractor
+    implements FrameNumberExtractor
+{
+    /**
+     * The number of modules per side of a version 1 symbol.
+     */
+    public static final int QR_SIZE = 21;
+
+    /**
+     * The size of a module in the 1280x720 frames.
+     */
+    private static final int MODULE_SIZE = 12;
+
+    /**
+     * The offset of the symbol from the top left corner of the 1280x720
+     * frames, past the quiet zone.
+     */
+    private static final int SYMBOL_OFFSET = STAMP_OFFSET + 4 * MODULE_SIZE;
+
+    /**
+     * The number of codewords of a version 1 symbol, in a single block.
+     */
+    private static final int CODEWORDS = 26;
+
+    /**
+     * The number of data codewords of a version 1 symbol, by error correction
+     * level bits (M, L, H, Q).
+     */
+    private static final int[] DATA_CODEWORDS = { 16, 19, 9, 13 };
+
+    /**
+     * The minimum difference between the darkest and the brightest modules.
+     */
+    private static final int MIN_CONTRAST = 32;
+
+    /**
+     * The shifts, in modules, of the successive attempts to sample the
+     * symbol.
+     */
+    private static final double[][] SHIFTS = {
+        { 0, 0 },
+        { -0.25, 0 }, { 0.25, 0 }, { 0, -0.25 }, { 0, 0.25 },
+        { -0.25, -0.25 }, { 0.25, -0.25 }, { -0.25, 0.25 }, { 0.25, 0.25 }
+    };
+
+    private static final int[] GF_EXP = new int[512];
+    private static final int[] GF_LOG = new int[256];
+
+    /**
+     * The 32 valid format information codewords, masked, by error correction
+     * level bits and mask pattern.
+     */
+    private static final int[] FORMAT_CODEWORDS = new int[32];
+
+    static
+    {
+        int x = 1;
+        for (int i = 0; i < 255; i++)
+        {
+            GF_EXP[i] = x;
+            GF_LOG[x] = i;
+            x <<= 1;
+            if ((x & 0x100) != 0)
+            {
+                x ^= 0x11D;
+            }
+        }
+        for (int i = 255; i < GF_EXP.length; i++)
+        {
+            GF_EXP[i] = GF_EXP[i - 255];
+        }
+
+        for (int data = 0; data < FORMAT_CODEWORDS.length; data++)
+        {
+            int rem = data << 10;
+            for (int bit = 14; bit >= 10; bit--)
+            {
+                if ((rem & (1 << bit)) != 0)
+                {
+                    rem ^= 0x537 << (bit - 10);
+                }
+            }
+            FORMAT_CODEWORDS[data] = ((data << 10) | rem) ^ 0x5412;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int extract(YuvFrame frame)
+    {
+        return decode(frame.getPlane(YuvFrame.Y), frame.getWidth(), frame.getHeight());
+    }
+
+    /**
+     * Reads the frame number stamped on a luma plane.
+     *
+     * @param luma the luma plane, one byte per pixel, row by row.
+     * @param width the width of the plane.
+     * @param height the height of the plane.
+     * @return the frame number or {@link #NO_FRAME_NUMBER}.
+     */
+    public static int decode(ByteBuffer luma, int width, int height)
+    {
+        double moduleSize = (double) MODULE_SIZE * width / STAMP_REFERENCE_WIDTH;
+        double origin = (double) SYMBOL_OFFSET * width / STAMP_REFERENCE_WIDTH;
+        if (origin + (QR_SIZE + 0.5) * moduleSize > Math.min(width, height))
+        {
+            return NO_FRAME_NUMBER;
+        }
+
+        boolean[] modules = new boolean[QR_SIZE * QR_SIZE];
+        for (double[] shift : SHIFTS)
+        {
+            if (sample(
+                luma, width, height,
+                origin + shift[0] * moduleSize, origin + shift[1] * moduleSize, moduleSize,
+                modules))
+            {
+                int frameNumber = decodeModules(modules);
+                if (frameNumber != NO_FRAME_NUMBER)
+                {
+                    return frameNumber;
+                }
+            }
+        }
+        return NO_FRAME_NUMBER;
+    }
+
+    /**
+     * Samples the modules of the symbol: the mean of the central half of
+     * every module, thresholded halfway between the darkest and the brightest
+     * module.
+     *
+     * @return <tt>false</tt> if the contrast is too low for a symbol.
+     */
+    private static boolean sample(
+        ByteBuffer luma, int width, int height, double x0, double y0, double moduleSize, boolean[] modules)
+    {
+        int[] levels = new int[modules.length];
+        int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        double half = Math.max(0.5, moduleSize / 4);
+        for (int my = 0; my < QR_SIZE; my++)
+        {
+            double cy = y0 + (my + 0.5) * moduleSize;
+            int top = clamp((int) Math.round(cy - half), height);
+            int bottom = clamp((int) Math.round(cy + half) - 1, height);
+            for (int mx = 0; mx < QR_SIZE; mx++)
+            {
+                double cx = x0 + (mx + 0.5) * moduleSize;
+                int left = clamp((int) Math.round(cx - half), width);
+                int right = clamp((int) Math.round(cx + half) - 1, width);
+
+                int sum = 0, count = 0;
+                for (int y = top; y <= bottom; y++)
+                {
+                    int row = y * width;
+                    for (int x = left; x <= right; x++)
+                    {
+                        sum += luma.get(row + x) & 0xFF;
+                        count++;
+                    }
+                }
+                int level = count == 0 ? 0 : sum / count;
+                levels[my * QR_SIZE + mx] = level;
+                min = Math.min(min, level);
+                max = Math.max(max, level);
+            }
+        }
+        if (max - min < MIN_CONTRAST)
+        {
+            return false;
+        }
+
+        int threshold = (min + max) / 2;
+        for (int i = 0; i < modules.length; i++)
+        {
+            modules[i] = levels[i] < threshold;
+        }
+        return true;
+    }
+
+    private static int clamp(int value, int size)
+    {
+        return Math.max(0, Math.min(size - 1, value));
+    }
+
+    /**
+     * Decodes a version 1 QR code of numeric data.
+     *
+     * @param modules the modules row by row, <tt>true</tt> for dark.
+     * @return the decoded number or {@link #NO_FRAME_NUMBER}.
+     */
+    public static int decodeModules(boolean[] modules)
+    {
+        // Both copies of the format information, most significant bit first.
+        int format1 = 0, format2 = 0;
+        for (int i = 0; i <= 5; i++)
+        {
+            format1 = (format1 << 1) | bit(modules, i, 8);
+        }
+        format1 = (format1 << 1) | bit(modules, 7, 8);
+        format1 = (format1 << 1) | bit(modules, 8, 8);
+        format1 = (format1 << 1) | bit(modules, 8, 7);
+        for (int i = 5; i >= 0; i--)
+        {
+            format1 = (format1 << 1) | bit(modules, 8, i);
+        }
+        for (int i = QR_SIZE - 1; i >= QR_SIZE - 7; i--)
+        {
+            format2 = (format2 << 1) | bit(modules, 8, i);
+        }
+        for (int i = QR_SIZE - 8; i < QR_SIZE; i++)
+        {
+            format2 = (format2 << 1) | bit(modules, i, 8);
+        }
+
+        int format = -1, bestDistance = 4;
+        for (int i = 0; i < FORMAT_CODEWORDS.length; i++)
+        {
+            int distance = Math.min(
+                Integer.bitCount(format1 ^ FORMAT_CODEWORDS[i]), Integer.bitCount(format2 ^ FORMAT_CODEWORDS[i]));
+            if (distance < bestDistance)
+            {
+                bestDistance = distance;
+                format = i;
+            }
+        }
+        if (format < 0)
+        {
+            return NO_FRAME_NUMBER;
+        }
+        int mask = format & 7;
+        int dataCount = DATA_CODEWORDS[format >> 3];
+
+        // Read the codewords in the zigzag order, from the bottom right
+        // corner, in two module wide columns skipping the vertical timing
+        // pattern.
+        int[] codewords = new int[CODEWORDS];
+        int bitsRead = 0;
+        boolean upwards = true;
+        for (int col = QR_SIZE - 1; col > 0; col -= 2)
+        {
+            if (col == 6)
+            {
+                col--;
+            }
+            for (int count = 0; count < QR_SIZE; count++)
+            {
+                int row = upwards ? QR_SIZE - 1 - count : count;
+                for (int c = 0; c < 2; c++)
+                {
+                    int x = col - c;
+                    if (!isFunctionModule(x, row))
+                    {
+                        int value = bit(modules, x, row) ^ (isMasked(mask, row, x) ? 1 : 0);
+                        codewords[bitsRead >> 3] |= value << (7 - (bitsRead & 7));
+                        bitsRead++;
+                    }
+                }
+            }
+            upwards = !upwards;
+        }
+
+        if (!correctErrors(codewords, CODEWORDS - dataCount))
+        {
+            return NO_FRAME_NUMBER;
+        }
+
+        // Numeric mode: 4 bit mode, 10 bit count, 10 bits per 3 digits.
+        BitReader reader = new BitReader(codewords);
+        if (reader.read(4) != 1)
+        {
+            return NO_FRAME_NUMBER;
+        }
+        int digits = reader.read(10);
+        if (digits == 0 || digits > 9 || 14 + (digits * 10 + 2) / 3 > dataCount * 8)
+        {
+            return NO_FRAME_NUMBER;
+        }
+
+        int number = 0;
+        while (digits > 0)
+        {
+            int n = Math.min(3, digits);
+            int scale = n == 3 ? 1000 : n == 2 ? 100 : 10;
+            int group = reader.read(n == 3 ? 10 : n == 2 ? 7 : 4);
+            if (group >= scale)
+            {
+                return NO_FRAME_NUMBER;
+            }
+            number = number * scale + group;
+            digits -= n;
+        }
+        return number;
+    }
+
+    private static int bit(boolean[] modules, int x, int y)
+    {
+        return modules[y * QR_SIZE + x] ? 1 : 0;
+    }
+
+    /**
+     * Whether a module of a version 1 symbol is part of a function pattern.
+     */
+    private static boolean isFunctionModule(int x, int y)
+    {
+        return x == 6 || y == 6
+            || (x < 9 && y < 9) || (x >= QR_SIZE - 8 && y < 9) || (x < 9 && y >= QR_SIZE - 8);
+    }
+
+    /**
+     * Whether a data mask pattern inverts a module.
+     */
+    private static boolean isMasked(int mask, int row, int col)
+    {
+        switch (mask)
+        {
+        case 0:
+            return (row + col) % 2 == 0;
+        case 1:
+            return row % 2 == 0;
+        case 2:
+            return col % 3 == 0;
+        case 3:
+            return (row + col) % 3 == 0;
+        case 4:
+            return (row / 2 + col / 3) % 2 == 0;
+        case 5:
+            return (row * col) % 2 + (row * col) % 3 == 0;
+        case 6:
+            return ((row * col) % 2 + (row * col) % 3) % 2 == 0;
+        default:
+            return ((row + col) % 2 + (row * col) % 3) % 2 == 0;
+        }
+    }
+
+    private static int gfMul(int a, int b)
+    {
+        return a == 0 || b == 0 ? 0 : GF_EXP[GF_LOG[a] + GF_LOG[b]];
+    }
+
+    private static int gfDiv(int a, int b)
+    {
+        return a == 0 ? 0 : GF_EXP[GF_LOG[a] + 255 - GF_LOG[b]];
+    }
+
+    /**
+     * Evaluates a polynomial with the lowest degree coefficient first.
+     */
+    private static int gfEval(int[] poly, int length, int x)
+    {
+        int y = 0;
+        for (int i = length - 1; i >= 0; i--)
+        {
+            y = gfMul(y, x) ^ poly[i];
+        }
+        return y;
+    }
+
+    /**
+     * Corrects the errors of a Reed-Solomon codeword in place with the
+     * Berlekamp-Massey algorithm, the Chien search and the Forney algorithm.
+     *
+     * @param codewords the data followed by the error correction codewords,
+     * the first one being the highest degree coefficient.
+     * @param ecCount the number of error correction codewords.
+     * @return <tt>false</tt> if there are too many errors to correct.
+     */
+    static boolean correctErrors(int[] codewords, int ecCount)
+    {
+        int n = codewords.length;
+        int[] syndromes = new int[ecCount];
+        boolean hasErrors = false;
+        for (int j = 0; j < ecCount; j++)
+        {
+            int s = 0;
+            for (int codeword : codewords)
+            {
+                s = gfMul(s, GF_EXP[j]) ^ codeword;
+            }
+            syndromes[j] = s;
+            hasErrors |= s != 0;
+        }
+        if (!hasErrors)
+        {
+            return true;
+        }
+
+        // Berlekamp-Massey: the error locator polynomial, lowest degree
+        // first.
+        int[] locator = new int[ecCount + 2];
+        int[] prev = new int[ecCount + 2];
+        int[] next = new int[ecCount + 2];
+        locator[0] = 1;
+        prev[0] = 1;
+        int degree = 0, shift = 1, prevDiscrepancy = 1;
+        for (int k = 0; k < ecCount; k++)
+        {
+            int d = syndromes[k];
+            for (int i = 1; i <= degree; i++)
+            {
+                d ^= gfMul(locator[i], syndromes[k - i]);
+            }
+            if (d == 0)
+            {
+                shift++;
+                continue;
+            }
+
+            int coef = gfDiv(d, prevDiscrepancy);
+            System.arraycopy(locator, 0, next, 0, next.length);
+            for (int i = 0; i + shift < next.length; i++)
+            {
+                next[i + shift] ^= gfMul(coef, prev[i]);
+            }
+            if (2 * degree <= k)
+            {
+                int[] t = prev;
+                prev = locator;
+                locator = next;
+                next = t;
+                degree = k + 1 - degree;
+                prevDiscrepancy = d;
+                shift = 1;
+            }
+            else
+            {
+                int[] t = locator;
+                locator = next;
+                next = t;
+                shift++;
+            }
+        }
+        if (2 * degree > ecCount)
+        {
+            return false;
+        }
+
+        // The error evaluator polynomial, syndromes * locator mod x^ecCount.
+        int[] evaluator = new int[ecCount];
+        for (int i = 0; i < ecCount; i++)
+        {
+            for (int j = 0; j <= i && j <= degree; j++)
+            {
+                evaluator[i] ^= gfMul(locator[j], syndromes[i - j]);
+            }
+        }
+
+        // Chien search and Forney, the codeword at index i is the coefficient
+        // of x^(n - 1 - i).
+        int found = 0;
+        for (int i = 0; i < n; i++)
+        {
+            int power = n - 1 - i;
+            int xInv = GF_EXP[(255 - power) % 255];
+            if (gfEval(locator, degree + 1, xInv) != 0)
+            {
+                continue;
+            }
+
+            int derivative = 0;
+            for (int j = 1; j <= degree; j += 2)
+            {
+                derivative ^= gfMul(locator[j], GF_EXP[(GF_LOG[xInv] * (j - 1)) % 255]);
+            }
+            if (derivative == 0)
+            {
+                return false;
+            }
+            codewords[i] ^= gfMul(GF_EXP[power], gfDiv(gfEval(evaluator, ecCount, xInv), derivative));
+            found++;
+        }
+
+        return found == degree;
+    }
+
+    /**
+     * Reads the bits of codewords, most significant first.
+     */
+    private static class BitReader
+    {
+        private final int[] codewords;
+        private int position;
+
+        BitReader(int[] codewords)
+        {
+            this.codewords = codewords;
+        }
+
+        int read(int bits)
+        {
+            int value = 0;
+            for (int b = 0; b < bits; b++, position++)
+            {
+                value = (value << 1) | ((codewords[position >> 3] >> (7 - (position & 7))) & 1);
+            }
+            return value;
+        }
+    }
+}
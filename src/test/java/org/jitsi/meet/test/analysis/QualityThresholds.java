@@ -0,0 +1,129 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.analysis;
+
+import java.util.*;
+import java.util.stream.*;
+
+/**
+ * The limits a test puts on the quality of every received frame. None is
+ * checked by default, see {@link Threshold}.
+ */
+public class QualityThresholds
+{
+    private final Threshold minPsnr = Threshold.min("min_psnr", "PSNR");
+    private final Threshold minSsim = Threshold.min("min_ssim", "SSIM");
+    private final Threshold minMsSsim = Threshold.min("min_ms_ssim", "MS-SSIM");
+    private final Threshold maxBlockiness = Threshold.max("max_blockiness", "Blockiness");
+    private final Threshold maxBlur = Threshold.max("max_blur", "Blur");
+
+    /**
+     * @param minPsnr the minimum overall PSNR in dB.
+     * @return this.
+     */
+    public QualityThresholds setMinPsnr(double minPsnr)
+    {
+        this.minPsnr.set(minPsnr);
+        return this;
+    }
+
+    /**
+     * @param minSsim the minimum SSIM.
+     * @return this.
+     */
+    public QualityThresholds setMinSsim(double minSsim)
+    {
+        this.minSsim.set(minSsim);
+        return this;
+    }
+
+    /**
+     * @param minMsSsim the minimum MS-SSIM.
+     * @return this.
+     */
+    public QualityThresholds setMinMsSsim(double minMsSsim)
+    {
+        this.minMsSsim.set(minMsSsim);
+        return this;
+    }
+
+    /**
+     * @param maxBlockiness the maximum blockiness.
+     * @return this.
+     */
+    public QualityThresholds setMaxBlockiness(double maxBlockiness)
+    {
+        this.maxBlockiness.set(maxBlockiness);
+        return this;
+    }
+
+    /**
+     * @param maxBlur the maximum blur.
+     * @return this.
+     */
+    public QualityThresholds setMaxBlur(double maxBlur)
+    {
+        this.maxBlur.set(maxBlur);
+        return this;
+    }
+
+    /**
+     * Overrides the thresholds with the system properties
+     * <tt>&lt;prefix&gt;.min_psnr</tt>, <tt>.min_ssim</tt>,
+     * <tt>.min_ms_ssim</tt>, <tt>.max_blockiness</tt> and
+     * <tt>.max_blur</tt> which are set.
+     *
+     * @param prefix the prefix of the properties of the test.
+     * @return this.
+     */
+    public QualityThresholds load(String prefix)
+    {
+        all().forEach(threshold -> threshold.load(prefix));
+        return this;
+    }
+
+    /**
+     * Checks a frame against the thresholds. A frame without a matching
+     * reference frame fails the PSNR, SSIM and MS-SSIM thresholds.
+     *
+     * @param frame the frame.
+     * @return a description of the first threshold the frame does not meet,
+     * <tt>null</tt> if it meets all of them.
+     */
+    public String check(PsnrAnalyzer.FrameResult frame)
+    {
+        return Stream.of(
+                minPsnr.check(frame.getOverallPsnr()),
+                minSsim.check(frame.getSsim()),
+                minMsSsim.check(frame.getMsSsim()),
+                maxBlockiness.check(frame.getBlockiness()),
+                maxBlur.check(frame.getBlur()))
+            .filter(Objects::nonNull)
+            .findFirst()
+            .orElse(null);
+    }
+
+    private Stream<Threshold> all()
+    {
+        return Stream.of(minPsnr, minSsim, minMsSsim, maxBlockiness, maxBlur);
+    }
+
+    @Override
+    public String toString()
+    {
+        return all().map(Threshold::toString).collect(Collectors.joining(", "));
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.analysis;
+
+import java.util.*;
+import java.util.regex.*;
+
+/**
+ * A bottleneck schedule: the capacity of the link over time, as played by
+ * scripts/tc-port-schedule.sh from "rate,seconds" pairs, the rates being in
+ * the units of TC(8).
+ */
+public class RateSchedule
+{
+    /**
+     * A TC(8) rate: a number and a unit, bytes per second without unit.
+     */
+    private static final Pattern RATE = Pattern.compile("(\\d+(?:\\.\\d+)?)\\s*([a-z]*)");
+
+    private final double[] ratesBps;
+    private final double[] startsMs;
+    private final double durationMs;
+
+    /**
+     * Creates new {@link RateSchedule}.
+     *
+     * @param ratesBps the capacity of every segment in bits per second.
+     * @param durationsMs the duration of every segment in milliseconds.
+     */
+    public RateSchedule(double[] ratesBps, double[] durationsMs)
+    {
+        if (ratesBps.length != durationsMs.length || ratesBps.length == 0)
+        {
+            throw new IllegalArgumentException("Bad schedule");
+        }
+        this.ratesBps = ratesBps.clone();
+        this.startsMs = new double[ratesBps.length];
+        double t = 0;
+        for (int i = 0; i < ratesBps.length; i++)
+        {
+            startsMs[i] = t;
+            t += durationsMs[i];
+        }
+        this.durationMs = t;
+    }
+
+    /**
+     * Parses a schedule of scripts/tc-port-schedule.sh.
+     *
+     * @param schedule "rate,seconds" pairs, for example "10mbit,60".
+     * @return the schedule.
+     * @throws IllegalArgumentException if a pair cannot be parsed.
+     */
+    public static RateSchedule parse(String... schedule)
+    {
+        double[] rates = new double[schedule.length];
+        double[] durations = new double[schedule.length];
+        for (int i = 0; i < schedule.length; i++)
+        {
+            String[] pair = schedule[i].split(",");
+            if (pair.length != 2)
+            {
+                throw new IllegalArgumentException("Bad schedule entry: " + schedule[i]);
+            }
+            rates[i] = parseRate(pair[0]);
+            durations[i] = Double.parseDouble(pair[1].trim()) * 1000;
+        }
+        return new RateSchedule(rates, durations);
+    }
+
+    /**
+     * Parses a TC(8) rate.
+     *
+     * @param rate the rate, for example "1mbit" or "500kbps".
+     * @return the rate in bits per second.
+     * @throws IllegalArgumentException if the rate cannot be parsed.
+     */
+    public static double parseRate(String rate)
+    {
+        Matcher m = RATE.matcher(rate.trim().toLowerCase());
+        if (!m.matches())
+        {
+            throw new IllegalArgumentException("Bad rate: " + rate);
+        }
+
+        double value = Double.parseDouble(m.group(1));
+        String unit = m.group(2);
+        boolean bytes = unit.isEmpty() || unit.endsWith("bps");
+        if (!bytes && !unit.endsWith("bit"))
+        {
+            throw new IllegalArgumentException("Bad rate unit: " + rate);
+        }
+
+        double scale;
+        switch (unit.isEmpty() ? ' ' : unit.charAt(0))
+        {
+        case 'k':
+            scale = 1e3;
+            break;
+        case 'm':
+            scale = 1e6;
+            break;
+        case 'g':
+            scale = 1e9;
+            break;
+        case 't':
+            scale = 1e12;
+            break;
+        default:
+            scale = 1;
+            break;
+        }
+        return value * scale * (bytes ? 8 : 1);
+    }
+
+    /**
+     * @return the number of segments.
+     */
+    public int size()
+    {
+        return ratesBps.length;
+    }
+
+    /**
+     * @param i the index of a segment.
+     * @return the capacity of the segment in bits per second.
+     */
+    public double getRateBps(int i)
+    {
+        return ratesBps[i];
+    }
+
+    /**
+     * @param i the index of a segment.
+     * @return the start of the segment in milliseconds.
+     */
+    public double getStartMs(int i)
+    {
+        return startsMs[i];
+    }
+
+    /**
+     * @param i the index of a segment.
+     * @return the end of the segment in milliseconds.
+     */
+    public double getEndMs(int i)
+    {
+        return i + 1 < startsMs.length ? startsMs[i + 1] : durationMs;
+    }
+
+    /**
+     * @return the duration of the schedule in milliseconds.
+     */
+    public double getDurationMs()
+    {
+        return durationMs;
+    }
+
+    /**
+     * @param timeMs a time in milliseconds since the start of the schedule.
+     * @return the capacity at that time in bits per second, NaN out of the
+     * schedule.
+     */
+    public double getRateBpsAt(double timeMs)
+    {
+        if (timeMs < 0 || timeMs >= durationMs)
+        {
+            return Double.NaN;
+        }
+        int i = Arrays.binarySearch(startsMs, timeMs);
+        return ratesBps[i >= 0 ? i : -i - 2];
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < ratesBps.length; i++)
+        {
+            sb.append(i == 0 ? "" : " ")
+                .append(String.format("%.0fkbps/%.0fs", ratesBps[i] / 1000, (getEndMs(i) - startsMs[i]) / 1000));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.analysis;
+
+import java.io.*;
+
+/**
+ * The frames of a stamped reference sequence, looked up by the number stamped
+ * on them. Implementations must be thread safe.
+ */
+public interface ReferenceFrames
+{
+    /**
+     * Returns a reference frame.
+     *
+     * @param frameNumber the stamped frame number, starting at 1.
+     * @return the frame or <tt>null</tt> if there is no such frame.
+     * @throws IOException if the frame cannot be read.
+     */
+    YuvFrame getFrame(int frameNumber)
+        throws IOException;
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.analysis;
+
+import com.google.gson.stream.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * Reads the series of a dump of the <tt>peerconnection.stats</tt> of
+ * lib-jitsi-meet: an object with an entry per stat, named
+ * "&lt;report id&gt;-&lt;stat name&gt;", with the <tt>times</tt> and the
+ * <tt>values</tt> of the stat. The dump is parsed as a stream and the stats
+ * which are not selected are skipped, so large dumps are read in little
+ * memory.
+ */
+public class RtcStatsDump
+{
+    /**
+     * The name of the counter of the received bytes of the legacy stats.
+     */
+    public static final String LEGACY_BYTES_RECEIVED = "Conn-audio-1-0-bytesReceived";
+
+    /**
+     * The suffix of the name of the counters of received bytes.
+     */
+    private static final String BYTES_RECEIVED_SUFFIX = "-bytesReceived";
+
+    /**
+     * Reads the selected series of a dump.
+     *
+     * @param reader the dump.
+     * @param filter selects the series by name.
+     * @return the series by name, non numeric values are NaN.
+     * @throws IOException if the dump cannot be read or parsed.
+     */
+    public static Map<String, TimeSeries> read(Reader reader, Predicate<String> filter)
+        throws IOException
+    {
+        Map<String, TimeSeries> series = new LinkedHashMap<>();
+        JsonReader json = new JsonReader(reader);
+        if (json.peek() == JsonToken.NULL)
+        {
+            return series;
+        }
+
+        json.beginObject();
+        while (json.hasNext())
+        {
+            String name = json.nextName();
+            if (filter.test(name) && json.peek() == JsonToken.BEGIN_OBJECT)
+            {
+                series.put(name, readSeries(json));
+            }
+            else
+            {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+        return series;
+    }
+
+    /**
+     * Reads the counter of all the bytes received by a peer connection: the
+     * legacy counter of the connection if the dump has one, otherwise the
+     * largest counter of received bytes, which is the one of the transport.
+     *
+     * @param file the dump.
+     * @return the counter or <tt>null</tt> if the dump has none.
+     * @throws IOException if the dump cannot be read or parsed.
+     */
+    public static TimeSeries readBytesReceived(File file)
+        throws IOException
+    {
+        Map<String, TimeSeries> series;
+        try (Reader reader = new BufferedReader(new FileReader(file)))
+        {
+            series = read(reader, name -> name.endsWith(BYTES_RECEIVED_SUFFIX));
+        }
+
+        if (series.containsKey(LEGACY_BYTES_RECEIVED))
+        {
+            return series.get(LEGACY_BYTES_RECEIVED);
+        }
+        TimeSeries largest = null;
+        for (TimeSeries s : series.values())
+        {
+            if (largest == null || s.getLastValue() > largest.getLastValue())
+            {
+                largest = s;
+            }
+        }
+        return largest;
+    }
+
+    private static TimeSeries readSeries(JsonReader json)
+        throws IOException
+    {
+        double[] times = new double[0];
+        double[] values = new double[0];
+        json.beginObject();
+        while (json.hasNext())
+        {
+            String name = json.nextName();
+            if ("times".equals(name))
+            {
+                times = readArray(json);
+            }
+            else if ("values".equals(name))
+            {
+                values = readArray(json);
+            }
+            else
+            {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+
+        int n = Math.min(times.length, values.length);
+        return new TimeSeries(Arrays.copyOf(times, n), Arrays.copyOf(values, n));
+    }
+
+    private static double[] readArray(JsonReader json)
+        throws IOException
+    {
+        if (json.peek() != JsonToken.BEGIN_ARRAY)
+        {
+            json.skipValue();
+            return new double[0];
+        }
+
+        double[] array = new double[64];
+        int n = 0;
+        json.beginArray();
+        while (json.hasNext())
+        {
+            if (n == array.length)
+            {
+                array = Arrays.copyOf(array, 2 * n);
+            }
+            array[n++] = readNumber(json);
+        }
+        json.endArray();
+        return Arrays.copyOf(array, n);
+    }
+
+    private static double readNumber(JsonReader json)
+        throws IOException
+    {
+        switch (json.peek())
+        {
+        case NUMBER:
+            return json.nextDouble();
+        case STRING:
+            String s = json.nextString();
+            try
+            {
+                return Double.parseDouble(s);
+            }
+            catch (NumberFormatException e)
+            {
+                return Double.NaN;
+            }
+        case BOOLEAN:
+            return json.nextBoolean() ? 1 : 0;
+        default:
+            json.skipValue();
+            return Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.analysis;
+
+import java.nio.*;
+
+/**
+ * Structural similarity (SSIM) and multi-scale SSIM of luma planes. The
+ * statistics are computed over 8x8 windows with a stride of 4, from the sums
+ * of 4x4 blocks, as in ffmpeg. The scratch buffers are kept per thread and
+ * reused, so computing the metrics of a frame allocates nothing once the
+ * buffers have grown to the frame size.
+ */
+public class Ssim
+{
+    private static final double C1 = (0.01 * 255) * (0.01 * 255);
+    private static final double C2 = (0.03 * 255) * (0.03 * 255);
+
+    /**
+     * The size of the windows.
+     */
+    private static final int WINDOW = 8;
+
+    /**
+     * The weights of the scales of MS-SSIM, from Wang et al. 2003.
+     */
+    private static final double[] MS_SSIM_WEIGHTS = { 0.0448, 0.2856, 0.3001, 0.2363, 0.1333 };
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * Computes the SSIM of the luma of a frame. The frame is scaled to the
+     * size of the reference first if needed.
+     *
+     * @param frame the frame to evaluate.
+     * @param reference the reference frame.
+     * @return the SSIM, from -1 to 1 for identical planes.
+     */
+    public static double compute(YuvFrame frame, YuvFrame reference)
+    {
+        YuvFrame scaled = frame.resize(reference.getWidth(), reference.getHeight());
+        return compute(
+            scaled.getPlane(YuvFrame.Y), reference.getPlane(YuvFrame.Y), reference.getWidth(), reference.getHeight());
+    }
+
+    /**
+     * Computes the SSIM of two planes of the same size.
+     *
+     * @param a the first plane.
+     * @param b the second plane.
+     * @param width the width of the planes.
+     * @param height the height of the planes.
+     * @return the mean SSIM of the windows or NaN if the planes are smaller
+     * than a window.
+     */
+    public static double compute(ByteBuffer a, ByteBuffer b, int width, int height)
+    {
+        Scratch scratch = SCRATCH.get();
+        return windows(a, b, width, height, scratch) ? scratch.ssim : Double.NaN;
+    }
+
+    /**
+     * Computes the multi-scale SSIM of the luma of a frame. The frame is
+     * scaled to the size of the reference first if needed.
+     *
+     * @param frame the frame to evaluate.
+     * @param reference the reference frame.
+     * @return the MS-SSIM, from 0 to 1 for identical planes.
+     */
+    public static double computeMultiScale(YuvFrame frame, YuvFrame reference)
+    {
+        YuvFrame scaled = frame.resize(reference.getWidth(), reference.getHeight());
+        return computeMultiScale(
+            scaled.getPlane(YuvFrame.Y), reference.getPlane(YuvFrame.Y), reference.getWidth(), reference.getHeight());
+    }
+
+    /**
+     * Computes the multi-scale SSIM of two planes of the same size, over up
+     * to 5 scales each half the size of the previous one. Scales smaller
+     * than a window are left out and the weights of the others normalized.
+     *
+     * @param a the first plane.
+     * @param b the second plane.
+     * @param width the width of the planes.
+     * @param height the height of the planes.
+     * @return the MS-SSIM or NaN if the planes are smaller than a window.
+     */
+    public static double computeMultiScale(ByteBuffer a, ByteBuffer b, int width, int height)
+    {
+        Scratch scratch = SCRATCH.get();
+        int scales = 1;
+        while (scales < MS_SSIM_WEIGHTS.length
+            && (width >> scales) >= WINDOW && (height >> scales) >= WINDOW)
+        {
+            scales++;
+        }
+
+        double weights = 0;
+        for (int s = 0; s < scales; s++)
+        {
+            weights += MS_SSIM_WEIGHTS[s];
+        }
+
+        double logResult = 0;
+        int w = width, h = height;
+        for (int s = 0; s < scales; s++)
+        {
+            if (!windows(a, b, w, h, scratch))
+            {
+                return Double.NaN;
+            }
+
+            double value = s == scales - 1 ? scratch.ssim : scratch.cs;
+            if (value <= 0)
+            {
+                return 0;
+            }
+            logResult += MS_SSIM_WEIGHTS[s] / weights * Math.log(value);
+
+            if (s < scales - 1)
+            {
+                a = scratch.downsample(0, a, w, h);
+                b = scratch.downsample(1, b, w, h);
+                w /= 2;
+                h /= 2;
+            }
+        }
+        return Math.exp(logResult);
+    }
+
+    /**
+     * Computes the mean SSIM and the mean contrast-structure term of the
+     * windows of two planes into the scratch.
+     *
+     * @return <tt>false</tt> if the planes are smaller than a window.
+     */
+    private static boolean windows(ByteBuffer a, ByteBuffer b, int width, int height, Scratch scratch)
+    {
+        int bw = width / 4, bh = height / 4;
+        if (bw < 2 || bh < 2)
+        {
+            return false;
+        }
+
+        scratch.ensureBlocks(bw * bh);
+        int[] sa = scratch.sa, sb = scratch.sb, saa = scratch.saa, sbb = scratch.sbb, sab = scratch.sab;
+
+        for (int by = 0; by < bh; by++)
+        {
+            for (int bx = 0; bx < bw; bx++)
+            {
+                int s1 = 0, s2 = 0, s11 = 0, s22 = 0, s12 = 0;
+                for (int y = by * 4; y < by * 4 + 4; y++)
+                {
+                    int row = y * width + bx * 4;
+                    for (int x = row; x < row + 4; x++)
+                    {
+                        int pa = a.get(x) & 0xFF;
+                        int pb = b.get(x) & 0xFF;
+                        s1 += pa;
+                        s2 += pb;
+                        s11 += pa * pa;
+                        s22 += pb * pb;
+                        s12 += pa * pb;
+                    }
+                }
+                int i = by * bw + bx;
+                sa[i] = s1;
+                sb[i] = s2;
+                saa[i] = s11;
+                sbb[i] = s22;
+                sab[i] = s12;
+            }
+        }
+
+        double ssimSum = 0, csSum = 0;
+        double n = WINDOW * WINDOW;
+        for (int by = 0; by < bh - 1; by++)
+        {
+            for (int bx = 0; bx < bw - 1; bx++)
+            {
+                int i = by * bw + bx, j = i + bw;
+                double muA = (sa[i] + sa[i + 1] + sa[j] + sa[j + 1]) / n;
+                double muB = (sb[i] + sb[i + 1] + sb[j] + sb[j + 1]) / n;
+                double varA = (saa[i] + saa[i + 1] + saa[j] + saa[j + 1]) / n - muA * muA;
+                double varB = (sbb[i] + sbb[i + 1] + sbb[j] + sbb[j + 1]) / n - muB * muB;
+                double cov = (sab[i] + sab[i + 1] + sab[j] + sab[j + 1]) / n - muA * muB;
+
+                double cs = (2 * cov + C2) / (varA + varB + C2);
+                csSum += cs;
+                ssimSum += cs * (2 * muA * muB + C1) / (muA * muA + muB * muB + C1);
+            }
+        }
+
+        int windows = (bw - 1) * (bh - 1);
+        scratch.ssim = ssimSum / windows;
+        scratch.cs = csSum / windows;
+        return true;
+    }
+
+    /**
+     * The buffers of a thread.
+     */
+    private static class Scratch
+    {
+        int[] sa = new int[0], sb = new int[0], saa = new int[0], sbb = new int[0], sab = new int[0];
+
+        /**
+         * The downsampled planes, two per plane so that a plane can be
+         * downsampled from the previous scale.
+         */
+        final byte[][] scaled = new byte[4][0];
+        final ByteBuffer[] scaledBuffers = new ByteBuffer[4];
+
+        /**
+         * The next of the two buffers to use for each plane.
+         */
+        final int[] next = new int[2];
+
+        double ssim;
+        double cs;
+
+        void ensureBlocks(int blocks)
+        {
+            if (sa.length < blocks)
+            {
+                sa = new int[blocks];
+                sb = new int[blocks];
+                saa = new int[blocks];
+                sbb = new int[blocks];
+                sab = new int[blocks];
+            }
+        }
+
+        /**
+         * Halves the size of a plane by averaging 2x2 pixels.
+         *
+         * @param plane 0 or 1.
+         * @return the downsampled plane, valid until the next call with the
+         * same plane after this one.
+         */
+        ByteBuffer downsample(int plane, ByteBuffer src, int w, int h)
+        {
+            int w2 = w / 2, h2 = h / 2;
+            int k = plane * 2 + next[plane];
+            next[plane] ^= 1;
+            if (scaled[k].length < w2 * h2)
+            {
+                scaled[k] = new byte[w2 * h2];
+                scaledBuffers[k] = ByteBuffer.wrap(scaled[k]);
+            }
+
+            byte[] dst = scaled[k];
+            for (int y = 0; y < h2; y++)
+            {
+                int r0 = 2 * y * w, r1 = r0 + w;
+                for (int x = 0; x < w2; x++)
+                {
+                    int sum = (src.get(r0 + 2 * x) & 0xFF) + (src.get(r0 + 2 * x + 1) & 0xFF)
+                        + (src.get(r1 + 2 * x) & 0xFF) + (src.get(r1 + 2 * x + 1) & 0xFF);
+                    dst[y * w2 + x] = (byte) ((sum + 2) >> 2);
+                }
+            }
+            return scaledBuffers[k];
+        }
+    }
+}
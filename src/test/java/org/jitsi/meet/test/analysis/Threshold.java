@@ -0,0 +1,120 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.analysis;
+
+/**
+ * A lower or upper limit on a measure, which is only checked when set. A
+ * limit is set by the test and can be overridden with a system property, an
+ * empty value disabling it.
+ */
+public class Threshold
+{
+    /**
+     * The name of the property overriding the limit, after the prefix of the
+     * test.
+     */
+    private final String property;
+
+    /**
+     * The name of the measure, for the descriptions.
+     */
+    private final String measure;
+
+    /**
+     * Whether the measure must not be above the limit, rather than below it.
+     */
+    private final boolean upper;
+
+    /**
+     * The limit, NaN if not checked.
+     */
+    private double limit = Double.NaN;
+
+    private Threshold(String property, String measure, boolean upper)
+    {
+        this.property = property;
+        this.measure = measure;
+        this.upper = upper;
+    }
+
+    /**
+     * @param property the name of the property overriding the limit, after
+     * the prefix of the test.
+     * @param measure the name of the measure, for the descriptions.
+     * @return a new unset lower limit.
+     */
+    public static Threshold min(String property, String measure)
+    {
+        return new Threshold(property, measure, false);
+    }
+
+    /**
+     * @param property the name of the property overriding the limit, after
+     * the prefix of the test.
+     * @param measure the name of the measure, for the descriptions.
+     * @return a new unset upper limit.
+     */
+    public static Threshold max(String property, String measure)
+    {
+        return new Threshold(property, measure, true);
+    }
+
+    /**
+     * @param limit the limit, NaN to not check it.
+     */
+    public void set(double limit)
+    {
+        this.limit = limit;
+    }
+
+    /**
+     * Overrides the limit with the system property
+     * <tt>&lt;prefix&gt;.&lt;property&gt;</tt>, if it is set.
+     *
+     * @param prefix the prefix of the properties of the test.
+     */
+    public void load(String prefix)
+    {
+        String value = System.getProperty(prefix + "." + property);
+        if (value != null)
+        {
+            limit = value.trim().isEmpty() ? Double.NaN : Double.parseDouble(value);
+        }
+    }
+
+    /**
+     * Checks a value of the measure. A value which is NaN, because the
+     * measure could not be made, does not meet a limit which is set.
+     *
+     * @param value the value.
+     * @return a description of how the value does not meet the limit,
+     * <tt>null</tt> if it does or the limit is not set.
+     */
+    public String check(double value)
+    {
+        if (Double.isNaN(limit) || (upper ? value <= limit : value >= limit))
+        {
+            return null;
+        }
+        return measure + " " + value + (upper ? " is above " : " is below ") + limit;
+    }
+
+    @Override
+    public String toString()
+    {
+        return property.replace('_', ' ') + " " + limit;
+    }
+}
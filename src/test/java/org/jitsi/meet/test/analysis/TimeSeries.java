@@ -0,0 +1,206 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.analysis;
+
+import java.util.*;
+
+/**
+ * A series of values sampled at increasing times, for example a counter of
+ * the stats of a peer connection.
+ */
+public class TimeSeries
+{
+    private final double[] times;
+    private final double[] values;
+
+    /**
+     * Creates new {@link TimeSeries}. The arrays are not copied.
+     *
+     * @param times the times of the samples in milliseconds, increasing.
+     * @param values the values, NaN where unknown.
+     */
+    public TimeSeries(double[] times, double[] values)
+    {
+        if (times.length != values.length)
+        {
+            throw new IllegalArgumentException("The times and values have different lengths");
+        }
+        this.times = times;
+        this.values = values;
+    }
+
+    /**
+     * @return the number of samples.
+     */
+    public int size()
+    {
+        return times.length;
+    }
+
+    /**
+     * @param i the index of a sample.
+     * @return the time of the sample in milliseconds.
+     */
+    public double getTime(int i)
+    {
+        return times[i];
+    }
+
+    /**
+     * @param i the index of a sample.
+     * @return the value of the sample.
+     */
+    public double getValue(int i)
+    {
+        return values[i];
+    }
+
+    /**
+     * @return the last value, NaN if empty.
+     */
+    public double getLastValue()
+    {
+        return values.length == 0 ? Double.NaN : values[values.length - 1];
+    }
+
+    /**
+     * Resamples the series on a regular grid by linear interpolation between
+     * the samples, which suits counters sampled at irregular times.
+     *
+     * @param startMs the time of the first sample of the grid.
+     * @param stepMs the interval of the grid.
+     * @param count the number of samples of the grid.
+     * @return the resampled series, NaN out of the range of this series.
+     */
+    public TimeSeries resample(double startMs, double stepMs, int count)
+    {
+        double[] t = new double[count];
+        double[] v = new double[count];
+        int j = 0;
+        for (int i = 0; i < count; i++)
+        {
+            t[i] = startMs + i * stepMs;
+            while (j + 1 < times.length && times[j + 1] <= t[i])
+            {
+                j++;
+            }
+            if (times.length == 0 || t[i] < times[0] || t[i] > times[times.length - 1])
+            {
+                v[i] = Double.NaN;
+            }
+            else if (j + 1 >= times.length || times[j] == t[i])
+            {
+                v[i] = values[j];
+            }
+            else
+            {
+                double f = (t[i] - times[j]) / (times[j + 1] - times[j]);
+                v[i] = values[j] + f * (values[j + 1] - values[j]);
+            }
+        }
+        return new TimeSeries(t, v);
+    }
+
+    /**
+     * Computes the rate of change of a counter, per second, between
+     * consecutive samples. The rate of a sample is the change from the
+     * previous sample, the first sample has no rate.
+     *
+     * @param scale multiplies the rate, for example 8 for bits per second from
+     * a counter of bytes.
+     * @return the rates, with the times of this series.
+     */
+    public TimeSeries rate(double scale)
+    {
+        double[] v = new double[values.length];
+        if (v.length > 0)
+        {
+            v[0] = Double.NaN;
+        }
+        for (int i = 1; i < v.length; i++)
+        {
+            v[i] = times[i] > times[i - 1]
+                ? scale * (values[i] - values[i - 1]) * 1000 / (times[i] - times[i - 1])
+                : Double.NaN;
+        }
+        return new TimeSeries(times, v);
+    }
+
+    /**
+     * Shifts the times of the series.
+     *
+     * @param offsetMs the offset added to every time.
+     * @return the shifted series.
+     */
+    public TimeSeries shift(double offsetMs)
+    {
+        double[] t = new double[times.length];
+        for (int i = 0; i < t.length; i++)
+        {
+            t[i] = times[i] + offsetMs;
+        }
+        return new TimeSeries(t, values);
+    }
+
+    /**
+     * Computes the mean of the values in a time range, ignoring NaN.
+     *
+     * @param fromMs the start of the range, inclusive.
+     * @param toMs the end of the range, exclusive.
+     * @return the mean, NaN if there is no value in the range.
+     */
+    public double mean(double fromMs, double toMs)
+    {
+        double sum = 0;
+        int n = 0;
+        for (int i = 0; i < times.length; i++)
+        {
+            if (times[i] >= fromMs && times[i] < toMs && !Double.isNaN(values[i]))
+            {
+                sum += values[i];
+                n++;
+            }
+        }
+        return n == 0 ? Double.NaN : sum / n;
+    }
+
+    /**
+     * Computes a percentile of the values in a time range, ignoring NaN.
+     *
+     * @param fromMs the start of the range, inclusive.
+     * @param toMs the end of the range, exclusive.
+     * @param percentile the percentile, between 0 and 100.
+     * @return the percentile, NaN if there is no value in the range.
+     */
+    public double percentile(double fromMs, double toMs, double percentile)
+    {
+        double[] v = new double[times.length];
+        int n = 0;
+        for (int i = 0; i < times.length; i++)
+        {
+            if (times[i] >= fromMs && times[i] < toMs && !Double.isNaN(values[i]))
+            {
+                v[n++] = values[i];
+            }
+        }
+        if (n == 0)
+        {
+            return Double.NaN;
+        }
+        Arrays.sort(v, 0, n);
+        return v[Math.min(n - 1, Math.max(0, (int) Math.ceil(percentile / 100 * n) - 1))];
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.analysis;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+/**
+ * Random access to the frames of a YUV4MPEG2 (.y4m) 4:2:0 file, such as the
+ * PSNR input sequence or the Malleus input video. The file is memory-mapped
+ * in chunks of whole frames, so files larger than 2GB are supported, and
+ * every {@link YuvFrame} returned is a view on the mapping: nothing is copied
+ * or decoded.
+ *
+ * As a {@link ReferenceFrames}, frame number N of a stamped sequence is the
+ * frame at index N - 1.
+ */
+public class Y4mReader
+    implements ReferenceFrames, Closeable
+{
+    /**
+     * The signature of the stream header.
+     */
+    private static final String STREAM_MAGIC = "YUV4MPEG2";
+
+    /**
+     * The signature of the frame headers.
+     */
+    private static final String FRAME_MAGIC = "FRAME";
+
+    /**
+     * The maximum length of the header lines.
+     */
+    private static final int MAX_HEADER_LENGTH = 1024;
+
+    /**
+     * The maximum size of a mapped chunk.
+     */
+    private static final long MAX_CHUNK_SIZE = Integer.MAX_VALUE;
+
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final double frameRate;
+    private final long dataOffset;
+    private final int frameHeaderLength;
+    private final int frameSize;
+    private final long frameStride;
+    private final int frameCount;
+    private final int framesPerChunk;
+
+    /**
+     * The chunks mapped so far, by chunk index.
+     */
+    private final MappedByteBuffer[] chunks;
+
+    /**
+     * Opens a Y4M file.
+     *
+     * @param file the file.
+     * @throws IOException if the file cannot be read or is not a 4:2:0 Y4M
+     * file with fixed size frame headers.
+     */
+    public Y4mReader(File file)
+        throws IOException
+    {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try
+        {
+            String header = readLine(0);
+            if (header == null || !header.startsWith(STREAM_MAGIC))
+            {
+                throw new IOException("Not a Y4M file: " + file);
+            }
+
+            int w = 0, h = 0;
+            double fps = 0;
+            for (String param : header.split(" "))
+            {
+                if (param.isEmpty())
+                {
+                    continue;
+                }
+                char tag = param.charAt(0);
+                String value = param.substring(1);
+                if (tag == 'W')
+                {
+                    w = Integer.parseInt(value);
+                }
+                else if (tag == 'H')
+                {
+                    h = Integer.parseInt(value);
+                }
+                else if (tag == 'F')
+                {
+                    String[] ratio = value.split(":");
+                    fps = Double.parseDouble(ratio[0]) / Double.parseDouble(ratio[1]);
+                }
+                else if (tag == 'C' && !value.startsWith("420"))
+                {
+                    throw new IOException("Unsupported Y4M colour space " + value + ": " + file);
+                }
+            }
+            if (w <= 0 || h <= 0)
+            {
+                throw new IOException("Missing Y4M frame size: " + file);
+            }
+
+            width = w;
+            height = h;
+            frameRate = fps;
+            dataOffset = header.length() + 1;
+            frameSize = w * h + 2 * YuvFrame.getChromaWidth(w) * YuvFrame.getChromaHeight(h);
+
+            String frameHeader = readLine(dataOffset);
+            if (frameHeader == null)
+            {
+                frameHeaderLength = FRAME_MAGIC.length() + 1;
+                frameStride = frameHeaderLength + frameSize;
+                frameCount = 0;
+            }
+            else
+            {
+                if (!frameHeader.startsWith(FRAME_MAGIC))
+                {
+                    throw new IOException("Bad Y4M frame header: " + file);
+                }
+                frameHeaderLength = frameHeader.length() + 1;
+                frameStride = frameHeaderLength + frameSize;
+                frameCount = (int) ((channel.size() - dataOffset) / frameStride);
+            }
+
+            framesPerChunk = (int) Math.max(1, MAX_CHUNK_SIZE / frameStride);
+            chunks = new MappedByteBuffer[(frameCount + framesPerChunk - 1) / framesPerChunk];
+        }
+        catch (IOException | RuntimeException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads an ASCII header line.
+     *
+     * @param position the position of the line in the file.
+     * @return the line without the line feed or <tt>null</tt> at the end of
+     * the file.
+     */
+    private String readLine(long position)
+        throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate(MAX_HEADER_LENGTH);
+        channel.read(buf, position);
+        buf.flip();
+        if (!buf.hasRemaining())
+        {
+            return null;
+        }
+
+        for (int i = 0; i < buf.limit(); i++)
+        {
+            if (buf.get(i) == '\n')
+            {
+                return new String(buf.array(), 0, i, StandardCharsets.US_ASCII);
+            }
+        }
+        throw new IOException("Y4M header line too long");
+    }
+
+    /**
+     * @return the width of the frames.
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * @return the height of the frames.
+     */
+    public int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * @return the frame rate declared in the header, 0 if missing.
+     */
+    public double getFrameRate()
+    {
+        return frameRate;
+    }
+
+    /**
+     * @return the number of complete frames in the file.
+     */
+    public int getFrameCount()
+    {
+        return frameCount;
+    }
+
+    /**
+     * Returns a frame as views on the mapped file.
+     *
+     * @param index the index of the frame, starting at 0.
+     * @return the frame.
+     * @throws IOException if the file cannot be mapped or the frame header is
+     * not where expected.
+     * @throws IndexOutOfBoundsException if there is no such frame.
+     */
+    public YuvFrame getFrameAt(int index)
+        throws IOException
+    {
+        if (index < 0 || index >= frameCount)
+        {
+            throw new IndexOutOfBoundsException("Frame " + index + " of " + frameCount);
+        }
+
+        ByteBuffer chunk = getChunk(index / framesPerChunk).duplicate();
+        int offset = (int) ((index % framesPerChunk) * frameStride);
+        if (chunk.get(offset) != 'F')
+        {
+            throw new IOException("Bad Y4M frame header at frame " + index);
+        }
+
+        int y = offset + frameHeaderLength;
+        int ySize = width * height;
+        int cSize = YuvFrame.getChromaWidth(width) * YuvFrame.getChromaHeight(height);
+
+        return new YuvFrame(
+            width, height,
+            view(chunk, y, ySize),
+            view(chunk, y + ySize, cSize),
+            view(chunk, y + ySize + cSize, cSize));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @param frameNumber the stamped frame number, starting at 1.
+     */
+    @Override
+    public YuvFrame getFrame(int frameNumber)
+        throws IOException
+    {
+        return frameNumber < 1 || frameNumber > frameCount ? null : getFrameAt(frameNumber - 1);
+    }
+
+    private static ByteBuffer view(ByteBuffer chunk, int offset, int length)
+    {
+        ByteBuffer view = chunk.duplicate();
+        view.limit(offset + length).position(offset);
+        return view.slice();
+    }
+
+    /**
+     * Maps a chunk of frames, once.
+     */
+    private synchronized MappedByteBuffer getChunk(int chunkIndex)
+        throws IOException
+    {
+        MappedByteBuffer chunk = chunks[chunkIndex];
+        if (chunk == null)
+        {
+            long start = dataOffset + chunkIndex * framesPerChunk * frameStride;
+            int frames = Math.min(framesPerChunk, frameCount - chunkIndex * framesPerChunk);
+            chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, frames * frameStride);
+            chunks[chunkIndex] = chunk;
+        }
+        return chunk;
+    }
+
+    /**
+     * Closes the file. The mappings remain valid until they are garbage
+     * collected.
+     */
+    @Override
+    public void close()
+        throws IOException
+    {
+        channel.close();
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.analysis;
+
+import java.awt.image.*;
+import java.nio.*;
+import java.util.*;
+
+/**
+ * A decoded video frame in planar YUV 4:2:0, the format of the Y4M test
+ * sequences. The planes are tightly packed (the stride is the plane width)
+ * and may be views on a larger buffer, for example a memory-mapped file, so
+ * they are always accessed with absolute indexes. Frames captured in the
+ * browser may have the luma plane only.
+ */
+public class YuvFrame
+{
+    /**
+     * The index of the luma plane.
+     */
+    public static final int Y = 0;
+
+    /**
+     * The index of the blue-difference chroma plane.
+     */
+    public static final int U = 1;
+
+    /**
+     * The index of the red-difference chroma plane.
+     */
+    public static final int V = 2;
+
+    private final int width;
+    private final int height;
+    private final ByteBuffer[] planes;
+
+    /**
+     * Creates new {@link YuvFrame}.
+     *
+     * @param width the width of the luma plane.
+     * @param height the height of the luma plane.
+     * @param y the luma plane, <tt>width * height</tt> bytes.
+     * @param u the U plane, a quarter of the luma plane (rounded up).
+     * @param v the V plane, a quarter of the luma plane (rounded up).
+     */
+    public YuvFrame(int width, int height, ByteBuffer y, ByteBuffer u, ByteBuffer v)
+    {
+        this(width, height, y, Objects.requireNonNull(u, "u"), Objects.requireNonNull(v, "v"), true);
+    }
+
+    private YuvFrame(int width, int height, ByteBuffer y, ByteBuffer u, ByteBuffer v, boolean chroma)
+    {
+        int chromaSize = getChromaWidth(width) * getChromaHeight(height);
+        if (y.remaining() < width * height
+            || chroma && (u.remaining() < chromaSize || v.remaining() < chromaSize))
+        {
+            throw new IllegalArgumentException("Plane too small for " + width + "x" + height);
+        }
+
+        this.width = width;
+        this.height = height;
+        this.planes = chroma
+            ? new ByteBuffer[] { y.slice(), u.slice(), v.slice() }
+            : new ByteBuffer[] { y.slice(), null, null };
+    }
+
+    /**
+     * Creates a frame with the luma plane only.
+     *
+     * @param width the width of the luma plane.
+     * @param height the height of the luma plane.
+     * @param y the luma plane, <tt>width * height</tt> bytes.
+     * @return the frame.
+     */
+    public static YuvFrame fromLuma(int width, int height, ByteBuffer y)
+    {
+        return new YuvFrame(width, height, y, null, null, false);
+    }
+
+    /**
+     * @param width the luma width.
+     * @return the width of the chroma planes.
+     */
+    public static int getChromaWidth(int width)
+    {
+        return (width + 1) / 2;
+    }
+
+    /**
+     * @param height the luma height.
+     * @return the height of the chroma planes.
+     */
+    public static int getChromaHeight(int height)
+    {
+        return (height + 1) / 2;
+    }
+
+    /**
+     * Converts an RGB image to YUV 4:2:0 with the BT.601 limited range
+     * coefficients used by ffmpeg for the test sequences.
+     *
+     * @param image the image.
+     * @return the frame.
+     */
+    public static YuvFrame fromImage(BufferedImage image)
+    {
+        int w = image.getWidth();
+        return fromRgb(w, image.getHeight(), (row, count, dst) -> image.getRGB(0, row, w, count, dst, 0, w));
+    }
+
+    /**
+     * Converts RGBA samples, as captured from a canvas, to YUV 4:2:0 like
+     * {@link #fromImage(BufferedImage)}. The alpha is ignored.
+     *
+     * @param w the width of the frame.
+     * @param h the height of the frame.
+     * @param rgba the samples, 4 bytes per pixel, read from the position of
+     * the buffer.
+     * @return the frame.
+     */
+    public static YuvFrame fromRgba(int w, int h, ByteBuffer rgba)
+    {
+        int base = rgba.position();
+        return fromRgb(w, h, (row, count, dst) ->
+        {
+            int src = base + row * w * 4;
+            for (int i = 0; i < count * w; i++, src += 4)
+            {
+                dst[i] = (rgba.get(src) & 0xFF) << 16 | (rgba.get(src + 1) & 0xFF) << 8 | rgba.get(src + 2) & 0xFF;
+            }
+        });
+    }
+
+    /**
+     * Reads rows of pixels packed as 0xRRGGBB.
+     */
+    private interface RowReader
+    {
+        void read(int row, int count, int[] dst);
+    }
+
+    private static YuvFrame fromRgb(int w, int h, RowReader reader)
+    {
+        int cw = getChromaWidth(w);
+        int ch = getChromaHeight(h);
+        byte[] y = new byte[w * h];
+        byte[] u = new byte[cw * ch];
+        byte[] v = new byte[cw * ch];
+
+        int[] rows = new int[2 * w];
+        for (int row = 0; row < h; row += 2)
+        {
+            int rowCount = Math.min(2, h - row);
+            reader.read(row, rowCount, rows);
+            if (rowCount == 1)
+            {
+                System.arraycopy(rows, 0, rows, w, w);
+            }
+
+            for (int r = 0; r < rowCount; r++)
+            {
+                int off = (row + r) * w;
+                for (int x = 0; x < w; x++)
+                {
+                    int rgb = rows[r * w + x];
+                    y[off + x] = (byte) luma((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+                }
+            }
+
+            int coff = (row / 2) * cw;
+            for (int x = 0; x < w; x += 2)
+            {
+                int x1 = Math.min(x + 1, w - 1);
+                int p0 = rows[x], p1 = rows[x1], p2 = rows[w + x], p3 = rows[w + x1];
+                int red = (((p0 >> 16) & 0xFF) + ((p1 >> 16) & 0xFF)
+                    + ((p2 >> 16) & 0xFF) + ((p3 >> 16) & 0xFF) + 2) >> 2;
+                int green = (((p0 >> 8) & 0xFF) + ((p1 >> 8) & 0xFF)
+                    + ((p2 >> 8) & 0xFF) + ((p3 >> 8) & 0xFF) + 2) >> 2;
+                int blue = ((p0 & 0xFF) + (p1 & 0xFF) + (p2 & 0xFF) + (p3 & 0xFF) + 2) >> 2;
+
+                u[coff + x / 2] = (byte) (((-38 * red - 74 * green + 112 * blue + 128) >> 8) + 128);
+                v[coff + x / 2] = (byte) (((112 * red - 94 * green - 18 * blue + 128) >> 8) + 128);
+            }
+        }
+
+        return new YuvFrame(w, h, ByteBuffer.wrap(y), ByteBuffer.wrap(u), ByteBuffer.wrap(v));
+    }
+
+    private static int luma(int red, int green, int blue)
+    {
+        return ((66 * red + 129 * green + 25 * blue + 128) >> 8) + 16;
+    }
+
+    /**
+     * @return the width of the luma plane.
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * @return the height of the luma plane.
+     */
+    public int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * @param plane {@link #Y}, {@link #U} or {@link #V}.
+     * @return the width of the plane.
+     */
+    public int getPlaneWidth(int plane)
+    {
+        return plane == Y ? width : getChromaWidth(width);
+    }
+
+    /**
+     * @param plane {@link #Y}, {@link #U} or {@link #V}.
+     * @return the height of the plane.
+     */
+    public int getPlaneHeight(int plane)
+    {
+        return plane == Y ? height : getChromaHeight(height);
+    }
+
+    /**
+     * @return <tt>false</tt> if this frame has the luma plane only.
+     */
+    public boolean hasChroma()
+    {
+        return planes[U] != null;
+    }
+
+    /**
+     * @param plane {@link #Y}, {@link #U} or {@link #V}.
+     * @return the plane, to be read with absolute indexes only, or
+     * <tt>null</tt> for the chroma planes of a luma only frame.
+     */
+    public ByteBuffer getPlane(int plane)
+    {
+        return planes[plane];
+    }
+
+    /**
+     * @param x the column.
+     * @param y the row.
+     * @return the luma value of a pixel, from 0 to 255.
+     */
+    public int getLuma(int x, int y)
+    {
+        return planes[Y].get(y * width + x) & 0xFF;
+    }
+
+    /**
+     * Scales this frame with bilinear interpolation.
+     *
+     * @param newWidth the width of the new frame.
+     * @param newHeight the height of the new frame.
+     * @return a new frame or this one if it already has the requested size.
+     */
+    public YuvFrame resize(int newWidth, int newHeight)
+    {
+        if (newWidth == width && newHeight == height)
+        {
+            return this;
+        }
+
+        ByteBuffer[] resized = new ByteBuffer[3];
+        for (int p = Y; p <= (hasChroma() ? V : Y); p++)
+        {
+            int dw = p == Y ? newWidth : getChromaWidth(newWidth);
+            int dh = p == Y ? newHeight : getChromaHeight(newHeight);
+            resized[p] = ByteBuffer.wrap(
+                resizePlane(planes[p], getPlaneWidth(p), getPlaneHeight(p), dw, dh));
+        }
+
+        return new YuvFrame(newWidth, newHeight, resized[Y], resized[U], resized[V], hasChroma());
+    }
+
+    /**
+     * Bilinear scaling of a single plane, sampling at the pixel centres.
+     */
+    static byte[] resizePlane(ByteBuffer src, int sw, int sh, int dw, int dh)
+    {
+        byte[] dst = new byte[dw * dh];
+        double sx = (double) sw / dw;
+        double sy = (double) sh / dh;
+
+        int[] x0 = new int[dw];
+        int[] x1 = new int[dw];
+        int[] fx = new int[dw];
+        for (int x = 0; x < dw; x++)
+        {
+            double fxs = Math.max(0, (x + 0.5) * sx - 0.5);
+            x0[x] = Math.min((int) fxs, sw - 1);
+            x1[x] = Math.min(x0[x] + 1, sw - 1);
+            fx[x] = (int) ((fxs - x0[x]) * 256);
+        }
+
+        for (int y = 0; y < dh; y++)
+        {
+            double fys = Math.max(0, (y + 0.5) * sy - 0.5);
+            int y0 = Math.min((int) fys, sh - 1);
+            int y1 = Math.min(y0 + 1, sh - 1);
+            int fy = (int) ((fys - y0) * 256);
+            int r0 = y0 * sw, r1 = y1 * sw, out = y * dw;
+
+            for (int x = 0; x < dw; x++)
+            {
+                int a = src.get(r0 + x0[x]) & 0xFF;
+                int b = src.get(r0 + x1[x]) & 0xFF;
+                int c = src.get(r1 + x0[x]) & 0xFF;
+                int d = src.get(r1 + x1[x]) & 0xFF;
+                int top = a * (256 - fx[x]) + b * fx[x];
+                int bottom = c * (256 - fx[x]) + d * fx[x];
+                dst[out + x] = (byte) ((top * (256 - fy) + bottom * fy + 32768) >> 16);
+            }
+        }
+
+        return dst;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "YuvFrame{" + width + "x" + height + "}";
+    }
+}
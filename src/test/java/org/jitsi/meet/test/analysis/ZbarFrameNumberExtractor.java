@@ -0,0 +1,117 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.analysis;
+
+import javax.imageio.*;
+import java.awt.image.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
+import java.util.concurrent.*;
+
+/**
+ * {@link FrameNumberExtractor} running zbarimg on the stamp region of the
+ * frame. Only the region is written to disk and a single process is spawned
+ * per frame.
+ */
+public class ZbarFrameNumberExtractor
+    implements FrameNumberExtractor
+{
+    /**
+     * The QR code decoder executable.
+     */
+    private static final String QR_CODE_DECODER = "zbarimg";
+
+    /**
+     * How long to wait for the decoder.
+     */
+    private static final long TIMEOUT_SECONDS = 10;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int extract(YuvFrame frame)
+    {
+        File file = null;
+        try
+        {
+            file = File.createTempFile("stamp", ".png");
+            ImageIO.write(cropStamp(frame), "png", file);
+
+            Process process
+                = new ProcessBuilder(QR_CODE_DECODER, "-q", "--raw", file.getPath())
+                    .redirectErrorStream(true)
+                    .start();
+            String output;
+            try (InputStream in = process.getInputStream())
+            {
+                output = new String(in.readAllBytes(), StandardCharsets.UTF_8).trim();
+            }
+            if (!process.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+            {
+                process.destroyForcibly();
+                return NO_FRAME_NUMBER;
+            }
+
+            return output.isEmpty() ? NO_FRAME_NUMBER : Integer.parseInt(output.split("\\s+")[0]);
+        }
+        catch (IOException | NumberFormatException e)
+        {
+            return NO_FRAME_NUMBER;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return NO_FRAME_NUMBER;
+        }
+        finally
+        {
+            if (file != null)
+            {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Copies the luma of the stamp region, with some margin, to a grayscale
+     * image.
+     *
+     * @param frame the frame.
+     * @return the image of the stamp region.
+     */
+    static BufferedImage cropStamp(YuvFrame frame)
+    {
+        double scale = (double) frame.getWidth() / STAMP_REFERENCE_WIDTH;
+        int size = (int) Math.ceil((2 * STAMP_OFFSET + STAMP_SIZE) * scale);
+        int w = Math.min(size, frame.getWidth());
+        int h = Math.min(size, frame.getHeight());
+
+        BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        ByteBuffer luma = frame.getPlane(YuvFrame.Y);
+        int stride = frame.getWidth();
+        for (int y = 0; y < h; y++)
+        {
+            for (int x = 0; x < w; x++)
+            {
+                pixels[y * w + x] = luma.get(y * stride + x);
+            }
+        }
+        return image;
+    }
+}
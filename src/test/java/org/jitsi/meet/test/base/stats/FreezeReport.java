@@ -0,0 +1,194 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.base.stats;
+
+import java.util.*;
+
+/**
+ * Aggregates the video freezes and stalls observed by the receivers of a run,
+ * per participant and per bridge. Thread safe, so the receivers can report
+ * concurrently.
+ */
+public class FreezeReport
+{
+    /**
+     * The totals per participant id.
+     */
+    private final Map<String, Totals> byParticipant = new TreeMap<>();
+
+    /**
+     * The totals per bridge.
+     */
+    private final Map<String, Totals> byBridge = new TreeMap<>();
+
+    /**
+     * Adds the totals of a participant.
+     *
+     * @param participant the id of the participant, unique in the run, for
+     * example the room and the name of the participant, whose names repeat in
+     * every conference.
+     * @param bridge the bridge of the participant or <tt>null</tt> if unknown.
+     * @param totals the totals observed by the participant.
+     */
+    public synchronized void add(String participant, String bridge, Totals totals)
+    {
+        byParticipant.computeIfAbsent(participant, k -> new Totals()).add(totals);
+        byBridge.computeIfAbsent(bridge == null ? "unknown" : bridge, k -> new Totals())
+            .add(totals);
+    }
+
+    /**
+     * @return a copy of the totals per participant id.
+     */
+    public synchronized Map<String, Totals> getByParticipant()
+    {
+        return copy(byParticipant);
+    }
+
+    /**
+     * @return a copy of the totals per bridge.
+     */
+    public synchronized Map<String, Totals> getByBridge()
+    {
+        return copy(byBridge);
+    }
+
+    private static Map<String, Totals> copy(Map<String, Totals> map)
+    {
+        Map<String, Totals> copy = new TreeMap<>();
+        map.forEach((k, v) -> copy.put(k, new Totals().add(v)));
+        return copy;
+    }
+
+    /**
+     * @return the report as a human readable table.
+     */
+    @Override
+    public synchronized String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Video freezes per participant:\n");
+        byParticipant.forEach((k, v) -> sb.append("  ").append(k).append(": ").append(v).append('\n'));
+        sb.append("Video freezes per bridge:\n");
+        byBridge.forEach((k, v) -> sb.append("  ").append(k).append(": ").append(v).append('\n'));
+        return sb.toString();
+    }
+
+    /**
+     * Freeze and stall counters. Not thread safe.
+     */
+    public static class Totals
+    {
+        /**
+         * The number of stalls, periods without any new decoded frame longer
+         * than the threshold of the detector.
+         */
+        public long stalls;
+
+        /**
+         * The total duration of the stalls in milliseconds.
+         */
+        public long stallsDurationMs;
+
+        /**
+         * The number of freezes reported by the browser.
+         */
+        public long freezes;
+
+        /**
+         * The total duration of the freezes reported by the browser in
+         * milliseconds.
+         */
+        public long freezesDurationMs;
+
+        /**
+         * The number of frames received.
+         */
+        public long framesReceived;
+
+        /**
+         * The number of frames decoded.
+         */
+        public long framesDecoded;
+
+        /**
+         * The sum of the time spent by the frames in the jitter buffer, in
+         * milliseconds.
+         */
+        public double jitterBufferDelayMs;
+
+        /**
+         * The number of frames which left the jitter buffer.
+         */
+        public long jitterBufferEmitted;
+
+        /**
+         * The total time the tracks were observed (track-milliseconds).
+         */
+        public long observedMs;
+
+        /**
+         * Adds other totals to these ones.
+         *
+         * @param other the totals to add.
+         * @return this instance.
+         */
+        public Totals add(Totals other)
+        {
+            stalls += other.stalls;
+            stallsDurationMs += other.stallsDurationMs;
+            freezes += other.freezes;
+            freezesDurationMs += other.freezesDurationMs;
+            framesReceived += other.framesReceived;
+            framesDecoded += other.framesDecoded;
+            jitterBufferDelayMs += other.jitterBufferDelayMs;
+            jitterBufferEmitted += other.jitterBufferEmitted;
+            observedMs += other.observedMs;
+            return this;
+        }
+
+        /**
+         * @return the fraction of the observed time the video was stalled or
+         * frozen, whichever is the largest.
+         */
+        public double getFrozenRatio()
+        {
+            if (observedMs <= 0)
+            {
+                return 0;
+            }
+            return (double) Math.max(stallsDurationMs, freezesDurationMs) / observedMs;
+        }
+
+        /**
+         * @return the average time spent by a frame in the jitter buffer in
+         * milliseconds.
+         */
+        public double getAverageJitterBufferDelayMs()
+        {
+            return jitterBufferEmitted > 0 ? jitterBufferDelayMs / jitterBufferEmitted : 0;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format(
+                "stalls=%d (%d ms), freezes=%d (%d ms), frozen=%.2f%%, decoded=%d/%d, jitterBuffer=%.1f ms",
+                stalls, stallsDurationMs, freezes, freezesDurationMs, 100 * getFrozenRatio(),
+                framesDecoded, framesReceived, getAverageJitterBufferDelayMs());
+        }
+    }
+}
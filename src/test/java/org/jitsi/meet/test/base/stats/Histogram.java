@@ -0,0 +1,254 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.base.stats;
+
+/**
+ * A histogram of values with fixed width bins over a range, so that the
+ * distribution of an unbounded number of values is kept in constant memory
+ * and histograms of the same range can be merged. Values out of the range are
+ * counted in the first or last bin, and counted apart as out of range.
+ * Percentiles are accurate to a bin width.
+ * Not thread safe.
+ */
+public class Histogram
+{
+    private final double min;
+    private final double binWidth;
+    private final long[] bins;
+
+    private long count;
+    private long below;
+    private long above;
+    private double sum;
+    private double lowest = Double.NaN;
+    private double highest = Double.NaN;
+
+    /**
+     * Creates new {@link Histogram}.
+     *
+     * @param min the lower bound of the range.
+     * @param max the upper bound of the range.
+     * @param binWidth the width of the bins.
+     */
+    public Histogram(double min, double max, double binWidth)
+    {
+        if (!(max > min) || !(binWidth > 0))
+        {
+            throw new IllegalArgumentException("Bad histogram range " + min + ".." + max + " / " + binWidth);
+        }
+        this.min = min;
+        this.binWidth = binWidth;
+        this.bins = new long[(int) Math.ceil((max - min) / binWidth)];
+    }
+
+    /**
+     * Adds a value. NaN is ignored.
+     *
+     * @param value the value.
+     * @return this instance.
+     */
+    public Histogram add(double value)
+    {
+        if (Double.isNaN(value))
+        {
+            return this;
+        }
+
+        double bin = Math.floor((value - min) / binWidth);
+        if (bin < 0)
+        {
+            below++;
+        }
+        else if (bin >= bins.length)
+        {
+            above++;
+        }
+        bins[(int) Math.max(0, Math.min(bins.length - 1, bin))]++;
+        lowest = count == 0 ? value : Math.min(lowest, value);
+        highest = count == 0 ? value : Math.max(highest, value);
+        count++;
+        sum += value;
+        return this;
+    }
+
+    /**
+     * Adds the values of another histogram with the same range and bins.
+     *
+     * @param other the histogram to add.
+     * @return this instance.
+     */
+    public Histogram add(Histogram other)
+    {
+        if (other.bins.length != bins.length || other.min != min || other.binWidth != binWidth)
+        {
+            throw new IllegalArgumentException("Histograms with different bins");
+        }
+        if (other.count == 0)
+        {
+            return this;
+        }
+
+        for (int i = 0; i < bins.length; i++)
+        {
+            bins[i] += other.bins[i];
+        }
+        lowest = count == 0 ? other.lowest : Math.min(lowest, other.lowest);
+        highest = count == 0 ? other.highest : Math.max(highest, other.highest);
+        count += other.count;
+        below += other.below;
+        above += other.above;
+        sum += other.sum;
+        return this;
+    }
+
+    /**
+     * Adds the values of another histogram with the same bin width, shifted
+     * by an offset. The bins are shifted by the offset rounded to a whole
+     * number of bins.
+     *
+     * @param other the histogram to add.
+     * @param offset the offset added to the values of the other histogram.
+     * @return this instance.
+     */
+    public Histogram add(Histogram other, double offset)
+    {
+        if (other.binWidth != binWidth)
+        {
+            throw new IllegalArgumentException("Histograms with different bin widths");
+        }
+        if (other.count == 0)
+        {
+            return this;
+        }
+
+        long shift = Math.round((other.min + offset - min) / binWidth);
+        for (int i = 0; i < other.bins.length; i++)
+        {
+            long bin = i + shift;
+            if (bin < 0)
+            {
+                below += other.bins[i];
+            }
+            else if (bin >= bins.length)
+            {
+                above += other.bins[i];
+            }
+            bins[(int) Math.max(0, Math.min(bins.length - 1, bin))] += other.bins[i];
+        }
+        double otherLowest = other.lowest + offset;
+        double otherHighest = other.highest + offset;
+        lowest = count == 0 ? otherLowest : Math.min(lowest, otherLowest);
+        highest = count == 0 ? otherHighest : Math.max(highest, otherHighest);
+        // The values out of the range of the other histogram are in its
+        // first and last bins, already counted if those are shifted out.
+        if (shift >= 0 && shift < bins.length)
+        {
+            below += other.below;
+        }
+        if (shift + other.bins.length - 1 >= 0 && shift + other.bins.length - 1 < bins.length)
+        {
+            above += other.above;
+        }
+        count += other.count;
+        sum += other.sum + offset * other.count;
+        return this;
+    }
+
+    /**
+     * @return a copy of this histogram.
+     */
+    public Histogram copy()
+    {
+        return new Histogram(min, min + bins.length * binWidth, binWidth).add(this);
+    }
+
+    /**
+     * @return the number of values.
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * @return the number of values out of the range, which are counted in the
+     * first or last bin.
+     */
+    public long getOutOfRange()
+    {
+        return below + above;
+    }
+
+    /**
+     * @return the mean of the values, NaN if none.
+     */
+    public double getMean()
+    {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    /**
+     * @return the lowest value, NaN if none.
+     */
+    public double getMin()
+    {
+        return lowest;
+    }
+
+    /**
+     * @return the highest value, NaN if none.
+     */
+    public double getMax()
+    {
+        return highest;
+    }
+
+    /**
+     * Returns a percentile: the upper bound of the bin which contains it,
+     * clamped to the lowest and highest values.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     * @return the value, NaN if there are no values.
+     */
+    public double getPercentile(double percentile)
+    {
+        if (count == 0)
+        {
+            return Double.NaN;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < bins.length; i++)
+        {
+            seen += bins[i];
+            if (seen >= rank)
+            {
+                return Math.max(lowest, Math.min(highest, min + (i + 1) * binWidth));
+            }
+        }
+        return highest;
+    }
+
+    @Override
+    public String toString()
+    {
+        String s = String.format(
+            "n=%d mean=%.1f p50=%.1f p90=%.1f p99=%.1f max=%.1f",
+            count, getMean(), getPercentile(50), getPercentile(90), getPercentile(99), getMax());
+        return below + above == 0 ? s : s + " outOfRange=" + (below + above);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.base.stats;
+
+import java.util.*;
+
+/**
+ * Aggregates delay distributions along several dimensions, for example per
+ * bridge, per codec and per network profile: every distribution is added to
+ * the distribution of each of its labels. Thread safe, so the receivers can
+ * report concurrently.
+ */
+public class LatencyReport
+{
+    /**
+     * The label of a dimension which is not known.
+     */
+    public static final String UNKNOWN = "unknown";
+
+    /**
+     * The distributions per dimension and per value.
+     */
+    private final Map<String, Map<String, Histogram>> byDimension = new TreeMap<>();
+
+    /**
+     * Adds a distribution.
+     *
+     * @param labels the value of every dimension, <tt>null</tt> values are
+     * reported as {@link #UNKNOWN}.
+     * @param delays the distribution of the delays, all the distributions
+     * must have the same bins.
+     */
+    public synchronized void add(Map<String, String> labels, Histogram delays)
+    {
+        labels.forEach((dimension, value) ->
+            byDimension.computeIfAbsent(dimension, k -> new TreeMap<>())
+                .merge(value == null ? UNKNOWN : value, delays.copy(), Histogram::add));
+    }
+
+    /**
+     * Returns a distribution.
+     *
+     * @param dimension the dimension, for example "bridge".
+     * @param value the value of the dimension.
+     * @return a copy of the distribution or <tt>null</tt> if none was added.
+     */
+    public synchronized Histogram get(String dimension, String value)
+    {
+        Histogram histogram = byDimension.getOrDefault(dimension, Collections.emptyMap()).get(value);
+        return histogram == null ? null : histogram.copy();
+    }
+
+    /**
+     * @return whether no distribution has been added.
+     */
+    public synchronized boolean isEmpty()
+    {
+        return byDimension.isEmpty();
+    }
+
+    /**
+     * @return the report as a human readable table.
+     */
+    @Override
+    public synchronized String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        byDimension.forEach((dimension, values) -> {
+            sb.append("Delay per ").append(dimension).append(":\n");
+            values.forEach((k, v) -> sb.append("  ").append(k).append(": ").append(v).append('\n'));
+        });
+        return sb.toString();
+    }
+}
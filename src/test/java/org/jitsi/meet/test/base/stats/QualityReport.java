@@ -0,0 +1,187 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.base.stats;
+
+import java.util.*;
+
+/**
+ * Aggregates the end-to-end freezes, skips and delay variation measured from
+ * the stamped frame numbers displayed by the probed receivers of a run, per
+ * participant and per bridge. Thread safe, so the receivers can report
+ * concurrently.
+ */
+public class QualityReport
+{
+    /**
+     * The totals per participant id.
+     */
+    private final Map<String, Totals> byParticipant = new TreeMap<>();
+
+    /**
+     * The totals per bridge.
+     */
+    private final Map<String, Totals> byBridge = new TreeMap<>();
+
+    /**
+     * Adds the totals of a participant.
+     *
+     * @param participant the id of the participant, unique in the run, for
+     * example the room and the name of the participant, whose names repeat in
+     * every conference.
+     * @param bridge the bridge of the participant or <tt>null</tt> if unknown.
+     * @param totals the totals observed by the participant.
+     */
+    public synchronized void add(String participant, String bridge, Totals totals)
+    {
+        byParticipant.computeIfAbsent(participant, k -> new Totals()).add(totals);
+        byBridge.computeIfAbsent(bridge == null ? "unknown" : bridge, k -> new Totals())
+            .add(totals);
+    }
+
+    /**
+     * @return a copy of the totals per participant id.
+     */
+    public synchronized Map<String, Totals> getByParticipant()
+    {
+        return copy(byParticipant);
+    }
+
+    /**
+     * @return a copy of the totals per bridge.
+     */
+    public synchronized Map<String, Totals> getByBridge()
+    {
+        return copy(byBridge);
+    }
+
+    private static Map<String, Totals> copy(Map<String, Totals> map)
+    {
+        Map<String, Totals> copy = new TreeMap<>();
+        map.forEach((k, v) -> copy.put(k, new Totals().add(v)));
+        return copy;
+    }
+
+    /**
+     * @return the report as a human readable table.
+     */
+    @Override
+    public synchronized String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Displayed video quality per participant:\n");
+        byParticipant.forEach((k, v) -> sb.append("  ").append(k).append(": ").append(v).append('\n'));
+        sb.append("Displayed video quality per bridge:\n");
+        byBridge.forEach((k, v) -> sb.append("  ").append(k).append(": ").append(v).append('\n'));
+        return sb.toString();
+    }
+
+    /**
+     * Counters of the displayed frame numbers. Not thread safe.
+     */
+    public static class Totals
+    {
+        /**
+         * The upper bound of the delay variation histogram in milliseconds.
+         */
+        public static final double MAX_DELAY_MS = 10000;
+
+        /**
+         * The width of the bins of the delay variation histogram in
+         * milliseconds.
+         */
+        public static final double DELAY_BIN_MS = 10;
+
+        /**
+         * The number of probes of a video.
+         */
+        public long samples;
+
+        /**
+         * The number of probes whose frame number could not be read.
+         */
+        public long undecoded;
+
+        /**
+         * The number of probes lost because the page buffer was full.
+         */
+        public long dropped;
+
+        /**
+         * The number of freezes: the same frame displayed for longer than
+         * the threshold of the probe.
+         */
+        public long freezes;
+
+        /**
+         * The total duration of the freezes in milliseconds.
+         */
+        public long freezesDurationMs;
+
+        /**
+         * The number of frames of the sequence which were not displayed
+         * because the video jumped ahead faster than real time.
+         */
+        public long skippedFrames;
+
+        /**
+         * The total time the videos were observed (video-milliseconds).
+         */
+        public long observedMs;
+
+        /**
+         * The delay of the displayed frames above the lowest delay of their
+         * video, in milliseconds. The delays beyond {@link #MAX_DELAY_MS},
+         * as during a long freeze, are counted as out of range.
+         */
+        public final Histogram delay = new Histogram(0, MAX_DELAY_MS, DELAY_BIN_MS);
+
+        /**
+         * Adds other totals to these ones.
+         *
+         * @param other the totals to add.
+         * @return this instance.
+         */
+        public Totals add(Totals other)
+        {
+            samples += other.samples;
+            undecoded += other.undecoded;
+            dropped += other.dropped;
+            freezes += other.freezes;
+            freezesDurationMs += other.freezesDurationMs;
+            skippedFrames += other.skippedFrames;
+            observedMs += other.observedMs;
+            delay.add(other.delay);
+            return this;
+        }
+
+        /**
+         * @return the fraction of the observed time the video was frozen.
+         */
+        public double getFrozenRatio()
+        {
+            return observedMs <= 0 ? 0 : (double) freezesDurationMs / observedMs;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format(
+                "freezes=%d (%d ms), frozen=%.2f%%, skipped=%d, undecoded=%d/%d, dropped=%d, delay variation: %s",
+                freezes, freezesDurationMs, 100 * getFrozenRatio(), skippedFrames, undecoded, samples, dropped,
+                delay);
+        }
+    }
+}
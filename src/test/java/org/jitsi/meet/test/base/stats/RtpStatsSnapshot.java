@@ -0,0 +1,164 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.base.stats;
+
+/**
+ * Immutable {@link RtpStatistics} taken at a given time. The stats are
+ * fetched and parsed once, when the snapshot is created, so reading several
+ * values does not query the participant again.
+ */
+public class RtpStatsSnapshot
+    implements RtpStatistics
+{
+    /**
+     * The time the stats were fetched, in milliseconds since the epoch.
+     */
+    private final long timestamp;
+
+    /**
+     * The download bitrate in bits per second.
+     */
+    private final long downloadBitrate;
+
+    /**
+     * The upload bitrate in bits per second.
+     */
+    private final long uploadBitrate;
+
+    /**
+     * The transport or <tt>null</tt> if it is unknown.
+     */
+    private final RtpTransport rtpTransport;
+
+    /**
+     * Creates new {@link RtpStatsSnapshot}.
+     *
+     * @param timestamp the time the stats were fetched.
+     * @param downloadBitrate the download bitrate in bits per second.
+     * @param uploadBitrate the upload bitrate in bits per second.
+     * @param rtpTransport the transport or <tt>null</tt> if unknown.
+     */
+    public RtpStatsSnapshot(
+        long timestamp,
+        long downloadBitrate,
+        long uploadBitrate,
+        RtpTransport rtpTransport)
+    {
+        this.timestamp = timestamp;
+        this.downloadBitrate = downloadBitrate;
+        this.uploadBitrate = uploadBitrate;
+        this.rtpTransport = rtpTransport;
+    }
+
+    /**
+     * @return the time the stats were fetched, in milliseconds since the epoch.
+     */
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getDownloadBitrate()
+    {
+        return downloadBitrate;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getUploadBitrate()
+    {
+        return uploadBitrate;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return the transport or <tt>null</tt> if it is unknown.
+     */
+    @Override
+    public RtpTransport getRtpTransport()
+    {
+        return rtpTransport;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RtpStatsSnapshot{timestamp=" + timestamp
+            + ", download=" + downloadBitrate
+            + ", upload=" + uploadBitrate
+            + ", transport=" + rtpTransport + "}";
+    }
+
+    /**
+     * Immutable {@link RtpTransport}.
+     */
+    public static class Transport
+        implements RtpTransport
+    {
+        /**
+         * The socket of the remote endpoint.
+         */
+        private final String remoteSocket;
+
+        /**
+         * Whether the transport is peer-to-peer.
+         */
+        private final boolean p2p;
+
+        /**
+         * Creates new {@link Transport}.
+         *
+         * @param remoteSocket the socket of the remote endpoint.
+         * @param p2p whether the transport is peer-to-peer.
+         */
+        public Transport(String remoteSocket, boolean p2p)
+        {
+            this.remoteSocket = remoteSocket;
+            this.p2p = p2p;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String getRemoteSocket()
+        {
+            return remoteSocket;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean isP2P()
+        {
+            return p2p;
+        }
+
+        @Override
+        public String toString()
+        {
+            return remoteSocket + (p2p ? " (p2p)" : "");
+        }
+    }
+}
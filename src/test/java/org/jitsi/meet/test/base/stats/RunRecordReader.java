@@ -0,0 +1,306 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.base.stats;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Reads back the files written by {@link RunRecorder} one block at a time.
+ * Can also be run from the command line to dump a file as CSV:
+ * <pre>
+ * java -cp target/test-classes org.jitsi.meet.test.base.stats.RunRecordReader
+ *     target/surefire-reports/logs/malleus-stats.jmts
+ * </pre>
+ */
+public class RunRecordReader
+    implements Closeable
+{
+    /**
+     * The CSV header printed by {@link #main(String[])}.
+     */
+    private static final String CSV_HEADER
+        = "timestamp,participant,bridge,bitrateUpload,bitrateDownload,"
+            + "rtt,packetLoss,fps,frameWidth,frameHeight";
+
+    /**
+     * The input.
+     */
+    private final DataInputStream in;
+
+    /**
+     * The participant and bridge names read so far, indexed by id.
+     */
+    private final List<String> dictionary = new ArrayList<>();
+
+    /**
+     * Reused decompressor.
+     */
+    private final Inflater inflater = new Inflater();
+
+    /**
+     * Opens a file written by {@link RunRecorder}.
+     *
+     * @param file the file.
+     * @throws IOException if the file cannot be read or has an unknown format.
+     */
+    public RunRecordReader(File file)
+        throws IOException
+    {
+        in = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(file)));
+
+        if (in.readInt() != RunRecorder.MAGIC)
+        {
+            in.close();
+            throw new IOException("Not a run record: " + file);
+        }
+        int version = in.readInt();
+        if (version != RunRecorder.VERSION)
+        {
+            in.close();
+            throw new IOException("Unsupported run record version " + version);
+        }
+    }
+
+    /**
+     * Reads the next block of samples.
+     *
+     * @return the block or <tt>null</tt> when the end of the file is reached.
+     * A block which was only partially written (the recorder did not complete)
+     * is treated as the end of the file.
+     * @throws IOException if the file is corrupted.
+     */
+    public Block next()
+        throws IOException
+    {
+        while (true)
+        {
+            int type = in.read();
+            if (type == -1)
+            {
+                return null;
+            }
+
+            try
+            {
+                if (type == RunRecorder.RECORD_STRING)
+                {
+                    int id = (int) RunRecorder.readVarLong(in);
+                    String value = in.readUTF();
+                    if (id != dictionary.size())
+                    {
+                        throw new IOException("Unexpected string id " + id);
+                    }
+                    dictionary.add(value);
+                }
+                else if (type == RunRecorder.RECORD_BLOCK)
+                {
+                    return readBlock();
+                }
+                else
+                {
+                    throw new IOException("Unknown record type " + type);
+                }
+            }
+            catch (EOFException e)
+            {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Reads, decompresses and decodes a block.
+     */
+    private Block readBlock()
+        throws IOException
+    {
+        int rawLength = in.readInt();
+        byte[] compressed = new byte[in.readInt()];
+        in.readFully(compressed);
+
+        byte[] raw = new byte[rawLength];
+        inflater.reset();
+        inflater.setInput(compressed);
+        try
+        {
+            int n = 0;
+            while (n < rawLength && !inflater.finished())
+            {
+                n += inflater.inflate(raw, n, rawLength - n);
+            }
+        }
+        catch (DataFormatException e)
+        {
+            throw new IOException("Corrupted block", e);
+        }
+
+        DataInputStream data
+            = new DataInputStream(new ByteArrayInputStream(raw));
+        int count = (int) RunRecorder.readVarLong(data);
+        Block block = new Block(count);
+
+        long prev = 0;
+        for (int i = 0; i < count; i++)
+        {
+            prev += RunRecorder.unZigZag(RunRecorder.readVarLong(data));
+            block.timestamps[i] = prev;
+        }
+        for (int i = 0; i < count; i++)
+        {
+            block.participants[i] = (int) RunRecorder.readVarLong(data);
+        }
+        for (int i = 0; i < count; i++)
+        {
+            block.bridges[i] = (int) RunRecorder.readVarLong(data);
+        }
+        for (int i = 0; i < count; i++)
+        {
+            block.bitratesUp[i]
+                = RunRecorder.unZigZag(RunRecorder.readVarLong(data));
+        }
+        for (int i = 0; i < count; i++)
+        {
+            block.bitratesDown[i]
+                = RunRecorder.unZigZag(RunRecorder.readVarLong(data));
+        }
+        for (int i = 0; i < count; i++)
+        {
+            block.rtts[i] = data.readFloat();
+        }
+        for (int i = 0; i < count; i++)
+        {
+            block.losses[i] = data.readFloat();
+        }
+        for (int i = 0; i < count; i++)
+        {
+            block.fps[i] = data.readFloat();
+        }
+        for (int i = 0; i < count; i++)
+        {
+            block.widths[i] = (int) RunRecorder.readVarLong(data);
+        }
+        for (int i = 0; i < count; i++)
+        {
+            block.heights[i] = (int) RunRecorder.readVarLong(data);
+        }
+
+        return block;
+    }
+
+    /**
+     * @param id a participant or bridge id.
+     * @return the name with the given id.
+     */
+    public String getString(int id)
+    {
+        return dictionary.get(id);
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        inflater.end();
+        in.close();
+    }
+
+    /**
+     * Dumps the files given as arguments to the standard output as CSV.
+     *
+     * @param args the files to dump.
+     * @throws IOException if a file cannot be read.
+     */
+    public static void main(String[] args)
+        throws IOException
+    {
+        if (args.length == 0)
+        {
+            System.err.println(
+                "Usage: RunRecordReader <file> [<file> ...]");
+            System.exit(1);
+        }
+
+        PrintStream out = System.out;
+        out.println(CSV_HEADER);
+        for (String arg : args)
+        {
+            try (RunRecordReader reader = new RunRecordReader(new File(arg)))
+            {
+                Block block;
+                while ((block = reader.next()) != null)
+                {
+                    for (int i = 0; i < block.size(); i++)
+                    {
+                        out.println(block.timestamps[i]
+                            + "," + reader.getString(block.participants[i])
+                            + "," + reader.getString(block.bridges[i])
+                            + "," + block.bitratesUp[i]
+                            + "," + block.bitratesDown[i]
+                            + "," + block.rtts[i]
+                            + "," + block.losses[i]
+                            + "," + block.fps[i]
+                            + "," + block.widths[i]
+                            + "," + block.heights[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A block of samples, one array per column. The participant and bridge
+     * columns hold ids which are resolved with
+     * {@link RunRecordReader#getString(int)}.
+     */
+    public static class Block
+    {
+        public final long[] timestamps;
+        public final int[] participants;
+        public final int[] bridges;
+        public final long[] bitratesUp;
+        public final long[] bitratesDown;
+        public final float[] rtts;
+        public final float[] losses;
+        public final float[] fps;
+        public final int[] widths;
+        public final int[] heights;
+
+        private Block(int count)
+        {
+            timestamps = new long[count];
+            participants = new int[count];
+            bridges = new int[count];
+            bitratesUp = new long[count];
+            bitratesDown = new long[count];
+            rtts = new float[count];
+            losses = new float[count];
+            fps = new float[count];
+            widths = new int[count];
+            heights = new int[count];
+        }
+
+        /**
+         * @return the number of samples in this block.
+         */
+        public int size()
+        {
+            return timestamps.length;
+        }
+    }
+}
@@ -0,0 +1,437 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.base.stats;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Streams per participant media time series into an append-only, compressed,
+ * columnar file. Samples are buffered in primitive arrays until a block is
+ * full, then the block is encoded column by column, deflated and appended to
+ * the file, so the memory used does not depend on the length of the run.
+ * Use {@link RunRecordReader} to read the file back.
+ *
+ * The file starts with {@link #MAGIC} and {@link #VERSION} followed by
+ * records. A record is either a string ({@link #RECORD_STRING}: varint id and
+ * the UTF string) which assigns an id to a participant or a bridge name, or a
+ * block ({@link #RECORD_BLOCK}: raw length, compressed length and the deflated
+ * columns). Strings are always written before the first block using them.
+ */
+public class RunRecorder
+    implements Closeable
+{
+    /**
+     * The file magic.
+     */
+    static final int MAGIC = 0x4a4d5453; // JMTS
+
+    /**
+     * The file format version.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Record type of a dictionary string.
+     */
+    static final byte RECORD_STRING = 'S';
+
+    /**
+     * Record type of a block of samples.
+     */
+    static final byte RECORD_BLOCK = 'B';
+
+    /**
+     * The default number of samples kept in memory before they are written.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    /**
+     * The output.
+     */
+    private final DataOutputStream out;
+
+    /**
+     * The file being written.
+     */
+    private final File file;
+
+    /**
+     * The ids of the participant and bridge names written so far.
+     */
+    private final Map<String, Integer> dictionary = new HashMap<>();
+
+    /**
+     * The column buffers of the current block.
+     */
+    private final long[] timestamps;
+    private final int[] participants;
+    private final int[] bridges;
+    private final long[] bitratesUp;
+    private final long[] bitratesDown;
+    private final float[] rtts;
+    private final float[] losses;
+    private final float[] fps;
+    private final int[] widths;
+    private final int[] heights;
+
+    /**
+     * The number of samples in the current block.
+     */
+    private int count;
+
+    /**
+     * Reused buffer where the block is encoded before compression.
+     */
+    private final ByteArrayOutputStream raw = new ByteArrayOutputStream();
+
+    /**
+     * Reused buffer where the block is compressed.
+     */
+    private final ByteArrayOutputStream compressed
+        = new ByteArrayOutputStream();
+
+    /**
+     * Reused compressor.
+     */
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+    /**
+     * The total number of samples recorded.
+     */
+    private long total;
+
+    /**
+     * Creates a {@link RunRecorder} with {@link #DEFAULT_BLOCK_SIZE}.
+     *
+     * @param file the file to create.
+     * @throws IOException if the file cannot be created.
+     */
+    public RunRecorder(File file)
+        throws IOException
+    {
+        this(file, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Creates a {@link RunRecorder}.
+     *
+     * @param file the file to create.
+     * @param blockSize the number of samples kept in memory before they are
+     * written.
+     * @throws IOException if the file cannot be created.
+     */
+    public RunRecorder(File file, int blockSize)
+        throws IOException
+    {
+        this.file = file;
+        this.out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(file)));
+
+        timestamps = new long[blockSize];
+        participants = new int[blockSize];
+        bridges = new int[blockSize];
+        bitratesUp = new long[blockSize];
+        bitratesDown = new long[blockSize];
+        rtts = new float[blockSize];
+        losses = new float[blockSize];
+        fps = new float[blockSize];
+        widths = new int[blockSize];
+        heights = new int[blockSize];
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.flush();
+    }
+
+    /**
+     * @return the file being written.
+     */
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * @return the number of samples recorded so far.
+     */
+    public synchronized long getTotal()
+    {
+        return total;
+    }
+
+    /**
+     * Records a single sample.
+     *
+     * @param timestamp the sample time in milliseconds since the epoch.
+     * @param participant the participant name.
+     * @param bridge the bridge the participant is connected to or
+     * <tt>null</tt> if unknown.
+     * @param bitrateUp the upload bitrate in bits per second.
+     * @param bitrateDown the download bitrate in bits per second.
+     * @param rtt the round trip time in milliseconds, -1 if unknown.
+     * @param loss the fraction of packets lost.
+     * @param frameRate the received frame rate.
+     * @param width the received frame width.
+     * @param height the received frame height.
+     * @throws IOException if writing a full block fails.
+     */
+    public synchronized void record(
+        long timestamp, String participant, String bridge,
+        long bitrateUp, long bitrateDown,
+        float rtt, float loss, float frameRate, int width, int height)
+        throws IOException
+    {
+        int i = count;
+        timestamps[i] = timestamp;
+        participants[i] = getStringId(participant);
+        bridges[i] = getStringId(bridge == null ? "" : bridge);
+        bitratesUp[i] = bitrateUp;
+        bitratesDown[i] = bitrateDown;
+        rtts[i] = rtt;
+        losses[i] = loss;
+        fps[i] = frameRate;
+        widths[i] = width;
+        heights[i] = height;
+
+        total++;
+        if (++count == timestamps.length)
+        {
+            flushBlock();
+        }
+    }
+
+    /**
+     * Records a batch of samples of a participant.
+     *
+     * @param participant the participant name.
+     * @param bridge the bridge the participant is connected to or
+     * <tt>null</tt> if unknown.
+     * @param samples the samples.
+     * @throws IOException if writing a full block fails.
+     */
+    public synchronized void record(
+        String participant, String bridge, StatsSamples samples)
+        throws IOException
+    {
+        int up = samples.getColumnIndex(StatsSamples.BITRATE_UPLOAD);
+        int down = samples.getColumnIndex(StatsSamples.BITRATE_DOWNLOAD);
+        int rtt = samples.getColumnIndex(StatsSamples.RTT);
+        int loss = samples.getColumnIndex(StatsSamples.PACKET_LOSS);
+        int frameRate = samples.getColumnIndex(StatsSamples.FPS);
+        int width = samples.getColumnIndex(StatsSamples.FRAME_WIDTH);
+        int height = samples.getColumnIndex(StatsSamples.FRAME_HEIGHT);
+
+        for (int row = 0; row < samples.size(); row++)
+        {
+            record(
+                samples.getTimestamp(row), participant, bridge,
+                (long) valueOf(samples, row, up, 0),
+                (long) valueOf(samples, row, down, 0),
+                (float) valueOf(samples, row, rtt, -1),
+                (float) valueOf(samples, row, loss, 0),
+                (float) valueOf(samples, row, frameRate, 0),
+                (int) valueOf(samples, row, width, 0),
+                (int) valueOf(samples, row, height, 0));
+        }
+    }
+
+    /**
+     * Returns a value or the default when the column is missing.
+     */
+    private static double valueOf(
+        StatsSamples samples, int row, int column, double defaultValue)
+    {
+        return column == -1 ? defaultValue : samples.get(row, column);
+    }
+
+    /**
+     * Returns the id of a string, writing it to the dictionary first if it is
+     * new.
+     */
+    private int getStringId(String value)
+        throws IOException
+    {
+        Integer id = dictionary.get(value);
+        if (id == null)
+        {
+            id = dictionary.size();
+            dictionary.put(value, id);
+
+            out.writeByte(RECORD_STRING);
+            writeVarLong(out, id);
+            out.writeUTF(value);
+        }
+        return id;
+    }
+
+    /**
+     * Encodes, compresses and appends the current block.
+     */
+    private void flushBlock()
+        throws IOException
+    {
+        if (count == 0)
+        {
+            return;
+        }
+
+        raw.reset();
+        DataOutputStream block = new DataOutputStream(raw);
+        writeVarLong(block, count);
+
+        long prev = 0;
+        for (int i = 0; i < count; i++)
+        {
+            writeVarLong(block, zigZag(timestamps[i] - prev));
+            prev = timestamps[i];
+        }
+        for (int i = 0; i < count; i++)
+        {
+            writeVarLong(block, participants[i]);
+        }
+        for (int i = 0; i < count; i++)
+        {
+            writeVarLong(block, bridges[i]);
+        }
+        for (int i = 0; i < count; i++)
+        {
+            writeVarLong(block, zigZag(bitratesUp[i]));
+        }
+        for (int i = 0; i < count; i++)
+        {
+            writeVarLong(block, zigZag(bitratesDown[i]));
+        }
+        for (int i = 0; i < count; i++)
+        {
+            block.writeFloat(rtts[i]);
+        }
+        for (int i = 0; i < count; i++)
+        {
+            block.writeFloat(losses[i]);
+        }
+        for (int i = 0; i < count; i++)
+        {
+            block.writeFloat(fps[i]);
+        }
+        for (int i = 0; i < count; i++)
+        {
+            writeVarLong(block, widths[i]);
+        }
+        for (int i = 0; i < count; i++)
+        {
+            writeVarLong(block, heights[i]);
+        }
+        block.flush();
+
+        compressed.reset();
+        deflater.reset();
+        try (DeflaterOutputStream deflated
+                 = new DeflaterOutputStream(compressed, deflater))
+        {
+            raw.writeTo(deflated);
+        }
+
+        out.writeByte(RECORD_BLOCK);
+        out.writeInt(raw.size());
+        out.writeInt(compressed.size());
+        compressed.writeTo(out);
+        out.flush();
+
+        count = 0;
+    }
+
+    /**
+     * Writes the buffered samples to the file.
+     *
+     * @throws IOException if writing fails.
+     */
+    public synchronized void flush()
+        throws IOException
+    {
+        flushBlock();
+    }
+
+    /**
+     * Writes the buffered samples and closes the file.
+     *
+     * @throws IOException if writing fails.
+     */
+    @Override
+    public synchronized void close()
+        throws IOException
+    {
+        try
+        {
+            flushBlock();
+        }
+        finally
+        {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    /**
+     * ZigZag encodes a signed value so that small negative values stay small.
+     */
+    static long zigZag(long value)
+    {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Decodes a ZigZag encoded value.
+     */
+    static long unZigZag(long value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Writes an unsigned LEB128 variable length integer.
+     */
+    static void writeVarLong(DataOutput out, long value)
+        throws IOException
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Reads an unsigned LEB128 variable length integer.
+     */
+    static long readVarLong(DataInput in)
+        throws IOException
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.base.stats;
+
+import java.nio.*;
+import java.util.*;
+
+/**
+ * A batch of RTP statistics samples recorded at a fixed interval. The values
+ * are kept in a single row-major <tt>double</tt> array, one row per sample and
+ * one column per value, so that a batch can be processed without boxing.
+ */
+public class StatsSamples
+{
+    /**
+     * The sample time, milliseconds since the epoch.
+     */
+    public static final String TIMESTAMP = "timestamp";
+
+    /**
+     * The download (receive) RTP bitrate in bits per second.
+     */
+    public static final String BITRATE_DOWNLOAD = "bitrateDownload";
+
+    /**
+     * The upload (send) RTP bitrate in bits per second.
+     */
+    public static final String BITRATE_UPLOAD = "bitrateUpload";
+
+    /**
+     * The round trip time of the selected candidate pair in milliseconds or
+     * -1 if unknown.
+     */
+    public static final String RTT = "rtt";
+
+    /**
+     * The fraction (0.0 to 1.0) of the packets lost during the sample interval.
+     */
+    public static final String PACKET_LOSS = "packetLoss";
+
+    /**
+     * The highest frame rate of the received video.
+     */
+    public static final String FPS = "fps";
+
+    /**
+     * The highest frame height of the received video.
+     */
+    public static final String FRAME_HEIGHT = "frameHeight";
+
+    /**
+     * The highest frame width of the received video.
+     */
+    public static final String FRAME_WIDTH = "frameWidth";
+
+    /**
+     * The bandwidth estimate of the selected candidate pair in bits per
+     * second, the bitrate the sender may send, or -1 if unknown.
+     */
+    public static final String AVAILABLE_OUTGOING_BITRATE = "availableOutgoingBitrate";
+
+    /**
+     * The sum of the target bitrates of the video encoders in bits per
+     * second or -1 if unknown.
+     */
+    public static final String TARGET_BITRATE = "targetBitrate";
+
+    /**
+     * An empty batch.
+     */
+    public static final StatsSamples EMPTY
+        = new StatsSamples(new String[] { TIMESTAMP }, new double[0], 0);
+
+    /**
+     * The column names.
+     */
+    private final String[] columns;
+
+    /**
+     * The samples, row-major.
+     */
+    private final double[] data;
+
+    /**
+     * The number of samples which were overwritten before being collected.
+     */
+    private final long dropped;
+
+    /**
+     * Creates new {@link StatsSamples}.
+     *
+     * @param columns the column names, the first one must be
+     * {@link #TIMESTAMP}.
+     * @param data the samples in row-major order.
+     * @param dropped the number of samples lost because of buffer overflow.
+     */
+    public StatsSamples(String[] columns, double[] data, long dropped)
+    {
+        if (columns.length == 0 || !TIMESTAMP.equals(columns[0]))
+        {
+            throw new IllegalArgumentException(
+                "The first column must be " + TIMESTAMP);
+        }
+        if (data.length % columns.length != 0)
+        {
+            throw new IllegalArgumentException(
+                "Data length " + data.length + " is not a multiple of "
+                    + columns.length);
+        }
+
+        this.columns = columns;
+        this.data = data;
+        this.dropped = dropped;
+    }
+
+    /**
+     * Decodes a batch of samples encoded as little-endian doubles.
+     *
+     * @param columns the column names.
+     * @param bytes the encoded samples.
+     * @param dropped the number of samples lost because of buffer overflow.
+     * @return the decoded {@link StatsSamples}.
+     */
+    public static StatsSamples decode(
+        String[] columns, byte[] bytes, long dropped)
+    {
+        DoubleBuffer buffer = ByteBuffer.wrap(bytes)
+            .order(ByteOrder.LITTLE_ENDIAN)
+            .asDoubleBuffer();
+        double[] data = new double[buffer.remaining()];
+        buffer.get(data);
+
+        return new StatsSamples(columns, data, dropped);
+    }
+
+    /**
+     * @return the number of samples in this batch.
+     */
+    public int size()
+    {
+        return data.length / columns.length;
+    }
+
+    /**
+     * @return the column names.
+     */
+    public List<String> getColumns()
+    {
+        return Collections.unmodifiableList(Arrays.asList(columns));
+    }
+
+    /**
+     * @return the number of samples which were overwritten in the buffer
+     * before they could be collected.
+     */
+    public long getDropped()
+    {
+        return dropped;
+    }
+
+    /**
+     * Finds the index of a column.
+     *
+     * @param column the column name.
+     * @return the index of the column or -1 if there is no such column.
+     */
+    public int getColumnIndex(String column)
+    {
+        for (int i = 0; i < columns.length; i++)
+        {
+            if (columns[i].equals(column))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param row the sample index.
+     * @return the time of the sample in milliseconds since the epoch.
+     */
+    public long getTimestamp(int row)
+    {
+        return (long) data[row * columns.length];
+    }
+
+    /**
+     * @param row the sample index.
+     * @param column the column index.
+     * @return the value.
+     */
+    public double get(int row, int column)
+    {
+        return data[row * columns.length + column];
+    }
+
+    /**
+     * @param row the sample index.
+     * @param column the column name.
+     * @return the value.
+     * @throws IllegalArgumentException if there is no such column.
+     */
+    public double get(int row, String column)
+    {
+        int idx = getColumnIndex(column);
+        if (idx == -1)
+        {
+            throw new IllegalArgumentException("No such column: " + column);
+        }
+
+        return get(row, idx);
+    }
+
+    /**
+     * Copies a column into a new array.
+     *
+     * @param column the column name.
+     * @return the values of the column, one per sample.
+     * @throws IllegalArgumentException if there is no such column.
+     */
+    public double[] getColumn(String column)
+    {
+        int idx = getColumnIndex(column);
+        if (idx == -1)
+        {
+            throw new IllegalArgumentException("No such column: " + column);
+        }
+
+        double[] values = new double[size()];
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = data[i * columns.length + idx];
+        }
+        return values;
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.capture;
+
+import java.util.*;
+
+/**
+ * How {@link VideoOperator} captures the frames of the videos. The full RGBA
+ * frames of a 720p video add up to more than 100MB per second, so the other
+ * modes keep only what the analysis needs and, with a capacity, all the
+ * memory of a capture is allocated in the browser when it starts.
+ */
+public class CaptureOptions
+{
+    /**
+     * The capture modes, see PSNRVideoOperator.js.
+     */
+    public enum Mode
+    {
+        /**
+         * The full RGBA frames.
+         */
+        RGBA("rgba"),
+
+        /**
+         * RGBA frames downscaled to {@link #setWidth(int)}.
+         */
+        SCALED("scaled"),
+
+        /**
+         * The luma plane, downscaled to {@link #setWidth(int)} if set.
+         */
+        LUMA("luma"),
+
+        /**
+         * The luma of the region holding the frame number QR code.
+         */
+        STAMP("stamp"),
+
+        /**
+         * Images encoded by a worker, to {@link #setMimeType(String)}.
+         */
+        ENCODED("encoded"),
+
+        /**
+         * No image, only the timestamps and with
+         * {@link #setFrameCallback(boolean)} the {@link FrameTimings}.
+         */
+        METADATA("metadata");
+
+        private final String value;
+
+        Mode(String value)
+        {
+            this.value = value;
+        }
+
+        /**
+         * @return the name of the mode in PSNRVideoOperator.js.
+         */
+        public String getValue()
+        {
+            return value;
+        }
+
+        /**
+         * Parses a mode name, case insensitive.
+         *
+         * @param value the name of the mode.
+         * @return the mode.
+         * @throws IllegalArgumentException if there is no such mode.
+         */
+        public static Mode parse(String value)
+        {
+            for (Mode mode : values())
+            {
+                if (mode.value.equalsIgnoreCase(value))
+                {
+                    return mode;
+                }
+            }
+            throw new IllegalArgumentException("Unknown capture mode: " + value);
+        }
+    }
+
+    /**
+     * The default capture frame rate.
+     */
+    public static final int DEFAULT_FPS = 30;
+
+    private Mode mode = Mode.RGBA;
+    private int fps = DEFAULT_FPS;
+    private int capacity;
+    private int width;
+    private String mimeType;
+    private double quality;
+    private int encodedBudget;
+    private boolean frameCallback;
+
+    /**
+     * @return the capture mode.
+     */
+    public Mode getMode()
+    {
+        return mode;
+    }
+
+    /**
+     * Sets the capture mode, {@link Mode#RGBA} by default.
+     *
+     * @param mode the mode.
+     * @return this.
+     */
+    public CaptureOptions setMode(Mode mode)
+    {
+        this.mode = Objects.requireNonNull(mode, "mode");
+        return this;
+    }
+
+    /**
+     * @return the capture frame rate.
+     */
+    public int getFps()
+    {
+        return fps;
+    }
+
+    /**
+     * Sets the capture frame rate, {@link #DEFAULT_FPS} by default.
+     *
+     * @param fps the frame rate.
+     * @return this.
+     */
+    public CaptureOptions setFps(int fps)
+    {
+        this.fps = fps;
+        return this;
+    }
+
+    /**
+     * @return the maximum number of frames captured per video, 0 for
+     * unbounded.
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * Sets the maximum number of frames captured per video. The memory for
+     * that many frames is allocated when the capture starts and the frames
+     * past the capacity are dropped. Unbounded by default, except for
+     * {@link Mode#ENCODED} which requires a capacity.
+     *
+     * @param capacity the number of frames, 0 for unbounded.
+     * @return this.
+     */
+    public CaptureOptions setCapacity(int capacity)
+    {
+        this.capacity = capacity;
+        return this;
+    }
+
+    /**
+     * Sets the capacity to the number of frames captured in a given time at
+     * the capture frame rate, plus one second.
+     *
+     * @param durationMillis the duration of the capture.
+     * @return this.
+     */
+    public CaptureOptions setCapacityFor(long durationMillis)
+    {
+        return setCapacity((int) ((durationMillis + 1000) * fps / 1000));
+    }
+
+    /**
+     * @return the width of the captured frames, 0 for the video width.
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * Sets the width of the frames captured in {@link Mode#SCALED},
+     * {@link Mode#LUMA} or {@link Mode#ENCODED} mode. The aspect ratio is
+     * kept and the frames are never upscaled.
+     *
+     * @param width the width, 0 for the video width.
+     * @return this.
+     */
+    public CaptureOptions setWidth(int width)
+    {
+        this.width = width;
+        return this;
+    }
+
+    /**
+     * Sets the image type of the {@link Mode#ENCODED} frames, PNG by
+     * default.
+     *
+     * @param mimeType the mime type.
+     * @return this.
+     */
+    public CaptureOptions setMimeType(String mimeType)
+    {
+        this.mimeType = mimeType;
+        return this;
+    }
+
+    /**
+     * Sets the quality of the {@link Mode#ENCODED} frames, for lossy
+     * formats.
+     *
+     * @param quality from 0 to 1.
+     * @return this.
+     */
+    public CaptureOptions setQuality(double quality)
+    {
+        this.quality = quality;
+        return this;
+    }
+
+    /**
+     * Sets the size of the buffer holding the {@link Mode#ENCODED} frames of
+     * a video, 64MB by default.
+     *
+     * @param encodedBudget the size in bytes.
+     * @return this.
+     */
+    public CaptureOptions setEncodedBudget(int encodedBudget)
+    {
+        this.encodedBudget = encodedBudget;
+        return this;
+    }
+
+    /**
+     * @return whether every presented frame is captured.
+     */
+    public boolean isFrameCallback()
+    {
+        return frameCallback;
+    }
+
+    /**
+     * Sets whether to capture every frame presented by the video element,
+     * with <tt>requestVideoFrameCallback</tt>, instead of sampling the
+     * element at {@link #setFps(int)}. The frames are then neither
+     * duplicated nor missed by the capture and their presentation metadata
+     * is recorded, see {@link VideoOperator#getFrameTimings(String)}. The
+     * frame rate is still used to size the capacity.
+     *
+     * @param frameCallback <tt>true</tt> to use the frame callback.
+     * @return this.
+     */
+    public CaptureOptions setFrameCallback(boolean frameCallback)
+    {
+        this.frameCallback = frameCallback;
+        return this;
+    }
+
+    /**
+     * @return the options as passed to PSNRVideoOperator.js.
+     */
+    Map<String, Object> toMap()
+    {
+        Map<String, Object> map = new HashMap<>();
+        map.put("mode", mode.getValue());
+        map.put("capacity", capacity);
+        map.put("width", width);
+        map.put("frameCallback", frameCallback);
+        if (mimeType != null)
+        {
+            map.put("mimeType", mimeType);
+        }
+        if (quality > 0)
+        {
+            map.put("quality", quality);
+        }
+        if (encodedBudget > 0)
+        {
+            map.put("encodedBudget", encodedBudget);
+        }
+        return map;
+    }
+}
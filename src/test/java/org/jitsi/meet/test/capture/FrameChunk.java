@@ -0,0 +1,224 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.capture;
+
+import org.jitsi.meet.test.analysis.*;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+/**
+ * Consecutive captured frames of a video retrieved with a single call by
+ * {@link VideoOperator#readFrames(String, int, int, FrameChunk)}. The buffers
+ * of a chunk are reused when it is passed again to <tt>readFrames</tt>, so
+ * the frames returned by a chunk are views which are only valid until then.
+ */
+public class FrameChunk
+{
+    private String videoId;
+    private int start;
+    private int count;
+    private int width;
+    private int height;
+    private int frameSize;
+
+    /**
+     * The base64 data, as bytes.
+     */
+    private byte[] encoded = new byte[0];
+
+    /**
+     * The decoded data.
+     */
+    private byte[] data = new byte[0];
+
+    private int[] offsets = new int[0];
+    private int[] lengths = new int[0];
+
+    /**
+     * Decodes the frames returned by PSNRVideoOperator.js, reusing the
+     * buffers of this chunk.
+     *
+     * @param videoId the id of the video element.
+     * @param start the index of the first frame.
+     * @param frames the result of <tt>VideoOperator.getFrames</tt>.
+     */
+    void decode(String videoId, int start, Map<String, Object> frames)
+    {
+        this.videoId = videoId;
+        this.start = start;
+        this.count = ((Number) frames.get("count")).intValue();
+        this.width = ((Number) frames.get("width")).intValue();
+        this.height = ((Number) frames.get("height")).intValue();
+        this.frameSize = ((Number) frames.get("frameSize")).intValue();
+
+        String base64 = (String) frames.get("data");
+        int encodedLength = base64.length();
+        if (encoded.length < encodedLength)
+        {
+            encoded = new byte[encodedLength];
+        }
+        for (int i = 0; i < encodedLength; i++)
+        {
+            encoded[i] = (byte) base64.charAt(i);
+        }
+
+        int dataLength;
+        if (data.length < encodedLength / 4 * 3)
+        {
+            data = new byte[encodedLength / 4 * 3];
+        }
+        try (InputStream in = Base64.getDecoder().wrap(new ByteArrayInputStream(encoded, 0, encodedLength)))
+        {
+            dataLength = in.readNBytes(data, 0, data.length);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+
+        if (offsets.length < count)
+        {
+            offsets = new int[count];
+            lengths = new int[count];
+        }
+        if (frameSize > 0)
+        {
+            for (int i = 0; i < count; i++)
+            {
+                offsets[i] = i * frameSize;
+                lengths[i] = frameSize;
+            }
+        }
+        else
+        {
+            ByteBuffer buf = ByteBuffer.wrap(data, 0, dataLength);
+            for (int i = 0; i < count; i++)
+            {
+                lengths[i] = buf.getInt();
+                offsets[i] = buf.position();
+                buf.position(offsets[i] + lengths[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the id of the video element.
+     */
+    public String getVideoId()
+    {
+        return videoId;
+    }
+
+    /**
+     * @return the index of the first frame of this chunk in the capture.
+     */
+    public int getStart()
+    {
+        return start;
+    }
+
+    /**
+     * @return the number of frames in this chunk.
+     */
+    public int getCount()
+    {
+        return count;
+    }
+
+    /**
+     * @return the width of the captured frames.
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * @return the height of the captured frames.
+     */
+    public int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * @return the size of the raw frames, 0 for encoded frames.
+     */
+    public int getFrameSize()
+    {
+        return frameSize;
+    }
+
+    /**
+     * @return the decoded data of all the frames.
+     */
+    public byte[] getData()
+    {
+        return data;
+    }
+
+    /**
+     * @param i the index of the frame in this chunk.
+     * @return the offset of the frame in {@link #getData()}.
+     */
+    public int getOffset(int i)
+    {
+        return offsets[Objects.checkIndex(i, count)];
+    }
+
+    /**
+     * @param i the index of the frame in this chunk.
+     * @return the size of the frame, 0 for a dropped encoded frame.
+     */
+    public int getLength(int i)
+    {
+        return lengths[Objects.checkIndex(i, count)];
+    }
+
+    /**
+     * Gets a frame captured in {@link CaptureOptions.Mode#LUMA} or
+     * {@link CaptureOptions.Mode#STAMP} mode.
+     *
+     * @param i the index of the frame in this chunk.
+     * @return a luma only view on the frame.
+     */
+    public YuvFrame getLumaFrame(int i)
+    {
+        if (frameSize != width * height)
+        {
+            throw new IllegalStateException("Not a luma capture");
+        }
+        return YuvFrame.fromLuma(width, height, ByteBuffer.wrap(data, getOffset(i), frameSize));
+    }
+
+    /**
+     * Converts a frame captured in {@link CaptureOptions.Mode#RGBA} or
+     * {@link CaptureOptions.Mode#SCALED} mode.
+     *
+     * @param i the index of the frame in this chunk.
+     * @return a copy of the frame in YUV.
+     */
+    public YuvFrame getRgbaFrame(int i)
+    {
+        if (frameSize != width * height * 4)
+        {
+            throw new IllegalStateException("Not an RGBA capture");
+        }
+        return YuvFrame.fromRgba(width, height, ByteBuffer.wrap(data, getOffset(i), frameSize));
+    }
+}
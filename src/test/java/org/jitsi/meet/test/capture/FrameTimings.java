@@ -0,0 +1,211 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.capture;
+
+import java.util.*;
+
+/**
+ * The presentation metadata of the frames captured with
+ * <tt>requestVideoFrameCallback</tt>, in capture order. The
+ * <tt>presentedFrames</tt> counter of the video element tells how many
+ * frames were not presented to the capture, and the expected display times
+ * how regularly the frames were rendered.
+ */
+public class FrameTimings
+{
+    private final long[] timestamps;
+    private final double[] mediaTimes;
+    private final long[] presentedFrames;
+    private final double[] expectedDisplayTimes;
+
+    /**
+     * Creates new {@link FrameTimings}.
+     *
+     * @param timings the result of <tt>VideoOperator.getFrameTimings</tt>.
+     */
+    FrameTimings(Map<String, List<Number>> timings)
+    {
+        List<Number> ts = timings.get("timestamps");
+        List<Number> media = timings.get("mediaTimes");
+        List<Number> presented = timings.get("presentedFrames");
+        List<Number> display = timings.get("expectedDisplayTimes");
+
+        int size = presented.size();
+        timestamps = new long[size];
+        mediaTimes = new double[size];
+        presentedFrames = new long[size];
+        expectedDisplayTimes = new double[size];
+        for (int i = 0; i < size; i++)
+        {
+            timestamps[i] = ts.get(i).longValue();
+            mediaTimes[i] = media.get(i).doubleValue();
+            presentedFrames[i] = presented.get(i).longValue();
+            expectedDisplayTimes[i] = display.get(i).doubleValue();
+        }
+    }
+
+    /**
+     * @return the number of frames.
+     */
+    public int size()
+    {
+        return presentedFrames.length;
+    }
+
+    /**
+     * @param i the index of the frame.
+     * @return when the frame was expected to be displayed, in ms since the
+     * epoch.
+     */
+    public long getTimestamp(int i)
+    {
+        return timestamps[i];
+    }
+
+    /**
+     * @param i the index of the frame.
+     * @return the media presentation timestamp of the frame, in seconds.
+     */
+    public double getMediaTime(int i)
+    {
+        return mediaTimes[i];
+    }
+
+    /**
+     * @param i the index of the frame.
+     * @return the number of frames presented by the video element, including
+     * this one.
+     */
+    public long getPresentedFrames(int i)
+    {
+        return presentedFrames[i];
+    }
+
+    /**
+     * @param i the index of the frame.
+     * @return when the frame was expected to be displayed, in ms since the
+     * time origin of the page.
+     */
+    public double getExpectedDisplayTime(int i)
+    {
+        return expectedDisplayTimes[i];
+    }
+
+    /**
+     * @return the number of frames presented between the first and the last
+     * captured frames which were not captured. These are frames the page
+     * could not keep up with, plus any dropped by the capture itself.
+     */
+    public long getMissedFrames()
+    {
+        long missed = 0;
+        for (int i = 1; i < presentedFrames.length; i++)
+        {
+            missed += Math.max(0, presentedFrames[i] - presentedFrames[i - 1] - 1);
+        }
+        return missed;
+    }
+
+    /**
+     * @return the number of times the media time did not advance between
+     * two presented frames, which is a frame rendered twice.
+     */
+    public int getRepeatedFrames()
+    {
+        int repeated = 0;
+        for (int i = 1; i < mediaTimes.length; i++)
+        {
+            if (mediaTimes[i] == mediaTimes[i - 1])
+            {
+                repeated++;
+            }
+        }
+        return repeated;
+    }
+
+    /**
+     * @return the rate at which the frames were displayed, in frames per
+     * second.
+     */
+    public double getDisplayFrameRate()
+    {
+        int n = expectedDisplayTimes.length;
+        if (n < 2)
+        {
+            return 0;
+        }
+        double duration = expectedDisplayTimes[n - 1] - expectedDisplayTimes[0];
+        return duration > 0 ? (presentedFrames[n - 1] - presentedFrames[0]) * 1000 / duration : 0;
+    }
+
+    /**
+     * @return the standard deviation of the intervals between the display
+     * times of consecutive frames, in ms.
+     */
+    public double getDisplayJitter()
+    {
+        int n = expectedDisplayTimes.length;
+        if (n < 3)
+        {
+            return 0;
+        }
+
+        double sum = 0, sumSquares = 0;
+        for (int i = 1; i < n; i++)
+        {
+            double interval = expectedDisplayTimes[i] - expectedDisplayTimes[i - 1];
+            sum += interval;
+            sumSquares += interval * interval;
+        }
+        double mean = sum / (n - 1);
+        return Math.sqrt(Math.max(0, sumSquares / (n - 1) - mean * mean));
+    }
+
+    /**
+     * @return the standard deviation of the difference between the display
+     * interval and the media time interval of consecutive frames, in ms. This
+     * is how irregularly the frames were rendered compared to how they were
+     * captured at the sender, regardless of the frame rate.
+     */
+    public double getRenderJitter()
+    {
+        int n = expectedDisplayTimes.length;
+        if (n < 3)
+        {
+            return 0;
+        }
+
+        double sum = 0, sumSquares = 0;
+        for (int i = 1; i < n; i++)
+        {
+            double d = (expectedDisplayTimes[i] - expectedDisplayTimes[i - 1])
+                - (mediaTimes[i] - mediaTimes[i - 1]) * 1000;
+            sum += d;
+            sumSquares += d * d;
+        }
+        double mean = sum / (n - 1);
+        return Math.sqrt(Math.max(0, sumSquares / (n - 1) - mean * mean));
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format(
+            "frames=%d missed=%d repeated=%d displayFps=%.2f displayJitter=%.2fms renderJitter=%.2fms",
+            size(), getMissedFrames(), getRepeatedFrames(), getDisplayFrameRate(),
+            getDisplayJitter(), getRenderJitter());
+    }
+}
@@ -15,10 +15,12 @@
  */
 package org.jitsi.meet.test.capture;
 
+import org.jitsi.meet.test.analysis.*;
 import org.jitsi.meet.test.util.*;
 
 import org.jitsi.meet.test.web.*;
 
+import java.nio.*;
 import java.util.*;
 
 /**
@@ -34,6 +36,12 @@ public class VideoOperator
     private static final String PSNR_JS_SCRIPT
         = "resources/PSNRVideoOperator.js";
 
+    /**
+     * The default maximum size of the frames retrieved by
+     * {@link #readFrames(String, int, int, FrameChunk)}.
+     */
+    public static final int DEFAULT_CHUNK_BYTES = 16 * 1024 * 1024;
+
     /**
      * <tt>WebDriver</tt> used by this instance.
      */
@@ -97,6 +105,120 @@ public class VideoOperator
         return org.apache.commons.codec.binary.Base64.decodeBase64(frameBase64);
     }
 
+    /**
+     * Retrieves consecutive frames with a single call, up to
+     * {@link #DEFAULT_CHUNK_BYTES}. The frames are transferred as raw samples
+     * or encoded images, without any conversion, and decoded in the buffers
+     * of <tt>chunk</tt>.
+     * @param videoId the id of the video element
+     * @param start the index of the first frame
+     * @param maxFrames the maximum number of frames
+     * @param chunk the chunk to reuse or <tt>null</tt>
+     * @return the chunk holding the frames, at least one.
+     */
+    @SuppressWarnings("unchecked")
+    public FrameChunk readFrames(String videoId, int start, int maxFrames, FrameChunk chunk)
+    {
+        Map<String, Object> frames = (Map<String, Object>) participant.executeScript(
+                "return window._operator.getFrames(" +
+                    "arguments[0], arguments[1], arguments[2], arguments[3])",
+                videoId, start, maxFrames, DEFAULT_CHUNK_BYTES);
+
+        if (chunk == null)
+        {
+            chunk = new FrameChunk();
+        }
+        chunk.decode(videoId, start, frames);
+        return chunk;
+    }
+
+    /**
+     * Gets the luma plane of a frame captured in {@link CaptureOptions.Mode#LUMA}
+     * or {@link CaptureOptions.Mode#STAMP} mode.
+     * @param videoId the id of the video element
+     * @param frameIdx the index of the frame
+     * @return a frame without chroma planes, of the captured size.
+     */
+    @SuppressWarnings("unchecked")
+    public YuvFrame getLumaFrame(String videoId, int frameIdx)
+    {
+        Map<String, Object> luma = (Map<String, Object>) participant.executeScript(
+                "return window._operator.getLuma(arguments[0], arguments[1])",
+                videoId, frameIdx);
+
+        byte[] data = org.apache.commons.codec.binary.Base64.decodeBase64(
+            (String) luma.get("data"));
+
+        return YuvFrame.fromLuma(
+            ((Number) luma.get("width")).intValue(),
+            ((Number) luma.get("height")).intValue(),
+            ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Gets the timestamps, audio levels and center pixel luma of all the
+     * captured frames of a video with a single call, as primitive arrays.
+     * @param videoId the id of the video element.
+     * @return the signals, the audio levels are NaN if not recorded.
+     */
+    @SuppressWarnings("unchecked")
+    public AvSignals getSignals(String videoId)
+    {
+        Map<String, Object> signals = (Map<String, Object>) participant.executeScript(
+                "return window._operator.getSignals(arguments[0])",
+                videoId);
+
+        int count = ((Number) signals.get("count")).intValue();
+        DoubleBuffer data = ByteBuffer
+            .wrap(org.apache.commons.codec.binary.Base64.decodeBase64((String) signals.get("data")))
+            .order(ByteOrder.LITTLE_ENDIAN)
+            .asDoubleBuffer();
+
+        double[] timestamps = new double[count];
+        double[] audio = new double[count];
+        double[] video = new double[count];
+        data.get(timestamps).get(audio).get(video);
+        return new AvSignals(timestamps, audio, video);
+    }
+
+    /**
+     * Gets the presentation metadata of the frames captured with
+     * {@link CaptureOptions#setFrameCallback(boolean)}.
+     * @param videoId the id of the video element.
+     * @return the metadata of all the frames.
+     */
+    @SuppressWarnings("unchecked")
+    public FrameTimings getFrameTimings(String videoId)
+    {
+        return new FrameTimings((Map<String, List<Number>>) participant.executeScript(
+                "return window._operator.getFrameTimings(arguments[0])",
+                videoId));
+    }
+
+    /**
+     * Tells how many frames have not been captured for the video, because
+     * the capacity was reached or the encoder could not keep up.
+     * @param videoId the id of the video element.
+     * @return a <tt>Long</tt> with number of frames.
+     */
+    public Long getDroppedFrames(String videoId)
+    {
+        return (Long) participant.executeScript(
+                "return window._operator.getDroppedFrames(arguments[0])",
+                videoId);
+    }
+
+    /**
+     * Returns the memory allocated in the browser for the frames of all
+     * the videos, which with a capacity is known when the capture starts.
+     * @return the size in bytes.
+     */
+    public long getMemoryFootprint()
+    {
+        return ((Number) participant.executeScript(
+                "return window._operator.getMemoryFootprint()")).longValue();
+    }
+
     /**
      * Tells how many frames have been captured for the video.
      * @param videoId the id of the video element.
@@ -209,10 +331,44 @@ public class VideoOperator
     }
 
     /**
-     * Stops the recording.
+     * Starts the recording for videos which ids are on the <tt>videoIDs</tt>
+     * list.
+     * @param videoIDs the list of video elements IDs which will be recorded.
+     * @param options how the frames are captured.
+     */
+    public void recordAll(List<String> videoIDs, CaptureOptions options)
+    {
+        recordAll(videoIDs, null, options);
+    }
+
+    /**
+     * Starts the recording for videos which ids are on the <tt>videoIDs</tt>
+     * list. Audio levels will also be recorded.
+     * @param videoIDs the list of video elements IDs which will be recorded.
+     * @param aLvlResources the list with MUC resource JIDs for which audio
+     * levels will be recorded, in the order of <tt>videoIDs</tt>, or
+     * <tt>null</tt>.
+     * @param options how the frames are captured.
+     */
+    public void recordAll(List<String>    videoIDs,
+                          List<String>    aLvlResources,
+                          CaptureOptions  options)
+    {
+        participant.executeScript(
+                "window._operator = new window.VideoOperator();" +
+                    "window._operator.recordAll(" +
+                    "arguments[0], arguments[1], arguments[2], arguments[3]);",
+                videoIDs, options.getFps(), aLvlResources, options.toMap());
+    }
+
+    /**
+     * Stops the recording and waits for the frames still being encoded.
      */
     public void stopRecording()
     {
-        participant.executeScript("window._operator.stop()");
+        participant.executeAsyncScript(
+            "var callback = arguments[arguments.length - 1];" +
+                "window._operator.stop().then(" +
+                "function () { callback(); }, function () { callback(); });");
     }
 }
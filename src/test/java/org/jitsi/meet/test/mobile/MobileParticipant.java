@@ -20,6 +20,7 @@ import io.appium.java_client.android.*;
 import io.appium.java_client.android.nativekey.*;
 import org.jitsi.meet.test.base.*;
 import org.jitsi.meet.test.base.stats.*;
+import org.jitsi.meet.test.mobile.stats.*;
 import org.jitsi.meet.test.pageobjects.*;
 import org.jitsi.meet.test.pageobjects.base.*;
 import org.jitsi.meet.test.pageobjects.mobile.*;
@@ -29,6 +30,7 @@ import org.openqa.selenium.*;
 import org.openqa.selenium.NoSuchElementException;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 
 /**
@@ -75,6 +77,11 @@ public class MobileParticipant extends Participant<AppiumDriver>
      */
     private final AppiumDriver driver;
 
+    /**
+     * The RTP stats refreshed in the background, if sampling.
+     */
+    private MobileRtpStats sampledRtpStats;
+
     /**
      * Initializes {@link MobileParticipant}.
      *
@@ -337,6 +344,8 @@ public class MobileParticipant extends Participant<AppiumDriver>
      */
     public void close()
     {
+        stopRtpStatsSampling();
+
         try
         {
             // There are issues on iOS where a leftover permission alert can
@@ -477,9 +486,45 @@ public class MobileParticipant extends Participant<AppiumDriver>
      * {@inheritDoc}
      */
     @Override
-    protected RtpStatistics getRtpStatistics()
+    protected synchronized RtpStatistics getRtpStatistics()
+    {
+        return sampledRtpStats != null
+            ? sampledRtpStats : new TestConnectionInfo(this).getRtpStats();
+    }
+
+    /**
+     * Starts refreshing the RTP stats at a fixed period in the background.
+     * Until {@link #stopRtpStatsSampling()} is called,
+     * {@link #getRtpStatistics()} returns the last sampled stats instead of
+     * reading them from the device.
+     *
+     * @param pool the executor which will run the refresh.
+     * @param period the refresh period.
+     * @param unit the unit of {@code period}.
+     * @return the sampled stats.
+     */
+    public synchronized MobileRtpStats startRtpStatsSampling(
+        ScheduledExecutorService pool, long period, TimeUnit unit)
     {
-        return new TestConnectionInfo(this).getRtpStats();
+        if (sampledRtpStats == null)
+        {
+            sampledRtpStats = new TestConnectionInfo(this).getRtpStats();
+            sampledRtpStats.startSampling(pool, period, unit, null);
+        }
+
+        return sampledRtpStats;
+    }
+
+    /**
+     * Stops the background refresh of the RTP stats, if any.
+     */
+    public synchronized void stopRtpStatsSampling()
+    {
+        if (sampledRtpStats != null)
+        {
+            sampledRtpStats.stopSampling();
+            sampledRtpStats = null;
+        }
     }
 
     @Override
@@ -20,10 +20,19 @@ import org.jitsi.meet.test.pageobjects.base.*;
 import org.json.*;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
 
 /**
  * Mobile {@link RtpStatistics}. Makes use of the {@link TestHint} which
  * contains the stats information encoded in the JSON format.
+ *
+ * The hint is read and parsed once per {@link #refresh()} into a
+ * {@link RtpStatsSnapshot}, the getters return the values of the last
+ * snapshot. The first getter call refreshes the stats if that has not been
+ * done yet. In the sampling mode (see {@link #startSampling}) the snapshot is
+ * refreshed at a fixed period instead, so that the getters never wait for
+ * the device.
  */
 public class MobileRtpStats implements RtpStatistics
 {
@@ -34,11 +43,26 @@ public class MobileRtpStats implements RtpStatistics
      *     bitrate: {
      *         download: 0,
      *         upload: 0
-     *     }
+     *     },
+     *     transport: [{
+     *         ip: "1.2.3.4:10000",
+     *         p2p: false
+     *     }]
      * }
+     * The transport part is optional.
      */
     private final TestHint rtpStats;
 
+    /**
+     * The last snapshot or <tt>null</tt> if the stats have not been read yet.
+     */
+    private volatile RtpStatsSnapshot snapshot;
+
+    /**
+     * The periodic refresh, if sampling.
+     */
+    private ScheduledFuture<?> samplingTask;
+
     /**
      * Initializes new {@link MobileRtpStats}.
      *
@@ -50,30 +74,119 @@ public class MobileRtpStats implements RtpStatistics
         this.rtpStats = Objects.requireNonNull(rtpStats, "rtpStats");
     }
 
-    private JSONObject getBitrate()
+    /**
+     * Reads the {@link TestHint} and parses it into a new snapshot.
+     *
+     * @return the new snapshot.
+     */
+    public RtpStatsSnapshot refresh()
     {
-        return getStatsJSON().getJSONObject("bitrate");
+        RtpStatsSnapshot newSnapshot = parse(
+            System.currentTimeMillis(),
+            Objects.requireNonNull(rtpStats.getValue(), "rtpStats value"));
+
+        snapshot = newSnapshot;
+
+        return newSnapshot;
     }
 
     /**
-     * {@inheritDoc}
+     * @return the last snapshot, refreshing the stats if they have not been
+     * read yet.
      */
-    @Override
-    public long getDownloadBitrate()
+    public RtpStatsSnapshot getSnapshot()
+    {
+        RtpStatsSnapshot current = snapshot;
+
+        return current != null ? current : refresh();
+    }
+
+    /**
+     * Parses the value of the RTP stats {@link TestHint}.
+     *
+     * @param timestamp the time the value was read.
+     * @param value the JSON value.
+     * @return the snapshot.
+     */
+    static RtpStatsSnapshot parse(long timestamp, String value)
     {
-        return getBitrate().getLong("download");
+        JSONObject stats = new JSONObject(value);
+        JSONObject bitrate = stats.getJSONObject("bitrate");
+
+        RtpTransport transport = null;
+        JSONArray transports = stats.optJSONArray("transport");
+        if (transports != null && transports.length() > 0)
+        {
+            JSONObject first = transports.getJSONObject(0);
+            transport = new RtpStatsSnapshot.Transport(
+                first.optString("ip", ""), first.optBoolean("p2p"));
+        }
+
+        return new RtpStatsSnapshot(
+            timestamp,
+            bitrate.getLong("download"),
+            bitrate.getLong("upload"),
+            transport);
     }
 
     /**
-     * Gets the root {@link JSONObject} of the RTP stats.
+     * Starts refreshing the stats at a fixed period. Does nothing if already
+     * sampling.
      *
-     * @return a {@link JSONObject}.
+     * @param pool the executor which will run the refresh.
+     * @param period the refresh period.
+     * @param unit the unit of {@code period}.
+     * @param listener notified of every new snapshot, may be <tt>null</tt>.
+     */
+    public synchronized void startSampling(
+        ScheduledExecutorService pool,
+        long period,
+        TimeUnit unit,
+        Consumer<RtpStatsSnapshot> listener)
+    {
+        if (samplingTask != null)
+        {
+            return;
+        }
+
+        samplingTask = pool.scheduleWithFixedDelay(() -> {
+            RtpStatsSnapshot sample;
+            try
+            {
+                sample = refresh();
+            }
+            catch (Exception e)
+            {
+                // Keep the last snapshot and retry on the next period.
+                return;
+            }
+
+            if (listener != null)
+            {
+                listener.accept(sample);
+            }
+        }, 0, period, unit);
+    }
+
+    /**
+     * Stops the periodic refresh, if any. The last snapshot is kept.
+     */
+    public synchronized void stopSampling()
+    {
+        if (samplingTask != null)
+        {
+            samplingTask.cancel(false);
+            samplingTask = null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
      */
-    private JSONObject getStatsJSON()
+    @Override
+    public long getDownloadBitrate()
     {
-        return new JSONObject(
-                Objects.requireNonNull(
-                        rtpStats.getValue(), "rtpStats value"));
+        return getSnapshot().getDownloadBitrate();
     }
 
     /**
@@ -82,7 +195,7 @@ public class MobileRtpStats implements RtpStatistics
     @Override
     public long getUploadBitrate()
     {
-        return getBitrate().getLong("upload");
+        return getSnapshot().getUploadBitrate();
     }
 
     /**
@@ -91,6 +204,12 @@ public class MobileRtpStats implements RtpStatistics
     @Override
     public RtpTransport getRtpTransport()
     {
-        throw new RuntimeException("Not implemented.");
+        RtpTransport transport = getSnapshot().getRtpTransport();
+        if (transport == null)
+        {
+            throw new RuntimeException("Not implemented.");
+        }
+
+        return transport;
     }
 }
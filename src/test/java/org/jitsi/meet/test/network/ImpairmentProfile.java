@@ -0,0 +1,222 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.network;
+
+import java.util.*;
+
+/**
+ * The impairment of the network of a participant, the same in both
+ * directions, described by a spec of semicolon separated "key=value"
+ * entries, for example "loss=0.05;burst=3;rtt=200;jitter=20". The keys are:
+ * - loss: the probability to drop a packet, in every direction;
+ * - burst: the mean length in packets of the bursts of losses, 1 by default
+ *   for steady losses, see {@link LinkProfile};
+ * - rtt: the round trip time in milliseconds, half of it in every direction;
+ * - jitter: the maximum deviation of the delay in milliseconds, in every
+ *   direction.
+ *
+ * The DevTools Protocol emulates the latency of the HTTP requests and a
+ * steady loss of the WebRTC packets, but neither the delay nor the jitter nor
+ * the bursts of the media. A profile which needs them, see
+ * {@link #needsRelay()}, is applied to the media by a {@link NetworkRelay}.
+ */
+public class ImpairmentProfile
+{
+    /**
+     * No impairment.
+     */
+    public static final ImpairmentProfile NONE = parse("");
+
+    private final String spec;
+    private final double loss;
+    private final double burst;
+    private final double rttMs;
+    private final double jitterMs;
+
+    private ImpairmentProfile(String spec, double loss, double burst, double rttMs, double jitterMs)
+    {
+        this.spec = spec;
+        this.loss = loss;
+        this.burst = burst;
+        this.rttMs = rttMs;
+        this.jitterMs = jitterMs;
+    }
+
+    /**
+     * Parses a spec.
+     *
+     * @param spec the spec, empty for no impairment.
+     * @return the profile.
+     * @throws IllegalArgumentException if the spec cannot be parsed.
+     */
+    public static ImpairmentProfile parse(String spec)
+    {
+        double loss = 0;
+        double burst = 1;
+        double rttMs = 0;
+        double jitterMs = 0;
+        for (String entry : spec.split(";"))
+        {
+            if (entry.trim().isEmpty())
+            {
+                continue;
+            }
+            int i = entry.indexOf('=');
+            if (i <= 0)
+            {
+                throw new IllegalArgumentException("Bad impairment entry: " + entry);
+            }
+
+            String key = entry.substring(0, i).trim().toLowerCase();
+            double value = Double.parseDouble(entry.substring(i + 1).trim());
+            switch (key)
+            {
+            case "loss":
+                loss = check(key, value, 0, 1);
+                break;
+            case "burst":
+                burst = check(key, value, 1, Double.MAX_VALUE);
+                break;
+            case "rtt":
+                rttMs = check(key, value, 0, Double.MAX_VALUE);
+                break;
+            case "jitter":
+                jitterMs = check(key, value, 0, Double.MAX_VALUE);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown impairment key " + key + " in " + spec);
+            }
+        }
+        return new ImpairmentProfile(spec.trim(), loss, burst, rttMs, jitterMs);
+    }
+
+    private static double check(String key, double value, double min, double max)
+    {
+        if (!(value >= min && value <= max))
+        {
+            throw new IllegalArgumentException("Bad impairment " + key + ": " + value);
+        }
+        return value;
+    }
+
+    /**
+     * @return whether the profile impairs nothing.
+     */
+    public boolean isNone()
+    {
+        return loss == 0 && rttMs == 0 && jitterMs == 0;
+    }
+
+    /**
+     * @return whether the media needs a {@link NetworkRelay} to be impaired
+     * by this profile, because the DevTools Protocol only emulates steady
+     * losses for it.
+     */
+    public boolean needsRelay()
+    {
+        return rttMs > 0 || jitterMs > 0 || (loss > 0 && burst > 1);
+    }
+
+    /**
+     * Applies this profile to a direction of a relayed link.
+     *
+     * @param linkSpec the {@link LinkProfile} spec of the direction.
+     * @return the spec, with the loss, the delay and the jitter which this
+     * profile sets instead of its own.
+     */
+    public String applyTo(String linkSpec)
+    {
+        // The last entry of a key wins.
+        StringBuilder sb = new StringBuilder(linkSpec.trim());
+        if (loss > 0)
+        {
+            sb.append(String.format(Locale.ROOT, ";loss=%s;burst=%s", loss, burst));
+        }
+        if (rttMs > 0)
+        {
+            sb.append(String.format(Locale.ROOT, ";delay=%s", rttMs / 2));
+        }
+        if (jitterMs > 0)
+        {
+            sb.append(String.format(Locale.ROOT, ";jitter=%s", jitterMs));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gets the parameters of the DevTools Protocol command
+     * <tt>Network.emulateNetworkConditions</tt> for this profile.
+     *
+     * @param mediaRelayed whether the media is impaired by a
+     * {@link NetworkRelay}, so that the browser must not drop it too.
+     * @return the parameters.
+     */
+    public Map<String, Object> getNetworkConditions(boolean mediaRelayed)
+    {
+        Map<String, Object> conditions = new HashMap<>();
+        conditions.put("offline", false);
+        conditions.put("latency", rttMs);
+        conditions.put("downloadThroughput", -1);
+        conditions.put("uploadThroughput", -1);
+        if (!mediaRelayed && loss > 0)
+        {
+            // In percent.
+            conditions.put("packetLoss", 100 * loss);
+        }
+        return conditions;
+    }
+
+    /**
+     * @return the probability to drop a packet.
+     */
+    public double getLoss()
+    {
+        return loss;
+    }
+
+    /**
+     * @return the mean length in packets of the bursts of losses.
+     */
+    public double getBurst()
+    {
+        return burst;
+    }
+
+    /**
+     * @return the round trip time in milliseconds.
+     */
+    public double getRttMs()
+    {
+        return rttMs;
+    }
+
+    /**
+     * @return the maximum deviation of the delay in milliseconds.
+     */
+    public double getJitterMs()
+    {
+        return jitterMs;
+    }
+
+    /**
+     * @return the spec of this profile.
+     */
+    @Override
+    public String toString()
+    {
+        return spec.isEmpty() ? "none" : spec;
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.network;
+
+import org.jitsi.meet.test.analysis.*;
+
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * Emulates one direction of a link shaped by a {@link LinkProfile}, in
+ * milliseconds steps: the packets are dropped at random, independently or in
+ * bursts, then queue at the bottleneck, which serves the bytes of every
+ * millisecond of the trace and of the rate schedule, and finally wait in a
+ * delay line, a {@link TimerWheel}, for their delay and jitter. The schedule
+ * and the trace start when the profile is set. Not thread safe, the emulator
+ * is meant to be driven by a single I/O thread.
+ *
+ * @param <T> the type of the packets.
+ */
+public class LinkEmulator<T>
+{
+    /**
+     * The most milliseconds of the link served at once, after the I/O thread
+     * stalled.
+     */
+    private static final long MAX_CATCH_UP_MS = 1000;
+
+    private final Random random;
+    private final ArrayDeque<Queued<T>> queue = new ArrayDeque<>();
+    private final TimerWheel<T> delayLine;
+
+    private LinkProfile profile;
+    private long originMs;
+
+    /**
+     * The last millisecond served by the bottleneck.
+     */
+    private long servedMs;
+
+    /**
+     * The bytes of the head of the queue which are not served yet.
+     */
+    private int headRemaining;
+
+    /**
+     * The bytes of the rate which are not served yet, NaN out of the rate
+     * schedule.
+     */
+    private double rateCredit;
+
+    /**
+     * Whether the losses are in the bad state of the Gilbert model.
+     */
+    private boolean lossBurst;
+
+    private int traceIndex;
+    private long traceBaseMs;
+
+    private long delivered;
+    private long lost;
+    private long dropped;
+
+    /**
+     * Creates new {@link LinkEmulator}.
+     *
+     * @param profile the shape of the link.
+     * @param nowMs the current time.
+     * @param random the source of the losses, jitter and reordering.
+     */
+    public LinkEmulator(LinkProfile profile, long nowMs, Random random)
+    {
+        this.random = Objects.requireNonNull(random, "random");
+        this.delayLine = new TimerWheel<>(1024, 1, nowMs);
+        setProfile(profile, nowMs);
+    }
+
+    /**
+     * Changes the shape of the link and restarts its schedule and its trace.
+     * The queued packets are kept.
+     *
+     * @param profile the shape of the link.
+     * @param nowMs the current time.
+     */
+    public void setProfile(LinkProfile profile, long nowMs)
+    {
+        this.profile = Objects.requireNonNull(profile, "profile");
+        this.originMs = nowMs;
+        this.servedMs = nowMs;
+        this.rateCredit = 0;
+        this.traceIndex = 0;
+        this.traceBaseMs = 0;
+    }
+
+    /**
+     * @return the shape of the link.
+     */
+    public LinkProfile getProfile()
+    {
+        return profile;
+    }
+
+    /**
+     * Sends a packet on the link.
+     *
+     * @param packet the packet.
+     * @param size the size of the packet in bytes.
+     * @param nowMs the current time.
+     */
+    public void offer(T packet, int size, long nowMs)
+    {
+        if (isLost())
+        {
+            lost++;
+        }
+        else if (!profile.isLimited() && queue.isEmpty())
+        {
+            delay(packet, nowMs);
+        }
+        else if (queue.size() >= profile.getQueuePackets())
+        {
+            dropped++;
+        }
+        else
+        {
+            if (queue.isEmpty())
+            {
+                // The link was idle until now.
+                skip(nowMs);
+                headRemaining = size;
+            }
+            queue.add(new Queued<>(packet, size));
+        }
+    }
+
+    /**
+     * Serves the bottleneck until now and delivers the packets which are out
+     * of the delay line.
+     *
+     * @param nowMs the current time.
+     * @param deliver consumes the delivered packets.
+     */
+    public void process(long nowMs, Consumer<T> deliver)
+    {
+        servedMs = Math.max(servedMs, nowMs - MAX_CATCH_UP_MS);
+        while (servedMs < nowMs && !queue.isEmpty())
+        {
+            servedMs++;
+            long budget = getCapacity(servedMs);
+            while (budget > 0 && !queue.isEmpty())
+            {
+                int served = (int) Math.min(budget, headRemaining);
+                budget -= served;
+                headRemaining -= served;
+                if (!Double.isNaN(rateCredit))
+                {
+                    rateCredit -= served;
+                }
+                if (headRemaining == 0)
+                {
+                    delay(queue.remove().packet, servedMs);
+                    headRemaining = queue.isEmpty() ? 0 : queue.peek().size;
+                }
+            }
+        }
+        if (queue.isEmpty())
+        {
+            // The unused capacity of an idle link is lost.
+            skip(nowMs);
+        }
+
+        delayLine.advance(nowMs, deliver);
+    }
+
+    /**
+     * @return whether the link holds no packet.
+     */
+    public boolean isIdle()
+    {
+        return queue.isEmpty() && delayLine.size() == 0;
+    }
+
+    /**
+     * @return the number of packets which went through the link.
+     */
+    public long getDelivered()
+    {
+        return delivered;
+    }
+
+    /**
+     * @return the number of packets dropped at random.
+     */
+    public long getLost()
+    {
+        return lost;
+    }
+
+    /**
+     * @return the number of packets dropped because the queue was full.
+     */
+    public long getDropped()
+    {
+        return dropped;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format(
+            "%s: %d delivered, %d lost, %d dropped, %d queued", profile, delivered, lost, dropped, queue.size());
+    }
+
+    /**
+     * Draws the loss of the next packet. In the Gilbert model, the bad state
+     * lasts {@link LinkProfile#getBurst()} packets on average, and the good
+     * state as long as it takes for the bad one to hold the loss of the link.
+     */
+    private boolean isLost()
+    {
+        double loss = profile.getLoss();
+        if (loss <= 0 || loss >= 1 || profile.getBurst() <= 1)
+        {
+            lossBurst = false;
+            return loss > 0 && random.nextDouble() < loss;
+        }
+
+        double leaveBad = 1 / profile.getBurst();
+        double enterBad = leaveBad * loss / (1 - loss);
+        lossBurst = random.nextDouble() < (lossBurst ? 1 - leaveBad : enterBad);
+        return lossBurst;
+    }
+
+    /**
+     * Moves the bottleneck to a time without serving it.
+     */
+    private void skip(long nowMs)
+    {
+        if (profile.getTrace() != null)
+        {
+            countOpportunities(nowMs);
+        }
+        servedMs = Math.max(servedMs, nowMs);
+        rateCredit = 0;
+    }
+
+    /**
+     * @return the bytes the bottleneck can serve in a millisecond, the least
+     * of the trace and of the rate.
+     */
+    private long getCapacity(long ms)
+    {
+        long capacity = Long.MAX_VALUE;
+        if (profile.getTrace() != null)
+        {
+            capacity = countOpportunities(ms) * LinkProfile.MTU;
+        }
+
+        RateSchedule rate = profile.getRate();
+        double bps = rate == null ? Double.NaN : rate.getRateBpsAt(ms - originMs);
+        if (Double.isNaN(bps))
+        {
+            // Out of the schedule.
+            rateCredit = Double.NaN;
+        }
+        else
+        {
+            // The credit left by a bottleneck of the trace makes a burst of
+            // at most a packet.
+            double bytesPerMs = bps / 8000;
+            double credit = Double.isNaN(rateCredit) ? 0 : rateCredit;
+            rateCredit = Math.min(credit + bytesPerMs, bytesPerMs + LinkProfile.MTU);
+            capacity = Math.min(capacity, (long) rateCredit);
+        }
+        return capacity;
+    }
+
+    /**
+     * Counts the delivery opportunities of the trace since the last count.
+     */
+    private long countOpportunities(long ms)
+    {
+        long[] trace = profile.getTrace();
+        long period = trace[trace.length - 1];
+        long t = ms - originMs;
+        long count = 0;
+        while (traceBaseMs + trace[traceIndex] <= t)
+        {
+            count++;
+            if (++traceIndex == trace.length)
+            {
+                traceIndex = 0;
+                traceBaseMs += period;
+            }
+        }
+        return count;
+    }
+
+    private void delay(T packet, long nowMs)
+    {
+        delivered++;
+        double delay = profile.getDelayMs();
+        if (profile.getJitterMs() > 0)
+        {
+            delay += (2 * random.nextDouble() - 1) * profile.getJitterMs();
+        }
+        if (profile.getReorder() > 0 && random.nextDouble() < profile.getReorder())
+        {
+            delay = 0;
+        }
+        delayLine.schedule(nowMs + Math.max(0, Math.round(delay)), packet);
+    }
+
+    private static class Queued<T>
+    {
+        private final T packet;
+        private final int size;
+
+        private Queued(T packet, int size)
+        {
+            this.packet = packet;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.network;
+
+import org.jitsi.meet.test.analysis.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * The shape of one direction of an emulated link, described by a spec of
+ * semicolon separated "key=value" entries, for example
+ * "rate=10mbit,60 1mbit,60;delay=20;jitter=5;loss=0.01". The keys are:
+ * - trace: a mahimahi(1) packet delivery trace file, every line being the
+ *   millisecond of a delivery opportunity of {@link #MTU} bytes, the trace
+ *   looping;
+ * - rate: a schedule of "rate,seconds" pairs separated by spaces, in the
+ *   units of TC(8), as played by scripts/tc-port-schedule.sh, or a single
+ *   rate which lasts forever. The link is unlimited after the schedule, like
+ *   after the script. With a trace and a rate, the link serves the least
+ *   of the two;
+ * - delay: the one way delay in milliseconds;
+ * - jitter: the maximum deviation of the delay in milliseconds, which
+ *   reorders the packets closer than the jitter like netem(8) does;
+ * - loss: the probability to drop a packet;
+ * - burst: the mean length in packets of the bursts of losses, 1 by default
+ *   for independent losses. Above 1, the losses follow a Gilbert model: a
+ *   good state which drops nothing and a bad state which drops everything,
+ *   with the transitions which give the mean loss and burst length;
+ * - reorder: the probability to send a packet without its delay, so that it
+ *   overtakes the delayed packets, like netem(8) does;
+ * - queue: the limit of the bottleneck queue in packets, 1000 by default like
+ *   the default txqueuelen of the interface shaped by TC(8).
+ */
+public class LinkProfile
+{
+    /**
+     * The bytes of a delivery opportunity of a mahimahi(1) trace.
+     */
+    public static final int MTU = 1504;
+
+    /**
+     * The default limit of the bottleneck queue in packets.
+     */
+    public static final int DEFAULT_QUEUE_PACKETS = 1000;
+
+    /**
+     * A link without limit, delay or loss.
+     */
+    public static final LinkProfile UNLIMITED = parse("");
+
+    private final String spec;
+    private final RateSchedule rate;
+    private final long[] trace;
+    private final double delayMs;
+    private final double jitterMs;
+    private final double loss;
+    private final double burst;
+    private final double reorder;
+    private final int queuePackets;
+
+    private LinkProfile(String spec, Map<String, String> entries)
+    {
+        this.spec = spec;
+
+        String rate = entries.remove("rate");
+        this.rate = rate == null ? null : parseRate(rate);
+        String tracePath = entries.remove("trace");
+        this.trace = tracePath == null ? null : loadTrace(tracePath);
+        this.delayMs = parseDouble(entries, "delay", 0, 0, Double.MAX_VALUE);
+        this.jitterMs = parseDouble(entries, "jitter", 0, 0, Double.MAX_VALUE);
+        this.loss = parseDouble(entries, "loss", 0, 0, 1);
+        this.burst = parseDouble(entries, "burst", 1, 1, Double.MAX_VALUE);
+        this.reorder = parseDouble(entries, "reorder", 0, 0, 1);
+        this.queuePackets = (int) parseDouble(entries, "queue", DEFAULT_QUEUE_PACKETS, 1, Integer.MAX_VALUE);
+
+        if (!entries.isEmpty())
+        {
+            throw new IllegalArgumentException("Unknown link keys " + entries.keySet() + " in " + spec);
+        }
+    }
+
+    /**
+     * Parses a spec.
+     *
+     * @param spec the spec, empty for an unlimited link.
+     * @return the profile.
+     * @throws IllegalArgumentException if the spec cannot be parsed or its
+     * trace cannot be read.
+     */
+    public static LinkProfile parse(String spec)
+    {
+        Map<String, String> entries = new HashMap<>();
+        for (String entry : spec.split(";"))
+        {
+            if (entry.trim().isEmpty())
+            {
+                continue;
+            }
+            int i = entry.indexOf('=');
+            if (i <= 0)
+            {
+                throw new IllegalArgumentException("Bad link entry: " + entry);
+            }
+            entries.put(entry.substring(0, i).trim().toLowerCase(), entry.substring(i + 1).trim());
+        }
+        return new LinkProfile(spec.trim(), entries);
+    }
+
+    private static RateSchedule parseRate(String rate)
+    {
+        String[] pairs = rate.trim().split("\\s+");
+        if (pairs.length == 1 && !pairs[0].contains(","))
+        {
+            return new RateSchedule(
+                new double[] { RateSchedule.parseRate(pairs[0]) },
+                new double[] { Double.POSITIVE_INFINITY });
+        }
+        return RateSchedule.parse(pairs);
+    }
+
+    private static double parseDouble(
+        Map<String, String> entries, String key, double defaultValue, double min, double max)
+    {
+        String value = entries.remove(key);
+        if (value == null)
+        {
+            return defaultValue;
+        }
+
+        double d = Double.parseDouble(value);
+        if (!(d >= min && d <= max))
+        {
+            throw new IllegalArgumentException("Bad link " + key + ": " + value);
+        }
+        return d;
+    }
+
+    private static long[] loadTrace(String path)
+    {
+        List<String> lines;
+        try
+        {
+            lines = Files.readAllLines(Paths.get(path));
+        }
+        catch (IOException e)
+        {
+            throw new IllegalArgumentException("Cannot read the trace " + path, e);
+        }
+
+        long[] trace = lines.stream()
+            .map(String::trim)
+            .filter(line -> !line.isEmpty())
+            .mapToLong(Long::parseLong)
+            .toArray();
+        for (int i = 1; i < trace.length; i++)
+        {
+            if (trace[i] < trace[i - 1])
+            {
+                throw new IllegalArgumentException("The trace " + path + " is not sorted");
+            }
+        }
+        if (trace.length == 0)
+        {
+            throw new IllegalArgumentException("The trace " + path + " is empty");
+        }
+        // The emulator replays the trace every period, the last opportunity,
+        // which must move time forward.
+        if (trace[0] < 0 || trace[trace.length - 1] <= 0)
+        {
+            throw new IllegalArgumentException(
+                "The trace " + path + " has a negative opportunity or a non-positive period");
+        }
+        return trace;
+    }
+
+    /**
+     * @return the rate schedule, <tt>null</tt> if none.
+     */
+    public RateSchedule getRate()
+    {
+        return rate;
+    }
+
+    /**
+     * @return the delivery opportunities of the trace in milliseconds, sorted
+     * and not negative, the last one being the period of the trace, always
+     * positive, <tt>null</tt> if none.
+     */
+    long[] getTrace()
+    {
+        return trace;
+    }
+
+    /**
+     * @return whether the link limits the rate.
+     */
+    public boolean isLimited()
+    {
+        return rate != null || trace != null;
+    }
+
+    /**
+     * @return the one way delay in milliseconds.
+     */
+    public double getDelayMs()
+    {
+        return delayMs;
+    }
+
+    /**
+     * @return the maximum deviation of the delay in milliseconds.
+     */
+    public double getJitterMs()
+    {
+        return jitterMs;
+    }
+
+    /**
+     * @return the probability to drop a packet.
+     */
+    public double getLoss()
+    {
+        return loss;
+    }
+
+    /**
+     * @return the mean length in packets of the bursts of losses, 1 for
+     * independent losses.
+     */
+    public double getBurst()
+    {
+        return burst;
+    }
+
+    /**
+     * @return the probability to send a packet without its delay.
+     */
+    public double getReorder()
+    {
+        return reorder;
+    }
+
+    /**
+     * @return the limit of the bottleneck queue in packets.
+     */
+    public int getQueuePackets()
+    {
+        return queuePackets;
+    }
+
+    /**
+     * @return the spec of this profile.
+     */
+    @Override
+    public String toString()
+    {
+        return spec.isEmpty() ? "unlimited" : spec;
+    }
+}
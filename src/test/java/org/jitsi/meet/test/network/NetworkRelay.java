@@ -0,0 +1,890 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.network;
+
+import com.google.gson.*;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.*;
+
+/**
+ * An in-process network emulator for a browser, which needs no privileges:
+ * a TURN server (RFC 5766), over UDP and TCP, that the browser is forced to
+ * relay all its media through, and that shapes the relayed packets with a
+ * {@link LinkEmulator} per direction. The uplink carries the packets from
+ * the browser to its peers, the media server or the remote browser, the
+ * downlink the packets from the peers to the browser.
+ *
+ * The browser is pointed at the relay by {@link #getInitScript()}, which
+ * replaces the ICE servers of its peer connections with the relay, and
+ * makes them gather relayed candidates only.
+ *
+ * All the sockets are served by a single I/O thread with a {@link Selector}.
+ */
+public class NetworkRelay
+    implements AutoCloseable
+{
+    /**
+     * The name of the system property with the address of the relay for the
+     * browser, 127.0.0.1 by default, which suits a local browser.
+     */
+    public static final String HOST_PROP = "relay.host";
+
+    /**
+     * The name of the system property with the address of the relayed
+     * candidates for the peers, by default the address of the interface of
+     * the default route.
+     */
+    public static final String ADDRESS_PROP = "relay.address";
+
+    /**
+     * The script which points the peer connections at the relay.
+     */
+    private static final String INIT_SCRIPT = "resources/NetworkRelay.js";
+
+    private static final String REALM = "jitsi-meet-torture";
+
+    private static final int LIFETIME_SECONDS = 600;
+
+    /**
+     * The most bytes queued towards a TCP client, beyond which the frames
+     * are dropped like the datagrams of a full socket.
+     */
+    private static final int MAX_TCP_QUEUE_BYTES = 1 << 20;
+
+    private static final int SOCKET_BUFFER_BYTES = 1 << 20;
+
+    private final String username = "torture";
+    private final String password = UUID.randomUUID().toString();
+    private final String nonce = UUID.randomUUID().toString().replace("-", "");
+
+    private final String host;
+    private final InetAddress relayedAddress;
+    private final Selector selector;
+    private final DatagramChannel udpListener;
+    private final ServerSocketChannel tcpListener;
+    private final Map<InetSocketAddress, Client> udpClients = new HashMap<>();
+    private final Map<Client, Allocation> allocations = new HashMap<>();
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocate(65536);
+    private final LinkEmulator<Packet> uplink;
+    private final LinkEmulator<Packet> downlink;
+    private final Thread thread;
+
+    private volatile boolean running = true;
+
+    /**
+     * Why the thread of the relay stopped before {@link #close()},
+     * <tt>null</tt> while it runs.
+     */
+    private volatile Throwable failure;
+
+    /**
+     * Whether all the packets from and to the browser are dropped.
+     */
+    private volatile boolean blocked;
+
+    /**
+     * Creates and starts new {@link NetworkRelay}.
+     *
+     * @param uplink the shape of the link from the browser.
+     * @param downlink the shape of the link to the browser.
+     * @throws IOException if the sockets of the relay cannot be opened.
+     */
+    public NetworkRelay(LinkProfile uplink, LinkProfile downlink)
+        throws IOException
+    {
+        this.host = System.getProperty(HOST_PROP, "127.0.0.1");
+        String address = System.getProperty(ADDRESS_PROP);
+        this.relayedAddress = address == null ? getDefaultAddress() : InetAddress.getByName(address);
+
+        Random random = new Random();
+        long now = nowMs();
+        this.uplink = new LinkEmulator<>(uplink, now, random);
+        this.downlink = new LinkEmulator<>(downlink, now, random);
+
+        selector = Selector.open();
+        udpListener = DatagramChannel.open();
+        udpListener.setOption(StandardSocketOptions.SO_RCVBUF, SOCKET_BUFFER_BYTES);
+        udpListener.bind(new InetSocketAddress(0));
+        udpListener.configureBlocking(false);
+        udpListener.register(selector, SelectionKey.OP_READ);
+        tcpListener = ServerSocketChannel.open();
+        tcpListener.bind(new InetSocketAddress(0));
+        tcpListener.configureBlocking(false);
+        tcpListener.register(selector, SelectionKey.OP_ACCEPT);
+
+        thread = new Thread(this::run, "NetworkRelay-" + getUdpPort());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return the address of the interface of the default route, the loopback
+     * address if there is no route.
+     */
+    private static InetAddress getDefaultAddress()
+    {
+        try (DatagramSocket socket = new DatagramSocket())
+        {
+            // Connecting a datagram socket sends nothing, it only picks the
+            // route.
+            socket.connect(InetAddress.getByName("8.8.8.8"), 53);
+            InetAddress address = socket.getLocalAddress();
+            if (address != null && !address.isAnyLocalAddress())
+            {
+                return address;
+            }
+        }
+        catch (IOException e)
+        {
+            // No route.
+        }
+        return InetAddress.getLoopbackAddress();
+    }
+
+    private static long nowMs()
+    {
+        return System.nanoTime() / 1_000_000;
+    }
+
+    /**
+     * @return the UDP port of the TURN server.
+     */
+    public int getUdpPort()
+    {
+        return udpListener.socket().getLocalPort();
+    }
+
+    /**
+     * @return the TCP port of the TURN server.
+     */
+    public int getTcpPort()
+    {
+        return tcpListener.socket().getLocalPort();
+    }
+
+    /**
+     * @return the TURN URLs of the relay, over UDP and over TCP.
+     */
+    public List<String> getTurnUrls()
+    {
+        return Arrays.asList(
+            "turn:" + host + ":" + getUdpPort() + "?transport=udp",
+            "turn:" + host + ":" + getTcpPort() + "?transport=tcp");
+    }
+
+    /**
+     * @return the script to run in every new document of the browser, before
+     * its scripts, to relay its peer connections.
+     */
+    public String getInitScript()
+    {
+        Map<String, Object> iceServer = new LinkedHashMap<>();
+        iceServer.put("urls", getTurnUrls());
+        iceServer.put("username", username);
+        iceServer.put("credential", password);
+        try
+        {
+            return "window.networkRelayIceServers = " + new Gson().toJson(Collections.singletonList(iceServer))
+                + ";\n" + new String(Files.readAllBytes(Paths.get(INIT_SCRIPT)));
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Changes the shape of the link from the browser, restarting its
+     * schedule and its trace.
+     *
+     * @param profile the shape.
+     */
+    public void setUplink(LinkProfile profile)
+    {
+        checkRunning();
+        execute(() -> uplink.setProfile(profile, nowMs()));
+    }
+
+    /**
+     * Changes the shape of the link to the browser, restarting its schedule
+     * and its trace.
+     *
+     * @param profile the shape.
+     */
+    public void setDownlink(LinkProfile profile)
+    {
+        checkRunning();
+        execute(() -> downlink.setProfile(profile, nowMs()));
+    }
+
+    /**
+     * Cuts or restores the network of the browser. While it is cut, all the
+     * packets from and to the browser are dropped, the requests to the TURN
+     * server included, and only the packets already on the links get through.
+     *
+     * @param blocked whether to cut the network.
+     */
+    public void setBlocked(boolean blocked)
+    {
+        checkRunning();
+        this.blocked = blocked;
+    }
+
+    /**
+     * Emulates a change of the network of the browser, like a handover from
+     * Wi-Fi to cellular: all the clients are disconnected and their
+     * allocations closed, so that the candidates relayed until now are dead
+     * and the browser can only recover with an ICE restart, which allocates
+     * new ones. The links are kept.
+     */
+    public void changeNetwork()
+    {
+        checkRunning();
+        execute(() -> {
+            new ArrayList<>(allocations.keySet()).forEach(this::close);
+            udpClients.clear();
+        });
+    }
+
+    /**
+     * Checks that the relay still forwards the packets.
+     *
+     * @throws IllegalStateException if the thread of the relay has stopped
+     * before the relay was closed.
+     */
+    public void checkRunning()
+    {
+        if (failure != null)
+        {
+            throw new IllegalStateException("The network relay " + thread.getName() + " failed", failure);
+        }
+    }
+
+    /**
+     * @return the counters of the links.
+     */
+    @Override
+    public String toString()
+    {
+        CompletableFuture<String> stats = new CompletableFuture<>();
+        execute(() -> stats.complete(
+            "uplink " + uplink + ", downlink " + downlink + ", " + allocations.size() + " allocations"));
+        try
+        {
+            return stats.get(1, TimeUnit.SECONDS);
+        }
+        catch (Exception e)
+        {
+            return "NetworkRelay-" + getUdpPort();
+        }
+    }
+
+    /**
+     * Stops the relay and closes its sockets.
+     */
+    @Override
+    public void close()
+    {
+        running = false;
+        selector.wakeup();
+        try
+        {
+            thread.join(1000);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void execute(Runnable task)
+    {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    private void run()
+    {
+        try
+        {
+            while (running)
+            {
+                if (uplink.isIdle() && downlink.isIdle())
+                {
+                    selector.select();
+                }
+                else
+                {
+                    selector.select(1);
+                }
+
+                Runnable task;
+                while ((task = tasks.poll()) != null)
+                {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext())
+                {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try
+                    {
+                        handle(key);
+                    }
+                    catch (IOException | CancelledKeyException e)
+                    {
+                        if (key.attachment() instanceof Client)
+                        {
+                            close((Client) key.attachment());
+                        }
+                        else if (key.attachment() instanceof Allocation)
+                        {
+                            close((Allocation) key.attachment());
+                        }
+                    }
+                }
+
+                long now = nowMs();
+                uplink.process(now, this::sendToPeer);
+                downlink.process(now, this::sendToClient);
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            failure = e;
+            Logger.getGlobal().log(Level.SEVERE, "The network relay failed", e);
+        }
+        finally
+        {
+            new ArrayList<>(allocations.keySet()).forEach(this::close);
+            closeQuietly(udpListener);
+            closeQuietly(tcpListener);
+            closeQuietly(selector);
+        }
+    }
+
+    private void handle(SelectionKey key)
+        throws IOException
+    {
+        if (key.channel() == udpListener)
+        {
+            InetSocketAddress source;
+            while ((source = (InetSocketAddress) udpListener.receive(receiveBuffer.clear())) != null)
+            {
+                receiveBuffer.flip();
+                handlePacket(udpClients.computeIfAbsent(source, UdpClient::new), receiveBuffer);
+            }
+        }
+        else if (key.channel() == tcpListener)
+        {
+            SocketChannel channel;
+            while ((channel = tcpListener.accept()) != null)
+            {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                TcpClient client = new TcpClient(channel);
+                client.key = channel.register(selector, SelectionKey.OP_READ, client);
+            }
+        }
+        else if (key.attachment() instanceof TcpClient)
+        {
+            TcpClient client = (TcpClient) key.attachment();
+            if (key.isValid() && key.isWritable())
+            {
+                client.flush();
+            }
+            if (key.isValid() && key.isReadable())
+            {
+                client.read();
+            }
+        }
+        else if (key.attachment() instanceof Allocation)
+        {
+            Allocation allocation = (Allocation) key.attachment();
+            InetSocketAddress peer;
+            while ((peer = (InetSocketAddress) allocation.channel.receive(receiveBuffer.clear())) != null)
+            {
+                receiveBuffer.flip();
+                if (!blocked && allocation.permissions.contains(peer.getAddress()))
+                {
+                    byte[] data = new byte[receiveBuffer.remaining()];
+                    receiveBuffer.get(data);
+                    downlink.offer(new Packet(allocation, peer, data), data.length, nowMs());
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles a packet from a client. A malformed packet which the parsing
+     * lets through is logged and dropped, rather than stopping the relay.
+     */
+    private void handlePacket(Client client, ByteBuffer buffer)
+        throws IOException
+    {
+        try
+        {
+            handle(client, buffer);
+        }
+        catch (RuntimeException e)
+        {
+            Logger.getGlobal().log(Level.WARNING, "The network relay dropped a malformed packet", e);
+        }
+    }
+
+    /**
+     * Handles a STUN message or channel data from a client.
+     */
+    private void handle(Client client, ByteBuffer buffer)
+        throws IOException
+    {
+        if (blocked)
+        {
+            return;
+        }
+        if (!StunMessage.isStun(buffer))
+        {
+            Allocation allocation = allocations.get(client);
+            if (allocation == null || buffer.remaining() < 4)
+            {
+                return;
+            }
+            int channelNumber = buffer.getShort(buffer.position()) & 0xFFFF;
+            int length = buffer.getShort(buffer.position() + 2) & 0xFFFF;
+            InetSocketAddress peer = allocation.channels.get(channelNumber);
+            if (peer != null && length <= buffer.remaining() - 4)
+            {
+                byte[] data = new byte[length];
+                buffer.position(buffer.position() + 4);
+                buffer.get(data);
+                uplink.offer(new Packet(allocation, peer, data), data.length, nowMs());
+            }
+            return;
+        }
+
+        StunMessage message = StunMessage.parse(buffer);
+        if (message == null)
+        {
+            return;
+        }
+        if (message.getMessageClass() == StunMessage.INDICATION && message.getMethod() == StunMessage.SEND)
+        {
+            Allocation allocation = allocations.get(client);
+            InetSocketAddress peer = message.getXorAddress(StunMessage.XOR_PEER_ADDRESS);
+            byte[] data = message.get(StunMessage.DATA_VALUE);
+            if (allocation != null && peer != null && data != null
+                && allocation.permissions.contains(peer.getAddress()))
+            {
+                uplink.offer(new Packet(allocation, peer, data), data.length, nowMs());
+            }
+        }
+        else if (message.getMessageClass() == StunMessage.REQUEST)
+        {
+            handleRequest(client, message);
+        }
+    }
+
+    private void handleRequest(Client client, StunMessage request)
+        throws IOException
+    {
+        if (request.getMethod() == StunMessage.BINDING)
+        {
+            client.send(request.createResponse(StunMessage.SUCCESS)
+                .addXorAddress(StunMessage.XOR_MAPPED_ADDRESS, client.getAddress())
+                .encode(null));
+            return;
+        }
+
+        // Browsers require credentials for a TURN server, so the requests are
+        // authenticated with the long-term credentials.
+        String requestUsername = request.getString(StunMessage.USERNAME);
+        byte[] key = requestUsername == null
+            ? null : StunMessage.longTermKey(requestUsername, REALM, password);
+        if (key == null || !request.checkIntegrity(key))
+        {
+            client.send(request.createResponse(StunMessage.ERROR)
+                .addError(401, "Unauthorized")
+                .addString(StunMessage.REALM, REALM)
+                .addString(StunMessage.NONCE, nonce)
+                .encode(null));
+            return;
+        }
+
+        Allocation allocation = allocations.get(client);
+        StunMessage response = request.createResponse(StunMessage.SUCCESS);
+        switch (request.getMethod())
+        {
+        case StunMessage.ALLOCATE:
+            if (allocation == null)
+            {
+                allocation = new Allocation(client);
+                allocations.put(client, allocation);
+            }
+            response
+                .addXorAddress(StunMessage.XOR_RELAYED_ADDRESS, allocation.relayed)
+                .addXorAddress(StunMessage.XOR_MAPPED_ADDRESS, client.getAddress())
+                .addInt(StunMessage.LIFETIME, LIFETIME_SECONDS);
+            break;
+        case StunMessage.REFRESH:
+            byte[] lifetime = request.get(StunMessage.LIFETIME);
+            if (lifetime != null && ByteBuffer.wrap(lifetime).getInt() == 0)
+            {
+                if (allocation != null)
+                {
+                    close(allocation);
+                }
+                response.addInt(StunMessage.LIFETIME, 0);
+            }
+            else if (allocation != null)
+            {
+                response.addInt(StunMessage.LIFETIME, LIFETIME_SECONDS);
+            }
+            else
+            {
+                response = request.createResponse(StunMessage.ERROR).addError(437, "Allocation Mismatch");
+            }
+            break;
+        case StunMessage.CREATE_PERMISSION:
+            List<byte[]> peers = request.getAll(StunMessage.XOR_PEER_ADDRESS);
+            if (allocation == null || peers.isEmpty())
+            {
+                response = request.createResponse(StunMessage.ERROR).addError(437, "Allocation Mismatch");
+                break;
+            }
+            for (byte[] value : peers)
+            {
+                InetSocketAddress peer = StunMessage.decodeXorAddress(value, request.getTransactionId());
+                if (peer != null)
+                {
+                    allocation.permissions.add(peer.getAddress());
+                }
+            }
+            break;
+        case StunMessage.CHANNEL_BIND:
+            byte[] number = request.get(StunMessage.CHANNEL_NUMBER);
+            InetSocketAddress peer = request.getXorAddress(StunMessage.XOR_PEER_ADDRESS);
+            int channelNumber = number == null || number.length < 2
+                ? -1 : ((number[0] & 0xFF) << 8) | (number[1] & 0xFF);
+            if (allocation == null)
+            {
+                response = request.createResponse(StunMessage.ERROR).addError(437, "Allocation Mismatch");
+            }
+            else if (peer == null || channelNumber < 0x4000 || channelNumber > 0x7FFF)
+            {
+                response = request.createResponse(StunMessage.ERROR).addError(400, "Bad Request");
+            }
+            else
+            {
+                allocation.channels.put(channelNumber, peer);
+                allocation.channelsByPeer.put(peer, channelNumber);
+                allocation.permissions.add(peer.getAddress());
+            }
+            break;
+        default:
+            response = request.createResponse(StunMessage.ERROR).addError(400, "Bad Request");
+            break;
+        }
+        client.send(response.encode(key));
+    }
+
+    /**
+     * Sends a packet of the uplink out of its allocation.
+     */
+    private void sendToPeer(Packet packet)
+    {
+        if (packet.allocation.channel.isOpen())
+        {
+            try
+            {
+                packet.allocation.channel.send(ByteBuffer.wrap(packet.data), packet.peer);
+            }
+            catch (IOException e)
+            {
+                // Like a lost datagram.
+            }
+        }
+    }
+
+    /**
+     * Sends a packet of the downlink to the client of its allocation, as
+     * channel data if the peer is bound to a channel.
+     */
+    private void sendToClient(Packet packet)
+    {
+        Allocation allocation = packet.allocation;
+        if (!allocation.channel.isOpen())
+        {
+            return;
+        }
+
+        byte[] frame;
+        Integer channelNumber = allocation.channelsByPeer.get(packet.peer);
+        if (channelNumber != null)
+        {
+            // Channel data is padded to 4 bytes over TCP.
+            int length = 4 + packet.data.length;
+            ByteBuffer buffer = ByteBuffer.allocate(allocation.client.isStream() ? (length + 3) & ~3 : length);
+            buffer.putShort((short) (int) channelNumber).putShort((short) packet.data.length).put(packet.data);
+            frame = buffer.array();
+        }
+        else
+        {
+            frame = new StunMessage(StunMessage.DATA, StunMessage.INDICATION, newTransactionId())
+                .addXorAddress(StunMessage.XOR_PEER_ADDRESS, packet.peer)
+                .add(StunMessage.DATA_VALUE, packet.data)
+                .encode(null);
+        }
+
+        try
+        {
+            allocation.client.send(frame);
+        }
+        catch (IOException e)
+        {
+            close(allocation.client);
+        }
+    }
+
+    private static byte[] newTransactionId()
+    {
+        byte[] id = new byte[12];
+        ThreadLocalRandom.current().nextBytes(id);
+        return id;
+    }
+
+    private void close(Client client)
+    {
+        Allocation allocation = allocations.get(client);
+        if (allocation != null)
+        {
+            close(allocation);
+        }
+        if (client instanceof TcpClient)
+        {
+            closeQuietly(((TcpClient) client).channel);
+        }
+        else
+        {
+            udpClients.values().remove(client);
+        }
+    }
+
+    private void close(Allocation allocation)
+    {
+        allocations.remove(allocation.client);
+        closeQuietly(allocation.channel);
+    }
+
+    private static void closeQuietly(Closeable closeable)
+    {
+        try
+        {
+            closeable.close();
+        }
+        catch (IOException e)
+        {
+            // Nothing to do.
+        }
+    }
+
+    /**
+     * A client of the TURN server: a 5-tuple, which has at most one
+     * allocation.
+     */
+    private abstract static class Client
+    {
+        abstract InetSocketAddress getAddress()
+            throws IOException;
+
+        abstract boolean isStream();
+
+        abstract void send(byte[] frame)
+            throws IOException;
+    }
+
+    private class UdpClient
+        extends Client
+    {
+        private final InetSocketAddress address;
+
+        private UdpClient(InetSocketAddress address)
+        {
+            this.address = address;
+        }
+
+        @Override
+        InetSocketAddress getAddress()
+        {
+            return address;
+        }
+
+        @Override
+        boolean isStream()
+        {
+            return false;
+        }
+
+        @Override
+        void send(byte[] frame)
+            throws IOException
+        {
+            udpListener.send(ByteBuffer.wrap(frame), address);
+        }
+    }
+
+    private class TcpClient
+        extends Client
+    {
+        private final SocketChannel channel;
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(65536 + 4);
+        private final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<>();
+        private int queuedBytes;
+        private SelectionKey key;
+
+        private TcpClient(SocketChannel channel)
+        {
+            this.channel = channel;
+        }
+
+        @Override
+        InetSocketAddress getAddress()
+            throws IOException
+        {
+            return (InetSocketAddress) channel.getRemoteAddress();
+        }
+
+        @Override
+        boolean isStream()
+        {
+            return true;
+        }
+
+        @Override
+        void send(byte[] frame)
+            throws IOException
+        {
+            if (queuedBytes + frame.length > MAX_TCP_QUEUE_BYTES)
+            {
+                return;
+            }
+            writeQueue.add(ByteBuffer.wrap(frame));
+            queuedBytes += frame.length;
+            flush();
+        }
+
+        private void flush()
+            throws IOException
+        {
+            while (!writeQueue.isEmpty())
+            {
+                ByteBuffer head = writeQueue.peek();
+                int written = channel.write(head);
+                queuedBytes -= written;
+                if (head.hasRemaining())
+                {
+                    break;
+                }
+                writeQueue.remove();
+            }
+            key.interestOps(writeQueue.isEmpty()
+                ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+
+        /**
+         * Reads the frames of the stream: STUN messages and channel data.
+         */
+        private void read()
+            throws IOException
+        {
+            if (channel.read(readBuffer) < 0)
+            {
+                close(this);
+                return;
+            }
+
+            readBuffer.flip();
+            while (readBuffer.remaining() >= 4)
+            {
+                int position = readBuffer.position();
+                int length = readBuffer.getShort(position + 2) & 0xFFFF;
+                int frameLength = (readBuffer.get(position) & 0xC0) == 0
+                    ? StunMessage.HEADER_LENGTH + length : (4 + length + 3) & ~3;
+                if (readBuffer.remaining() < frameLength)
+                {
+                    break;
+                }
+
+                ByteBuffer frame = readBuffer.slice();
+                frame.limit(frameLength);
+                handlePacket(this, frame);
+                readBuffer.position(position + frameLength);
+            }
+            readBuffer.compact();
+        }
+    }
+
+    /**
+     * A relayed transport address and its permissions and channels.
+     */
+    private class Allocation
+    {
+        private final Client client;
+        private final DatagramChannel channel;
+        private final InetSocketAddress relayed;
+        private final Set<InetAddress> permissions = new HashSet<>();
+        private final Map<Integer, InetSocketAddress> channels = new HashMap<>();
+        private final Map<InetSocketAddress, Integer> channelsByPeer = new HashMap<>();
+
+        private Allocation(Client client)
+            throws IOException
+        {
+            this.client = client;
+            channel = DatagramChannel.open();
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, SOCKET_BUFFER_BYTES);
+            channel.bind(new InetSocketAddress(0));
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ, this);
+            relayed = new InetSocketAddress(relayedAddress, channel.socket().getLocalPort());
+        }
+    }
+
+    /**
+     * A relayed packet.
+     */
+    private static class Packet
+    {
+        private final Allocation allocation;
+        private final InetSocketAddress peer;
+        private final byte[] data;
+
+        private Packet(Allocation allocation, InetSocketAddress peer, byte[] data)
+        {
+            this.allocation = allocation;
+            this.peer = peer;
+            this.data = data;
+        }
+    }
+}
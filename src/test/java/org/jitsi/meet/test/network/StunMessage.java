@@ -0,0 +1,387 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.network;
+
+import javax.crypto.*;
+import javax.crypto.spec.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.charset.*;
+import java.security.*;
+import java.util.*;
+
+/**
+ * The STUN messages (RFC 5389) of the subset of TURN (RFC 5766) that
+ * {@link NetworkRelay} serves: the attributes are kept as raw values and the
+ * message integrity uses the long-term credentials.
+ */
+class StunMessage
+{
+    static final int BINDING = 0x001;
+    static final int ALLOCATE = 0x003;
+    static final int REFRESH = 0x004;
+    static final int SEND = 0x006;
+    static final int DATA = 0x007;
+    static final int CREATE_PERMISSION = 0x008;
+    static final int CHANNEL_BIND = 0x009;
+
+    static final int REQUEST = 0x0000;
+    static final int INDICATION = 0x0010;
+    static final int SUCCESS = 0x0100;
+    static final int ERROR = 0x0110;
+
+    static final int USERNAME = 0x0006;
+    static final int MESSAGE_INTEGRITY = 0x0008;
+    static final int ERROR_CODE = 0x0009;
+    static final int CHANNEL_NUMBER = 0x000C;
+    static final int LIFETIME = 0x000D;
+    static final int XOR_PEER_ADDRESS = 0x0012;
+    static final int DATA_VALUE = 0x0013;
+    static final int REALM = 0x0014;
+    static final int NONCE = 0x0015;
+    static final int XOR_RELAYED_ADDRESS = 0x0016;
+    static final int XOR_MAPPED_ADDRESS = 0x0020;
+
+    static final int MAGIC_COOKIE = 0x2112A442;
+    static final int HEADER_LENGTH = 20;
+
+    private final int method;
+    private final int messageClass;
+    private final byte[] transactionId;
+    private final List<Integer> attributeTypes = new ArrayList<>();
+    private final List<byte[]> attributeValues = new ArrayList<>();
+
+    /**
+     * The message as received, to check its integrity.
+     */
+    private byte[] raw;
+    private int integrityOffset = -1;
+
+    StunMessage(int method, int messageClass, byte[] transactionId)
+    {
+        this.method = method;
+        this.messageClass = messageClass;
+        this.transactionId = transactionId;
+    }
+
+    /**
+     * Whether a buffer starts with a STUN message, rather than with TURN
+     * channel data, whose first two bits are 01.
+     */
+    static boolean isStun(ByteBuffer buffer)
+    {
+        return buffer.remaining() >= HEADER_LENGTH
+            && (buffer.get(buffer.position()) & 0xC0) == 0
+            && buffer.getInt(buffer.position() + 4) == MAGIC_COOKIE;
+    }
+
+    /**
+     * Parses a message.
+     *
+     * @param buffer the message, from its position to its limit.
+     * @return the message or <tt>null</tt> if it is malformed.
+     */
+    static StunMessage parse(ByteBuffer buffer)
+    {
+        if (!isStun(buffer))
+        {
+            return null;
+        }
+        int start = buffer.position();
+        int type = buffer.getShort(start) & 0x3FFF;
+        int length = buffer.getShort(start + 2) & 0xFFFF;
+        if (HEADER_LENGTH + length > buffer.remaining() || length % 4 != 0)
+        {
+            return null;
+        }
+        byte[] transactionId = new byte[12];
+        for (int i = 0; i < transactionId.length; i++)
+        {
+            transactionId[i] = buffer.get(start + 8 + i);
+        }
+
+        int method = (type & 0x000F) | ((type & 0x00E0) >> 1) | ((type & 0x3E00) >> 2);
+        StunMessage message = new StunMessage(method, type & 0x0110, transactionId);
+        message.raw = new byte[HEADER_LENGTH + length];
+        buffer.duplicate().get(message.raw);
+
+        ByteBuffer raw = ByteBuffer.wrap(message.raw);
+        int offset = HEADER_LENGTH;
+        while (offset + 4 <= message.raw.length)
+        {
+            int attributeType = raw.getShort(offset) & 0xFFFF;
+            int attributeLength = raw.getShort(offset + 2) & 0xFFFF;
+            if (offset + 4 + attributeLength > message.raw.length
+                || !isValidLength(attributeType, attributeLength))
+            {
+                return null;
+            }
+            if (attributeType == MESSAGE_INTEGRITY)
+            {
+                message.integrityOffset = offset;
+            }
+            message.add(attributeType, Arrays.copyOfRange(message.raw, offset + 4, offset + 4 + attributeLength));
+            offset += 4 + ((attributeLength + 3) & ~3);
+        }
+        return message;
+    }
+
+    /**
+     * Checks the length of the value of an attribute which the relay reads.
+     *
+     * @return whether the length fits the type of the attribute.
+     */
+    private static boolean isValidLength(int type, int length)
+    {
+        switch (type)
+        {
+        case CHANNEL_NUMBER:
+        case LIFETIME:
+            return length == 4;
+        case MESSAGE_INTEGRITY:
+            return length == 20;
+        case XOR_PEER_ADDRESS:
+        case XOR_RELAYED_ADDRESS:
+        case XOR_MAPPED_ADDRESS:
+            return length == 8 || length == 20;
+        default:
+            return true;
+        }
+    }
+
+    int getMethod()
+    {
+        return method;
+    }
+
+    int getMessageClass()
+    {
+        return messageClass;
+    }
+
+    byte[] getTransactionId()
+    {
+        return transactionId;
+    }
+
+    /**
+     * @return the first value of an attribute, <tt>null</tt> if absent.
+     */
+    byte[] get(int type)
+    {
+        for (int i = 0; i < attributeTypes.size(); i++)
+        {
+            if (attributeTypes.get(i) == type)
+            {
+                return attributeValues.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return all the values of an attribute.
+     */
+    List<byte[]> getAll(int type)
+    {
+        List<byte[]> values = new ArrayList<>();
+        for (int i = 0; i < attributeTypes.size(); i++)
+        {
+            if (attributeTypes.get(i) == type)
+            {
+                values.add(attributeValues.get(i));
+            }
+        }
+        return values;
+    }
+
+    String getString(int type)
+    {
+        byte[] value = get(type);
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the address of a XOR address attribute, <tt>null</tt> if
+     * absent or malformed.
+     */
+    InetSocketAddress getXorAddress(int type)
+    {
+        byte[] value = get(type);
+        return value == null ? null : decodeXorAddress(value, transactionId);
+    }
+
+    StunMessage add(int type, byte[] value)
+    {
+        attributeTypes.add(type);
+        attributeValues.add(value);
+        return this;
+    }
+
+    StunMessage addString(int type, String value)
+    {
+        return add(type, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    StunMessage addInt(int type, int value)
+    {
+        return add(type, ByteBuffer.allocate(4).putInt(value).array());
+    }
+
+    StunMessage addXorAddress(int type, InetSocketAddress address)
+    {
+        byte[] ip = address.getAddress().getAddress();
+        ByteBuffer value = ByteBuffer.allocate(4 + ip.length);
+        value.put((byte) 0).put((byte) (ip.length == 4 ? 1 : 2)).putShort((short) (address.getPort() ^ 0x2112));
+        byte[] mask = xorMask(transactionId);
+        for (int i = 0; i < ip.length; i++)
+        {
+            value.put((byte) (ip[i] ^ mask[i]));
+        }
+        return add(type, value.array());
+    }
+
+    StunMessage addError(int code, String reason)
+    {
+        byte[] phrase = reason.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer value = ByteBuffer.allocate(4 + phrase.length);
+        value.putShort((short) 0).put((byte) (code / 100)).put((byte) (code % 100)).put(phrase);
+        return add(ERROR_CODE, value.array());
+    }
+
+    /**
+     * Creates a response to this request with the same transaction.
+     */
+    StunMessage createResponse(int messageClass)
+    {
+        return new StunMessage(method, messageClass, transactionId);
+    }
+
+    /**
+     * Checks the integrity of this message as received.
+     *
+     * @param key the long-term key of the credentials.
+     * @return whether the message has a valid integrity.
+     */
+    boolean checkIntegrity(byte[] key)
+    {
+        if (raw == null || integrityOffset < 0)
+        {
+            return false;
+        }
+        byte[] covered = Arrays.copyOf(raw, integrityOffset);
+        ByteBuffer.wrap(covered).putShort(2, (short) (integrityOffset + 24 - HEADER_LENGTH));
+        return MessageDigest.isEqual(hmac(key, covered), get(MESSAGE_INTEGRITY));
+    }
+
+    /**
+     * Encodes this message.
+     *
+     * @param integrityKey the long-term key to add a message integrity with,
+     * <tt>null</tt> for none.
+     * @return the message.
+     */
+    byte[] encode(byte[] integrityKey)
+    {
+        int length = 0;
+        for (byte[] value : attributeValues)
+        {
+            length += 4 + ((value.length + 3) & ~3);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + length + (integrityKey == null ? 0 : 24));
+        int type = (method & 0x000F) | ((method & 0x0070) << 1) | ((method & 0x0F80) << 2) | messageClass;
+        buffer.putShort((short) type).putShort((short) length).putInt(MAGIC_COOKIE).put(transactionId);
+        for (int i = 0; i < attributeValues.size(); i++)
+        {
+            byte[] value = attributeValues.get(i);
+            buffer.putShort((short) (int) attributeTypes.get(i)).putShort((short) value.length).put(value);
+            buffer.position(buffer.position() + ((4 - value.length % 4) % 4));
+        }
+
+        if (integrityKey != null)
+        {
+            buffer.putShort(2, (short) (length + 24));
+            byte[] mac = hmac(integrityKey, Arrays.copyOf(buffer.array(), buffer.position()));
+            buffer.putShort((short) MESSAGE_INTEGRITY).putShort((short) mac.length).put(mac);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Computes the long-term key of credentials: MD5(username:realm:password).
+     */
+    static byte[] longTermKey(String username, String realm, String password)
+    {
+        try
+        {
+            return MessageDigest.getInstance("MD5").digest(
+                (username + ":" + realm + ":" + password).getBytes(StandardCharsets.UTF_8));
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] hmac(byte[] key, byte[] data)
+    {
+        try
+        {
+            Mac mac = Mac.getInstance("HmacSHA1");
+            mac.init(new SecretKeySpec(key, "HmacSHA1"));
+            return mac.doFinal(data);
+        }
+        catch (GeneralSecurityException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] xorMask(byte[] transactionId)
+    {
+        return ByteBuffer.allocate(16).putInt(MAGIC_COOKIE).put(transactionId).array();
+    }
+
+    /**
+     * Decodes the value of a XOR address attribute.
+     *
+     * @return the address, <tt>null</tt> if malformed.
+     */
+    static InetSocketAddress decodeXorAddress(byte[] value, byte[] transactionId)
+    {
+        int length = value.length >= 4 && value[1] == 1 ? 4 : value.length >= 4 && value[1] == 2 ? 16 : -1;
+        if (length < 0 || value.length < 4 + length)
+        {
+            return null;
+        }
+        int port = (((value[2] & 0xFF) << 8) | (value[3] & 0xFF)) ^ 0x2112;
+        byte[] mask = xorMask(transactionId);
+        byte[] ip = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            ip[i] = (byte) (value[4 + i] ^ mask[i]);
+        }
+        try
+        {
+            return new InetSocketAddress(InetAddress.getByAddress(ip), port);
+        }
+        catch (UnknownHostException e)
+        {
+            return null;
+        }
+    }
+}
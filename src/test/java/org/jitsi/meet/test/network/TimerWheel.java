@@ -0,0 +1,135 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.network;
+
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * A hashed timer wheel: the timers are hashed by their tick into a ring of
+ * slots, so that scheduling a timer is constant time and advancing the wheel
+ * only visits the slots of the elapsed ticks. The timers of a tick expire in
+ * the order they were scheduled. Not thread safe, the wheel is meant to be
+ * driven by a single I/O thread.
+ *
+ * @param <T> the type of the items of the timers.
+ */
+public class TimerWheel<T>
+{
+    private final long tickMs;
+    private final ArrayDeque<Timer<T>>[] slots;
+
+    /**
+     * The next tick to expire.
+     */
+    private long tick;
+
+    private int size;
+
+    /**
+     * Creates new {@link TimerWheel}.
+     *
+     * @param slotCount the number of slots, timers further than that many
+     * ticks wait for more rounds of the wheel.
+     * @param tickMs the resolution of the wheel.
+     * @param startMs the current time.
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(int slotCount, long tickMs, long startMs)
+    {
+        if (slotCount <= 0 || tickMs <= 0)
+        {
+            throw new IllegalArgumentException("Bad timer wheel");
+        }
+        this.tickMs = tickMs;
+        this.slots = new ArrayDeque[slotCount];
+        for (int i = 0; i < slotCount; i++)
+        {
+            slots[i] = new ArrayDeque<>();
+        }
+        this.tick = startMs / tickMs;
+    }
+
+    /**
+     * Schedules a timer. A timer which is already due expires with the next
+     * advance of the wheel.
+     *
+     * @param deadlineMs when the timer expires.
+     * @param item the item of the timer.
+     */
+    public void schedule(long deadlineMs, T item)
+    {
+        long t = Math.max(deadlineMs / tickMs, tick);
+        slots[(int) (t % slots.length)].add(new Timer<>(t, item));
+        size++;
+    }
+
+    /**
+     * Expires the timers which are due.
+     *
+     * @param nowMs the current time.
+     * @param expired consumes the items of the expired timers.
+     */
+    public void advance(long nowMs, Consumer<T> expired)
+    {
+        long target = nowMs / tickMs;
+        List<T> due = new ArrayList<>();
+        while (tick <= target)
+        {
+            if (size == 0)
+            {
+                tick = target + 1;
+                break;
+            }
+
+            Iterator<Timer<T>> it = slots[(int) (tick % slots.length)].iterator();
+            while (it.hasNext())
+            {
+                Timer<T> timer = it.next();
+                if (timer.tick <= tick)
+                {
+                    it.remove();
+                    size--;
+                    due.add(timer.item);
+                }
+            }
+            tick++;
+        }
+
+        // The items may schedule new timers.
+        due.forEach(expired);
+    }
+
+    /**
+     * @return the number of pending timers.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    private static class Timer<T>
+    {
+        private final long tick;
+        private final T item;
+
+        private Timer(long tick, T item)
+        {
+            this.tick = tick;
+            this.item = item;
+        }
+    }
+}
@@ -112,7 +112,7 @@ public class TestConnectionInfo
     /**
      * @return {@link MobileRtpStats}
      */
-    public RtpStatistics getRtpStats()
+    public MobileRtpStats getRtpStats()
     {
         return new MobileRtpStats(rtpStatistics);
     }
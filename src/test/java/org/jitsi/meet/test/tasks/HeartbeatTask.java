@@ -22,6 +22,7 @@ import org.testng.*;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.stream.*;
 
 /**
  * A HeartbeatTask class can be used to make sure that the conference is running
@@ -29,36 +30,147 @@ import java.util.concurrent.*;
  * block the thread until either the specified time elapses or the conference
  * breaks. The latter will result in the current test failure.
  *
+ * Every participant is probed independently on a
+ * {@link ScheduledExecutorService}, which by default is shared by all the
+ * tasks, so the participants are checked in parallel and no thread is
+ * dedicated to a task. The probes block on the browsers, so the shared
+ * executor has a thread per probe of the running tasks, and a hung browser
+ * does not delay the probes of the others. Every probe is kept in the
+ * heartbeat history, see {@link #getHistory()}.
+ *
  * @author George Politis
  * @author Pawel Domas
  */
 public class HeartbeatTask
-    extends TimerTask
 {
-    private final Timer timer = new Timer();
+    /**
+     * The default number of consecutive probes without download bitrate after
+     * which a participant is considered failed.
+     */
+    public static final int DEFAULT_MAX_BITRATE_FAILURES = 3;
+
+    /**
+     * The executor used by the tasks which are not given one, sized to the
+     * probes of the running tasks.
+     */
+    private static final ScheduledThreadPoolExecutor SHARED_POOL
+        = new ScheduledThreadPoolExecutor(
+            1,
+            r -> {
+                Thread t = new Thread(r, "heartbeat");
+                t.setDaemon(true);
+                return t;
+            });
+
+    /**
+     * The number of threads the running tasks need from
+     * {@link #SHARED_POOL}, guarded by it.
+     */
+    private static int sharedPoolThreads;
+
+    private final ScheduledExecutorService pool;
     private final CountDownLatch waitSignal = new CountDownLatch(1);
-    private final boolean enableBitrateCheck;
-    private final Participant participant1;
-    private final Participant participant2;
-    private long lastRun = System.currentTimeMillis();
-    private int millsToRun;
+    private final List<Probe> probes = new ArrayList<>();
+    private final List<ScheduledFuture<?>> scheduled = new ArrayList<>();
+    private final List<Heartbeat> history
+        = Collections.synchronizedList(new ArrayList<>());
+    private final long millsToRun;
+    private int maxBitrateFailures = DEFAULT_MAX_BITRATE_FAILURES;
+    private volatile long endTime;
+    private volatile boolean stopped;
 
-    private CountDownLatch downloadSignal1 = new CountDownLatch(3);
-    private CountDownLatch downloadSignal2 = new CountDownLatch(3);
+    /**
+     * The threads this task added to {@link #SHARED_POOL}, 0 if none.
+     */
+    private int sharedThreads;
 
+    /**
+     * Creates a task checking two participants on the shared executor. The
+     * download bitrate of the first participant is always checked.
+     *
+     * @param participant1 the first participant.
+     * @param participant2 the second participant.
+     * @param millsToRun for how long the conference is checked.
+     * @param enableBitrateCheck whether to check the download bitrate of the
+     * second participant.
+     */
     public HeartbeatTask(
         Participant participant1,
         Participant participant2,
         int millsToRun, boolean enableBitrateCheck)
     {
-        this.participant1 = participant1;
-        this.participant2 = participant2;
+        this(null, millsToRun);
+
+        addParticipant(participant1, true);
         // XXX bitrate checks fail on beta. not enough bandwidth to check
         // why.
-        this.enableBitrateCheck = enableBitrateCheck;
+        addParticipant(participant2, enableBitrateCheck);
+    }
+
+    /**
+     * Creates a task checking any number of participants.
+     *
+     * @param pool the executor running the probes, with a thread per
+     * participant for the probes of a hung browser not to delay the others,
+     * or <tt>null</tt> to use the one shared by all tasks.
+     * @param participants the participants.
+     * @param millsToRun for how long the conference is checked.
+     * @param enableBitrateCheck whether to check the download bitrate of the
+     * participants.
+     */
+    public HeartbeatTask(
+        ScheduledExecutorService pool,
+        List<? extends Participant> participants,
+        long millsToRun, boolean enableBitrateCheck)
+    {
+        this(pool, millsToRun);
+
+        participants.forEach(p -> addParticipant(p, enableBitrateCheck));
+    }
+
+    /**
+     * Creates a task without participants, see
+     * {@link #addParticipant(Participant, boolean)}.
+     *
+     * @param pool the executor running the probes, with a thread per
+     * participant for the probes of a hung browser not to delay the others,
+     * or <tt>null</tt> to use the one shared by all tasks.
+     * @param millsToRun for how long the conference is checked.
+     */
+    public HeartbeatTask(ScheduledExecutorService pool, long millsToRun)
+    {
+        this.pool = pool != null ? pool : SHARED_POOL;
         this.millsToRun = millsToRun;
     }
 
+    /**
+     * Adds a participant to check. Must be called before
+     * {@link #start(long, long)}.
+     *
+     * @param participant the participant.
+     * @param checkBitrate whether to check the download bitrate of the
+     * participant.
+     * @return this instance.
+     */
+    public HeartbeatTask addParticipant(
+        Participant participant, boolean checkBitrate)
+    {
+        probes.add(new Probe(Objects.requireNonNull(participant), checkBitrate));
+        return this;
+    }
+
+    /**
+     * Sets the number of consecutive probes without download bitrate after
+     * which a participant is considered failed.
+     *
+     * @param maxBitrateFailures the number of probes.
+     * @return this instance.
+     */
+    public HeartbeatTask setMaxBitrateFailures(int maxBitrateFailures)
+    {
+        this.maxBitrateFailures = maxBitrateFailures;
+        return this;
+    }
 
     /**
      * Starts the <tt>HeartbeatTask</tt>. From now on it will be checking
@@ -68,118 +180,53 @@ public class HeartbeatTask
      * @param intervalMs how often this <tt>HeartbeatTask</tt> will be doing
      * conference state checks(in milliseconds).
      */
-    public void start(long startDelayMs, long intervalMs)
+    public synchronized void start(long startDelayMs, long intervalMs)
     {
-        timer.schedule(this, startDelayMs, intervalMs);
-    }
+        endTime = System.currentTimeMillis() + millsToRun;
 
-    @Override
-    public void run()
-    {
-        try
+        if (pool == SHARED_POOL && sharedThreads == 0)
         {
-            TestUtils.print("Checking at " + new Date()
-                + " / to finish: " + millsToRun + " ms.");
-
-            if (!MeetUtils.isIceConnected(participant1.getDriver()))
-            {
-                assertAndQuit("Participant1 ice is not connected.");
-                return;
-            }
-
-            if (!participant1.isInMuc())
-            {
-                assertAndQuit("Participant1 is not in the muc.");
-                return;
-            }
-
-            if (!MeetUtils.isIceConnected(participant2.getDriver()))
-            {
-                assertAndQuit(
-                    "Participant2 ice is not connected.");
-                return;
-            }
-
-            if (!participant2.isInMuc())
-            {
-                assertAndQuit(
-                    "Participant2 is not in the muc.");
-                return;
-            }
-
-            long download1
-                = MeetUtils.getDownloadBitrate(participant1.getDriver());
-            long download2 =
-                MeetUtils.getDownloadBitrate(participant2.getDriver());
-
-            if (download1 <= 0)
-            {
-                TestUtils.print("Participant1 no download bitrate");
-                downloadSignal1.countDown();
-            }
-            else
-            {
-                downloadSignal1 = new CountDownLatch(3);
-            }
-
-            if (downloadSignal1.getCount() <= 0)
-            {
-                assertAndQuit("Participant1 download bitrate less than 0");
-                return;
-            }
-
-            if (enableBitrateCheck && download2 <= 0)
-            {
-                TestUtils.print(
-                   "Participant2 no download bitrate");
-               downloadSignal2.countDown();
-            }
-            else
-            {
-                downloadSignal2 = new CountDownLatch(3);
-            }
-
-            if (enableBitrateCheck && downloadSignal2.getCount() <= 0)
-            {
-                assertAndQuit(
-                    "Participant2 download rate less than 0");
-                return;
-            }
-
-            if (!participant1.isXmppConnected())
-            {
-                assertAndQuit("Participant1 xmpp connection is not connected");
-                return;
-            }
-
-            if (!participant2.isXmppConnected())
-            {
-                assertAndQuit("Participant2's xmpp connection is not connected");
-                return;
-            }
-
-            long currentTime = System.currentTimeMillis();
-            millsToRun -= (currentTime - lastRun);
-            lastRun = currentTime;
-
-            if (millsToRun <= 0)
-            {
-                timer.cancel();
-            }
+            // A thread per probe, and one for the end of the task.
+            sharedThreads = probes.size() + 1;
+            resizeSharedPool(sharedThreads);
         }
-        catch (Exception e)
+        for (Probe probe : probes)
         {
-            // Chrome crashed
-            if (e instanceof WebDriverException && e.getMessage() != null
-                && e.getMessage().startsWith("chrome not reachable"))
-            {
-                // skip this check
-                return;
-            }
+            scheduled.add(
+                pool.scheduleAtFixedRate(
+                    probe, startDelayMs, intervalMs, TimeUnit.MILLISECONDS));
+        }
+        scheduled.add(
+            pool.schedule(this::stop, millsToRun, TimeUnit.MILLISECONDS));
+    }
 
-            e.printStackTrace();
+    /**
+     * Stops checking the participants.
+     */
+    public synchronized void stop()
+    {
+        stopped = true;
+        scheduled.forEach(f -> f.cancel(false));
+        scheduled.clear();
+        if (sharedThreads > 0)
+        {
+            resizeSharedPool(-sharedThreads);
+            sharedThreads = 0;
+        }
+    }
 
-            assertAndQuit("Unexpected error occurred.");
+    /**
+     * Adds threads to {@link #SHARED_POOL} or removes them, the threads
+     * removed ending once idle.
+     *
+     * @param delta the number of threads.
+     */
+    private static void resizeSharedPool(int delta)
+    {
+        synchronized (SHARED_POOL)
+        {
+            sharedPoolThreads += delta;
+            SHARED_POOL.setCorePoolSize(Math.max(1, sharedPoolThreads));
         }
     }
 
@@ -192,7 +239,7 @@ public class HeartbeatTask
     {
         TestUtils.print(msg);
         waitSignal.countDown();
-        timer.cancel();
+        stop();
     }
 
     /**
@@ -209,7 +256,7 @@ public class HeartbeatTask
         {
             waitSignal.await(timeout, timeUnit);
 
-            timer.cancel();
+            stop();
 
             if (waitSignal.getCount() == 0)
                 Assert.fail("A problem with the conf occurred");
@@ -221,4 +268,216 @@ public class HeartbeatTask
             Assert.fail("An error occurred: " + e.getMessage());
         }
     }
+
+    /**
+     * @return a copy of all the heartbeats so far, in the order the probes
+     * completed.
+     */
+    public List<Heartbeat> getHistory()
+    {
+        synchronized (history)
+        {
+            return new ArrayList<>(history);
+        }
+    }
+
+    /**
+     * @param participant a participant.
+     * @return the heartbeats of the given participant.
+     */
+    public List<Heartbeat> getHistory(Participant participant)
+    {
+        return getHistory().stream()
+            .filter(h -> h.getParticipant() == participant)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * The state of a participant at a probe.
+     */
+    public enum Status
+    {
+        OK,
+        ICE_DISCONNECTED,
+        NOT_IN_MUC,
+        NO_DOWNLOAD_BITRATE,
+        XMPP_DISCONNECTED,
+        UNREACHABLE,
+        ERROR
+    }
+
+    /**
+     * The result of a probe of a participant.
+     */
+    public static class Heartbeat
+    {
+        private final long timestamp;
+        private final Participant participant;
+        private final Status status;
+        private final long downloadBitrate;
+
+        Heartbeat(
+            long timestamp, Participant participant,
+            Status status, long downloadBitrate)
+        {
+            this.timestamp = timestamp;
+            this.participant = participant;
+            this.status = status;
+            this.downloadBitrate = downloadBitrate;
+        }
+
+        /**
+         * @return the time of the probe in milliseconds since the epoch.
+         */
+        public long getTimestamp()
+        {
+            return timestamp;
+        }
+
+        /**
+         * @return the probed participant.
+         */
+        public Participant getParticipant()
+        {
+            return participant;
+        }
+
+        /**
+         * @return the state of the participant.
+         */
+        public Status getStatus()
+        {
+            return status;
+        }
+
+        /**
+         * @return the download bitrate in bits per second or -1 if it was not
+         * read.
+         */
+        public long getDownloadBitrate()
+        {
+            return downloadBitrate;
+        }
+
+        @Override
+        public String toString()
+        {
+            return timestamp + " " + participant.getName() + " " + status
+                + " " + downloadBitrate;
+        }
+    }
+
+    /**
+     * Checks one participant. Runs at a fixed rate, never concurrently with
+     * itself, so the failure counter needs no synchronization.
+     */
+    private class Probe
+        implements Runnable
+    {
+        private final Participant participant;
+        private final boolean checkBitrate;
+        private int bitrateFailures;
+
+        Probe(Participant participant, boolean checkBitrate)
+        {
+            this.participant = participant;
+            this.checkBitrate = checkBitrate;
+        }
+
+        @Override
+        public void run()
+        {
+            if (stopped)
+            {
+                return;
+            }
+
+            if (probes.get(0) == this)
+            {
+                TestUtils.print("Checking at " + new Date()
+                    + " / to finish: "
+                    + (endTime - System.currentTimeMillis()) + " ms.");
+            }
+
+            long download = -1;
+            Status status;
+            try
+            {
+                status = check();
+                if (status == Status.OK)
+                {
+                    download
+                        = MeetUtils.getDownloadBitrate(participant.getDriver());
+                    status = download > 0 || !checkBitrate
+                        ? Status.OK : Status.NO_DOWNLOAD_BITRATE;
+                }
+            }
+            catch (Exception e)
+            {
+                // Chrome crashed
+                if (e instanceof WebDriverException && e.getMessage() != null
+                    && e.getMessage().startsWith("chrome not reachable"))
+                {
+                    // skip this check
+                    history.add(new Heartbeat(
+                        System.currentTimeMillis(), participant,
+                        Status.UNREACHABLE, -1));
+                    return;
+                }
+
+                e.printStackTrace();
+                status = Status.ERROR;
+            }
+
+            history.add(new Heartbeat(
+                System.currentTimeMillis(), participant, status, download));
+
+            String name = participant.getName();
+            switch (status)
+            {
+            case OK:
+                bitrateFailures = 0;
+                break;
+            case NO_DOWNLOAD_BITRATE:
+                TestUtils.print(name + " no download bitrate");
+                if (++bitrateFailures >= maxBitrateFailures)
+                {
+                    assertAndQuit(name + " download bitrate less than 0");
+                }
+                break;
+            case ICE_DISCONNECTED:
+                assertAndQuit(name + " ice is not connected.");
+                break;
+            case NOT_IN_MUC:
+                assertAndQuit(name + " is not in the muc.");
+                break;
+            case XMPP_DISCONNECTED:
+                assertAndQuit(name + " xmpp connection is not connected");
+                break;
+            default:
+                assertAndQuit("Unexpected error occurred.");
+                break;
+            }
+        }
+
+        /**
+         * @return the state of the participant's connections.
+         */
+        private Status check()
+        {
+            if (!MeetUtils.isIceConnected(participant.getDriver()))
+            {
+                return Status.ICE_DISCONNECTED;
+            }
+            if (!participant.isInMuc())
+            {
+                return Status.NOT_IN_MUC;
+            }
+            if (!participant.isXmppConnected())
+            {
+                return Status.XMPP_DISCONNECTED;
+            }
+            return Status.OK;
+        }
+    }
 }
@@ -579,6 +579,21 @@ public class TestUtils
             .until(condition);
     }
 
+    /**
+     * Reads a switch from a system property: it is on when the property is
+     * set to anything but "false", so a bare <tt>-Dname</tt> turns it on.
+     *
+     * @param name the name of the property.
+     * @param defaultValue the value of the switch when the property is not
+     * set.
+     * @return the value of the switch.
+     */
+    public static boolean getBooleanProperty(String name, boolean defaultValue)
+    {
+        String value = System.getProperty(name);
+        return value == null ? defaultValue : !"false".equalsIgnoreCase(value.trim());
+    }
+
     /**
      * Waits for the specified amount of <tt>time</tt> in milliseconds.
      * @param time to wait in milliseconds.
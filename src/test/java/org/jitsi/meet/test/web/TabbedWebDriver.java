@@ -81,6 +81,26 @@ public class TabbedWebDriver implements WebDriver, JavascriptExecutor,
         return baseDriver;
     }
 
+    /**
+     * Executes a Chrome DevTools Protocol command in this tab. The commands
+     * go to the target of the current window of the base driver, so this tab
+     * is switched to first.
+     *
+     * @param command the command.
+     * @param parameters the parameters of the command.
+     * @return the result of the command.
+     * @throws UnsupportedOperationException if the browser does not support
+     * the DevTools Protocol.
+     */
+    public Map<String, Object> executeCdpCommand(String command, Map<String, Object> parameters)
+    {
+        synchronized (baseDriver)
+        {
+            baseDriver.switchTo().window(tabId);
+            return WebParticipant.getCdp(baseDriver).executeCdpCommand(command, parameters);
+        }
+    }
+
     @Override
     public Capabilities getCapabilities()
     {
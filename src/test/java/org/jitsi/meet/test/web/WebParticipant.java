@@ -17,11 +17,13 @@ package org.jitsi.meet.test.web;
 
 import org.jitsi.meet.test.base.*;
 import org.jitsi.meet.test.base.stats.*;
+import org.jitsi.meet.test.network.*;
 import org.jitsi.meet.test.pageobjects.base.*;
 import org.jitsi.meet.test.pageobjects.web.*;
 import org.jitsi.meet.test.util.*;
 import org.jitsi.meet.test.web.stats.*;
 import org.openqa.selenium.*;
+import org.openqa.selenium.chromium.*;
 import org.openqa.selenium.interactions.*;
 import org.openqa.selenium.remote.*;
 import org.openqa.selenium.support.ui.*;
@@ -120,6 +122,11 @@ public class WebParticipant extends Participant<WebDriver>
     private final boolean isLoadTest;
     private final boolean saveLogs;
 
+    /**
+     * The relay which emulates the network of this participant, if any.
+     */
+    private NetworkRelay networkRelay;
+
     /**
      * Constructs a Participant.
      *
@@ -317,6 +324,95 @@ public class WebParticipant extends Participant<WebDriver>
         return getJSExecutor().executeAsyncScript(var1, var2);
     }
 
+    /**
+     * Executes a Chrome DevTools Protocol command in this
+     * {@link WebParticipant}'s browser, local or remote. The command goes to
+     * the target of the page of this participant, with a shared browser the
+     * target of its tab, so that an emulation only applies to it.
+     *
+     * @param command the command, for example "Network.clearBrowserCache".
+     * @param parameters the parameters of the command.
+     * @return the result of the command.
+     * @throws UnsupportedOperationException if the browser does not support
+     * the DevTools Protocol.
+     */
+    public Map<String, Object> executeCdpCommand(String command, Map<String, Object> parameters)
+    {
+        if (driver instanceof TabbedWebDriver)
+        {
+            return ((TabbedWebDriver) driver).executeCdpCommand(command, parameters);
+        }
+        return getCdp(driver).executeCdpCommand(command, parameters);
+    }
+
+    /**
+     * Gets the DevTools Protocol interface of a driver. It executes the
+     * commands in the target of the current window of the driver.
+     *
+     * @param driver the driver.
+     * @return the DevTools Protocol interface of the driver.
+     * @throws UnsupportedOperationException if the browser does not support
+     * the DevTools Protocol.
+     */
+    static HasCdp getCdp(WebDriver driver)
+    {
+        WebDriver cdpDriver = driver;
+        if (!(cdpDriver instanceof HasCdp) && cdpDriver instanceof RemoteWebDriver)
+        {
+            cdpDriver = new Augmenter().augment(cdpDriver);
+        }
+        if (!(cdpDriver instanceof HasCdp))
+        {
+            throw new UnsupportedOperationException("The DevTools Protocol is not available for " + driver);
+        }
+        return (HasCdp) cdpDriver;
+    }
+
+    /**
+     * Relays the media of this participant through a {@link NetworkRelay},
+     * from the next page load on. The relay is closed with this participant.
+     *
+     * @param networkRelay the relay.
+     * @throws UnsupportedOperationException if the browser does not support
+     * the DevTools Protocol, which runs the script of the relay before the
+     * scripts of the pages.
+     */
+    public void setNetworkRelay(NetworkRelay networkRelay)
+    {
+        executeCdpCommand(
+            "Page.addScriptToEvaluateOnNewDocument",
+            Collections.singletonMap("source", networkRelay.getInitScript()));
+        this.networkRelay = networkRelay;
+    }
+
+    /**
+     * @return the relay which emulates the network of this participant,
+     * <tt>null</tt> if none.
+     */
+    public NetworkRelay getNetworkRelay()
+    {
+        return networkRelay;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close()
+    {
+        try
+        {
+            super.close();
+        }
+        finally
+        {
+            if (networkRelay != null)
+            {
+                networkRelay.close();
+            }
+        }
+    }
+
     private JavascriptExecutor getJSExecutor()
     {
         if (driver instanceof JavascriptExecutor)
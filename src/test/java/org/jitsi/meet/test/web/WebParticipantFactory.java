@@ -17,6 +17,7 @@ package org.jitsi.meet.test.web;
 
 import io.github.bonigarcia.wdm.*;
 import org.jitsi.meet.test.base.*;
+import org.jitsi.meet.test.network.*;
 import org.jitsi.meet.test.util.*;
 import org.openqa.selenium.*;
 import org.openqa.selenium.chrome.*;
@@ -130,6 +131,34 @@ public class WebParticipantFactory
                     webOptions.getLoadTest(),
                     webOptions.getSaveLogs());
 
+        ImpairmentProfile impairment = ImpairmentProfile.parse(webOptions.getImpairment());
+        boolean relayed = webOptions.isNetworkRelay() || impairment.needsRelay();
+        try
+        {
+            if (relayed)
+            {
+                webParticipant.setNetworkRelay(new NetworkRelay(
+                    LinkProfile.parse(impairment.applyTo(webOptions.getRelayUplink())),
+                    LinkProfile.parse(impairment.applyTo(webOptions.getRelayDownlink()))));
+            }
+            if (!impairment.isNone())
+            {
+                webParticipant.executeCdpCommand("Network.enable", Collections.emptyMap());
+                webParticipant.executeCdpCommand(
+                    "Network.emulateNetworkConditions", impairment.getNetworkConditions(relayed));
+            }
+        }
+        catch (IOException e)
+        {
+            webParticipant.closeSafely();
+            throw new UncheckedIOException(e);
+        }
+        catch (RuntimeException e)
+        {
+            webParticipant.closeSafely();
+            throw e;
+        }
+
         return webParticipant;
     }
 
@@ -146,6 +146,31 @@ public class WebParticipantOptions
      */
     private static final String PROP_MULTITAB = "multiTab";
 
+    /**
+     * Whether to relay the media of this participant through a
+     * {@link org.jitsi.meet.test.network.NetworkRelay} which emulates its
+     * network.
+     */
+    private static final String PROP_NETWORK_RELAY = "networkRelay";
+
+    /**
+     * The {@link org.jitsi.meet.test.network.LinkProfile} spec of the link
+     * from the participant, when relayed.
+     */
+    private static final String PROP_RELAY_UPLINK = "relay.uplink";
+
+    /**
+     * The {@link org.jitsi.meet.test.network.LinkProfile} spec of the link to
+     * the participant, when relayed.
+     */
+    private static final String PROP_RELAY_DOWNLINK = "relay.downlink";
+
+    /**
+     * The {@link org.jitsi.meet.test.network.ImpairmentProfile} spec of the
+     * network of the participant.
+     */
+    private static final String PROP_IMPAIRMENT = "impairment";
+
     /**
      * Get web specific global property names. See
      * {@link ParticipantFactory#moveSystemGlobalProperties()} for more info.
@@ -317,6 +342,47 @@ public class WebParticipantOptions
         return this;
     }
 
+    /**
+     * Sets whether to relay the media of this participant through an
+     * emulated network. Needs a Chromium based browser.
+     */
+    public WebParticipantOptions setNetworkRelay(boolean value)
+    {
+        setProperty(PROP_NETWORK_RELAY, Boolean.toString(value));
+        return this;
+    }
+
+    /**
+     * Sets the {@link org.jitsi.meet.test.network.LinkProfile} spec of the
+     * link from this participant, when relayed.
+     */
+    public WebParticipantOptions setRelayUplink(String spec)
+    {
+        setProperty(PROP_RELAY_UPLINK, spec);
+        return this;
+    }
+
+    /**
+     * Sets the {@link org.jitsi.meet.test.network.LinkProfile} spec of the
+     * link to this participant, when relayed.
+     */
+    public WebParticipantOptions setRelayDownlink(String spec)
+    {
+        setProperty(PROP_RELAY_DOWNLINK, spec);
+        return this;
+    }
+
+    /**
+     * Sets the {@link org.jitsi.meet.test.network.ImpairmentProfile} spec of
+     * the network of this participant. Needs a Chromium based browser, and
+     * relays the media when the DevTools Protocol cannot impair it.
+     */
+    public WebParticipantOptions setImpairment(String spec)
+    {
+        setProperty(PROP_IMPAIRMENT, spec);
+        return this;
+    }
+
     /**
      * Sets the user data/profile directory to use for the launched browser
      * instance.
@@ -492,6 +558,45 @@ public class WebParticipantOptions
         return getProperty(PROP_DOWNLINK);
     }
 
+    /**
+     * Whether to relay the media of this participant through an emulated
+     * network.
+     */
+    public boolean isNetworkRelay()
+    {
+        return getBooleanProperty(PROP_NETWORK_RELAY);
+    }
+
+    /**
+     * Gets the spec of the link from this participant, empty for an
+     * unlimited link.
+     */
+    public String getRelayUplink()
+    {
+        String spec = getProperty(PROP_RELAY_UPLINK);
+        return spec == null ? "" : spec;
+    }
+
+    /**
+     * Gets the spec of the link to this participant, empty for an unlimited
+     * link.
+     */
+    public String getRelayDownlink()
+    {
+        String spec = getProperty(PROP_RELAY_DOWNLINK);
+        return spec == null ? "" : spec;
+    }
+
+    /**
+     * Gets the spec of the impairment of the network of this participant,
+     * empty for none.
+     */
+    public String getImpairment()
+    {
+        String spec = getProperty(PROP_IMPAIRMENT);
+        return spec == null ? "" : spec;
+    }
+
     /**
      * Gets the user data/profile directory to use for the launched browser
      * instance.
@@ -0,0 +1,243 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.web.stats;
+
+import org.jitsi.meet.test.analysis.*;
+import org.jitsi.meet.test.base.stats.*;
+import org.jitsi.meet.test.web.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Tracks the bandwidth estimation of a peer connection during a run, with a
+ * {@link StatsSampler}: by default the estimate of the sender, the target
+ * bitrate of its encoders and the bitrate it actually sends. The signals are
+ * timed from the start of the bottleneck schedule, marked with
+ * {@link #markScheduleStart()}, and analyzed against the schedule by
+ * {@link BweAnalyzer}, so that the time to converge, the steady-state
+ * utilisation and the oscillation of every signal can be checked with
+ * {@link ConvergenceThresholds}.
+ */
+public class BweTracker
+{
+    /**
+     * The signals of the sender side of the bandwidth estimation.
+     */
+    public static final String[] SENDER_SIGNALS = {
+        StatsSamples.AVAILABLE_OUTGOING_BITRATE,
+        StatsSamples.TARGET_BITRATE,
+        StatsSamples.BITRATE_UPLOAD
+    };
+
+    /**
+     * The period of the drain of the samples from the page.
+     */
+    private static final long DRAIN_PERIOD_SECONDS = 10;
+
+    private final StatsSampler sampler;
+    private final Boolean useJVB;
+    private final String[] signals;
+
+    private final List<Double> times = new ArrayList<>();
+    private final Map<String, List<Double>> values = new LinkedHashMap<>();
+
+    private double scheduleStartMs = Double.NaN;
+
+    /**
+     * Creates new {@link BweTracker}.
+     *
+     * @param participant the participant whose page is sampled.
+     * @param useJVB if true, track the JVB peer connection, if false the P2P
+     * peer connection, if <tt>null</tt> the active one.
+     * @param signals the {@link StatsSamples} columns to track, bitrates in
+     * bits per second.
+     */
+    public BweTracker(WebParticipant participant, Boolean useJVB, String... signals)
+    {
+        this.sampler = new StatsSampler(participant);
+        this.useJVB = useJVB;
+        this.signals = signals.clone();
+        for (String signal : signals)
+        {
+            values.put(signal, new ArrayList<>());
+        }
+    }
+
+    /**
+     * Starts sampling the page.
+     *
+     * @param pool the executor which drains the samples.
+     */
+    public void start(ScheduledExecutorService pool)
+    {
+        sampler.start(StatsSampler.DEFAULT_INTERVAL_MS, StatsSampler.DEFAULT_CAPACITY, useJVB);
+        sampler.startDraining(pool, DRAIN_PERIOD_SECONDS, TimeUnit.SECONDS, this::add);
+    }
+
+    /**
+     * Marks the start of the bottleneck schedule, with the clock of the page.
+     */
+    public void markScheduleStart()
+    {
+        Object now = sampler.getParticipant().executeScript("return Date.now();");
+        synchronized (this)
+        {
+            scheduleStartMs = ((Number) now).doubleValue();
+        }
+    }
+
+    /**
+     * Collects the last samples and stops sampling the page.
+     */
+    public void stop()
+    {
+        sampler.stopDraining();
+        add(sampler.drain());
+        sampler.stop();
+    }
+
+    private synchronized void add(StatsSamples samples)
+    {
+        int[] columns = new int[signals.length];
+        for (int j = 0; j < signals.length; j++)
+        {
+            columns[j] = samples.getColumnIndex(signals[j]);
+        }
+
+        for (int i = 0; i < samples.size(); i++)
+        {
+            times.add((double) samples.getTimestamp(i));
+            for (int j = 0; j < signals.length; j++)
+            {
+                double value = columns[j] < 0 ? Double.NaN : samples.get(i, columns[j]);
+                values.get(signals[j]).add(value < 0 ? Double.NaN : value);
+            }
+        }
+    }
+
+    /**
+     * Gets a tracked signal, timed with the clock of the page. The send and
+     * receive bitrates are measured over the interval which ends with their
+     * sample, so they are timed at its middle.
+     *
+     * @param signal the signal.
+     * @return the signal, NaN where it is unknown.
+     */
+    public synchronized TimeSeries getSeries(String signal)
+    {
+        List<Double> signalValues = values.get(signal);
+        if (signalValues == null)
+        {
+            throw new IllegalArgumentException("Not tracked: " + signal);
+        }
+
+        boolean measuredOverInterval = StatsSamples.BITRATE_UPLOAD.equals(signal)
+            || StatsSamples.BITRATE_DOWNLOAD.equals(signal);
+        double offset = measuredOverInterval ? StatsSampler.DEFAULT_INTERVAL_MS / 2.0 : 0;
+
+        double[] t = new double[times.size()];
+        double[] v = new double[times.size()];
+        for (int i = 0; i < t.length; i++)
+        {
+            t[i] = times.get(i) - offset;
+            v[i] = signalValues.get(i);
+        }
+        return new TimeSeries(t, v);
+    }
+
+    /**
+     * Analyzes the tracked signals against a schedule.
+     *
+     * @param analyzer the analyzer of the schedule.
+     * @return the analysis of every signal.
+     * @throws IllegalStateException if the start of the schedule has not been
+     * marked.
+     */
+    public Map<String, BweAnalyzer.Result> analyze(BweAnalyzer analyzer)
+    {
+        double startMs;
+        synchronized (this)
+        {
+            startMs = scheduleStartMs;
+        }
+        if (Double.isNaN(startMs))
+        {
+            throw new IllegalStateException("The start of the schedule has not been marked");
+        }
+
+        Map<String, BweAnalyzer.Result> results = new LinkedHashMap<>();
+        for (String signal : signals)
+        {
+            results.put(signal, analyzer.analyzeBitrate(getSeries(signal), startMs));
+        }
+        return results;
+    }
+
+    /**
+     * Writes the tracked signals as CSV, one row per sample, timed in
+     * milliseconds from the start of the schedule.
+     *
+     * @param file the file to write.
+     */
+    public synchronized void writeSeries(File file)
+        throws IOException
+    {
+        double startMs = Double.isNaN(scheduleStartMs) ? 0 : scheduleStartMs;
+        try (PrintWriter writer = new PrintWriter(new FileWriter(file)))
+        {
+            writer.println("time_ms," + String.join(",", signals));
+            for (int i = 0; i < times.size(); i++)
+            {
+                StringBuilder row = new StringBuilder(String.format("%.0f", times.get(i) - startMs));
+                for (String signal : signals)
+                {
+                    double value = values.get(signal).get(i);
+                    row.append(',').append(Double.isNaN(value) ? "" : String.format("%.0f", value));
+                }
+                writer.println(row);
+            }
+        }
+    }
+
+    /**
+     * Formats the convergence metrics of the analyzed signals, per segment of
+     * the schedule.
+     *
+     * @param results the analysis of every signal.
+     * @return the table.
+     */
+    public static String format(Map<String, BweAnalyzer.Result> results)
+    {
+        StringBuilder sb = new StringBuilder(String.format(
+            "%-26s %4s %10s %10s %11s %10s %11s%n",
+            "signal", "seg", "cap kbps", "tgt kbps", "converge ms", "steady %", "oscillate %"));
+        for (Map.Entry<String, BweAnalyzer.Result> entry : results.entrySet())
+        {
+            List<BweAnalyzer.Segment> segments = entry.getValue().getSegments();
+            for (int i = 0; i < segments.size(); i++)
+            {
+                BweAnalyzer.Segment segment = segments.get(i);
+                sb.append(String.format(
+                    "%-26s %4d %10.0f %10.0f %11.0f %10.1f %11.1f%n",
+                    entry.getKey(), i, segment.getCapacityBps() / 1000, segment.getTargetBps() / 1000,
+                    segment.getSettleMs(), 100 * segment.getSteadyUtilisation(), 100 * segment.getOscillation()));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.web.stats;
+
+import org.jitsi.meet.test.base.stats.*;
+
+import java.util.*;
+import java.util.regex.*;
+
+/**
+ * The distributions of the {@link TimeMeasurements} of many joins: the time
+ * of every step since the navigation start, and its delta from the previous
+ * step. Thread safe, so concurrent joiners can report their measurements.
+ *
+ * Percentile budgets are read from properties such as
+ * <tt>ICE_CONNECTED.p90=3000</tt> for the time of a step and
+ * <tt>ICE_CONNECTED.delta.p99=800</tt> for its delta.
+ */
+public class ConnectionTimeReport
+{
+    /**
+     * The lower bound of the histograms, deltas can be slightly negative when
+     * two steps happen at once.
+     */
+    private static final double HISTOGRAM_MIN_MS = -1000;
+
+    /**
+     * The upper bound of the histograms.
+     */
+    private static final double HISTOGRAM_MAX_MS = 60000;
+
+    /**
+     * The width of the bins of the histograms.
+     */
+    private static final double HISTOGRAM_BIN_MS = 5;
+
+    /**
+     * The keys of the budgets: the step, whether it is a delta and the
+     * percentile.
+     */
+    private static final Pattern BUDGET_KEY = Pattern.compile("(\\w+?)(\\.delta)?\\.p(\\d+(?:\\.\\d+)?)");
+
+    /**
+     * Whether the connection is attached, see
+     * {@link TimeMeasurements#getSteps(boolean)}.
+     */
+    private final boolean usingAttach;
+
+    private final Map<TimeMeasurements, Histogram> times = new EnumMap<>(TimeMeasurements.class);
+    private final Map<TimeMeasurements, Histogram> deltas = new EnumMap<>(TimeMeasurements.class);
+
+    /**
+     * The number of joins added, and of joins with missing steps.
+     */
+    private int joins, incomplete;
+
+    /**
+     * Creates new {@link ConnectionTimeReport}.
+     *
+     * @param usingAttach whether the connection is attached.
+     */
+    public ConnectionTimeReport(boolean usingAttach)
+    {
+        this.usingAttach = usingAttach;
+        for (TimeMeasurements step : TimeMeasurements.getSteps(usingAttach))
+        {
+            times.put(step, new Histogram(HISTOGRAM_MIN_MS, HISTOGRAM_MAX_MS, HISTOGRAM_BIN_MS));
+            deltas.put(step, new Histogram(HISTOGRAM_MIN_MS, HISTOGRAM_MAX_MS, HISTOGRAM_BIN_MS));
+        }
+    }
+
+    /**
+     * Adds the measurements of a join.
+     *
+     * @param measurements the time of every step, missing steps are not
+     * counted.
+     */
+    public synchronized void add(Map<TimeMeasurements, Double> measurements)
+    {
+        joins++;
+        boolean complete = true;
+        for (Map.Entry<TimeMeasurements, Histogram> entry : times.entrySet())
+        {
+            TimeMeasurements step = entry.getKey();
+            Double time = measurements.get(step);
+            if (time == null)
+            {
+                complete = false;
+                continue;
+            }
+            entry.getValue().add(time);
+
+            TimeMeasurements prevStep = step.getPrevStep(usingAttach);
+            Double prevTime = prevStep == null ? null : measurements.get(prevStep);
+            if (prevStep == null)
+            {
+                deltas.get(step).add(time);
+            }
+            else if (prevTime != null)
+            {
+                deltas.get(step).add(time - prevTime);
+            }
+        }
+        if (!complete)
+        {
+            incomplete++;
+        }
+    }
+
+    /**
+     * @param step the step.
+     * @return a copy of the distribution of the time of the step since the
+     * navigation start, <tt>null</tt> if the step is not measured.
+     */
+    public synchronized Histogram getTimes(TimeMeasurements step)
+    {
+        Histogram histogram = times.get(step);
+        return histogram == null ? null : histogram.copy();
+    }
+
+    /**
+     * @param step the step.
+     * @return a copy of the distribution of the time from the previous step,
+     * <tt>null</tt> if the step is not measured.
+     */
+    public synchronized Histogram getDeltas(TimeMeasurements step)
+    {
+        Histogram histogram = deltas.get(step);
+        return histogram == null ? null : histogram.copy();
+    }
+
+    /**
+     * @return the number of joins added.
+     */
+    public synchronized int getJoins()
+    {
+        return joins;
+    }
+
+    /**
+     * @return the number of joins which missed some steps.
+     */
+    public synchronized int getIncomplete()
+    {
+        return incomplete;
+    }
+
+    /**
+     * Checks the distributions against percentile budgets.
+     *
+     * @param budgets the budgets in milliseconds, see the class description.
+     * Properties with other keys are ignored.
+     * @return a description of every budget which is exceeded, empty if none.
+     * @throws IllegalArgumentException if a budget names an unknown step or
+     * is not a number.
+     */
+    public synchronized List<String> checkBudgets(Properties budgets)
+    {
+        List<String> violations = new ArrayList<>();
+        for (String key : new TreeSet<>(budgets.stringPropertyNames()))
+        {
+            Matcher m = BUDGET_KEY.matcher(key);
+            if (!m.matches())
+            {
+                continue;
+            }
+
+            TimeMeasurements step;
+            try
+            {
+                step = TimeMeasurements.valueOf(m.group(1));
+            }
+            catch (IllegalArgumentException e)
+            {
+                throw new IllegalArgumentException("Unknown step in budget " + key, e);
+            }
+            boolean delta = m.group(2) != null;
+            double percentile = Double.parseDouble(m.group(3));
+            double budget = Double.parseDouble(budgets.getProperty(key).trim());
+
+            Histogram histogram = (delta ? deltas : times).get(step);
+            if (histogram == null)
+            {
+                // The step is not measured with this connection method.
+                continue;
+            }
+            if (histogram.getCount() == 0)
+            {
+                violations.add(key + ": no measurement");
+                continue;
+            }
+            double value = histogram.getPercentile(percentile);
+            if (value > budget)
+            {
+                violations.add(key + ": " + value + " ms is above " + budget + " ms");
+            }
+        }
+        return violations;
+    }
+
+    /**
+     * @return the report as a human readable table.
+     */
+    @Override
+    public synchronized String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Connection times of %d joins (%d incomplete), ms%n", joins, incomplete));
+        sb.append(String.format(
+            "%-22s %8s %8s %8s   %8s %8s %8s%n", "step", "p50", "p90", "p99", "d.p50", "d.p90", "d.p99"));
+        times.forEach((step, histogram) -> {
+            Histogram delta = deltas.get(step);
+            sb.append(String.format(
+                "%-22s %8.0f %8.0f %8.0f   %8.0f %8.0f %8.0f%n",
+                step,
+                histogram.getPercentile(50), histogram.getPercentile(90), histogram.getPercentile(99),
+                delta.getPercentile(50), delta.getPercentile(90), delta.getPercentile(99)));
+        });
+        return sb.toString();
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.web.stats;
+
+import org.jitsi.meet.test.base.stats.*;
+import org.jitsi.meet.test.util.*;
+import org.jitsi.meet.test.web.*;
+
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * Detects frozen received video, even when bytes keep flowing. Every
+ * {@link #poll()} reads the frame, freeze and jitter buffer counters of each
+ * remote video track and compares them with the previous poll. A track is
+ * stalled when no new frame has been decoded for longer than the threshold
+ * while bytes or frames are still received; the listener is notified when a
+ * stall starts and the stall is accounted when the decoding resumes or the
+ * detector is stopped. A track which receives nothing is suspended rather
+ * than stalled, as when LastN or the bridge stops forwarding it, and its
+ * suspension is not counted.
+ */
+public class FreezeDetector
+{
+    /**
+     * JS utility which reads the counters of the received video tracks.
+     */
+    private static final String VIDEO_RECEIVE_COUNTERS_SCRIPT
+        = "resources/VideoReceiveCounters.js";
+
+    /**
+     * The default stall threshold in milliseconds.
+     */
+    public static final long DEFAULT_STALL_THRESHOLD_MS = 1000;
+
+    /**
+     * The participant whose received video is checked.
+     */
+    private final WebParticipant participant;
+
+    /**
+     * The time without new decoded frames after which a track is stalled.
+     */
+    private final long stallThresholdMs;
+
+    /**
+     * Notified when a stall starts, may be <tt>null</tt>.
+     */
+    private final Consumer<Stall> listener;
+
+    /**
+     * The state of every remote track seen so far, by track identifier.
+     */
+    private final Map<String, TrackState> tracks = new HashMap<>();
+
+    /**
+     * The totals of all tracks.
+     */
+    private final FreezeReport.Totals totals = new FreezeReport.Totals();
+
+    /**
+     * Whether the script has been injected in the page.
+     */
+    private boolean injected;
+
+    /**
+     * Creates new {@link FreezeDetector}.
+     *
+     * @param participant the participant whose received video is checked.
+     * @param stallThresholdMs the time without new decoded frames after which
+     * a track is considered stalled.
+     * @param listener notified when a stall starts, may be <tt>null</tt>.
+     */
+    public FreezeDetector(
+        WebParticipant participant, long stallThresholdMs, Consumer<Stall> listener)
+    {
+        this.participant = Objects.requireNonNull(participant, "participant");
+        this.stallThresholdMs = stallThresholdMs;
+        this.listener = listener;
+    }
+
+    /**
+     * Reads the counters of the remote video tracks and updates the stalls.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void poll()
+    {
+        if (!injected)
+        {
+            TestUtils.injectScript(participant.getDriver(), VIDEO_RECEIVE_COUNTERS_SCRIPT);
+            injected = true;
+        }
+
+        Object res = participant.executeAsyncScript(
+            "var callback = arguments[arguments.length - 1];"
+                + "window.getVideoReceiveCounters()"
+                + ".then(callback, function () { callback(null); });");
+        if (!(res instanceof List))
+        {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (Map<String, Object> counters : (List<Map<String, Object>>) res)
+        {
+            String track = String.valueOf(counters.get("track"));
+            TrackState state = tracks.get(track);
+            if (state == null)
+            {
+                tracks.put(track, new TrackState(track, now, counters));
+            }
+            else
+            {
+                state.update(now, counters);
+            }
+        }
+    }
+
+    /**
+     * Ends the stalls in progress, so that they are included in
+     * {@link #getTotals()}.
+     */
+    public synchronized void stop()
+    {
+        long now = System.currentTimeMillis();
+        tracks.values().forEach(state -> state.endStall(now));
+    }
+
+    /**
+     * @return a copy of the totals of all the tracks observed so far.
+     */
+    public synchronized FreezeReport.Totals getTotals()
+    {
+        return new FreezeReport.Totals().add(totals);
+    }
+
+    /**
+     * @return the participant whose received video is checked.
+     */
+    public WebParticipant getParticipant()
+    {
+        return participant;
+    }
+
+    private static long getLong(Map<String, Object> counters, String key)
+    {
+        Object value = counters.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    private static double getDouble(Map<String, Object> counters, String key)
+    {
+        Object value = counters.get(key);
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
+    }
+
+    /**
+     * A stall of a remote video track.
+     */
+    public static class Stall
+    {
+        private final String participant;
+        private final String track;
+        private final long startTime;
+
+        Stall(String participant, String track, long startTime)
+        {
+            this.participant = participant;
+            this.track = track;
+            this.startTime = startTime;
+        }
+
+        /**
+         * @return the name of the receiving participant.
+         */
+        public String getParticipant()
+        {
+            return participant;
+        }
+
+        /**
+         * @return the identifier of the stalled track.
+         */
+        public String getTrack()
+        {
+            return track;
+        }
+
+        /**
+         * @return the time the last frame was decoded, in milliseconds since
+         * the epoch.
+         */
+        public long getStartTime()
+        {
+            return startTime;
+        }
+
+        @Override
+        public String toString()
+        {
+            return participant + " stalled on track " + track + " since "
+                + new Date(startTime);
+        }
+    }
+
+    /**
+     * The last counters of a remote track.
+     */
+    private class TrackState
+    {
+        private final String track;
+        private long lastPoll;
+        private long lastDecodedTime;
+        private long bytesReceived;
+        private long framesReceived;
+        private long framesDecoded;
+        private long freezeCount;
+        private double totalFreezesDuration;
+        private double jitterBufferDelay;
+        private long jitterBufferEmitted;
+        private boolean stalled;
+
+        TrackState(String track, long now, Map<String, Object> counters)
+        {
+            this.track = track;
+            this.lastPoll = now;
+            this.lastDecodedTime = now;
+            read(counters);
+        }
+
+        private void read(Map<String, Object> counters)
+        {
+            bytesReceived = getLong(counters, "bytesReceived");
+            framesReceived = getLong(counters, "framesReceived");
+            framesDecoded = getLong(counters, "framesDecoded");
+            freezeCount = getLong(counters, "freezeCount");
+            totalFreezesDuration = getDouble(counters, "totalFreezesDuration");
+            jitterBufferDelay = getDouble(counters, "jitterBufferDelay");
+            jitterBufferEmitted = getLong(counters, "jitterBufferEmittedCount");
+        }
+
+        void update(long now, Map<String, Object> counters)
+        {
+            long prevPoll = lastPoll;
+            long prevBytesReceived = bytesReceived;
+            long prevReceived = framesReceived;
+            long prevDecoded = framesDecoded;
+            long prevFreezeCount = freezeCount;
+            double prevFreezesDuration = totalFreezesDuration;
+            double prevJitterBufferDelay = jitterBufferDelay;
+            long prevJitterBufferEmitted = jitterBufferEmitted;
+
+            read(counters);
+
+            // The counters go backwards when the receiver has been replaced,
+            // start over from the new values.
+            if (framesDecoded < prevDecoded || framesReceived < prevReceived)
+            {
+                endStall(now);
+                lastDecodedTime = now;
+                lastPoll = now;
+                return;
+            }
+
+            totals.observedMs += now - lastPoll;
+            totals.framesReceived += framesReceived - prevReceived;
+            totals.framesDecoded += framesDecoded - prevDecoded;
+            totals.freezes += Math.max(0, freezeCount - prevFreezeCount);
+            totals.freezesDurationMs
+                += (long) (1000 * Math.max(0, totalFreezesDuration - prevFreezesDuration));
+            totals.jitterBufferDelayMs
+                += 1000 * Math.max(0, jitterBufferDelay - prevJitterBufferDelay);
+            totals.jitterBufferEmitted
+                += Math.max(0, jitterBufferEmitted - prevJitterBufferEmitted);
+            lastPoll = now;
+
+            if (framesDecoded > prevDecoded)
+            {
+                endStall(now);
+                lastDecodedTime = now;
+            }
+            else if (framesReceived == prevReceived && bytesReceived == prevBytesReceived)
+            {
+                // Nothing is received, the track is suspended rather than
+                // frozen. The stall in progress ended when it last received,
+                // and the next one starts when it receives again.
+                endStall(prevPoll);
+                lastDecodedTime = now;
+            }
+            else if (!stalled && now - lastDecodedTime > stallThresholdMs)
+            {
+                stalled = true;
+                Stall stall = new Stall(participant.getName(), track, lastDecodedTime);
+                TestUtils.print(stall.toString());
+                if (listener != null)
+                {
+                    listener.accept(stall);
+                }
+            }
+        }
+
+        void endStall(long now)
+        {
+            if (stalled)
+            {
+                stalled = false;
+                totals.stalls++;
+                totals.stallsDurationMs += now - lastDecodedTime;
+            }
+        }
+    }
+}
@@ -0,0 +1,631 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.web.stats;
+
+import org.jitsi.meet.test.base.stats.*;
+import org.jitsi.meet.test.util.*;
+import org.jitsi.meet.test.web.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Tracks the video layers a participant receives, per remote source, with
+ * LayerSampler.js: the resolution, the frame rate and the bitrate of every
+ * inbound video stream over time. The stats do not tell which simulcast or
+ * SVC layer is forwarded, so it is inferred: the spatial layer is the
+ * nearest height of a ladder, 180, 360 and 720 by default, and the temporal
+ * layer the nearest of a quarter, a half and all of the full frame rate.
+ *
+ * The events which should make the layers change, such as a change of the
+ * bandwidth or a switch of the speaker, are marked with
+ * {@link #markEvent(String)} or {@link #addEvent(String, double)}, and the
+ * latency of every source to step down or up after every event is reported.
+ * A layer counts once it holds for {@link #HOLD_SAMPLES} samples, so that a
+ * frame rate which jitters around a threshold is not a change.
+ */
+public class LayerTracker
+{
+    /**
+     * The default sampling interval in milliseconds.
+     */
+    public static final int DEFAULT_INTERVAL_MS = 500;
+
+    /**
+     * The default capacity of the buffer of the page.
+     */
+    public static final int DEFAULT_CAPACITY = 2000;
+
+    /**
+     * The default heights of the spatial layers.
+     */
+    public static final int[] DEFAULT_HEIGHTS = { 180, 360, 720 };
+
+    /**
+     * The default full frame rate.
+     */
+    public static final double DEFAULT_FRAME_RATE = 30;
+
+    /**
+     * The number of consecutive samples a layer holds to count.
+     */
+    public static final int HOLD_SAMPLES = 2;
+
+    /**
+     * The number of temporal layers.
+     */
+    private static final int TEMPORAL_LAYERS = 3;
+
+    /**
+     * JS utility which samples the inbound video streams.
+     */
+    private static final String LAYER_SAMPLER_SCRIPT = "resources/LayerSampler.js";
+
+    private static final long DRAIN_PERIOD_SECONDS = 5;
+
+    private final WebParticipant participant;
+    private final Boolean useJVB;
+    private final int[] heights;
+    private final double frameRate;
+
+    private final Map<String, List<Sample>> samples = new TreeMap<>();
+    private final List<Event> events = new ArrayList<>();
+    private long dropped;
+
+    private ScheduledFuture<?> drainTask;
+
+    /**
+     * Creates new {@link LayerTracker} with the default ladder.
+     *
+     * @param participant the participant whose received layers are tracked.
+     * @param useJVB if true, track the JVB peer connection, if false the P2P
+     * peer connection, if <tt>null</tt> the active one.
+     */
+    public LayerTracker(WebParticipant participant, Boolean useJVB)
+    {
+        this(participant, useJVB, DEFAULT_HEIGHTS, DEFAULT_FRAME_RATE);
+    }
+
+    /**
+     * Creates new {@link LayerTracker}.
+     *
+     * @param participant the participant whose received layers are tracked.
+     * @param useJVB if true, track the JVB peer connection, if false the P2P
+     * peer connection, if <tt>null</tt> the active one.
+     * @param heights the heights of the spatial layers, ascending.
+     * @param frameRate the frame rate of the highest temporal layer.
+     */
+    public LayerTracker(WebParticipant participant, Boolean useJVB, int[] heights, double frameRate)
+    {
+        this.participant = Objects.requireNonNull(participant, "participant");
+        this.useJVB = useJVB;
+        this.heights = heights.clone();
+        this.frameRate = frameRate;
+    }
+
+    /**
+     * Injects the sampler script, starts sampling and drains the samples
+     * periodically.
+     *
+     * @param pool the executor which drains the samples.
+     */
+    public void start(ScheduledExecutorService pool)
+    {
+        TestUtils.injectScript(participant.getDriver(), LAYER_SAMPLER_SCRIPT);
+        participant.executeScript(
+            "if (window._layerSampler) { window._layerSampler.stop(); }"
+                + "window._layerSampler = new window.LayerSampler("
+                + "arguments[0], arguments[1], arguments[2]);"
+                + "window._layerSampler.start();",
+            DEFAULT_INTERVAL_MS, DEFAULT_CAPACITY, useJVB == null ? null : useJVB ? "jvb" : "p2p");
+
+        synchronized (this)
+        {
+            drainTask = pool.scheduleWithFixedDelay(() -> {
+                try
+                {
+                    drain();
+                }
+                catch (Exception e)
+                {
+                    TestUtils.print("Failed to drain the layers of "
+                        + participant.getName() + ": " + e.getMessage());
+                }
+            }, DRAIN_PERIOD_SECONDS, DRAIN_PERIOD_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Collects the last samples and stops sampling.
+     */
+    public void stop()
+    {
+        synchronized (this)
+        {
+            if (drainTask != null)
+            {
+                drainTask.cancel(false);
+                drainTask = null;
+            }
+        }
+        drain();
+        participant.executeScript(
+            "if (window._layerSampler) {"
+                + "window._layerSampler.stop();"
+                + "window._layerSampler = null;"
+                + "}");
+    }
+
+    /**
+     * Marks an event now, with the clock of the page.
+     *
+     * @param label the label of the event.
+     */
+    public void markEvent(String label)
+    {
+        Object now = participant.executeScript("return Date.now();");
+        addEvent(label, ((Number) now).doubleValue());
+    }
+
+    /**
+     * Adds an event.
+     *
+     * @param label the label of the event.
+     * @param timeMs the time of the event with the clock of the page.
+     */
+    public synchronized void addEvent(String label, double timeMs)
+    {
+        events.add(new Event(label, timeMs));
+        events.sort(Comparator.comparingDouble(e -> e.timeMs));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void drain()
+    {
+        Object res = participant.executeScript(
+            "return window._layerSampler ? window._layerSampler.drain() : null;");
+        if (!(res instanceof Map))
+        {
+            return;
+        }
+
+        Map<String, Object> batch = (Map<String, Object>) res;
+        synchronized (this)
+        {
+            dropped += ((Number) batch.get("dropped")).longValue();
+            for (List<Object> row : (List<List<Object>>) batch.get("samples"))
+            {
+                Sample sample = new Sample(
+                    ((Number) row.get(0)).doubleValue(),
+                    ((Number) row.get(2)).intValue(),
+                    ((Number) row.get(3)).intValue(),
+                    ((Number) row.get(4)).doubleValue(),
+                    ((Number) row.get(5)).doubleValue());
+                samples.computeIfAbsent(String.valueOf(row.get(1)), k -> new ArrayList<>()).add(sample);
+            }
+        }
+    }
+
+    /**
+     * @return the sampled sources.
+     */
+    public synchronized Set<String> getSources()
+    {
+        return new TreeSet<>(samples.keySet());
+    }
+
+    /**
+     * @param source the source.
+     * @return the samples of a source, in time order.
+     */
+    public synchronized List<Sample> getSamples(String source)
+    {
+        return new ArrayList<>(samples.getOrDefault(source, Collections.emptyList()));
+    }
+
+    /**
+     * Finds the changes of the layer of a source, once the new layer held
+     * for {@link #HOLD_SAMPLES} samples. The first change is the first layer.
+     *
+     * @param source the source.
+     * @return the changes, timed with their first sample.
+     */
+    public synchronized List<Sample> getLayerChanges(String source)
+    {
+        List<Sample> changes = new ArrayList<>();
+        List<Sample> sourceSamples = samples.getOrDefault(source, Collections.emptyList());
+        int current = Integer.MIN_VALUE;
+        for (int i = 0; i + HOLD_SAMPLES <= sourceSamples.size(); i++)
+        {
+            int layer = sourceSamples.get(i).getLayer();
+            if (layer == current)
+            {
+                continue;
+            }
+            boolean holds = true;
+            for (int j = 1; j < HOLD_SAMPLES; j++)
+            {
+                holds &= sourceSamples.get(i + j).getLayer() == layer;
+            }
+            if (holds)
+            {
+                changes.add(sourceSamples.get(i));
+                current = layer;
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Finds how every source reacted to every event: the first and the last
+     * changes of its layer after the event and before the next one.
+     *
+     * @return the reactions, by event then by source.
+     */
+    public synchronized List<Reaction> getReactions()
+    {
+        List<Reaction> reactions = new ArrayList<>();
+        for (String source : samples.keySet())
+        {
+            List<Sample> changes = getLayerChanges(source);
+            for (int i = 0; i < events.size(); i++)
+            {
+                Event event = events.get(i);
+                double until = i + 1 < events.size() ? events.get(i + 1).timeMs : Double.POSITIVE_INFINITY;
+
+                Sample before = null;
+                Sample after = null;
+                Sample settled = null;
+                for (Sample change : changes)
+                {
+                    if (change.timeMs <= event.timeMs)
+                    {
+                        before = change;
+                    }
+                    else if (change.timeMs < until)
+                    {
+                        if (after == null)
+                        {
+                            after = change;
+                        }
+                        settled = change;
+                    }
+                }
+                reactions.add(new Reaction(event, source, before, after, settled));
+            }
+        }
+        return reactions;
+    }
+
+    /**
+     * Writes the samples as CSV, one row per sample.
+     *
+     * @param file the file to write.
+     */
+    public synchronized void writeSamples(File file)
+        throws IOException
+    {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(file)))
+        {
+            writer.println("time_ms,source,width,height,fps,bitrate_bps,layer");
+            for (Map.Entry<String, List<Sample>> entry : samples.entrySet())
+            {
+                for (Sample sample : entry.getValue())
+                {
+                    writer.println(String.format(
+                        "%.0f,%s,%d,%d,%.1f,%.0f,%s", sample.timeMs, entry.getKey(), sample.width,
+                        sample.height, sample.frameRate, sample.bitrateBps, sample.getLayerName()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Formats the layer changes of every source and the latencies of the
+     * steps after the events.
+     */
+    @Override
+    public synchronized String toString()
+    {
+        StringBuilder sb = new StringBuilder(String.format(
+            "Layers received by %s (%d sources, %d samples dropped)%n",
+            participant.getName(), samples.size(), dropped));
+        double originMs = events.isEmpty() ? Double.NaN : events.get(0).timeMs;
+
+        for (String source : samples.keySet())
+        {
+            sb.append("  ").append(source).append(':');
+            for (Sample change : getLayerChanges(source))
+            {
+                double t = Double.isNaN(originMs) ? change.timeMs : change.timeMs - originMs;
+                sb.append(String.format(" %s@%.1fs", change.getLayerName(), t / 1000));
+            }
+            sb.append('\n');
+        }
+
+        Histogram down = new Histogram(0, 60000, 100);
+        Histogram up = new Histogram(0, 60000, 100);
+        for (Reaction reaction : getReactions())
+        {
+            sb.append(String.format("  %-24s %-32s %s%n", reaction.event.label, reaction.source, reaction));
+            if (reaction.getStep() < 0)
+            {
+                down.add(reaction.getLatencyMs());
+            }
+            else if (reaction.getStep() > 0)
+            {
+                up.add(reaction.getLatencyMs());
+            }
+        }
+        appendLatencies(sb, "step-down", down);
+        appendLatencies(sb, "step-up", up);
+        return sb.toString();
+    }
+
+    private static void appendLatencies(StringBuilder sb, String name, Histogram latencies)
+    {
+        sb.append(String.format(
+            "  %s latency: %d steps, p50 %.0f ms, p90 %.0f ms, max %.0f ms%n", name, latencies.getCount(),
+            latencies.getPercentile(50), latencies.getPercentile(90), latencies.getMax()));
+    }
+
+    /**
+     * A sample of a received video source.
+     */
+    public class Sample
+    {
+        private final double timeMs;
+        private final int width;
+        private final int height;
+        private final double frameRate;
+        private final double bitrateBps;
+
+        private Sample(double timeMs, int width, int height, double frameRate, double bitrateBps)
+        {
+            this.timeMs = timeMs;
+            this.width = width;
+            this.height = height;
+            this.frameRate = frameRate;
+            this.bitrateBps = bitrateBps < 0 ? Double.NaN : bitrateBps;
+        }
+
+        /**
+         * @return the time of the sample with the clock of the page.
+         */
+        public double getTimeMs()
+        {
+            return timeMs;
+        }
+
+        /**
+         * @return the received frame width.
+         */
+        public int getWidth()
+        {
+            return width;
+        }
+
+        /**
+         * @return the received frame height.
+         */
+        public int getHeight()
+        {
+            return height;
+        }
+
+        /**
+         * @return the received frame rate.
+         */
+        public double getFrameRate()
+        {
+            return frameRate;
+        }
+
+        /**
+         * @return the received bitrate, NaN if unknown.
+         */
+        public double getBitrateBps()
+        {
+            return bitrateBps;
+        }
+
+        /**
+         * @return the spatial layer, the index of the nearest height of the
+         * ladder, -1 if no video is received.
+         */
+        public int getSpatialLayer()
+        {
+            return height <= 0 || frameRate <= 0 ? -1 : nearest(height, heights);
+        }
+
+        /**
+         * @return the temporal layer, the index of the nearest of a quarter,
+         * a half and all of the full frame rate, -1 if no video is received.
+         */
+        public int getTemporalLayer()
+        {
+            if (height <= 0 || frameRate <= 0)
+            {
+                return -1;
+            }
+            double[] rates = new double[TEMPORAL_LAYERS];
+            for (int i = 0; i < TEMPORAL_LAYERS; i++)
+            {
+                rates[i] = LayerTracker.this.frameRate / (1 << (TEMPORAL_LAYERS - 1 - i));
+            }
+            return nearest(frameRate, rates);
+        }
+
+        /**
+         * @return the layer, ordered by spatial then temporal layer, -1 if no
+         * video is received.
+         */
+        public int getLayer()
+        {
+            int spatial = getSpatialLayer();
+            return spatial < 0 ? -1 : spatial * TEMPORAL_LAYERS + getTemporalLayer();
+        }
+
+        /**
+         * @return the name of the layer, such as S2T1, or "off".
+         */
+        public String getLayerName()
+        {
+            int spatial = getSpatialLayer();
+            return spatial < 0 ? "off" : "S" + spatial + "T" + getTemporalLayer();
+        }
+    }
+
+    private static int nearest(double value, int[] ladder)
+    {
+        double[] rungs = new double[ladder.length];
+        for (int i = 0; i < ladder.length; i++)
+        {
+            rungs[i] = ladder[i];
+        }
+        return nearest(value, rungs);
+    }
+
+    /**
+     * @return the index of the nearest rung of a ladder, in ratio.
+     */
+    private static int nearest(double value, double[] ladder)
+    {
+        int best = 0;
+        for (int i = 1; i < ladder.length; i++)
+        {
+            if (Math.abs(Math.log(value / ladder[i])) < Math.abs(Math.log(value / ladder[best])))
+            {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * An event which may make the layers change.
+     */
+    public static class Event
+    {
+        private final String label;
+        private final double timeMs;
+
+        private Event(String label, double timeMs)
+        {
+            this.label = label;
+            this.timeMs = timeMs;
+        }
+
+        /**
+         * @return the label of the event.
+         */
+        public String getLabel()
+        {
+            return label;
+        }
+
+        /**
+         * @return the time of the event with the clock of the page.
+         */
+        public double getTimeMs()
+        {
+            return timeMs;
+        }
+    }
+
+    /**
+     * How a source reacted to an event.
+     */
+    public class Reaction
+    {
+        private final Event event;
+        private final String source;
+        private final Sample before;
+        private final Sample after;
+        private final Sample settled;
+
+        private Reaction(Event event, String source, Sample before, Sample after, Sample settled)
+        {
+            this.event = event;
+            this.source = source;
+            this.before = before;
+            this.after = after;
+            this.settled = settled;
+        }
+
+        /**
+         * @return the event.
+         */
+        public Event getEvent()
+        {
+            return event;
+        }
+
+        /**
+         * @return the source.
+         */
+        public String getSource()
+        {
+            return source;
+        }
+
+        /**
+         * @return the number of layers the source stepped up, negative when
+         * it stepped down, zero if it did not change.
+         */
+        public int getStep()
+        {
+            if (after == null)
+            {
+                return 0;
+            }
+            return after.getLayer() - (before == null ? -1 : before.getLayer());
+        }
+
+        /**
+         * @return the time from the event to the first sample of the new
+         * layer, NaN if the layer did not change.
+         */
+        public double getLatencyMs()
+        {
+            return after == null ? Double.NaN : after.timeMs - event.timeMs;
+        }
+
+        /**
+         * @return the time from the event to the last change of the layer
+         * before the next event, NaN if the layer did not change.
+         */
+        public double getSettleMs()
+        {
+            return settled == null ? Double.NaN : settled.timeMs - event.timeMs;
+        }
+
+        @Override
+        public String toString()
+        {
+            String from = before == null ? "none" : before.getLayerName();
+            if (after == null)
+            {
+                return from + " unchanged";
+            }
+            String reaction = String.format("%s -> %s in %.0f ms", from, after.getLayerName(), getLatencyMs());
+            return settled == after
+                ? reaction
+                : reaction + String.format(", %s after %.0f ms", settled.getLayerName(), getSettleMs());
+        }
+    }
+}
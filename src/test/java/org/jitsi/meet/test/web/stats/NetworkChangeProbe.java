@@ -0,0 +1,294 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.web.stats;
+
+import org.jitsi.meet.test.util.*;
+import org.jitsi.meet.test.web.*;
+
+import java.util.*;
+
+/**
+ * Java wrapper for NetworkChangeProbe.js, which follows the recovery of the
+ * JVB peer connection of a participant from a disruption of its network.
+ * The disruption is marked with {@link #markDisruption()}, the restoration
+ * of the network with {@link #markRestore(Recovery)}, and the events logged
+ * by the page are then drained into the {@link Recovery} until it is
+ * complete: the ICE connection is connected, the received media progresses
+ * and a remote video renders again.
+ */
+public class NetworkChangeProbe
+{
+    /**
+     * JS utility which follows the peer connection and the remote videos.
+     */
+    private static final String NETWORK_CHANGE_PROBE_SCRIPT = "resources/NetworkChangeProbe.js";
+
+    private final WebParticipant participant;
+
+    /**
+     * Creates new {@link NetworkChangeProbe}.
+     *
+     * @param participant the participant whose recovery is followed.
+     */
+    public NetworkChangeProbe(WebParticipant participant)
+    {
+        this.participant = Objects.requireNonNull(participant, "participant");
+    }
+
+    /**
+     * Injects the probe script and starts following the peer connection.
+     * Restarts the probe if it was already running in the page.
+     */
+    public void start()
+    {
+        TestUtils.injectScript(participant.getDriver(), NETWORK_CHANGE_PROBE_SCRIPT);
+        participant.executeScript(
+            "if (window._networkChangeProbe) { window._networkChangeProbe.stop(); }"
+                + "window._networkChangeProbe = new window.NetworkChangeProbe();"
+                + "window._networkChangeProbe.start();");
+    }
+
+    /**
+     * @return whether the probe runs in the page, which it no longer does
+     * once the page has been reloaded.
+     */
+    public boolean isRunning()
+    {
+        return Boolean.TRUE.equals(participant.executeScript("return !!window._networkChangeProbe;"));
+    }
+
+    /**
+     * Discards the events logged so far and marks the disruption of the
+     * network, which is to follow immediately.
+     *
+     * @return the recovery from the disruption.
+     */
+    public Recovery markDisruption()
+    {
+        drain();
+        Object now = participant.executeScript("return window._networkChangeProbe.log('disrupted', '');");
+        return new Recovery(participant.getName(), ((Number) now).doubleValue());
+    }
+
+    /**
+     * Marks the restoration of the network, which has just happened, and
+     * starts to watch for the media and the video to progress again.
+     *
+     * @param recovery the recovery from the disruption.
+     */
+    public void markRestore(Recovery recovery)
+    {
+        Object now = participant.executeScript("return window._networkChangeProbe.arm();");
+        recovery.restoredAtMs = ((Number) now).doubleValue();
+    }
+
+    /**
+     * Drains the events logged by the page into a recovery.
+     *
+     * @param recovery the recovery.
+     * @return <tt>false</tt> if the probe no longer runs in the page, which
+     * has been reloaded, in which case the recovery is marked as reloaded.
+     */
+    @SuppressWarnings("unchecked")
+    public boolean drainInto(Recovery recovery)
+    {
+        Map<String, Object> batch = drain();
+        if (batch == null)
+        {
+            recovery.reloaded = true;
+            return false;
+        }
+
+        for (List<Object> event : (List<List<Object>>) batch.get("events"))
+        {
+            recovery.add(((Number) event.get(0)).doubleValue(), (String) event.get(1), (String) event.get(2));
+        }
+        Object mediaResumedAt = batch.get("mediaResumedAt");
+        if (mediaResumedAt instanceof Number)
+        {
+            recovery.setProgress(RecoveryReport.Step.MEDIA_RESUMED, ((Number) mediaResumedAt).doubleValue());
+        }
+        Object videoRenderedAt = batch.get("videoRenderedAt");
+        if (videoRenderedAt instanceof Number)
+        {
+            recovery.setProgress(RecoveryReport.Step.VIDEO_RENDERED, ((Number) videoRenderedAt).doubleValue());
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> drain()
+    {
+        Object res = participant.executeScript(
+            "return window._networkChangeProbe ? window._networkChangeProbe.drain() : null;");
+        return res instanceof Map ? (Map<String, Object>) res : null;
+    }
+
+    /**
+     * Stops the probe in the page.
+     */
+    public void stop()
+    {
+        participant.executeScript(
+            "if (window._networkChangeProbe) {"
+                + "window._networkChangeProbe.stop();"
+                + "window._networkChangeProbe = null;"
+                + "}");
+    }
+
+    /**
+     * The recovery of a participant from a disruption of its network: the
+     * time of every {@link RecoveryReport.Step} since the disruption, with
+     * the clock of the page. Not thread safe.
+     */
+    public static class Recovery
+    {
+        private final String participant;
+        private final double disruptedAtMs;
+        private double restoredAtMs = Double.NaN;
+        private final Map<RecoveryReport.Step, Double> times = new EnumMap<>(RecoveryReport.Step.class);
+
+        /**
+         * The ICE connection state last seen, <tt>null</tt> if none since
+         * the disruption.
+         */
+        private String iceState;
+        private boolean reloaded;
+
+        private Recovery(String participant, double disruptedAtMs)
+        {
+            this.participant = participant;
+            this.disruptedAtMs = disruptedAtMs;
+        }
+
+        private void add(double timeMs, String type, String value)
+        {
+            if (timeMs < disruptedAtMs)
+            {
+                return;
+            }
+
+            switch (type)
+            {
+            case "ice":
+                iceState = value;
+                if ("disconnected".equals(value) || "failed".equals(value) || "closed".equals(value))
+                {
+                    times.putIfAbsent(RecoveryReport.Step.ICE_DISCONNECTED, timeMs - disruptedAtMs);
+                }
+                else if (isIceConnected()
+                    && (times.containsKey(RecoveryReport.Step.ICE_DISCONNECTED)
+                        || times.containsKey(RecoveryReport.Step.ICE_RESTARTED)))
+                {
+                    times.putIfAbsent(RecoveryReport.Step.ICE_RECONNECTED, timeMs - disruptedAtMs);
+                }
+                break;
+            case "pc":
+                // The session was terminated, or replaced by a new one.
+                times.putIfAbsent(RecoveryReport.Step.ICE_DISCONNECTED, timeMs - disruptedAtMs);
+                if ("new".equals(value))
+                {
+                    times.putIfAbsent(RecoveryReport.Step.ICE_RESTARTED, timeMs - disruptedAtMs);
+                }
+                break;
+            case "restart":
+                times.putIfAbsent(RecoveryReport.Step.ICE_RESTARTED, timeMs - disruptedAtMs);
+                break;
+            default:
+                break;
+            }
+        }
+
+        private void setProgress(RecoveryReport.Step step, double timeMs)
+        {
+            times.putIfAbsent(step, timeMs - disruptedAtMs);
+        }
+
+        private boolean isIceConnected()
+        {
+            return "connected".equals(iceState) || "completed".equals(iceState);
+        }
+
+        /**
+         * @return whether the participant has recovered: its ICE connection is
+         * connected, its received media progresses and a remote video renders
+         * again.
+         */
+        public boolean isComplete()
+        {
+            return !reloaded
+                && (iceState == null || isIceConnected())
+                && times.containsKey(RecoveryReport.Step.MEDIA_RESUMED)
+                && times.containsKey(RecoveryReport.Step.VIDEO_RENDERED);
+        }
+
+        /**
+         * @return whether the page was reloaded to recover.
+         */
+        public boolean isReloaded()
+        {
+            return reloaded;
+        }
+
+        /**
+         * @return the name of the participant.
+         */
+        public String getParticipant()
+        {
+            return participant;
+        }
+
+        /**
+         * @param step the step.
+         * @return the time of the step since the disruption, NaN if it did
+         * not happen.
+         */
+        public double getTimeMs(RecoveryReport.Step step)
+        {
+            Double time = times.get(step);
+            return time == null ? Double.NaN : time;
+        }
+
+        /**
+         * @return the time from the disruption to the restoration of the
+         * network.
+         */
+        public double getOutageMs()
+        {
+            return restoredAtMs - disruptedAtMs;
+        }
+
+        @Override
+        public String toString()
+        {
+            StringBuilder sb = new StringBuilder(String.format("%s, outage %.0f ms:", participant, getOutageMs()));
+            for (RecoveryReport.Step step : RecoveryReport.Step.values())
+            {
+                double time = getTimeMs(step);
+                sb.append(' ').append(step).append(' ').append(Double.isNaN(time) ? "-" : String.format("%.0f", time));
+            }
+            if (reloaded)
+            {
+                sb.append(" (reloaded)");
+            }
+            else if (!isComplete())
+            {
+                sb.append(" (unrecovered)");
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.web.stats;
+
+import org.jitsi.meet.test.web.*;
+
+import java.util.*;
+
+/**
+ * Estimates the offset of the clock of a page from the clock of the test, the
+ * way NTP does: the page clock is read in a round trip and compared to the
+ * middle of the round trip, and the round trip with the lowest delay is kept,
+ * its half delay bounding the error. The page clock is
+ * <tt>performance.timeOrigin + performance.now()</tt>, the time base of the
+ * video frame callbacks. The offset between two pages, possibly on different
+ * machines, is the difference of their offsets from the test clock.
+ */
+public class PageClock
+{
+    /**
+     * The default number of round trips of an estimate.
+     */
+    public static final int DEFAULT_ROUND_TRIPS = 10;
+
+    /**
+     * Estimates the offset of the clock of a page with
+     * {@link #DEFAULT_ROUND_TRIPS} round trips.
+     *
+     * @param participant the participant of the page.
+     * @return the offset.
+     */
+    public static Offset estimate(WebParticipant participant)
+    {
+        return estimate(participant, DEFAULT_ROUND_TRIPS);
+    }
+
+    /**
+     * Estimates the offset of the clock of a page.
+     *
+     * @param participant the participant of the page.
+     * @param roundTrips the number of round trips.
+     * @return the offset.
+     */
+    public static Offset estimate(WebParticipant participant, int roundTrips)
+    {
+        Objects.requireNonNull(participant, "participant");
+
+        // The test clock, with the resolution of nanoTime.
+        long baseMillis = System.currentTimeMillis();
+        long baseNanos = System.nanoTime();
+
+        Offset best = null;
+        for (int i = 0; i < roundTrips; i++)
+        {
+            long sent = System.nanoTime();
+            Object res = participant.executeScript("return performance.timeOrigin + performance.now();");
+            long received = System.nanoTime();
+            if (!(res instanceof Number))
+            {
+                continue;
+            }
+
+            double middle = baseMillis + ((sent + received) / 2.0 - baseNanos) / 1e6;
+            double halfRoundTrip = (received - sent) / 2e6;
+            if (best == null || halfRoundTrip < best.uncertaintyMs)
+            {
+                best = new Offset(((Number) res).doubleValue() - middle, halfRoundTrip);
+            }
+        }
+
+        if (best == null)
+        {
+            throw new IllegalStateException("Cannot read the clock of " + participant.getName());
+        }
+        return best;
+    }
+
+    /**
+     * The offset of a clock from a reference clock.
+     */
+    public static class Offset
+    {
+        private final double offsetMs;
+        private final double uncertaintyMs;
+
+        /**
+         * Creates new {@link Offset}.
+         *
+         * @param offsetMs the offset in milliseconds.
+         * @param uncertaintyMs the maximum error of the offset in
+         * milliseconds.
+         */
+        public Offset(double offsetMs, double uncertaintyMs)
+        {
+            this.offsetMs = offsetMs;
+            this.uncertaintyMs = uncertaintyMs;
+        }
+
+        /**
+         * @return the time of the clock minus the time of the reference
+         * clock, in milliseconds.
+         */
+        public double getOffsetMs()
+        {
+            return offsetMs;
+        }
+
+        /**
+         * @return the maximum error of the offset in milliseconds.
+         */
+        public double getUncertaintyMs()
+        {
+            return uncertaintyMs;
+        }
+
+        /**
+         * Returns the offset of this clock from another clock, both offsets
+         * being from the same reference clock.
+         *
+         * @param other the offset of the other clock.
+         * @return the offset of this clock from the other clock.
+         */
+        public Offset minus(Offset other)
+        {
+            return new Offset(offsetMs - other.offsetMs, uncertaintyMs + other.uncertaintyMs);
+        }
+
+        /**
+         * Returns the mean of two estimates of the same offset, for example
+         * before and after a measure to average out the drift of the clocks.
+         *
+         * @param other the other estimate.
+         * @return the mean offset.
+         */
+        public Offset average(Offset other)
+        {
+            return new Offset(
+                (offsetMs + other.offsetMs) / 2,
+                Math.max(uncertaintyMs, other.uncertaintyMs) + Math.abs(offsetMs - other.offsetMs) / 2);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%.1f ms (+/- %.1f ms)", offsetMs, uncertaintyMs);
+        }
+    }
+}
@@ -0,0 +1,595 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.web.stats;
+
+import org.jitsi.meet.test.base.stats.*;
+import org.jitsi.meet.test.util.*;
+import org.jitsi.meet.test.web.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Profiles the loads of the Jitsi Meet page from its Navigation Timing and
+ * Resource Timing entries, aggregated across joins by resource url: transfer
+ * sizes, cache hits and durations.
+ *
+ * The critical path of a load, up to the load event, is computed by blaming
+ * every instant on what the page is waiting for: the document until it is
+ * received, then the resource in flight which finishes last, or the page
+ * itself, running scripts and layout, when no resource is in flight. The
+ * resources are ranked by the mean time blamed on them. Thread safe, so
+ * concurrent joiners can report their loads.
+ *
+ * The browsers keep 250 Resource Timing entries by default, fewer than a
+ * load of the page can have. {@link #prepare(WebParticipant)} raises the
+ * limit for the following loads, and the loads whose entries may have been
+ * dropped are counted apart.
+ */
+public class PageLoadProfiler
+{
+    /**
+     * JS utility which reads the timing entries.
+     */
+    private static final String PAGE_LOAD_TIMING_SCRIPT = "resources/PageLoadTiming.js";
+
+    /**
+     * The critical path entry of the document.
+     */
+    public static final String DOCUMENT = "(document)";
+
+    /**
+     * The critical path entry of the time no resource is in flight.
+     */
+    public static final String PAGE = "(scripts and layout)";
+
+    /**
+     * The default number of resources in {@link #toString()}.
+     */
+    private static final int DEFAULT_TOP = 20;
+
+    private static final double HISTOGRAM_MAX_MS = 60000;
+
+    /**
+     * The load milestones of the page.
+     */
+    private final Histogram responseEnd = newHistogram();
+    private final Histogram domContentLoaded = newHistogram();
+    private final Histogram load = newHistogram();
+
+    /**
+     * The statistics of every resource, by url.
+     */
+    private final Map<String, ResourceStats> resources = new HashMap<>();
+
+    /**
+     * The number of loads and their total transfer size.
+     */
+    private int loads;
+    private int truncatedLoads;
+    private long transferSize;
+
+    private static Histogram newHistogram()
+    {
+        return new Histogram(0, HISTOGRAM_MAX_MS, 1);
+    }
+
+    /**
+     * Raises the size of the Resource Timing buffer of the pages of a
+     * participant before they load, with the DevTools Protocol, so that no
+     * entry is dropped.
+     *
+     * @param participant the participant.
+     * @return <tt>false</tt> if the browser does not support the DevTools
+     * Protocol, in which case the entries beyond the default size of the
+     * buffer are dropped.
+     */
+    public static boolean prepare(WebParticipant participant)
+    {
+        String source;
+        try
+        {
+            source = new String(Files.readAllBytes(Paths.get(PAGE_LOAD_TIMING_SCRIPT)));
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+
+        try
+        {
+            participant.executeCdpCommand(
+                "Page.addScriptToEvaluateOnNewDocument", Collections.singletonMap("source", source));
+            return true;
+        }
+        catch (UnsupportedOperationException e)
+        {
+            TestUtils.print("The Resource Timing of " + participant.getName() + " may be truncated: "
+                + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Reads the timing entries of the page of a participant, once loaded.
+     *
+     * @param participant the participant.
+     * @return the load of the page or <tt>null</tt> if the page has no
+     * navigation timing.
+     */
+    @SuppressWarnings("unchecked")
+    public static PageLoad collect(WebParticipant participant)
+    {
+        TestUtils.injectScript(participant.getDriver(), PAGE_LOAD_TIMING_SCRIPT);
+
+        Object res = participant.executeScript("return window.getPageLoadTiming();");
+        if (!(res instanceof Map) || ((Map<String, Object>) res).get("navigation") == null)
+        {
+            return null;
+        }
+
+        Map<String, Object> timing = (Map<String, Object>) res;
+        Map<String, Object> navigation = (Map<String, Object>) timing.get("navigation");
+        PageLoad pageLoad = new PageLoad(
+            (String) timing.get("url"),
+            getDouble(navigation, "responseEnd"),
+            getDouble(navigation, "domContentLoaded"),
+            getDouble(navigation, "load"),
+            (long) getDouble(navigation, "transferSize"),
+            (Boolean) navigation.get("cached"),
+            Boolean.TRUE.equals(timing.get("truncated")));
+        for (Map<String, Object> r : (List<Map<String, Object>>) timing.get("resources"))
+        {
+            pageLoad.resources.add(new ResourceTiming(
+                (String) r.get("url"),
+                (String) r.get("initiator"),
+                getDouble(r, "start"),
+                getDouble(r, "end"),
+                (long) getDouble(r, "transferSize"),
+                (long) getDouble(r, "bodySize"),
+                (Boolean) r.get("cached")));
+        }
+        return pageLoad;
+    }
+
+    private static double getDouble(Map<String, Object> map, String key)
+    {
+        Object value = map.get(key);
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
+    }
+
+    /**
+     * Adds a load of the page.
+     *
+     * @param pageLoad the load.
+     */
+    public synchronized void add(PageLoad pageLoad)
+    {
+        loads++;
+        if (pageLoad.truncated)
+        {
+            truncatedLoads++;
+        }
+        transferSize += pageLoad.getTransferSize();
+        responseEnd.add(pageLoad.responseEnd);
+        domContentLoaded.add(pageLoad.domContentLoaded);
+        load.add(pageLoad.load);
+
+        Map<String, Double> criticalPath = pageLoad.getCriticalPath();
+        for (ResourceTiming r : pageLoad.resources)
+        {
+            resources.computeIfAbsent(r.url, k -> new ResourceStats(r.url, r.initiator)).add(r);
+        }
+        // A url loaded twice is blamed once.
+        criticalPath.forEach((url, ms) ->
+            resources.computeIfAbsent(url, k -> new ResourceStats(url, "")).criticalMs += ms);
+    }
+
+    /**
+     * @return the number of loads added.
+     */
+    public synchronized int getLoads()
+    {
+        return loads;
+    }
+
+    /**
+     * @return copies of the statistics of the resources ranked by their mean
+     * time on the critical path, then by their mean duration.
+     */
+    public synchronized List<ResourceStats> getResources()
+    {
+        List<ResourceStats> ranked = new ArrayList<>();
+        resources.values().forEach(r -> ranked.add(r.copy()));
+        ranked.sort(Comparator
+            .comparingDouble((ResourceStats r) -> -r.criticalMs)
+            .thenComparingDouble(r -> -r.durations.getMean()));
+        return ranked;
+    }
+
+    /**
+     * @return the report with the {@link #DEFAULT_TOP} first resources.
+     */
+    @Override
+    public String toString()
+    {
+        return toString(DEFAULT_TOP);
+    }
+
+    /**
+     * Returns the report as a human readable table.
+     *
+     * @param top the number of resources.
+     * @return the report.
+     */
+    public synchronized String toString(int top)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(
+            "Page loads: %d, mean transfer %.0f KB%n  response end %s%n  DOMContentLoaded %s%n  load %s%n",
+            loads, loads == 0 ? 0 : transferSize / 1024.0 / loads, responseEnd, domContentLoaded, load));
+        if (truncatedLoads > 0)
+        {
+            sb.append(String.format(
+                "  %d loads filled the Resource Timing buffer, their later resources are missing%n",
+                truncatedLoads));
+        }
+        sb.append(String.format(
+            "%10s %6s %6s %8s %8s %8s  %s%n",
+            "crit ms", "crit%", "cache%", "KB", "p50 ms", "p90 ms", "resource"));
+
+        double loadMs = load.getMean();
+        for (ResourceStats r : getResources().subList(0, Math.min(top, resources.size())))
+        {
+            double criticalMs = r.getMeanCriticalMs(loads);
+            sb.append(String.format(
+                "%10.1f %6.1f %6.0f %8.1f %8.0f %8.0f  %s%n",
+                criticalMs,
+                loadMs > 0 ? 100 * criticalMs / loadMs : 0,
+                100 * r.getCacheHitRatio(),
+                r.getMeanTransferSize() / 1024,
+                r.durations.getPercentile(50),
+                r.durations.getPercentile(90),
+                r.url));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The timing of a load of the page.
+     */
+    public static class PageLoad
+    {
+        private final String url;
+        private final double responseEnd;
+        private final double domContentLoaded;
+        private final double load;
+        private final long documentTransferSize;
+        private final Boolean documentCached;
+        private final boolean truncated;
+        private final List<ResourceTiming> resources = new ArrayList<>();
+
+        PageLoad(
+            String url,
+            double responseEnd,
+            double domContentLoaded,
+            double load,
+            long documentTransferSize,
+            Boolean documentCached,
+            boolean truncated)
+        {
+            this.url = url;
+            this.responseEnd = responseEnd;
+            this.domContentLoaded = domContentLoaded;
+            this.load = load;
+            this.documentTransferSize = documentTransferSize;
+            this.documentCached = documentCached;
+            this.truncated = truncated;
+        }
+
+        /**
+         * @return the url of the page, without the query.
+         */
+        public String getUrl()
+        {
+            return url;
+        }
+
+        /**
+         * @return the time of the load event in milliseconds since the
+         * navigation start, 0 if the page is not loaded yet.
+         */
+        public double getLoad()
+        {
+            return load;
+        }
+
+        /**
+         * @return the time of the DOMContentLoaded event in milliseconds
+         * since the navigation start.
+         */
+        public double getDomContentLoaded()
+        {
+            return domContentLoaded;
+        }
+
+        /**
+         * @return whether the document was served from the cache,
+         * <tt>null</tt> if unknown.
+         */
+        public Boolean isDocumentCached()
+        {
+            return documentCached;
+        }
+
+        /**
+         * @return whether the Resource Timing buffer of the page filled up,
+         * so that the timing of its later resources is missing.
+         */
+        public boolean isTruncated()
+        {
+            return truncated;
+        }
+
+        /**
+         * @return the timing of the resources loaded by the page.
+         */
+        public List<ResourceTiming> getResources()
+        {
+            return Collections.unmodifiableList(resources);
+        }
+
+        /**
+         * @return the number of bytes transferred for the document and the
+         * resources.
+         */
+        public long getTransferSize()
+        {
+            long size = documentTransferSize;
+            for (ResourceTiming r : resources)
+            {
+                size += r.transferSize;
+            }
+            return size;
+        }
+
+        /**
+         * Computes the critical path of the load, see
+         * {@link PageLoadProfiler}.
+         *
+         * @return the milliseconds blamed on every resource url,
+         * {@link #DOCUMENT} and {@link #PAGE}.
+         */
+        public Map<String, Double> getCriticalPath()
+        {
+            // Up to the load event, or to the last resource if the page is
+            // still loading.
+            double end = load > 0 ? load : domContentLoaded;
+            if (load <= 0)
+            {
+                for (ResourceTiming r : resources)
+                {
+                    end = Math.max(end, r.end);
+                }
+            }
+
+            Map<String, Double> blame = new LinkedHashMap<>();
+            double documentEnd = Math.min(responseEnd, end);
+            if (documentEnd > 0)
+            {
+                blame.put(DOCUMENT, documentEnd);
+            }
+
+            TreeSet<Double> boundaries = new TreeSet<>();
+            boundaries.add(documentEnd);
+            boundaries.add(end);
+            for (ResourceTiming r : resources)
+            {
+                if (r.start > documentEnd && r.start < end)
+                {
+                    boundaries.add(r.start);
+                }
+                if (r.end > documentEnd && r.end < end)
+                {
+                    boundaries.add(r.end);
+                }
+            }
+
+            Double from = null;
+            for (double to : boundaries)
+            {
+                if (from != null && to > from)
+                {
+                    ResourceTiming blocking = null;
+                    for (ResourceTiming r : resources)
+                    {
+                        if (r.start <= from && r.end >= to && (blocking == null || r.end > blocking.end))
+                        {
+                            blocking = r;
+                        }
+                    }
+                    blame.merge(blocking == null ? PAGE : blocking.url, to - from, Double::sum);
+                }
+                from = to;
+            }
+            return blame;
+        }
+    }
+
+    /**
+     * The timing of a resource loaded by the page.
+     */
+    public static class ResourceTiming
+    {
+        private final String url;
+        private final String initiator;
+        private final double start;
+        private final double end;
+        private final long transferSize;
+        private final long bodySize;
+        private final Boolean cached;
+
+        ResourceTiming(
+            String url, String initiator, double start, double end, long transferSize, long bodySize, Boolean cached)
+        {
+            this.url = url;
+            this.initiator = initiator;
+            this.start = start;
+            this.end = end;
+            this.transferSize = transferSize;
+            this.bodySize = bodySize;
+            this.cached = cached;
+        }
+
+        /**
+         * @return the url of the resource, without the query.
+         */
+        public String getUrl()
+        {
+            return url;
+        }
+
+        /**
+         * @return whether the resource was served from the cache,
+         * <tt>null</tt> if unknown.
+         */
+        public Boolean isCached()
+        {
+            return cached;
+        }
+
+        /**
+         * @return the duration of the fetch in milliseconds.
+         */
+        public double getDuration()
+        {
+            return end - start;
+        }
+    }
+
+    /**
+     * The statistics of a resource across loads.
+     */
+    public static class ResourceStats
+    {
+        private final String url;
+        private final String initiator;
+        private final Histogram durations = newHistogram();
+        private int fetches, cacheHits, cacheKnown;
+        private long transferSize, bodySize;
+        private double criticalMs;
+
+        ResourceStats(String url, String initiator)
+        {
+            this.url = url;
+            this.initiator = initiator;
+        }
+
+        void add(ResourceTiming r)
+        {
+            fetches++;
+            durations.add(r.getDuration());
+            transferSize += r.transferSize;
+            bodySize += r.bodySize;
+            if (r.cached != null)
+            {
+                cacheKnown++;
+                cacheHits += r.cached ? 1 : 0;
+            }
+        }
+
+        ResourceStats copy()
+        {
+            ResourceStats copy = new ResourceStats(url, initiator);
+            copy.durations.add(durations);
+            copy.fetches = fetches;
+            copy.cacheHits = cacheHits;
+            copy.cacheKnown = cacheKnown;
+            copy.transferSize = transferSize;
+            copy.bodySize = bodySize;
+            copy.criticalMs = criticalMs;
+            return copy;
+        }
+
+        /**
+         * @return the url of the resource, or {@link #DOCUMENT} or
+         * {@link #PAGE}.
+         */
+        public String getUrl()
+        {
+            return url;
+        }
+
+        /**
+         * @return what fetched the resource: script, link, fetch...
+         */
+        public String getInitiator()
+        {
+            return initiator;
+        }
+
+        /**
+         * @return the number of times the resource was fetched.
+         */
+        public int getFetches()
+        {
+            return fetches;
+        }
+
+        /**
+         * @return the ratio of the fetches served from the cache, among the
+         * fetches for which it is known, NaN if it is never known.
+         */
+        public double getCacheHitRatio()
+        {
+            return cacheKnown == 0 ? Double.NaN : (double) cacheHits / cacheKnown;
+        }
+
+        /**
+         * @return the mean number of bytes transferred per fetch.
+         */
+        public double getMeanTransferSize()
+        {
+            return fetches == 0 ? 0 : (double) transferSize / fetches;
+        }
+
+        /**
+         * @return the mean decoded size of the body per fetch.
+         */
+        public double getMeanBodySize()
+        {
+            return fetches == 0 ? 0 : (double) bodySize / fetches;
+        }
+
+        /**
+         * @return a copy of the distribution of the fetch durations.
+         */
+        public Histogram getDurations()
+        {
+            return durations.copy();
+        }
+
+        /**
+         * @param loads the number of page loads.
+         * @return the mean time on the critical path per page load.
+         */
+        public double getMeanCriticalMs(int loads)
+        {
+            return loads == 0 ? 0 : criticalMs / loads;
+        }
+    }
+}
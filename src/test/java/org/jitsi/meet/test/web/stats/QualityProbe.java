@@ -0,0 +1,471 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.web.stats;
+
+import org.jitsi.meet.test.analysis.*;
+import org.jitsi.meet.test.base.stats.*;
+import org.jitsi.meet.test.util.*;
+import org.jitsi.meet.test.web.*;
+
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Java wrapper for QualityProbe.js, a lightweight probe of the video
+ * actually displayed by a receiver, cheap enough to run on many receivers of
+ * a load test. The script samples at a low rate the QR code stamped on the
+ * frame displayed by every remote video (see scripts/psnr-build-resources.sh),
+ * and only its modules, packed in 57 bytes, are drained with their timestamps
+ * to be decoded by {@link QrFrameNumberExtractor}. The senders must use the
+ * stamped sequence as their fake camera.
+ *
+ * From the frame numbers and their timestamps, the probe counts the freezes
+ * (the same frame displayed for longer than the threshold), the skipped
+ * frames (the video jumping ahead faster than real time, after a freeze
+ * usually) and the delay of the displayed frames above the lowest delay of
+ * their video. The absolute delay is unknown since the clocks of the sender
+ * and the receiver are not synchronised, and the resolution of all the
+ * measures is the probe interval.
+ *
+ * With the frame callback, every frame presented by the videos is read and
+ * timestamped with its expected display time, at a higher cost, for instance
+ * to measure the glass-to-glass delay with a probe on the local video of the
+ * sender, see {@link LatencyAnalyzer}.
+ */
+public class QualityProbe
+{
+    /**
+     * JS utility which probes the remote videos.
+     */
+    private static final String QUALITY_PROBE_SCRIPT
+        = "resources/QualityProbe.js";
+
+    /**
+     * The number of modules of the symbol.
+     */
+    private static final int MODULES = QrFrameNumberExtractor.QR_SIZE * QrFrameNumberExtractor.QR_SIZE;
+
+    /**
+     * The size of the record of a sample drained from the page.
+     */
+    private static final int RECORD_BYTES = 1 + (MODULES + 7) / 8;
+
+    /**
+     * The default probe interval in milliseconds.
+     */
+    public static final int DEFAULT_INTERVAL_MS = 200;
+
+    /**
+     * The default capacity of the buffer of a video in the page (number of
+     * probes).
+     */
+    public static final int DEFAULT_CAPACITY = 150;
+
+    /**
+     * Selects the remote videos of the page.
+     */
+    public static final String REMOTE_VIDEOS = "video:not([id^=\"localVideo\"])";
+
+    /**
+     * Selects the local video of the page.
+     */
+    public static final String LOCAL_VIDEO = "video[id^=\"localVideo\"]";
+
+    /**
+     * The default frame rate of the stamped sequence.
+     */
+    public static final double DEFAULT_FRAME_RATE = 30;
+
+    /**
+     * The default freeze threshold in milliseconds.
+     */
+    public static final long DEFAULT_FREEZE_THRESHOLD_MS = 500;
+
+    /**
+     * The frames a video can advance faster than real time between two
+     * probes, because of the timer and frame jitter, without being counted
+     * as skipped frames.
+     */
+    private static final int SKIP_TOLERANCE_FRAMES = 2;
+
+    /**
+     * The participant whose remote videos are probed.
+     */
+    private final WebParticipant participant;
+
+    /**
+     * The frame rate of the stamped sequence.
+     */
+    private final double frameRate;
+
+    /**
+     * The number of frames of the stamped sequence, which restarts from 1
+     * after the last one, 0 if unknown.
+     */
+    private final int sequenceLength;
+
+    /**
+     * The time the same frame is displayed after which the video is frozen.
+     */
+    private final long freezeThresholdMs;
+
+    /**
+     * The state of every video seen so far, by key.
+     */
+    private final Map<String, Track> tracks = new HashMap<>();
+
+    /**
+     * The totals of the videos which have been finished.
+     */
+    private final QualityReport.Totals totals = new QualityReport.Totals();
+
+    /**
+     * The periodic drain, if scheduled.
+     */
+    private ScheduledFuture<?> drainTask;
+
+    /**
+     * Creates new {@link QualityProbe}.
+     *
+     * @param participant the participant whose remote videos are probed.
+     * @param frameRate the frame rate of the stamped sequence.
+     * @param sequenceLength the number of frames of the stamped sequence, 0
+     * if unknown, in which case the highest frame number seen is used.
+     * @param freezeThresholdMs the time the same frame is displayed after
+     * which the video is frozen, should be larger than the probe interval.
+     */
+    public QualityProbe(
+        WebParticipant participant, double frameRate, int sequenceLength, long freezeThresholdMs)
+    {
+        this.participant = Objects.requireNonNull(participant, "participant");
+        this.frameRate = frameRate;
+        this.sequenceLength = sequenceLength;
+        this.freezeThresholdMs = freezeThresholdMs;
+    }
+
+    /**
+     * @return the participant whose remote videos are probed.
+     */
+    public WebParticipant getParticipant()
+    {
+        return participant;
+    }
+
+    /**
+     * Injects the probe script and starts probing. Restarts the probe if it
+     * was already running in the page.
+     *
+     * @param intervalMs the probe interval in milliseconds.
+     * @param capacity the maximum number of probes kept per video between
+     * two drains. Older probes are overwritten when it is exceeded.
+     */
+    public void start(int intervalMs, int capacity)
+    {
+        start(intervalMs, capacity, REMOTE_VIDEOS, false);
+    }
+
+    /**
+     * Injects the probe script and starts probing. Restarts the probe if it
+     * was already running in the page.
+     *
+     * @param intervalMs the probe interval in milliseconds, with the frame
+     * callback the interval at which new videos are looked for.
+     * @param capacity the maximum number of probes kept per video between
+     * two drains. Older probes are overwritten when it is exceeded.
+     * @param selector the CSS selector of the videos to probe, for example
+     * {@link #REMOTE_VIDEOS} or {@link #LOCAL_VIDEO}.
+     * @param frameCallback whether to read every presented frame.
+     */
+    public void start(int intervalMs, int capacity, String selector, boolean frameCallback)
+    {
+        TestUtils.injectScript(participant.getDriver(), QUALITY_PROBE_SCRIPT);
+
+        participant.executeScript(
+            "if (window._qualityProbe) { window._qualityProbe.stop(); }"
+                + "window._qualityProbe = new window.QualityProbe("
+                + "arguments[0], arguments[1], arguments[2], arguments[3]);"
+                + "window._qualityProbe.start();",
+            intervalMs, capacity, selector, frameCallback);
+    }
+
+    /**
+     * Drains the probes every {@code period}.
+     *
+     * @param pool the executor which will run the drain.
+     * @param period the drain period.
+     * @param unit the unit of {@code period}.
+     */
+    public synchronized void startDraining(ScheduledExecutorService pool, long period, TimeUnit unit)
+    {
+        stopDraining();
+
+        drainTask = pool.scheduleWithFixedDelay(() -> {
+            try
+            {
+                poll();
+            }
+            catch (Exception e)
+            {
+                TestUtils.print("Failed to drain the quality probe of "
+                    + participant.getName() + ": " + e.getMessage());
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Cancels the periodic drain, if any.
+     */
+    public synchronized void stopDraining()
+    {
+        if (drainTask != null)
+        {
+            drainTask.cancel(false);
+            drainTask = null;
+        }
+    }
+
+    /**
+     * Removes the probes collected so far from the page and updates the
+     * state of the videos.
+     *
+     * @return the probes per video key, empty if the probe is not running in
+     * the page.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized Map<String, FrameNumberSamples> poll()
+    {
+        Object res = participant.executeScript(
+            "return window._qualityProbe"
+                + " ? window._qualityProbe.drain() : null;");
+        if (!(res instanceof List))
+        {
+            return Collections.emptyMap();
+        }
+
+        Map<String, FrameNumberSamples> samples = new LinkedHashMap<>();
+        for (Map<String, Object> video : (List<Map<String, Object>>) res)
+        {
+            String id = String.valueOf(video.get("id"));
+            Track track = tracks.computeIfAbsent(id, Track::new);
+            long dropped = ((Number) video.get("dropped")).longValue();
+            totals.dropped += dropped;
+
+            DoubleBuffer timestamps = ByteBuffer.wrap(Base64.getDecoder().decode((String) video.get("timestamps")))
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asDoubleBuffer();
+            byte[] records = Base64.getDecoder().decode((String) video.get("records"));
+            int count = Math.min(timestamps.remaining(), records.length / RECORD_BYTES);
+            FrameNumberSamples videoSamples = new FrameNumberSamples(count);
+            videoSamples.addDropped(dropped);
+            for (int i = 0; i < count; i++)
+            {
+                double timestamp = timestamps.get(i);
+                int frameNumber = decodeRecord(records, i * RECORD_BYTES);
+                videoSamples.add(timestamp, frameNumber);
+                track.add((long) timestamp, frameNumber);
+            }
+            samples.put(id, videoSamples);
+        }
+        return samples;
+    }
+
+    /**
+     * Decodes the frame number of a sample of the page: a byte set to 1 if a
+     * symbol was sampled, followed by its modules, one bit per module, row by
+     * row, most significant bit first.
+     *
+     * @param records the records of the samples.
+     * @param offset the offset of the record to decode.
+     * @return the frame number or {@link FrameNumberExtractor#NO_FRAME_NUMBER}.
+     */
+    static int decodeRecord(byte[] records, int offset)
+    {
+        if (records[offset] != 1)
+        {
+            return FrameNumberExtractor.NO_FRAME_NUMBER;
+        }
+
+        boolean[] modules = new boolean[MODULES];
+        for (int i = 0; i < MODULES; i++)
+        {
+            modules[i] = (records[offset + 1 + (i >> 3)] & (0x80 >> (i & 7))) != 0;
+        }
+        return QrFrameNumberExtractor.decodeModules(modules);
+    }
+
+    /**
+     * Stops the periodic drain and the probing in the page, after a last
+     * drain, and accounts the freezes in progress.
+     *
+     * @return the probes of the last drain per video key.
+     */
+    public synchronized Map<String, FrameNumberSamples> stop()
+    {
+        stopDraining();
+        try
+        {
+            Map<String, FrameNumberSamples> samples = poll();
+            participant.executeScript(
+                "if (window._qualityProbe) {"
+                    + "window._qualityProbe.stop();"
+                    + "window._qualityProbe = null;"
+                    + "}");
+            return samples;
+        }
+        finally
+        {
+            tracks.values().forEach(Track::finish);
+            tracks.clear();
+        }
+    }
+
+    /**
+     * @return a copy of the totals of the videos probed so far. The delays
+     * are only included once the probe is stopped.
+     */
+    public synchronized QualityReport.Totals getTotals()
+    {
+        QualityReport.Totals copy = new QualityReport.Totals().add(totals);
+        tracks.values().forEach(track -> copy.add(track.totals));
+        return copy;
+    }
+
+    /**
+     * The displayed frame numbers of a remote video.
+     */
+    private class Track
+    {
+        private final String id;
+        private final QualityReport.Totals totals = new QualityReport.Totals();
+
+        /**
+         * The frames added to the frame numbers by the roll-overs of the
+         * sequence.
+         */
+        private long base;
+
+        /**
+         * The highest frame number seen.
+         */
+        private int maxFrameNumber;
+
+        /**
+         * The last frame displayed, counting the roll-overs, -1 if none.
+         */
+        private long lastFrame = -1;
+
+        /**
+         * The time of the last probe.
+         */
+        private long lastTime;
+
+        /**
+         * The time of the first probe which saw the last frame.
+         */
+        private long changeTime;
+
+        /**
+         * The delays of the displayed frames relative to the first one, in
+         * constant memory. They are shifted above the lowest of them when the
+         * video is finished, and those which end up out of the range of the
+         * totals are counted as such rather than lost in the last bin.
+         */
+        private final Histogram delays = new Histogram(
+            -QualityReport.Totals.MAX_DELAY_MS, QualityReport.Totals.MAX_DELAY_MS, QualityReport.Totals.DELAY_BIN_MS);
+        private double delayOrigin;
+
+        Track(String id)
+        {
+            this.id = id;
+        }
+
+        void add(long time, int frameNumber)
+        {
+            totals.samples++;
+            if (frameNumber < 0)
+            {
+                totals.undecoded++;
+                return;
+            }
+
+            maxFrameNumber = Math.max(maxFrameNumber, frameNumber);
+            long period = sequenceLength > 0 ? sequenceLength : maxFrameNumber;
+            long frame = base + frameNumber;
+            if (lastFrame >= 0 && frame + period / 2 < lastFrame)
+            {
+                base += period;
+                frame += period;
+            }
+
+            if (lastFrame < 0)
+            {
+                lastFrame = frame;
+                changeTime = time;
+                delayOrigin = time - frame * 1000 / frameRate;
+            }
+            else
+            {
+                totals.observedMs += time - lastTime;
+                // Frames going backwards are late duplicates, the displayed
+                // frame has not changed.
+                if (frame > lastFrame)
+                {
+                    endFreeze(time);
+
+                    double excess = frame - lastFrame - (time - lastTime) * frameRate / 1000;
+                    if (excess > SKIP_TOLERANCE_FRAMES)
+                    {
+                        totals.skippedFrames += Math.round(excess);
+                    }
+                    lastFrame = frame;
+                    changeTime = time;
+                }
+            }
+            lastTime = time;
+
+            delays.add(time - lastFrame * 1000 / frameRate - delayOrigin);
+        }
+
+        private void endFreeze(long time)
+        {
+            long duration = time - changeTime;
+            if (duration >= freezeThresholdMs)
+            {
+                totals.freezes++;
+                totals.freezesDurationMs += duration;
+                TestUtils.print(participant.getName() + " displayed frame " + lastFrame + " of " + id
+                    + " for " + duration + "ms");
+            }
+        }
+
+        /**
+         * Accounts the freeze in progress and the delays, and adds the
+         * totals of the video to the totals of the probe.
+         */
+        void finish()
+        {
+            if (lastFrame >= 0)
+            {
+                endFreeze(lastTime);
+            }
+
+            totals.delay.add(delays, -delays.getMin());
+
+            QualityProbe.this.totals.add(totals);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.web.stats;
+
+import org.jitsi.meet.test.base.stats.*;
+
+import java.util.*;
+
+/**
+ * The distributions of the {@link Step}s of the recoveries of many
+ * participants from many disruptions of their network, as followed by
+ * {@link NetworkChangeProbe}: the time of every step since the disruption,
+ * and since the network was restored. Thread safe.
+ */
+public class RecoveryReport
+{
+    /**
+     * The steps of a recovery.
+     */
+    public enum Step
+    {
+        /**
+         * The ICE connection is disconnected, failed or closed.
+         */
+        ICE_DISCONNECTED,
+
+        /**
+         * ICE restarts, or the peer connection is replaced.
+         */
+        ICE_RESTARTED,
+
+        /**
+         * The ICE connection is connected again.
+         */
+        ICE_RECONNECTED,
+
+        /**
+         * The received media progresses again.
+         */
+        MEDIA_RESUMED,
+
+        /**
+         * A remote video renders a new frame again.
+         */
+        VIDEO_RENDERED
+    }
+
+    /**
+     * The lower bound of the histograms, the steps before the restoration of
+     * the network are negative since it.
+     */
+    private static final double HISTOGRAM_MIN_MS = -120000;
+
+    /**
+     * The upper bound of the histograms.
+     */
+    private static final double HISTOGRAM_MAX_MS = 120000;
+
+    /**
+     * The width of the bins of the histograms.
+     */
+    private static final double HISTOGRAM_BIN_MS = 10;
+
+    private final Map<Step, Histogram> sinceDisruption = new EnumMap<>(Step.class);
+    private final Map<Step, Histogram> sinceRestore = new EnumMap<>(Step.class);
+
+    /**
+     * The time to render video again since the restoration, per participant.
+     */
+    private final Map<String, Histogram> videoByParticipant = new TreeMap<>();
+
+    /**
+     * The number of recoveries added, of those which timed out and of those
+     * which reloaded the page.
+     */
+    private int recoveries, unrecovered, reloaded;
+
+    /**
+     * Creates new {@link RecoveryReport}.
+     */
+    public RecoveryReport()
+    {
+        for (Step step : Step.values())
+        {
+            sinceDisruption.put(step, newHistogram());
+            sinceRestore.put(step, newHistogram());
+        }
+    }
+
+    private static Histogram newHistogram()
+    {
+        return new Histogram(HISTOGRAM_MIN_MS, HISTOGRAM_MAX_MS, HISTOGRAM_BIN_MS);
+    }
+
+    /**
+     * Adds a recovery. The steps which did not happen are not counted.
+     *
+     * @param recovery the recovery.
+     */
+    public synchronized void add(NetworkChangeProbe.Recovery recovery)
+    {
+        recoveries++;
+        if (recovery.isReloaded())
+        {
+            reloaded++;
+        }
+        else if (!recovery.isComplete())
+        {
+            unrecovered++;
+        }
+
+        for (Step step : Step.values())
+        {
+            double time = recovery.getTimeMs(step);
+            if (!Double.isNaN(time))
+            {
+                sinceDisruption.get(step).add(time);
+                sinceRestore.get(step).add(time - recovery.getOutageMs());
+            }
+        }
+
+        double video = recovery.getTimeMs(Step.VIDEO_RENDERED);
+        Histogram participantVideo
+            = videoByParticipant.computeIfAbsent(recovery.getParticipant(), k -> newHistogram());
+        if (!Double.isNaN(video))
+        {
+            participantVideo.add(video - recovery.getOutageMs());
+        }
+    }
+
+    /**
+     * @param step the step.
+     * @return a copy of the distribution of the time of the step since the
+     * disruption.
+     */
+    public synchronized Histogram getSinceDisruption(Step step)
+    {
+        return sinceDisruption.get(step).copy();
+    }
+
+    /**
+     * @param step the step.
+     * @return a copy of the distribution of the time of the step since the
+     * restoration of the network.
+     */
+    public synchronized Histogram getSinceRestore(Step step)
+    {
+        return sinceRestore.get(step).copy();
+    }
+
+    /**
+     * @return the number of recoveries added.
+     */
+    public synchronized int getRecoveries()
+    {
+        return recoveries;
+    }
+
+    /**
+     * @return the number of recoveries which timed out.
+     */
+    public synchronized int getUnrecovered()
+    {
+        return unrecovered;
+    }
+
+    /**
+     * @return the number of recoveries which reloaded the page.
+     */
+    public synchronized int getReloaded()
+    {
+        return reloaded;
+    }
+
+    /**
+     * @return the report as a human readable table: the count, the median,
+     * the 90th percentile and the maximum of every step, since the
+     * disruption and since the restoration, and the time to render video
+     * again of every participant.
+     */
+    @Override
+    public synchronized String toString()
+    {
+        StringBuilder sb = new StringBuilder(String.format(
+            "%d recoveries, %d unrecovered, %d reloaded%n", recoveries, unrecovered, reloaded));
+        sb.append(String.format(
+            "%-18s %5s %26s %26s%n", "ms", "n", "since disruption p50/p90/max", "since restore p50/p90/max"));
+        for (Step step : Step.values())
+        {
+            Histogram disruption = sinceDisruption.get(step);
+            Histogram restore = sinceRestore.get(step);
+            sb.append(String.format("%-18s %5d", step, disruption.getCount()));
+            if (disruption.getCount() == 0)
+            {
+                sb.append('\n');
+                continue;
+            }
+            sb.append(String.format(
+                " %8.0f/%7.0f/%8.0f %8.0f/%7.0f/%8.0f%n",
+                disruption.getPercentile(50), disruption.getPercentile(90), disruption.getMax(),
+                restore.getPercentile(50), restore.getPercentile(90), restore.getMax()));
+        }
+
+        sb.append("Video rendered again since restore, per participant:\n");
+        videoByParticipant.forEach((participant, video) -> {
+            sb.append(String.format("  %-20s %5d", participant, video.getCount()));
+            if (video.getCount() > 0)
+            {
+                sb.append(String.format(
+                    " p50 %.0f, p90 %.0f, max %.0f", video.getPercentile(50), video.getPercentile(90),
+                    video.getMax()));
+            }
+            sb.append('\n');
+        });
+        return sb.toString();
+    }
+}
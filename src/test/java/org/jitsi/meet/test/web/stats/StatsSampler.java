@@ -0,0 +1,209 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.web.stats;
+
+import org.jitsi.meet.test.base.stats.*;
+import org.jitsi.meet.test.util.*;
+import org.jitsi.meet.test.web.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * Java wrapper for StatsSampler.js. The script samples the peer connection
+ * of the participant's page at a fixed interval into a bounded ring buffer,
+ * which is then drained in bulk, so that a time series can be collected
+ * without a WebDriver round trip per value.
+ */
+public class StatsSampler
+{
+    /**
+     * JS utility which samples the peer connection stats.
+     */
+    private static final String STATS_SAMPLER_SCRIPT
+        = "resources/StatsSampler.js";
+
+    /**
+     * The default sampling interval in milliseconds.
+     */
+    public static final int DEFAULT_INTERVAL_MS = 1000;
+
+    /**
+     * The default ring buffer capacity (number of samples).
+     */
+    public static final int DEFAULT_CAPACITY = 300;
+
+    /**
+     * The participant whose page is being sampled.
+     */
+    private final WebParticipant participant;
+
+    /**
+     * The periodic drain, if scheduled.
+     */
+    private ScheduledFuture<?> drainTask;
+
+    /**
+     * Creates new {@link StatsSampler}.
+     *
+     * @param participant the participant whose page will be sampled.
+     */
+    public StatsSampler(WebParticipant participant)
+    {
+        this.participant = Objects.requireNonNull(participant, "participant");
+    }
+
+    /**
+     * @return the participant whose page is being sampled.
+     */
+    public WebParticipant getParticipant()
+    {
+        return participant;
+    }
+
+    /**
+     * Injects the sampler script and starts sampling with the default
+     * interval and capacity.
+     */
+    public void start()
+    {
+        start(DEFAULT_INTERVAL_MS, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Injects the sampler script and starts sampling. Restarts the sampler if
+     * it was already running in the page.
+     *
+     * @param intervalMs the sampling interval in milliseconds.
+     * @param capacity the maximum number of samples kept in the page between
+     * two drains. Older samples are overwritten when it is exceeded.
+     */
+    public void start(int intervalMs, int capacity)
+    {
+        start(intervalMs, capacity, null);
+    }
+
+    /**
+     * Injects the sampler script and starts sampling a peer connection.
+     * Restarts the sampler if it was already running in the page.
+     *
+     * @param intervalMs the sampling interval in milliseconds.
+     * @param capacity the maximum number of samples kept in the page between
+     * two drains. Older samples are overwritten when it is exceeded.
+     * @param useJVB if true, sample the JVB peer connection, if false the P2P
+     * peer connection, if <tt>null</tt> the active one.
+     */
+    public void start(int intervalMs, int capacity, Boolean useJVB)
+    {
+        TestUtils.injectScript(participant.getDriver(), STATS_SAMPLER_SCRIPT);
+
+        participant.executeScript(
+            "if (window._statsSampler) { window._statsSampler.stop(); }"
+                + "window._statsSampler = new window.StatsSampler("
+                + "arguments[0], arguments[1], arguments[2]);"
+                + "window._statsSampler.start();",
+            intervalMs, capacity, useJVB == null ? null : useJVB ? "jvb" : "p2p");
+    }
+
+    /**
+     * Drains every {@code period} the samples collected in the page and
+     * passes them to the given consumer.
+     *
+     * @param pool the executor which will run the drain.
+     * @param period the drain period.
+     * @param unit the unit of {@code period}.
+     * @param consumer receives every non-empty batch.
+     */
+    public synchronized void startDraining(
+        ScheduledExecutorService pool,
+        long period,
+        TimeUnit unit,
+        Consumer<StatsSamples> consumer)
+    {
+        stopDraining();
+
+        drainTask = pool.scheduleWithFixedDelay(() -> {
+            try
+            {
+                StatsSamples samples = drain();
+                if (samples.size() > 0)
+                {
+                    consumer.accept(samples);
+                }
+            }
+            catch (Exception e)
+            {
+                TestUtils.print("Failed to drain stats of "
+                    + participant.getName() + ": " + e.getMessage());
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Cancels the periodic drain, if any.
+     */
+    public synchronized void stopDraining()
+    {
+        if (drainTask != null)
+        {
+            drainTask.cancel(false);
+            drainTask = null;
+        }
+    }
+
+    /**
+     * Removes all samples collected so far in the page and returns them.
+     *
+     * @return the samples, or {@link StatsSamples#EMPTY} if the sampler is not
+     * running in the page.
+     */
+    @SuppressWarnings("unchecked")
+    public StatsSamples drain()
+    {
+        Object res = participant.executeScript(
+            "return window._statsSampler"
+                + " ? window._statsSampler.drain() : null;");
+
+        if (!(res instanceof Map))
+        {
+            return StatsSamples.EMPTY;
+        }
+
+        Map<String, Object> batch = (Map<String, Object>) res;
+        List<String> columns = (List<String>) batch.get("columns");
+
+        return StatsSamples.decode(
+            columns.toArray(new String[0]),
+            Base64.getDecoder().decode((String) batch.get("data")),
+            ((Number) batch.get("dropped")).longValue());
+    }
+
+    /**
+     * Stops the periodic drain and the sampling in the page. Samples which
+     * have not been drained are discarded.
+     */
+    public void stop()
+    {
+        stopDraining();
+
+        participant.executeScript(
+            "if (window._statsSampler) {"
+                + "window._statsSampler.stop();"
+                + "window._statsSampler = null;"
+                + "}");
+    }
+}
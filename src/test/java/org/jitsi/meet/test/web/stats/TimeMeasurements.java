@@ -0,0 +1,282 @@
+/*
+ * Copyright @ 2015-present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.meet.test.web.stats;
+
+import org.jitsi.meet.test.util.*;
+
+import org.openqa.selenium.*;
+import org.openqa.selenium.support.ui.*;
+
+import java.util.*;
+
+import static org.testng.Assert.*;
+
+/**
+ * Enum that represents the types of time measurements. We are storing the
+ * scripts that is used to get the value for that type, a previous step and
+ * threshold.
+ */
+public enum TimeMeasurements
+{
+    INDEX_LOADED("return window.JitsiMeetJS?.app?.connectionTimes['index.loaded']", null, 200.0),
+
+    DOCUMENT_READY("return window.JitsiMeetJS?.app?.connectionTimes['document.ready']",
+        INDEX_LOADED, 600.0),
+
+    CONNECTION_ATTACHING(
+        "return APP.connection.getConnectionTimes()['attaching']",
+        DOCUMENT_READY, 500.0),
+
+    CONNECTION_ATTACHED(
+        "return APP.connection.getConnectionTimes()['attached']",
+        CONNECTION_ATTACHING, 5.0),
+
+    CONNECTION_CONNECTING(
+        "return APP.connection.getConnectionTimes()['connecting']",
+        DOCUMENT_READY, 500.0),
+
+    CONNECTION_CONNECTED(
+        "return APP.connection.getConnectionTimes()['connected']",
+        CONNECTION_CONNECTING, 1000.0),
+
+    MUC_JOINED(
+        "return APP.conference._room.getConnectionTimes()['muc.joined']",
+        null, 500.0),
+
+    SESSION_INITIATE("return APP.conference._room.getConnectionTimes()"
+        + "['session.initiate']", MUC_JOINED, 600.0),
+
+    // FIXME Changed the threshold from 150.0 to 300.0, once we
+    // update the code and improve the setup time we can return it back to
+    // to the original value
+    ICE_CHECKING("return APP.conference._room.getConnectionTimes()"
+        + "['ice.state.checking']", SESSION_INITIATE, 300.0),
+
+    ICE_CONNECTED("return APP.conference._room.getConnectionTimes()"
+        + "['ice.state.connected']", ICE_CHECKING, 500.0),
+
+    AUDIO_RENDER(
+        "return APP.conference._room.getConnectionTimes()['audio.render']",
+        ICE_CONNECTED, 200.0),
+
+    // FIXME Changed the threshold from 200.0 to 550.0, once we
+    // update the code and improve the setup time we can return it back to
+    // to the original value
+    VIDEO_RENDER(
+        "return APP.conference._room.getConnectionTimes()['video.render']",
+        ICE_CONNECTED, 550.0),
+
+    // The data channel should open about 2 RTTs after DTLS completes, so
+    // this threshold should go down to something like 200ms.
+    // However, there is currently a bug in jitsi-videobridge which adds a
+    // delay of about 3 seconds. Another bug, recently fixed, would cause
+    // a delay of ~15 seconds, which is why we now use a threshold of 4s.
+    DATA_CHANNEL_OPENED(
+        "return APP.conference._room.getConnectionTimes()"
+            + "['data.channel.opened']",
+        ICE_CONNECTED, 4000.0);
+
+    /**
+     * Script that checks if the mandatory objects that are going to be used to
+     * get the connection time measurements are created or not.
+     */
+    private static final String CHECK_OBJECTS_CREATED_SCRIPT
+        = "return (APP && APP.connection "
+            + "&& APP.conference && APP.conference._room)? true : false";
+
+    /**
+     * The script used to get the data for a time measurement type.
+     */
+    private String script;
+
+    /**
+     * Max time between the previous measurement and
+     * the current one
+     */
+    private Double threshold;
+
+    /**
+     * The previous executed time measurement. We are going to compare the
+     * period of time between 2 consecutive time measurements and the
+     * threshold.
+     */
+    private TimeMeasurements prevStep;
+
+    /**
+     * The number of time measurements/
+     */
+    public static final int length = TimeMeasurements.values().length;
+
+    /**
+     * Construct new TimeMeasurements instance.
+     * @param script The script used to get the data for a time
+     * measurement type.
+     * @param prevStep previous measurement.
+     * @param threshold Max time between the previous measurement and
+     * the current one
+     */
+    TimeMeasurements(String script, TimeMeasurements prevStep,
+        Double threshold)
+    {
+        this.script = script;
+        this.prevStep = prevStep;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Returns the threshold property.
+     * @return the threshold property.
+     */
+    public Double getThreshold()
+    {
+        return threshold;
+    }
+
+    /**
+     * Returns prevStep property.
+     * @return prevStep property.
+     */
+    public TimeMeasurements getPrevStep()
+    {
+        return prevStep;
+    }
+
+    /**
+     * Returns the step the delta of this step is measured from. The MUC is
+     * joined after the XMPP connection is established, with either connect
+     * or attach.
+     *
+     * @param usingAttach whether the connection is attached.
+     * @return the previous step or <tt>null</tt> for the steps measured
+     * from the navigation start only.
+     */
+    public TimeMeasurements getPrevStep(boolean usingAttach)
+    {
+        if (this == MUC_JOINED)
+        {
+            return usingAttach ? CONNECTION_ATTACHED : CONNECTION_CONNECTED;
+        }
+        return prevStep;
+    }
+
+    /**
+     * Returns the steps which are measured by a page: either the attach or
+     * the connect steps.
+     *
+     * @param usingAttach whether the connection is attached.
+     * @return the steps in order.
+     */
+    public static List<TimeMeasurements> getSteps(boolean usingAttach)
+    {
+        List<TimeMeasurements> steps = new ArrayList<>(Arrays.asList(values()));
+        if (usingAttach)
+        {
+            steps.removeAll(Arrays.asList(CONNECTION_CONNECTING, CONNECTION_CONNECTED));
+        }
+        else
+        {
+            steps.removeAll(Arrays.asList(CONNECTION_ATTACHING, CONNECTION_ATTACHED));
+        }
+        return steps;
+    }
+
+    /**
+     * Executes the script property for the given {@link WebDriver}
+     * and returns a time measurement. (?)
+     * @param driver the {@link WebDriver}
+     * @return time in ms for the measurement.
+     */
+    public Double execute(WebDriver driver)
+    {
+        Object res = ((JavascriptExecutor) driver).executeScript(script);
+
+        if (res instanceof Number)
+        {
+            return ((Number) res).doubleValue();
+        }
+        else if (res == null)
+        {
+            return null;
+        }
+        else
+        {
+            fail("Wrong type returned from selenium!");
+        }
+
+        return null;
+    }
+
+    /**
+     * Executes the script of every time measurement.
+     * @param driver the {@link WebDriver}
+     * @return the measured times, without the steps not measured.
+     */
+    public static Map<TimeMeasurements, Double> executeAll(WebDriver driver)
+    {
+        Map<TimeMeasurements, Double> measurements = new EnumMap<>(TimeMeasurements.class);
+        for (TimeMeasurements s : values())
+        {
+            Double value = s.execute(driver);
+            if (value != null)
+            {
+                measurements.put(s, value);
+            }
+        }
+        return measurements;
+    }
+
+    /**
+     * Waits for all measurements to be complete. We only wait for VIDEO_RENDER,
+     * AUDIO_RENDER and DATA_CHANNEL_OPEN, assuming all the rest would have
+     * completed before these three.
+     * @param driver the driver of the participant.
+     * @param timeoutSeconds how long to wait.
+     */
+    public static void waitForMeasurements(WebDriver driver, int timeoutSeconds)
+    {
+        TestUtils.waitForCondition(
+            driver,
+            timeoutSeconds,
+            (ExpectedCondition<Boolean>) w
+                -> isReadyToStart(w)
+                    && AUDIO_RENDER.execute(w) != null
+                    && VIDEO_RENDER.execute(w) != null
+                    && DATA_CHANNEL_OPENED.execute(w) != null);
+    }
+
+    /**
+     * Executes CHECK_OBJECTS_CREATED_SCRIPT for passed WebDriver and
+     * returns the result. That way we can check if all objects that are
+     * used to get the time measurements are created or not.
+     * @param driver the {@link WebDriver}.
+     * @return true if ready and false if not.
+     */
+    public static Boolean isReadyToStart(WebDriver driver)
+    {
+        Object res = ((JavascriptExecutor) driver).executeScript(
+            CHECK_OBJECTS_CREATED_SCRIPT);
+
+        if (res instanceof Boolean)
+        {
+            return (Boolean) res;
+        }
+        else
+        {
+            fail("Wrong type returned from selenium!");
+        }
+        return null;
+    }
+}
@@ -21,24 +21,12 @@ import org.openqa.selenium.*;
 import java.util.*;
 
 /**
- * The web version of {@link RtpStatistics}.
+ * The web version of {@link RtpStatistics}. The stats are retrieved from the
+ * app once, when the instance is created.
  */
 public class WebRtpStatistics
-    implements RtpStatistics
+    extends RtpStatsSnapshot
 {
-    /**
-     * The bitrate part of the RTP statistics state retrieved from the app.
-     */
-    private final Map<String, Long> bitrateMap;
-
-    /**
-     * The transport part of the RTP statistics state retrieved from the app.
-     *
-     * Note that the transport object that is returned from the app is a list.
-     * For simplicity we keep only the first element.
-     */
-    private final RtpTransport rtpTransport;
-
     /**
      * Creates new {@link WebRtpStatistics}.
      *
@@ -46,80 +34,60 @@ public class WebRtpStatistics
      */
     public WebRtpStatistics(JavascriptExecutor javascriptExecutor)
     {
-        Map stats
-            = (Map) javascriptExecutor.executeScript(
-                    "return APP.conference.getStats();");
-        this.bitrateMap
-            = (Map<String, Long>) stats.get("bitrate");
-
-        List transport = (List) stats.get("transport");
-        this.rtpTransport = new WebRtpTransport(
-            transport != null && !transport.isEmpty() ? (Map) transport.get(0) : null);
+        this((Map) javascriptExecutor.executeScript("return APP.conference.getStats();"));
     }
 
     /**
-     * {@inheritDoc}
+     * Creates new {@link WebRtpStatistics} from the state retrieved from the app.
+     *
+     * @param stats the RTP statistics state retrieved from the app.
      */
-    @Override
-    public long getDownloadBitrate()
+    private WebRtpStatistics(Map stats)
     {
-        return bitrateMap != null ? bitrateMap.get("download") : 0L;
+        super(
+            System.currentTimeMillis(),
+            getBitrate(stats, "download"),
+            getBitrate(stats, "upload"),
+            getTransport(stats));
     }
 
     /**
-     * {@inheritDoc}
+     * Reads a value of the bitrate part of the RTP statistics state.
+     *
+     * @param stats the RTP statistics state retrieved from the app.
+     * @param key the key, "download" or "upload".
+     * @return the bitrate or 0 if it is missing.
      */
-    @Override
-    public long getUploadBitrate()
+    private static long getBitrate(Map stats, String key)
     {
-        return bitrateMap != null ? bitrateMap.get("upload") : 0L;
+        Map bitrateMap = stats != null ? (Map) stats.get("bitrate") : null;
+        Object value = bitrateMap != null ? bitrateMap.get(key) : null;
+
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
     }
 
     /**
-     * {@inheritDoc}
+     * Reads the transport part of the RTP statistics state.
+     *
+     * Note that the transport object that is returned from the app is a list.
+     * For simplicity we keep only the first element.
+     *
+     * @param stats the RTP statistics state retrieved from the app.
+     * @return the transport.
      */
-    @Override
-    public RtpTransport getRtpTransport()
-    {
-        return rtpTransport;
-    }
-
-    static class WebRtpTransport implements RtpTransport
+    private static RtpTransport getTransport(Map stats)
     {
-        /**
-         * The transport part of the RTP statistics state retrieved from the app.
-         *
-         * Note that the transport object that is returned from the app is a list.
-         * For simplicity we keep only the first element.
-         */
-        private final Map transportMap;
-
-        /**
-         * Ctor.
-         *
-         * @param transportMap the transport part of the RTP statistics state retrieved from the app.
-         */
-        WebRtpTransport(Map transportMap)
-        {
-            this.transportMap = transportMap;
-        }
+        List transport = stats != null ? (List) stats.get("transport") : null;
+        Map transportMap
+            = transport != null && !transport.isEmpty() ? (Map) transport.get(0) : null;
 
-        /**
-         * {@inheritDoc}
-         */
-        @Override
-        public String getRemoteSocket()
+        if (transportMap == null)
         {
-            return transportMap != null ? (String) transportMap.get("ip") : "";
+            return new Transport("", false);
         }
 
-        /**
-         * {@inheritDoc}
-         */
-        @Override
-        public boolean isP2P()
-        {
-            return transportMap != null && (boolean) transportMap.get("p2p");
-        }
+        return new Transport(
+            (String) transportMap.get("ip"),
+            Boolean.TRUE.equals(transportMap.get("p2p")));
     }
 }